@@ -12,6 +12,7 @@ plugins {
     eclipse
     idea
     id("io.freefair.lombok") version "3.1.4"
+    id("me.champeau.gradle.jmh") version "0.4.8"
     jacoco
 }
 
@@ -42,6 +43,7 @@ object Versions {
     const val akkaHttpJackson = "10.1.8"
     const val akkaStream = "2.5.19"
     const val akkaPersistence = "2.5.19"
+    const val akkaClusterSharding = "2.5.19"
     const val leveldb = "1.8"
 
     const val junit4 = "4.11"
@@ -49,6 +51,7 @@ object Versions {
     const val junitVintage = "5.4.2"
     const val akkaTestKit = "2.5.19"
     const val akkaStreamTestKit = "2.5.19"
+    const val jmh = "1.21"
 }
 
 dependencies {
@@ -57,6 +60,7 @@ dependencies {
 
     compile("com.typesafe.akka", "akka-http_2.12", Versions.akkaHttp)
     compile("com.typesafe.akka", "akka-persistence_2.12", Versions.akkaPersistence)
+    compile("com.typesafe.akka", "akka-cluster-sharding_2.12", Versions.akkaClusterSharding)
     compile("org.fusesource.leveldbjni", "leveldbjni-all", Versions.leveldb)
     compile("com.typesafe.akka", "akka-stream_2.12", Versions.akkaStream)
     compile("com.typesafe.akka", "akka-http-jackson_2.12", Versions.akkaHttpJackson)
@@ -76,6 +80,8 @@ dependencies {
     testRuntime("org.junit.vintage", "junit-vintage-engine", Versions.junitVintage) {
         because("We need to run JUnit 4 for akka-http tests :(")
     }
+
+    jmh("com.typesafe.akka", "akka-testkit_2.12", Versions.akkaTestKit)
 }
 
 tasks.withType<Test> {
@@ -90,6 +96,10 @@ jacoco {
     toolVersion = Versions.jacoco
 }
 
+jmh {
+    jmhVersion = Versions.jmh
+}
+
 checkstyle {
     sourceSets = listOf(project.sourceSets.main.get())
 }
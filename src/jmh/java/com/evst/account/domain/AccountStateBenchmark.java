@@ -0,0 +1,67 @@
+package com.evst.account.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to apply the events of a transfer to an account holding the given number of the completed transfers.
+ * The cost of an event is expected to stay flat as the history grows.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AccountStateBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    private int history;
+
+    private AccountState account;
+    private UUID targetId;
+    private Date now;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        now = new Date();
+        targetId = UUID.randomUUID();
+        account = new AccountState.Created(UUID.randomUUID(), "benchmark", now, 2).mutate(null);
+        account = new AccountState.MoneyDeposited(
+            UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(Long.MAX_VALUE, 2), now
+        ).mutate(account);
+        for (int i = 0; i < history; i++) {
+            transfer();
+        }
+    }
+
+    /**
+     * Blocks the money of a transfer and completes it, two events.
+     */
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public AccountState transfer() {
+        final UUID transferId = UUID.randomUUID();
+        account = new AccountState.MoneyBlocked(transferId, targetId, Money.of(100, 2), now).mutate(account);
+        account = new AccountState.TransferCompleted(transferId, now).mutate(account);
+        return account;
+    }
+
+}
@@ -0,0 +1,90 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+
+/**
+ * Deposits to a single account sent without waiting for the replies, so the commands pile up
+ * while an event is being written. Compares the account with and without batching.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HotAccountBenchmark {
+
+    private static final int DEPOSITS = 1000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    @Param({"false", "true"})
+    private boolean batching;
+
+    private ActorSystem system;
+    private TestKit probe;
+    private ActorRef account;
+    private long deliveryId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        system = ActorSystem.create("benchmark", ConfigFactory.load("application").withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(Files.createTempDirectory("journal").toString())
+        ).withValue(
+            "akka.persistence.snapshot-store.local.dir", fromAnyRef(Files.createTempDirectory("snapshots").toString())
+        ).withValue(
+            "account-manager.batching.enabled", fromAnyRef(batching)
+        ).withValue(
+            "akka.loglevel", fromAnyRef("WARNING")
+        ));
+        probe = new TestKit(system);
+        final UUID id = UUID.randomUUID();
+        account = system.actorOf(Props.create(Account.class, id));
+        account.tell(new Message.CreateAccountCommand(id, "hot"), probe.getRef());
+        probe.expectMsgClass(TIMEOUT, Message.AccountCreatedResponse.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPOSITS)
+    public void deposits() {
+        for (int i = 0; i < DEPOSITS; i++) {
+            account.tell(new TransferProtocolMessage.DepositMoney(
+                deliveryId++, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(100, 2)
+            ), probe.getRef());
+        }
+        probe.receiveN(DEPOSITS, TIMEOUT);
+    }
+
+}
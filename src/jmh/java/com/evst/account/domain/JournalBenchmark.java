@@ -0,0 +1,123 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.ConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+
+/**
+ * Append and replay throughput of the account events with the leveldb journal and the memory mapped one.
+ * Append writes deposits to a single account one event at a time, replay recovers an account
+ * of {@link #REPLAYED_EVENTS} events without snapshots.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class JournalBenchmark {
+
+    private static final int DEPOSITS = 1000;
+    private static final int REPLAYED_EVENTS = 10000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    @Param({"leveldb", "mapped"})
+    private String journal;
+
+    private ActorSystem system;
+    private TestKit probe;
+    private ActorRef account;
+    private UUID replayedId;
+    private long deliveryId;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        system = ActorSystem.create("benchmark", ConfigFactory.load("application").withValue(
+            "akka.persistence.journal.plugin", fromAnyRef("akka.persistence.journal." + journal)
+        ).withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(Files.createTempDirectory("journal").toString())
+        ).withValue(
+            "akka.persistence.journal.mapped.dir", fromAnyRef(Files.createTempDirectory("mapped-journal").toString())
+        ).withValue(
+            "akka.persistence.snapshot-store.local.dir", fromAnyRef(Files.createTempDirectory("snapshots").toString())
+        ).withValue(
+            "akka.persistence.snapshot-store.interval.account", fromAnyRef(Integer.MAX_VALUE)
+        ).withValue(
+            "akka.loglevel", fromAnyRef("WARNING")
+        ));
+        probe = new TestKit(system);
+        account = createAccount(UUID.randomUUID());
+        replayedId = UUID.randomUUID();
+        final ActorRef replayed = createAccount(replayedId);
+        for (int i = 0; i < REPLAYED_EVENTS; i++) {
+            replayed.tell(deposit(), probe.getRef());
+        }
+        probe.receiveN(REPLAYED_EVENTS, TIMEOUT);
+        system.stop(replayed);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEPOSITS)
+    public void append() {
+        for (int i = 0; i < DEPOSITS; i++) {
+            account.tell(deposit(), probe.getRef());
+        }
+        probe.receiveN(DEPOSITS, TIMEOUT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REPLAYED_EVENTS)
+    public void replay() {
+        final ActorRef replayed = system.actorOf(Props.create(Account.class, replayedId));
+        replayed.tell(new Message.RetrieveAccountCommand(replayedId), probe.getRef());
+        probe.expectMsgClass(TIMEOUT, Message.AccountSnapshotResponse.class);
+        probe.watch(replayed);
+        system.stop(replayed);
+        probe.expectTerminated(TIMEOUT, replayed);
+    }
+
+    private ActorRef createAccount(UUID id) {
+        final ActorRef created = system.actorOf(Props.create(Account.class, id));
+        created.tell(new Message.CreateAccountCommand(id, "benchmark"), probe.getRef());
+        probe.expectMsgClass(TIMEOUT, Message.AccountCreatedResponse.class);
+        return created;
+    }
+
+    private TransferProtocolMessage.DepositMoney deposit() {
+        return new TransferProtocolMessage.DepositMoney(
+            deliveryId++, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(100, 2)
+        );
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorSystem;
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import akka.testkit.javadsl.TestKit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization and deserialization time of an account event and of an account snapshot with the Java serializer
+ * and the {@link DomainSerializer}. The size of the serialized payload is reported as the <code>payloadBytes</code>
+ * counter.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"java", "compact"})
+    private String format;
+
+    @Param({"event", "snapshot"})
+    private String payload;
+
+    private ActorSystem system;
+    private Serialization serialization;
+    private Serializer serializer;
+    private Object object;
+    private String manifest;
+    private byte[] bytes;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        system = ActorSystem.create("benchmark");
+        serialization = SerializationExtension.get(system);
+        final Date now = new Date();
+        final UUID accountId = UUID.randomUUID();
+        final AccountState.Event event = new AccountState.MoneyBlocked(
+            UUID.randomUUID(), UUID.randomUUID(), Money.of(3050, 2), now
+        );
+        object = "event".equals(payload) ?
+            event : event.mutate(new AccountState.MoneyDeposited(
+                UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(10025, 2), now
+            ).mutate(new AccountState.Created(accountId, "benchmark", now, 2).mutate(null)));
+        serializer = "java".equals(format) ?
+            new JavaSerializer((ExtendedActorSystem) system) : serialization.findSerializerFor(object);
+        manifest = Serializers.manifestFor(serializer, object);
+        bytes = serializer.toBinary(object);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Benchmark
+    public byte[] serialize(PayloadSize size) {
+        final byte[] serialized = serializer.toBinary(object);
+        size.payloadBytes = serialized.length;
+        return serialized;
+    }
+
+    @Benchmark
+    public Object deserialize(PayloadSize size) {
+        size.payloadBytes = bytes.length;
+        return serialization.deserialize(bytes, serializer.identifier(), manifest).get();
+    }
+
+    /**
+     * Size of the serialized payload.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class PayloadSize {
+        public long payloadBytes;
+    }
+
+}
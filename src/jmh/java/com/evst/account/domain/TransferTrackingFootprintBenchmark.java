@@ -0,0 +1,115 @@
+package com.evst.account.domain;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heap retained by the bookkeeping of {@link #OPEN_TRANSFERS} open transfers: a {@link HashMap} of the identifiers
+ * as the manager kept its pending requests, the {@link UuidHashMap} it keeps them in now and the current transfers
+ * of an {@link AccountState}. The values are shared, so only the cost of the keys and the map structure is counted.
+ * The retained bytes are reported as the <code>retainedBytes</code> counter, the time is the time to fill the map.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class TransferTrackingFootprintBenchmark {
+
+    private static final int OPEN_TRANSFERS = 1_000_000;
+    private static final Object VALUE = new Object();
+
+    private long[] msbs;
+    private long[] lsbs;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final Random random = new Random(42);
+        msbs = new long[OPEN_TRANSFERS];
+        lsbs = new long[OPEN_TRANSFERS];
+        for (int i = 0; i < OPEN_TRANSFERS; i++) {
+            msbs[i] = random.nextLong();
+            lsbs[i] = random.nextLong();
+        }
+    }
+
+    @Benchmark
+    public Object hashMap(Footprint footprint) {
+        final long before = usedHeap();
+        final Map<UUID, Object> map = new HashMap<>();
+        for (int i = 0; i < OPEN_TRANSFERS; i++) {
+            map.put(new UUID(msbs[i], lsbs[i]), VALUE);
+        }
+        footprint.retainedBytes = usedHeap() - before;
+        return map;
+    }
+
+    @Benchmark
+    public Object uuidHashMap(Footprint footprint) {
+        final long before = usedHeap();
+        final UuidHashMap<Object> map = new UuidHashMap<>(0);
+        for (int i = 0; i < OPEN_TRANSFERS; i++) {
+            map.put(new UUID(msbs[i], lsbs[i]), VALUE);
+        }
+        footprint.retainedBytes = usedHeap() - before;
+        return map;
+    }
+
+    /**
+     * The state keeps a transfer as an {@link AccountState.ActiveTransfer} in a persistent map, it's counted
+     * for the comparison and isn't replaced by the mutable map.
+     */
+    @Benchmark
+    public Object accountState(Footprint footprint) {
+        final Date now = new Date();
+        final UUID targetId = UUID.randomUUID();
+        final Money amount = Money.of(1, 2);
+        final long before = usedHeap();
+        AccountState account = new AccountState.MoneyDeposited(
+            UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(Long.MAX_VALUE, 2), now
+        ).mutate(new AccountState.Created(UUID.randomUUID(), "benchmark", now, 2).mutate(null));
+        for (int i = 0; i < OPEN_TRANSFERS; i++) {
+            account = new AccountState.MoneyBlocked(new UUID(msbs[i], lsbs[i]), targetId, amount, now).mutate(account);
+        }
+        footprint.retainedBytes = usedHeap() - before;
+        return account;
+    }
+
+    private static long usedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    /**
+     * Heap retained by the map built in the iteration.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytes;
+    }
+
+}
@@ -1,19 +1,22 @@
 package com.evst.account;
 
-import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
-import akka.actor.Props;
 import akka.http.javadsl.server.Route;
 import akka.stream.ActorMaterializer;
-import com.evst.account.domain.AccountManager;
+import com.evst.account.domain.AccountManagers;
 import com.evst.account.domain.AccountService;
 import com.evst.account.domain.AccountServiceActorImpl;
+import com.evst.account.query.ReadJournal;
+import com.evst.account.query.ReadModel;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
-import com.google.inject.name.Names;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
 
+import java.io.IOException;
+
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
@@ -23,18 +26,25 @@ public class AccountServiceModule extends AbstractModule {
     protected void configure() {
         super.configure();
 
-        final Config config = ConfigFactory.load("application");
+        final Config config = InMemoryStorage.configure(ConfigFactory.load("application"));
         final ActorSystem actorSystem = ActorSystem.create("account-service", config);
-        final ActorRef accountManager = actorSystem.actorOf(Props.create(AccountManager.class), "accounts");
+        final AccountManagers accountManagers = AccountManagers.start(actorSystem);
 
         bind(Config.class).toInstance(config);
         bind(ActorSystem.class).toInstance(actorSystem);
         bind(ActorMaterializer.class).toInstance(ActorMaterializer.create(actorSystem));
         bind(Route.class).toProvider(AccountServiceRouteProvider.class);
-        bind(ActorRef.class).annotatedWith(Names.named("accounts")).toInstance(accountManager);
+        bind(AccountManagers.class).toInstance(accountManagers);
+        bind(ReadJournal.class).toInstance(new ReadJournal(actorSystem));
         bind(ObjectMapper.class).toProvider(ObjectMapperProvider.class).asEagerSingleton();
         bind(AccountService.class).to(AccountServiceActorImpl.class).asEagerSingleton();
 
         bind(HttpServer.class);
     }
+
+    @Provides
+    @Singleton
+    ReadModel readModel(ActorSystem actorSystem, ActorMaterializer actorMaterializer) throws IOException {
+        return ReadModel.start(actorSystem, actorMaterializer);
+    }
 }
@@ -1,18 +1,33 @@
 package com.evst.account;
 
 import akka.http.javadsl.marshallers.jackson.Jackson;
+import akka.http.javadsl.marshalling.Marshaller;
+import akka.http.javadsl.model.ContentType;
+import akka.http.javadsl.model.HttpCharsets;
+import akka.http.javadsl.model.HttpEntities;
+import akka.http.javadsl.model.HttpResponse;
+import akka.http.javadsl.model.MediaTypes;
+import akka.http.javadsl.model.RequestEntity;
 import akka.http.javadsl.model.StatusCodes;
+import akka.http.javadsl.model.headers.RawHeader;
 import akka.http.javadsl.server.Directives;
 import akka.http.javadsl.server.ExceptionHandler;
 import akka.http.javadsl.server.PathMatchers;
 import akka.http.javadsl.server.RejectionHandler;
+import akka.http.javadsl.server.Rejections;
 import akka.http.javadsl.server.Route;
+import akka.http.javadsl.unmarshalling.StringUnmarshallers;
 import akka.http.scaladsl.server.ValidationRejection;
+import akka.japi.Pair;
+import akka.stream.javadsl.Source;
+import akka.util.ByteString;
+import com.evst.account.api.AccountEventData;
 import com.evst.account.api.AccountReadData;
 import com.evst.account.api.AccountWriteData;
 import com.evst.account.api.DepositReadData;
 import com.evst.account.api.DepositWriteData;
 import com.evst.account.api.Mapper;
+import com.evst.account.api.TransferPageData;
 import com.evst.account.api.TransferReadData;
 import com.evst.account.api.TransferWriteData;
 import com.evst.account.domain.AccountService;
@@ -20,10 +35,22 @@ import com.evst.account.domain.AccountService.AccountAlreadyExistsException;
 import com.evst.account.domain.AccountService.AccountNotFoundException;
 import com.evst.account.domain.AccountService.TransferAlreadyExistsException;
 import com.evst.account.domain.AccountService.TransferNotFoundException;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.Money;
+import com.evst.account.domain.TransferState;
+import com.evst.account.query.ReadJournal;
+import com.evst.account.query.ReadModel;
+import com.evst.account.query.ReadToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.Provider;
+import com.typesafe.config.Config;
 
+import java.math.BigDecimal;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
 import javax.inject.Inject;
 
 import static akka.http.javadsl.server.Directives.complete;
@@ -32,22 +59,48 @@ import static akka.http.javadsl.server.Directives.concat;
 import static akka.http.javadsl.server.Directives.entity;
 import static akka.http.javadsl.server.Directives.handleExceptions;
 import static akka.http.javadsl.server.Directives.handleRejections;
+import static akka.http.javadsl.server.Directives.onSuccess;
+import static akka.http.javadsl.server.Directives.optionalHeaderValueByName;
+import static akka.http.javadsl.server.Directives.parameterOptional;
 import static akka.http.javadsl.server.Directives.path;
+import static akka.http.javadsl.server.Directives.reject;
+import static akka.http.javadsl.server.Directives.respondWithHeader;
+import static akka.http.javadsl.server.Directives.validate;
 import static akka.http.javadsl.server.PathMatchers.segment;
 import static akka.http.javadsl.server.PathMatchers.uuidSegment;
 
 /**
+ * Routes of the service. With the {@link ReadModel} enabled the GET requests are served by the projection,
+ * a write responds with the <code>X-Read-Token</code> header and a read passing it back sees the write.
+ * A read falls back to the entity if the projection has no view or hasn't reached the token in time.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
 public class AccountServiceRouteProvider implements Provider<Route> {
 
+    static final String READ_TOKEN_HEADER = "X-Read-Token";
+
+    private static final ContentType NDJSON = MediaTypes.applicationWithFixedCharset("x-ndjson", HttpCharsets.UTF_8)
+        .toContentType();
+    private static final ByteString NEW_LINE = ByteString.fromString("\n");
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String LEDGER_SCALE_SETTING = "ledger.scale";
+
     private final AccountService accountService;
+    private final ReadModel readModel;
+    private final ReadJournal readJournal;
     private final ObjectMapper om;
+    private final int scale;
 
     @Inject
-    public AccountServiceRouteProvider(AccountService accountService, ObjectMapper om) {
+    public AccountServiceRouteProvider(AccountService accountService, ReadModel readModel, ReadJournal readJournal,
+                                       ObjectMapper om, Config config) {
         this.accountService = accountService;
+        this.readModel = readModel;
+        this.readJournal = readJournal;
         this.om = om;
+        this.scale = config.getInt(LEDGER_SCALE_SETTING);
     }
 
     @Override
@@ -59,50 +112,180 @@ public class AccountServiceRouteProvider implements Provider<Route> {
                 () -> concat(
                     Directives.post(() -> path("accounts", () ->
                         entity(Jackson.unmarshaller(om, AccountWriteData.class), entity ->
-                            completeOKWithFuture(
+                            completeWritten(
                                 accountService.createAccount(entity.getId(), entity.getName()),
                                 Jackson.<UUID>marshaller(om)
                             )
                         )
                     )),
                     Directives.get(() -> path(segment("accounts").slash(uuidSegment()), id ->
-                        completeOKWithFuture(
-                            accountService.retrieveAccount(id).thenApply(Mapper::accountData),
+                        readToken(token -> completeOKWithFuture(
+                            retrieveAccount(id, token).thenApply(Mapper::accountData),
                             Jackson.<AccountReadData>marshaller(om)
-                        )
+                        ))
+                    )),
+                    Directives.get(() -> path(segment("accounts").slash(uuidSegment()).slash(segment("events")), id ->
+                        accountHistory(id)
+                    )),
+                    Directives.get(() -> path(segment("accounts").slash(uuidSegment()).slash(segment("transfers")), id ->
+                        accountTransfers(id)
                     )),
                     Directives.post(() -> path(segment("accounts").slash(uuidSegment()).slash(segment("deposit")), id ->
                         entity(Jackson.unmarshaller(om, DepositWriteData.class), entity ->
-                            completeOKWithFuture(
+                            amount(entity.getAmount(), amount -> completeWritten(
                                 accountService.depositMoney(
-                                    entity.getTransferId(), id, entity.getAmount()
+                                    entity.getTransferId(), id, amount
                                 ).thenApply(Mapper::depositData),
                                 Jackson.<DepositReadData>marshaller(om)
-                            )
+                            ))
                         )
                     )),
                     Directives.post(() -> path("transfers", () ->
                         entity(Jackson.unmarshaller(om, TransferWriteData.class), entity ->
-                            completeOKWithFuture(
+                            amount(entity.getAmount(), amount -> completeWritten(
                                 accountService.makeTransfer(
                                     entity.getTransferId(), entity.getSourceAccountId(),
-                                    entity.getTargetAccountId(), entity.getAmount()
+                                    entity.getTargetAccountId(), amount
                                 ).thenApply(Mapper::transferData),
                                 Jackson.<TransferReadData>marshaller(om)
-                            )
+                            ))
                         )
                     )),
                     Directives.get(() -> path(segment("transfers").slash(PathMatchers.uuidSegment()), id ->
-                        completeOKWithFuture(
-                            accountService.retrieveTransfer(id).thenApply(Mapper::transferData),
+                        readToken(token -> completeOKWithFuture(
+                            retrieveTransfer(id, token).thenApply(Mapper::transferData),
                             Jackson.<TransferReadData>marshaller(om)
-                        )
+                        ))
                     ))
                 )
             )
         );
     }
 
+    /**
+     * Streams the events of the account from the journal as chunked NDJSON, one {@link AccountEventData} per line.
+     * The journal is read by pages as the client consumes the response, so the memory doesn't depend on the length
+     * of the history. The events deleted by the snapshot retention aren't streamed.
+     */
+    private Route accountHistory(UUID id) {
+        return parameterOptional(StringUnmarshallers.LONG, "from_sequence_nr", from ->
+            parameterOptional(StringUnmarshallers.LONG, "limit", limit ->
+                parameterOptional(StringUnmarshallers.LONG, "from_time", fromTime ->
+                    parameterOptional(StringUnmarshallers.LONG, "to_time", toTime ->
+                        validate(() -> from.orElse(1L) > 0 && limit.orElse(1L) > 0, "Invalid history range", () ->
+                            onSuccess(accountService.retrieveAccount(id), account -> complete(HttpResponse.create().withEntity(
+                                HttpEntities.createChunked(NDJSON, accountEvents(
+                                    id, from.orElse(1L), limit.orElse(Long.MAX_VALUE),
+                                    fromTime.orElse(Long.MIN_VALUE), toTime.orElse(Long.MAX_VALUE)
+                                ))
+                            )))
+                        )
+                    )
+                )
+            )
+        );
+    }
+
+    /**
+     * The events of an account are written in the order of their time, so the stream stops at the first event
+     * after the time range.
+     */
+    private Source<ByteString, ?> accountEvents(UUID id, long fromSequenceNr, long limit, long fromTime, long toTime) {
+        return readJournal.currentEventsByPersistenceId(id.toString(), fromSequenceNr, Long.MAX_VALUE)
+            .map(envelope -> Mapper.accountEventData(envelope.getSequenceNr(), (AccountState.Event) envelope.getEvent()))
+            .takeWhile(event -> event.getTime().getTime() <= toTime)
+            .filter(event -> event.getTime().getTime() >= fromTime)
+            .take(limit)
+            .map(event -> ByteString.fromArray(om.writeValueAsBytes(event)).concat(NEW_LINE));
+    }
+
+    /**
+     * Lists the transfers of the account from the index of the read model, page by page. The cursor of a page
+     * is passed to read the next one, the <code>status</code> parameter filters the transfers by the status code.
+     */
+    private Route accountTransfers(UUID id) {
+        if (!readModel.isEnabled()) {
+            return complete(StatusCodes.NOT_IMPLEMENTED, "Transfers of an account are listed by the read model, it's disabled");
+        }
+        return parameterOptional("status", status ->
+            parameterOptional(StringUnmarshallers.LONG, "cursor", cursor ->
+                parameterOptional(StringUnmarshallers.INTEGER, "limit", limit ->
+                    validate(() -> status.map(code -> TransferState.Status.fromCode(code).isPresent()).orElse(true) &&
+                        cursor.orElse(0L) >= 0 && limit.orElse(1) > 0 && limit.orElse(1) <= MAX_PAGE_SIZE, "Invalid page", () ->
+                        readToken(token -> completeOKWithFuture(
+                            readModel.accountTransfers(
+                                id, status.flatMap(TransferState.Status::fromCode), cursor.orElse(0L),
+                                limit.orElse(DEFAULT_PAGE_SIZE), token
+                            ).thenApply(Mapper::transferPageData),
+                            Jackson.<TransferPageData>marshaller(om)
+                        ))
+                    )
+                )
+            )
+        );
+    }
+
+    private CompletionStage<AccountState> retrieveAccount(UUID id, Optional<ReadToken> token) {
+        if (!readModel.isEnabled()) {
+            return accountService.retrieveAccount(id);
+        }
+        return readModel.account(id, token).thenCompose(view -> view.<CompletionStage<AccountState>>map(
+            CompletableFuture::completedFuture
+        ).orElseGet(() -> accountService.retrieveAccount(id)));
+    }
+
+    private CompletionStage<TransferState> retrieveTransfer(UUID id, Optional<ReadToken> token) {
+        if (!readModel.isEnabled()) {
+            return accountService.retrieveTransfer(id);
+        }
+        return readModel.transfer(id, token).thenCompose(view -> view.<CompletionStage<TransferState>>map(
+            CompletableFuture::completedFuture
+        ).orElseGet(() -> accountService.retrieveTransfer(id)));
+    }
+
+    /**
+     * Extracts the optional read token of the request, a malformed token is a bad request.
+     */
+    private Route readToken(Function<Optional<ReadToken>, Route> inner) {
+        return optionalHeaderValueByName(READ_TOKEN_HEADER, header -> {
+            final Optional<ReadToken> token;
+            try {
+                token = header.map(ReadToken::parse);
+            } catch (IllegalArgumentException e) {
+                return reject(Rejections.validationRejection("Malformed read token " + header.get()));
+            }
+            return inner.apply(token);
+        });
+    }
+
+    /**
+     * Converts the amount of the request to the scale of the ledger, an amount which has more digits
+     * or doesn't fit is a bad request.
+     */
+    private Route amount(BigDecimal amount, Function<Money, Route> inner) {
+        final Money money;
+        try {
+            money = Mapper.money(amount, scale);
+        } catch (IllegalArgumentException e) {
+            return reject(Rejections.validationRejection(e.getMessage()));
+        }
+        return inner.apply(money);
+    }
+
+    /**
+     * Completes a write with its result and the token of the persisted events, so the client can read the write.
+     */
+    private <T> Route completeWritten(CompletionStage<T> write, Marshaller<T, RequestEntity> marshaller) {
+        if (!readModel.isEnabled()) {
+            return completeOKWithFuture(write, marshaller);
+        }
+        return onSuccess(write.thenCompose(result -> readModel.token().thenApply(token -> Pair.create(result, token))),
+            written -> written.second().map(token -> respondWithHeader(
+                RawHeader.create(READ_TOKEN_HEADER, token.toString()), () -> complete(StatusCodes.OK, written.first(), marshaller)
+            )).orElseGet(() -> complete(StatusCodes.OK, written.first(), marshaller))
+        );
+    }
+
     private ExceptionHandler handleAccountExceptions() {
         return ExceptionHandler.newBuilder()
             .match(AccountAlreadyExistsException.class, e -> complete(StatusCodes.CONFLICT, e.getMessage()))
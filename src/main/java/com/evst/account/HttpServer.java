@@ -29,6 +29,7 @@ public class HttpServer {
     @Inject private ActorMaterializer actorMaterializer;
 
     @Inject private Route route;
+    @Inject private WarmUp warmUp;
 
     /**
      * Starts HTTP server. It assumes that Guice module is configured properly to provide configuration,
@@ -36,8 +37,15 @@ public class HttpServer {
      *
      * Routes provided as a separate component of the server to make them independent from each other and
      * to be able to reuse {@link HttpServer}.
+     *
+     * The port is bound after the {@link WarmUp}, which is bounded by <code>warm-up.max-duration</code>, the server
+     * starts even if the warm-up fails. The list of the recent accounts is saved before the actor system is terminated.
      */
     public void start() {
+        warmUp.run().exceptionally(failure -> {
+            actorSystem.log().error(failure, "Warm-up has failed");
+            return null;
+        }).toCompletableFuture().join();
         final Http http = Http.get(this.actorSystem);
         final Flow<HttpRequest, HttpResponse, NotUsed> routeFlow = route.flow(actorSystem, actorMaterializer);
         final String host = config.getString("server.host");
@@ -53,7 +61,9 @@ public class HttpServer {
             System.out.println(e);
             // ignore
         } finally {
-            binding.thenCompose(ServerBinding::unbind).thenAccept(unbound -> actorSystem.terminate());
+            binding.thenCompose(ServerBinding::unbind)
+                .thenCompose(unbound -> warmUp.saveRecentAccounts())
+                .thenAccept(saved -> actorSystem.terminate());
         }
     }
 
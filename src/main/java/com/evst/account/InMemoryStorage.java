@@ -0,0 +1,63 @@
+package com.evst.account;
+
+import akka.actor.ActorSystem;
+import akka.persistence.Persistence;
+import com.evst.account.journal.InMemoryJournal;
+import com.evst.account.snapshot.InMemorySnapshotStore;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.Patterns.ask;
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+
+/**
+ * Switch of the persistence to the {@link InMemoryJournal} and the {@link InMemorySnapshotStore}. With
+ * <code>in-memory-storage.enabled</code> on the plugins configured in <code>akka.persistence</code> are replaced
+ * and the checkpoints of the read model are turned off, so the service doesn't touch the disk.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class InMemoryStorage {
+
+    private static final String ENABLED_SETTING = "in-memory-storage.enabled";
+    private static final String JOURNAL_PLUGIN = "akka.persistence.journal.in-memory";
+    private static final String SNAPSHOT_STORE_PLUGIN = "akka.persistence.snapshot-store.in-memory";
+
+    private InMemoryStorage() {
+    }
+
+    /**
+     * Applies the switch to the configuration, it has to be done before the actor system is created.
+     *
+     * @param config configuration of the application
+     * @return the configuration with the in-memory plugins if the storage is enabled, the same one otherwise
+     */
+    public static Config configure(Config config) {
+        if (!config.getBoolean(ENABLED_SETTING)) {
+            return config;
+        }
+        return config.withValue("akka.persistence.journal.plugin", fromAnyRef(JOURNAL_PLUGIN))
+            .withValue("akka.persistence.snapshot-store.plugin", fromAnyRef(SNAPSHOT_STORE_PLUGIN))
+            .withValue("read-model.store.enabled", fromAnyRef(false));
+    }
+
+    /**
+     * Drops all the events and the snapshots, e.g. between the runs of a load test. The entities which are alive
+     * keep their state, they have to be stopped before the reset.
+     *
+     * @param system actor system with the in-memory storage
+     * @param timeout how long to wait for the plugins
+     * @return future completed when both plugins are empty
+     */
+    public static CompletionStage<Object> reset(ActorSystem system, Duration timeout) {
+        final Persistence persistence = Persistence.get(system);
+        return ask(persistence.journalFor(JOURNAL_PLUGIN, ConfigFactory.empty()), InMemoryJournal.RESET, timeout)
+            .thenCompose(done -> ask(
+                persistence.snapshotStoreFor(SNAPSHOT_STORE_PLUGIN, ConfigFactory.empty()), InMemorySnapshotStore.RESET, timeout
+            ));
+    }
+
+}
@@ -0,0 +1,227 @@
+package com.evst.account;
+
+import akka.NotUsed;
+import akka.actor.ActorSystem;
+import akka.event.LoggingAdapter;
+import akka.japi.pf.PFBuilder;
+import akka.stream.ActorMaterializer;
+import akka.stream.Graph;
+import akka.stream.SourceShape;
+import akka.stream.javadsl.Sink;
+import akka.stream.javadsl.Source;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.Message;
+import com.evst.account.query.ReadJournal;
+import com.google.inject.Singleton;
+import com.typesafe.config.Config;
+import lombok.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import javax.inject.Inject;
+
+import static akka.pattern.Patterns.ask;
+
+/**
+ * Recovers the accounts which are likely to be requested soon before the server accepts the requests, so the first
+ * requests don't pay the recovery of the accounts within their timeouts.
+ *
+ * The accounts are taken from the <code>warm-up.source</code>: <code>recent</code> reads the list of the accounts
+ * which were live when the service was stopped last time (see {@link #saveRecentAccounts()}), <code>journal</code>
+ * takes all the persistence identifiers of the read journal and keeps the ones whose events are account events.
+ * The <code>journal</code> source is skipped with a warning if the journal doesn't list the persistence identifiers.
+ * At most <code>warm-up.max-accounts</code> accounts are recovered, <code>warm-up.parallelism</code> at a time,
+ * and the warm-up is stopped after <code>warm-up.max-duration</code> with the accounts recovered so far.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Singleton
+public class WarmUp {
+
+    private static final String ENABLED_SETTING = "warm-up.enabled";
+    private static final String SOURCE_SETTING = "warm-up.source";
+    private static final String RECENT_ACCOUNTS_FILE_SETTING = "warm-up.recent-accounts-file";
+    private static final String MAX_ACCOUNTS_SETTING = "warm-up.max-accounts";
+    private static final String PARALLELISM_SETTING = "warm-up.parallelism";
+    private static final String TIMEOUT_SETTING = "warm-up.timeout";
+    private static final String MAX_DURATION_SETTING = "warm-up.max-duration";
+    private static final String PROGRESS_INTERVAL_SETTING = "warm-up.progress-interval";
+    private static final String JOURNAL_SOURCE = "journal";
+
+    @Inject private Config config;
+    @Inject private ActorSystem actorSystem;
+    @Inject private ActorMaterializer actorMaterializer;
+    @Inject private AccountManagers accountManagers;
+    @Inject private ReadJournal readJournal;
+
+    /**
+     * Recovers the accounts if the warm-up is enabled and reports the progress to the log.
+     *
+     * @return future with the result of the warm-up completed within the max duration, the failures to recover
+     *     single accounts are counted
+     */
+    public CompletionStage<Result> run() {
+        if (!config.getBoolean(ENABLED_SETTING)) {
+            return CompletableFuture.completedFuture(new Result(0, 0, Duration.ZERO));
+        }
+        final LoggingAdapter log = actorSystem.log();
+        final long started = System.nanoTime();
+        final int parallelism = config.getInt(PARALLELISM_SETTING);
+        final Duration timeout = config.getDuration(TIMEOUT_SETTING);
+        final Duration maxDuration = config.getDuration(MAX_DURATION_SETTING);
+        final long progressInterval = config.getLong(PROGRESS_INTERVAL_SETTING);
+        final AtomicLong failed = new AtomicLong();
+        return accounts().take(config.getLong(MAX_ACCOUNTS_SETTING))
+            .mapAsyncUnordered(parallelism, id -> ask(accountManagers.managerOf(id), new Message.RetrieveAccountCommand(id), timeout)
+                .handle((response, failure) -> {
+                    if (failure != null) {
+                        failed.incrementAndGet();
+                    }
+                    return id;
+                })
+            )
+            .takeWithin(maxDuration)
+            .runFold(0L, (recovered, id) -> {
+                if ((recovered + 1) % progressInterval == 0) {
+                    log.info("Warm-up has recovered {} accounts in {} ms", recovered + 1, elapsedSince(started).toMillis());
+                }
+                return recovered + 1;
+            }, actorMaterializer)
+            .thenApply(recovered -> {
+                final Result result = new Result(recovered, failed.get(), elapsedSince(started));
+                if (result.getDuration().compareTo(maxDuration) >= 0) {
+                    log.warning("Warm-up has been stopped after {} ms", maxDuration.toMillis());
+                }
+                log.info("Warm-up of {} accounts ({} failed) has finished in {} ms",
+                    result.getAccounts(), result.getFailed(), result.getDuration().toMillis());
+                return result;
+            });
+    }
+
+    /**
+     * Saves the live accounts, the <code>recent</code> warm-up recovers them on the next start.
+     *
+     * @return future completed when the list is saved or can't be saved
+     */
+    public CompletionStage<Void> saveRecentAccounts() {
+        if (!config.getBoolean(ENABLED_SETTING) || JOURNAL_SOURCE.equals(config.getString(SOURCE_SETTING))) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return accountManagers.liveAccounts(config.getDuration(TIMEOUT_SETTING)).handle((accounts, failure) -> {
+            if (failure != null) {
+                actorSystem.log().error(failure, "Recent accounts can't be collected");
+            } else {
+                try {
+                    writeRecentAccounts(accounts);
+                } catch (IOException e) {
+                    actorSystem.log().error(e, "Recent accounts can't be saved");
+                }
+            }
+            return null;
+        });
+    }
+
+    private Source<UUID, NotUsed> accounts() {
+        final Source<UUID, NotUsed> accounts;
+        if (JOURNAL_SOURCE.equals(config.getString(SOURCE_SETTING))) {
+            accounts = readJournal.currentPersistenceIds()
+                .recoverWithRetries(1, new PFBuilder<Throwable, Graph<SourceShape<String>, NotUsed>>()
+                    .match(TimeoutException.class, e -> {
+                        actorSystem.log().warning("The journal doesn't list the persistence identifiers, the warm-up is skipped");
+                        return Source.empty();
+                    })
+                    .build()
+                )
+                .mapConcat(id -> parseId(id).map(Collections::singletonList).orElse(Collections.emptyList()))
+                .mapAsyncUnordered(config.getInt(PARALLELISM_SETTING), id -> isAccount(id).thenApply(
+                    account -> account ? Collections.singletonList(id) : Collections.<UUID>emptyList()
+                ))
+                .mapConcat(ids -> ids);
+        } else {
+            accounts = Source.from(readRecentAccounts());
+        }
+        return accounts;
+    }
+
+    /**
+     * Checks the first stored event of the entity, accounts and transfers share the identifiers space.
+     */
+    private CompletionStage<Boolean> isAccount(UUID id) {
+        return readJournal.currentEventsByPersistenceId(id.toString(), 1, Long.MAX_VALUE)
+            .take(1)
+            .map(envelope -> envelope.getEvent() instanceof AccountState.Event)
+            .runWith(Sink.fold(false, (found, account) -> account), actorMaterializer);
+    }
+
+    private List<UUID> readRecentAccounts() {
+        final Path path = recentAccountsPath();
+        try {
+            return Files.exists(path) ? Files.readAllLines(path, StandardCharsets.UTF_8).stream()
+                .map(WarmUp::parseId)
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toList()) : Collections.emptyList();
+        } catch (IOException e) {
+            actorSystem.log().error(e, "Recent accounts can't be read from {}", path);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Writes the list to a temporary file which atomically replaces the previous one.
+     */
+    private void writeRecentAccounts(List<UUID> accounts) throws IOException {
+        final Path path = recentAccountsPath();
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(temporary, accounts.stream()
+            .limit(config.getLong(MAX_ACCOUNTS_SETTING))
+            .map(UUID::toString)
+            .collect(Collectors.toList()), StandardCharsets.UTF_8);
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private Path recentAccountsPath() {
+        return Paths.get(config.getString(RECENT_ACCOUNTS_FILE_SETTING));
+    }
+
+    private static Optional<UUID> parseId(String id) {
+        try {
+            return Optional.of(UUID.fromString(id.trim()));
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Duration elapsedSince(long started) {
+        return Duration.ofNanos(System.nanoTime() - started);
+    }
+
+    /**
+     * Number of the accounts the warm-up has tried to recover, the number of the failed ones and the duration.
+     */
+    @Value
+    public static class Result {
+        private long accounts;
+        private long failed;
+        private Duration duration;
+    }
+
+}
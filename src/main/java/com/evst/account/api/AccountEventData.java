@@ -0,0 +1,46 @@
+package com.evst.account.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.UUID;
+
+/**
+ * Entry of the account history, the fields which don't apply to the type of the event are omitted.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class AccountEventData {
+
+    @JsonProperty("sequence_nr")
+    private long sequenceNr;
+
+    @JsonProperty("type")
+    private String type;
+
+    @JsonProperty("time")
+    private Date time;
+
+    @JsonProperty("transfer_id")
+    private UUID transferId;
+
+    @JsonProperty("counterparty_account_id")
+    private UUID counterpartyAccountId;
+
+    @JsonProperty("amount")
+    private BigDecimal amount;
+
+}
@@ -1,10 +1,19 @@
 package com.evst.account.api;
 
 import com.evst.account.domain.AccountState;
+import com.evst.account.domain.Money;
 import com.evst.account.domain.TransferState;
+import com.evst.account.query.TransferPage;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.stream.Collectors.toList;
 
 /**
- * Helper class to translate domain objects to read DTOs.
+ * Helper class to translate domain objects to read DTOs. It's the only place where the {@link Money} of the domain
+ * is converted from and to the decimal amounts of the API.
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
@@ -13,6 +22,34 @@ public final class Mapper {
     private Mapper() {
     }
 
+    /**
+     * Converts the decimal amount of a request to {@link Money} of the ledger scale.
+     *
+     * @param amount decimal amount
+     * @param scale scale of the ledger
+     * @return the amount in the minor units
+     * @throws IllegalArgumentException if there is no amount, it has more digits than the scale keeps or
+     *                                  it doesn't fit a long of the minor units
+     */
+    public static Money money(BigDecimal amount, int scale) {
+        checkArgument(amount != null, "Amount is missing");
+        try {
+            return Money.of(amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact(), scale);
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Amount " + amount + " can't be represented with the scale " + scale, e);
+        }
+    }
+
+    /**
+     * Converts {@link Money} to the decimal amount of the API, it has the scale of the amount.
+     *
+     * @param money amount in the minor units
+     * @return decimal amount
+     */
+    public static BigDecimal decimal(Money money) {
+        return BigDecimal.valueOf(money.getUnits(), money.getScale());
+    }
+
     /**
      * Maps {@link AccountState} to {@link AccountReadData}.
      *
@@ -20,7 +57,7 @@ public final class Mapper {
      * @return DTO read object for account
      */
     public static AccountReadData accountData(AccountState account) {
-        return new AccountReadData(account.getId(), account.getName(), account.getBalance());
+        return new AccountReadData(account.getId(), account.getName(), decimal(account.getBalance()));
     }
 
     /**
@@ -32,7 +69,7 @@ public final class Mapper {
     public static TransferReadData transferData(TransferState transfer) {
         return new TransferReadData(
             transfer.getId(), transfer.getSourceAccountId(), transfer.getTargetAccountId(),
-            transfer.getAmount(), transfer.getStatus().getCode()
+            decimal(transfer.getAmount()), transfer.getStatus().getCode()
         );
     }
 
@@ -44,7 +81,67 @@ public final class Mapper {
      */
     public static DepositReadData depositData(TransferState transfer) {
         return new DepositReadData(
-            transfer.getId(), transfer.getTargetAccountId(), transfer.getAmount(), transfer.getStatus().getCode()
+            transfer.getId(), transfer.getTargetAccountId(), decimal(transfer.getAmount()), transfer.getStatus().getCode()
         );
     }
+
+    /**
+     * Maps {@link TransferPage} to {@link TransferPageData}.
+     *
+     * @param page page of the transfers to be mapped
+     * @return DTO read object for the page
+     */
+    public static TransferPageData transferPageData(TransferPage page) {
+        return new TransferPageData(
+            page.getTransfers().stream().map(Mapper::transferData).collect(toList()),
+            page.isMore() ? page.getCursor() : null
+        );
+    }
+
+    /**
+     * Maps an event of the account to {@link AccountEventData}.
+     *
+     * @param sequenceNr sequence number of the event
+     * @param event account event to be mapped
+     * @return DTO read object for the history entry
+     */
+    public static AccountEventData accountEventData(long sequenceNr, AccountState.Event event) {
+        final AccountEventData data;
+        if (event instanceof AccountState.Created) {
+            final AccountState.Created created = (AccountState.Created) event;
+            data = new AccountEventData(sequenceNr, "created", created.getTime(), null, null, null);
+        } else if (event instanceof AccountState.MoneyBlocked) {
+            final AccountState.MoneyBlocked blocked = (AccountState.MoneyBlocked) event;
+            data = new AccountEventData(
+                sequenceNr, "money_blocked", blocked.getTime(), blocked.getTransactionId(),
+                blocked.getTargetAccount(), decimal(blocked.getAmount())
+            );
+        } else if (event instanceof AccountState.MoneyUnblocked) {
+            final AccountState.MoneyUnblocked unblocked = (AccountState.MoneyUnblocked) event;
+            data = new AccountEventData(sequenceNr, "money_unblocked", unblocked.getTime(), unblocked.getTransferId(), null, null);
+        } else if (event instanceof AccountState.MoneyDeposited) {
+            final AccountState.MoneyDeposited deposited = (AccountState.MoneyDeposited) event;
+            data = new AccountEventData(
+                sequenceNr, "money_deposited", deposited.getTime(), deposited.getTransactionId(),
+                deposited.getSourceAccountId(), decimal(deposited.getAmount())
+            );
+        } else if (event instanceof AccountState.TransferExpired) {
+            final AccountState.TransferExpired expired = (AccountState.TransferExpired) event;
+            data = new AccountEventData(
+                sequenceNr, "transfer_expired", expired.getTime(), expired.getTransferId(), null, null
+            );
+        } else if (event instanceof AccountState.TransferForgotten) {
+            final AccountState.TransferForgotten forgotten = (AccountState.TransferForgotten) event;
+            data = new AccountEventData(
+                sequenceNr, "transfer_forgotten", forgotten.getTime(), forgotten.getTransferId(), null, null
+            );
+        } else {
+            checkArgument(event instanceof AccountState.TransferCompleted, "Unknown account event %s", event);
+            final AccountState.TransferCompleted completed = (AccountState.TransferCompleted) event;
+            data = new AccountEventData(
+                sequenceNr, "transfer_completed", completed.getTime(), completed.getTransferId(), null, null
+            );
+        }
+        return data;
+    }
 }
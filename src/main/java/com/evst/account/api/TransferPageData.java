@@ -0,0 +1,32 @@
+package com.evst.account.api;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+import java.util.List;
+
+/**
+ * Page of the transfers of an account, the cursor is omitted on the last page.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Getter
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+@EqualsAndHashCode
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransferPageData {
+
+    @JsonProperty("transfers")
+    private List<TransferReadData> transfers;
+
+    @JsonProperty("next_cursor")
+    private Long nextCursor;
+
+}
@@ -1,24 +1,47 @@
 package com.evst.account.domain;
 
-import akka.persistence.AbstractPersistentActorWithAtLeastOnceDelivery;
+import akka.actor.ActorRef;
+import akka.actor.Cancellable;
+import akka.persistence.DeleteMessagesFailure;
+import akka.persistence.DeleteMessagesSuccess;
+import akka.persistence.DeleteSnapshotsFailure;
+import akka.persistence.DeleteSnapshotsSuccess;
+import akka.persistence.RecoveryCompleted;
 import akka.persistence.SaveSnapshotFailure;
 import akka.persistence.SaveSnapshotSuccess;
 import akka.persistence.SnapshotOffer;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.persistence.journal.Tagged;
+import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForDelivery;
 import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForTransfer;
 import com.evst.account.domain.TransferProtocolMessage.AccountReadyForTransfer;
+import com.evst.account.domain.TransferProtocolMessage.BalanceOverflowOnDeposit;
 import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
 import com.evst.account.domain.TransferProtocolMessage.CompleteTransfer;
 import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
 import com.evst.account.domain.TransferProtocolMessage.InsufficientBalanceToBlock;
 import com.evst.account.domain.TransferProtocolMessage.MoneyBlockedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.MoneyUnblockedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferCompletedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferExpiredOnBlock;
+import com.evst.account.domain.TransferProtocolMessage.TransferForgottenSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
-import com.google.common.collect.ImmutableMap;
+import com.evst.account.domain.TransferProtocolMessage.UnblockMoney;
+import com.evst.account.snapshot.SnapshotPolicy;
+import com.typesafe.config.Config;
+import lombok.Value;
 
-import java.math.BigDecimal;
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.Deque;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Account entity. Holds the current state of the account with the given identifier {@link #id}.
@@ -26,24 +49,112 @@ import java.util.UUID;
  * If the state {@link #account} equals to <code>null</code> it can be considered as not existent account, internally
  * it can be checked using the {@link #isCreated()} method.
  *
+ * In the batching mode (<code>account-manager.batching.enabled</code>) the account doesn't wait for each event to be
+ * persisted before processing the next command. Commands are validated against the {@link #projected} state, which
+ * includes the accepted but not yet persisted events, and the events are written together with
+ * {@link #persistAllAsync(Iterable, akka.japi.Procedure)} while the previous batch is in flight (group commit).
+ * All the replies, including the ones which don't persist anything, are sent in order of the commands and only
+ * after the writes before them are durable.
+ *
+ * Snapshots are saved when the {@link SnapshotPolicy} (<code>akka.persistence.snapshot-store.policy.account</code>)
+ * decides so, it's given the number of the events since the last snapshot, the replay time of an event measured
+ * by the recovery, the number of the held transfers and the write rate of the account.
+ *
+ * If the retention is enabled (<code>akka.persistence.snapshot-store.retention.account.enabled</code>) each saved
+ * snapshot deletes the events and the snapshots older than <code>keep-snapshots</code> previous snapshots, so the
+ * journal holds only the events needed to recover from any of the kept snapshots.
+ *
+ * A completed transfer is watched, so the late redeliveries of its messages are recognized, until the transfer
+ * sends {@link ForgetTransfer}. When a transfer completes the account also forgets the oldest watched transfers
+ * if there are more than <code>account-manager.completed-transfers.max-count</code> of them or they have been
+ * completed longer than <code>max-age</code> ago, the bound for the transfers which are never forgotten otherwise.
+ * A late {@link BlockMoney} of an expired transfer would block the money again, so the blocks of the transfers
+ * started before the newest expired one was completed are rejected with {@link TransferExpiredOnBlock}. The start
+ * time is taken by the transfer and the completion time by the account, the clocks of the nodes are assumed to be
+ * much closer than the age of the expired transfers.
+ *
+ * The events are persisted with the {@link EventTags} of the account.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class Account extends AbstractPersistentActorWithAtLeastOnceDelivery {
+public class Account extends PassivatingEntity {
+
+    private static final String SNAPSHOT_POLICY_SETTING = "akka.persistence.snapshot-store.policy.account";
+    private static final String BATCHING_ENABLED_SETTING = "account-manager.batching.enabled";
+    private static final String MAX_BATCH_SIZE_SETTING = "account-manager.batching.max-batch-size";
+    private static final String MAX_LINGER_SETTING = "account-manager.batching.max-linger";
+    private static final String RETENTION_ENABLED_SETTING = "akka.persistence.snapshot-store.retention.account.enabled";
+    private static final String KEEP_SNAPSHOTS_SETTING = "akka.persistence.snapshot-store.retention.account.keep-snapshots";
+    private static final String LEDGER_SCALE_SETTING = "ledger.scale";
+    private static final String COMPLETED_MAX_COUNT_SETTING = "account-manager.completed-transfers.max-count";
+    private static final String COMPLETED_MAX_AGE_SETTING = "account-manager.completed-transfers.max-age";
+
+    /**
+     * Minimal number of the replayed events to measure the replay time of an event, the time of a shorter
+     * recovery is mostly the loading of the snapshot and the reading of the highest sequence number.
+     */
+    private static final int MIN_MEASURED_REPLAY = 100;
 
-    private static final String SAVE_SNAPSHOT_INTERVAL_SETTING = "akka.persistence.snapshot-store.interval.account";
+    private static final Serializable FLUSH = new Flush();
+    private static final Serializable BATCH_WRITTEN = new BatchWritten();
 
     private final UUID id;
 
+    /**
+     * Durable state of the account.
+     */
     private AccountState account;
 
-    protected Account(UUID id) {
-        this.id = id;
+    /**
+     * State of the account after applying of all the accepted events, it differs from the {@link #account}
+     * only while there are buffered or in flight writes in the batching mode.
+     */
+    private AccountState projected;
+
+    private boolean batching;
+    private int maxBatchSize;
+    private Duration maxLinger;
+
+    private final List<PendingWrite> buffered = new ArrayList<>();
+    private boolean writeInFlight;
+    private boolean stopRequested;
+    private Cancellable lingerTimer;
+
+    private EventTags tags;
+    private SnapshotPolicy snapshotPolicy;
+    private long recoveryStartedAt;
+    private long recoveredAt;
+    private long replayNanosPerEvent;
+    private long eventsSinceSnapshot;
+    private long eventsWritten;
+
+    private boolean retention;
+    private int keepSnapshots;
+
+    private int scale;
+    private int maxCompletedTransfers;
+    private Duration maxCompletedTransferAge;
+
+    /**
+     * Sequence numbers of the snapshots saved or recovered by this incarnation of the account, oldest first.
+     */
+    private final Deque<Long> keptSnapshots = new ArrayDeque<>();
+
+    /**
+     * Sequence number up to which the events are known to be deleted and the highest one requested to delete.
+     */
+    private long eventsDeletedTo;
+    private long eventsDeletionRequestedTo;
+
+    /**
+     * Creates the account as a sharded entity, identifier of the account is the name of the entity.
+     */
+    protected Account() {
+        this.id = UUID.fromString(getSelf().path().name());
     }
 
-    protected Account(UUID id, BigDecimal amount) {
+    protected Account(UUID id) {
         this.id = id;
-        final Date now = new Date();
-        account = new AccountState(id, "bank_temp_account", amount, now, now, ImmutableMap.of(), ImmutableMap.of());
     }
 
     @Override
@@ -51,11 +162,37 @@ public class Account extends AbstractPersistentActorWithAtLeastOnceDelivery {
         return id.toString();
     }
 
+    @Override
+    public void preStart() throws Exception {
+        recoveryStartedAt = System.nanoTime();
+        super.preStart();
+        final Config config = getContext().getSystem().settings().config();
+        tags = EventTags.fromConfig(config);
+        snapshotPolicy = SnapshotPolicy.create(config.getConfig(SNAPSHOT_POLICY_SETTING));
+        batching = config.getBoolean(BATCHING_ENABLED_SETTING);
+        maxBatchSize = config.getInt(MAX_BATCH_SIZE_SETTING);
+        maxLinger = config.getDuration(MAX_LINGER_SETTING);
+        retention = config.getBoolean(RETENTION_ENABLED_SETTING);
+        keepSnapshots = config.getInt(KEEP_SNAPSHOTS_SETTING);
+        scale = config.getInt(LEDGER_SCALE_SETTING);
+        maxCompletedTransfers = config.getInt(COMPLETED_MAX_COUNT_SETTING);
+        maxCompletedTransferAge = config.getDuration(COMPLETED_MAX_AGE_SETTING);
+    }
+
+    @Override
+    public void postStop() {
+        if (lingerTimer != null) {
+            lingerTimer.cancel();
+        }
+        super.postStop();
+    }
+
     @Override
     public Receive createReceiveRecover() {
         return receiveBuilder()
-            .match(AccountState.Event.class, e -> account = e.mutate(this.account))
-            .match(SnapshotOffer.class, ss -> account = (AccountState) ss.snapshot())
+            .match(AccountState.Event.class, this::recover)
+            .match(SnapshotOffer.class, this::recoverFrom)
+            .match(RecoveryCompleted.class, this::reactOn)
             .build();
     }
 
@@ -67,124 +204,340 @@ public class Account extends AbstractPersistentActorWithAtLeastOnceDelivery {
             .match(TransferReadyCheck.class, this::reactOn)
             .match(BlockMoney.class, this::reactOn)
             .match(DepositMoney.class, this::reactOn)
+            .match(UnblockMoney.class, this::reactOn)
             .match(CompleteTransfer.class, this::reactOn)
+            .match(ForgetTransfer.class, this::reactOn)
             .match(SaveSnapshotSuccess.class, this::reactOn)
             .match(SaveSnapshotFailure.class, this::reactOn)
-            .build();
+            .match(DeleteMessagesSuccess.class, this::reactOn)
+            .match(DeleteMessagesFailure.class, this::reactOn)
+            .match(DeleteSnapshotsSuccess.class, this::reactOn)
+            .match(DeleteSnapshotsFailure.class, this::reactOn)
+            .match(Flush.class, flush -> {
+                lingerTimer = null;
+                flush();
+            })
+            .build()
+            .orElse(passivationBehavior());
     }
 
     private void reactOn(TransferReadyCheck cmd) {
-        if (account != null) {
-            reply(new AccountReadyForTransfer(cmd.getTransferId(), id));
+        if (projected != null) {
+            respond(new AccountReadyForTransfer(cmd.getTransferId(), id));
         } else {
-            reply(new AccountNotFoundForTransfer(cmd.getTransferId(), id));
+            respond(new AccountNotFoundForTransfer(cmd.getTransferId(), id));
+            passivate();
         }
     }
 
     private void reactOn(CompleteTransfer cmd) {
-        if (account == null) {
-            reply(new AccountNotFoundForTransfer(cmd.getTransferId(), id));
-        } else if (account.hasWatchedCompletedTransfer(cmd.getTransferId())) {
-            reply(new TransferCompletedSuccessfully(cmd.getDeliveryId()));
+        if (projected == null) {
+            respond(new AccountNotFoundForDelivery(cmd.getDeliveryId(), id));
+        } else if (!projected.hasCurrentTransfer(cmd.getTransferId())) {
+            // it's completed already, the transfer can be forgotten too if the redelivery has been very late
+            respond(new TransferCompletedSuccessfully(cmd.getDeliveryId()));
         } else {
-            final AccountState.TransferCompleted event = new AccountState.TransferCompleted(
-                cmd.getTransferId(), new Date()
+            final Date now = new Date();
+            // the completed transfer is added after the expiration, so one place is left for it
+            final List<CompletionQueue.Entry> expired = projected.completedTransfersToExpire(
+                maxCompletedTransfers == 0 ? Integer.MAX_VALUE : maxCompletedTransfers - 1,
+                maxCompletedTransferAge.isZero() ? Long.MIN_VALUE : now.getTime() - maxCompletedTransferAge.toMillis()
             );
-            persist(event, e -> {
-                apply(e);
-                reply(new TransferCompletedSuccessfully(cmd.getDeliveryId()));
-            });
+            for (CompletionQueue.Entry entry : expired) {
+                write(new AccountState.TransferExpired(entry.getId(), new Date(entry.getTime()), now), null);
+            }
+            if (!expired.isEmpty()) {
+                getContext().getSystem().log().debug("Account {} has expired {} completed transfers", id, expired.size());
+            }
+            final AccountState.TransferCompleted event = new AccountState.TransferCompleted(cmd.getTransferId(), now);
+            write(event, new TransferCompletedSuccessfully(cmd.getDeliveryId()));
+        }
+    }
+
+    private void reactOn(ForgetTransfer cmd) {
+        if (projected == null || !projected.hasWatchedCompletedTransfer(cmd.getTransferId())) {
+            respond(new TransferForgottenSuccessfully(cmd.getDeliveryId()));
+        } else {
+            final AccountState.TransferForgotten event = new AccountState.TransferForgotten(cmd.getTransferId(), new Date());
+            write(event, new TransferForgottenSuccessfully(cmd.getDeliveryId()));
         }
     }
 
     private void reactOn(DepositMoney cmd) {
-        if (account == null) {
-            reply(new AccountNotFoundForTransfer(cmd.getTransferId(), id));
+        if (projected == null) {
+            respond(new AccountNotFoundForDelivery(cmd.getDeliveryId(), id));
+        } else if (!projected.canDeposit(cmd.getAmount())) {
+            // the event would fail to be applied, so it's not written at all
+            respond(new BalanceOverflowOnDeposit(cmd.getDeliveryId()));
         } else {
             final AccountState.MoneyDeposited event = new AccountState.MoneyDeposited(
                 cmd.getTransferId(), cmd.getSourceAccount(), cmd.getAmount(), new Date()
             );
-            persist(event, e -> {
-                apply(e);
-                reply(new MoneyDepositedSuccessfully(cmd.getDeliveryId()));
-            });
+            write(event, new MoneyDepositedSuccessfully(cmd.getDeliveryId()));
+        }
+    }
+
+    private void reactOn(UnblockMoney cmd) {
+        if (projected == null) {
+            respond(new AccountNotFoundForDelivery(cmd.getDeliveryId(), id));
+        } else if (!projected.hasCurrentTransfer(cmd.getTransferId())) {
+            respond(new MoneyUnblockedSuccessfully(cmd.getDeliveryId()));
+        } else {
+            final AccountState.MoneyUnblocked event = new AccountState.MoneyUnblocked(cmd.getTransferId(), new Date());
+            write(event, new MoneyUnblockedSuccessfully(cmd.getDeliveryId()));
         }
     }
 
     private void reactOn(BlockMoney cmd) {
-        if (account == null) {
-            reply(new AccountNotFoundForTransfer(cmd.getTransferId(), id));
-        } else if (account.hasActiveTransfer(cmd.getTransferId())) {
-            reply(new MoneyBlockedSuccessfully(cmd.getDeliveryId()));
-        } else if (!account.hasSufficientBalanceToBlock(cmd.getAmount())) {
-            reply(new InsufficientBalanceToBlock(cmd.getDeliveryId()));
+        if (projected == null) {
+            respond(new AccountNotFoundForDelivery(cmd.getDeliveryId(), id));
+        } else if (projected.hasActiveTransfer(cmd.getTransferId())) {
+            respond(new MoneyBlockedSuccessfully(cmd.getDeliveryId()));
+        } else if (projected.isStartedBeforeExpired(cmd.getStartedAt())) {
+            // it can be a late redelivery of an expired transfer, which has blocked the money already
+            respond(new TransferExpiredOnBlock(cmd.getDeliveryId()));
+        } else if (!projected.hasSufficientBalanceToBlock(cmd.getAmount())) {
+            respond(new InsufficientBalanceToBlock(cmd.getDeliveryId()));
         } else {
             final AccountState.MoneyBlocked event = new AccountState.MoneyBlocked(
                 cmd.getTransferId(), cmd.getTargetAccountId(), cmd.getAmount(), new Date()
             );
-            persist(event, e -> {
-                apply(e);
-                reply(new MoneyBlockedSuccessfully(cmd.getDeliveryId()));
-            });
+            write(event, new MoneyBlockedSuccessfully(cmd.getDeliveryId()));
         }
     }
 
     private void reactOn(Message.RetrieveAccountCommand cmd) {
-        if (account == null) {
-            reply(new Message.AccountNotFoundResponse(cmd.getId()));
+        if (projected == null) {
+            respond(new Message.AccountNotFoundResponse(cmd.getId()));
+            passivate();
         } else {
-            reply(new Message.AccountSnapshotResponse(account));
+            respond(new Message.AccountSnapshotResponse(projected));
         }
     }
 
     private void reactOn(Message.CreateAccountCommand cmd) {
         if (isCreated()) {
-            reply(new Message.AccountAlreadyExistsResponse(cmd.getId()));
+            respond(new Message.AccountAlreadyExistsResponse(cmd.getId()));
             return;
         }
-        final AccountState.Created event = new AccountState.Created(cmd.getId(), cmd.getName(), new Date());
-        persist(event, e -> {
-            apply(e);
-            reply(new Message.AccountCreatedResponse(cmd.getId()));
-        });
+        final AccountState.Created event = new AccountState.Created(cmd.getId(), cmd.getName(), new Date(), scale);
+        write(event, new Message.AccountCreatedResponse(cmd.getId()));
     }
 
     private void reactOn(SaveSnapshotSuccess saveSnapshotSuccess) {
         getContext().getSystem().log().debug("Snapshot of the account {} has been saved", id);
+        keptSnapshots.addLast(saveSnapshotSuccess.metadata().sequenceNr());
+        while (keptSnapshots.size() > keepSnapshots + 1) {
+            keptSnapshots.removeFirst();
+        }
+        final long retainedFrom = keptSnapshots.getFirst();
+        if (retention && retainedFrom > eventsDeletionRequestedTo) {
+            eventsDeletionRequestedTo = retainedFrom;
+            deleteMessages(retainedFrom);
+            deleteSnapshots(SnapshotSelectionCriteria.create(retainedFrom - 1, Long.MAX_VALUE));
+        }
     }
 
     private void reactOn(SaveSnapshotFailure saveSnapshotSuccess) {
         getContext().getSystem().log().error("Snapshot of the account {} has not been saved", id);
     }
 
+    private void reactOn(DeleteMessagesSuccess deleteMessagesSuccess) {
+        final long deletedTo = deleteMessagesSuccess.toSequenceNr();
+        getContext().getSystem().log().debug(
+            "Events of the account {} up to {} have been deleted, {} events reclaimed",
+            id, deletedTo, Math.max(0, deletedTo - eventsDeletedTo)
+        );
+        eventsDeletedTo = Math.max(eventsDeletedTo, deletedTo);
+    }
+
+    private void reactOn(DeleteMessagesFailure deleteMessagesFailure) {
+        getContext().getSystem().log().warning(
+            "Events of the account {} up to {} have not been deleted: {}",
+            id, deleteMessagesFailure.toSequenceNr(), deleteMessagesFailure.cause().getMessage()
+        );
+        // the next snapshot retries the deletion
+        eventsDeletionRequestedTo = eventsDeletedTo;
+    }
+
+    private void reactOn(DeleteSnapshotsSuccess deleteSnapshotsSuccess) {
+        getContext().getSystem().log().debug(
+            "Snapshots of the account {} up to {} have been deleted", id, deleteSnapshotsSuccess.criteria().maxSequenceNr()
+        );
+    }
+
+    private void reactOn(DeleteSnapshotsFailure deleteSnapshotsFailure) {
+        getContext().getSystem().log().warning(
+            "Snapshots of the account {} up to {} have not been deleted: {}",
+            id, deleteSnapshotsFailure.criteria().maxSequenceNr(), deleteSnapshotsFailure.cause().getMessage()
+        );
+    }
+
+    private void reactOn(RecoveryCompleted recoveryCompleted) {
+        projected = account;
+        recoveredAt = System.nanoTime();
+        if (eventsSinceSnapshot >= MIN_MEASURED_REPLAY) {
+            replayNanosPerEvent = (recoveredAt - recoveryStartedAt) / eventsSinceSnapshot;
+        }
+    }
+
+    private void recover(AccountState.Event event) {
+        account = event.mutate(account);
+        eventsSinceSnapshot++;
+    }
+
+    private void recoverFrom(SnapshotOffer offer) {
+        account = (AccountState) offer.snapshot();
+        keptSnapshots.addLast(offer.metadata().sequenceNr());
+        // the older events may be deleted already, so the reclaimed events are counted only after the snapshot
+        eventsDeletedTo = offer.metadata().sequenceNr();
+        eventsDeletionRequestedTo = eventsDeletedTo;
+    }
+
     /**
      * Apply an event for the account state. It has to be the only point to change the state.
-     * Each {@link #getSaveSnapshotInterval()} this method trigger {@link #saveSnapshot(Object)}
-     * method to save current state.
+     * This method triggers {@link #saveSnapshot(Object)} when the {@link #snapshotPolicy} decides so.
      *
      * @param event an event to apply
      */
     private void apply(AccountState.Event event) {
         account = event.mutate(account);
-        if (saveSnapshotTriggered()) {
+        eventsSinceSnapshot++;
+        eventsWritten++;
+        if (snapshotPolicy.shouldSaveSnapshot(progress())) {
             saveSnapshot(account);
+            eventsSinceSnapshot = 0;
         }
     }
 
-    private boolean saveSnapshotTriggered() {
-        return lastSequenceNr() % getSaveSnapshotInterval() == 0 && lastSequenceNr() != 0;
+    private SnapshotPolicy.Progress progress() {
+        final double secondsSinceRecovery = (System.nanoTime() - recoveredAt) / (double) TimeUnit.SECONDS.toNanos(1);
+        return new SnapshotPolicy.Progress(
+            lastSequenceNr(), eventsSinceSnapshot, replayNanosPerEvent, account.transferCount(),
+            eventsWritten / Math.max(1, secondsSinceRecovery)
+        );
     }
 
     private boolean isCreated() {
-        return account != null;
+        return projected != null;
+    }
+
+    /**
+     * Persists the event and sends the reply when it's durable. In the batching mode the event is applied
+     * to the {@link #projected} state at once and the write is buffered until the next batch.
+     *
+     * @param event an event to persist
+     * @param reply a reply to the sender or <code>null</code> if the event isn't replied
+     */
+    private void write(AccountState.Event event, Object reply) {
+        if (!batching) {
+            persist(tags.tag(EventTags.ACCOUNT, persistenceId(), event), tagged -> {
+                apply(event);
+                projected = account;
+                if (reply != null) {
+                    reply(reply);
+                }
+            });
+            return;
+        }
+        projected = event.mutate(projected);
+        buffered.add(new PendingWrite(event, getSender(), reply));
+        if (!writeInFlight) {
+            if (maxLinger.isZero() || buffered.size() >= maxBatchSize) {
+                flush();
+            } else if (lingerTimer == null) {
+                lingerTimer = getContext().getSystem().scheduler().scheduleOnce(
+                    maxLinger, getSelf(), FLUSH, getContext().dispatcher(), getSelf()
+                );
+            }
+        }
+    }
+
+    /**
+     * Sends the reply which doesn't need a write. It waits for the writes accepted before, because the reply
+     * could be based on the projected state.
+     *
+     * @param reply a reply to the sender
+     */
+    private void respond(Object reply) {
+        if (hasPendingWrites()) {
+            buffered.add(new PendingWrite(null, getSender(), reply));
+        } else {
+            reply(reply);
+        }
+    }
+
+    private void flush() {
+        if (writeInFlight || buffered.isEmpty()) {
+            return;
+        }
+        if (lingerTimer != null) {
+            lingerTimer.cancel();
+            lingerTimer = null;
+        }
+        final List<PendingWrite> batch = new ArrayList<>(buffered.subList(0, Math.min(buffered.size(), maxBatchSize)));
+        buffered.subList(0, batch.size()).clear();
+        final List<Tagged> events = new ArrayList<>(batch.size());
+        for (PendingWrite write : batch) {
+            if (write.getEvent() != null) {
+                events.add(tags.tag(EventTags.ACCOUNT, persistenceId(), write.getEvent()));
+            }
+        }
+        writeInFlight = true;
+        persistAllAsync(events, tagged -> apply((AccountState.Event) tagged.payload()));
+        deferAsync(BATCH_WRITTEN, written -> onBatchWritten(batch));
+    }
+
+    private void onBatchWritten(List<PendingWrite> batch) {
+        writeInFlight = false;
+        batch.stream()
+            .filter(write -> write.getReply() != null)
+            .forEach(write -> write.getRecipient().tell(write.getReply(), getSelf()));
+        flush();
+        if (stopRequested && !hasPendingWrites()) {
+            super.stopEntity();
+        }
+    }
+
+    private boolean hasPendingWrites() {
+        return writeInFlight || !buffered.isEmpty();
+    }
+
+    @Override
+    protected boolean canBePassivated() {
+        return super.canBePassivated() && !hasPendingWrites();
+    }
+
+    @Override
+    protected void stopEntity() {
+        // the parent doesn't send anything after the stop, so just wait for the buffered writes
+        if (hasPendingWrites()) {
+            stopRequested = true;
+            flush();
+        } else {
+            super.stopEntity();
+        }
     }
 
     private void reply(Object message) {
         getSender().tell(message, getSelf());
     }
 
-    private int getSaveSnapshotInterval() {
-        return getContext().getSystem().settings().config().getInt(SAVE_SNAPSHOT_INTERVAL_SETTING);
+    /**
+     * Accepted write or reply waiting for the batch, the event is <code>null</code> for a reply only
+     * and the reply is <code>null</code> for a write only.
+     */
+    @Value
+    private static class PendingWrite {
+        private AccountState.Event event;
+        private ActorRef recipient;
+        private Object reply;
+    }
+
+    private static final class Flush implements Serializable {
+    }
+
+    private static final class BatchWritten implements Serializable {
     }
 
 }
@@ -1,139 +1,357 @@
 package com.evst.account.domain;
 
-import akka.actor.AbstractActor;
+import akka.actor.AbstractActorWithTimers;
 import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ShardRegion;
+import com.evst.account.domain.ExistenceIndex.Recovered;
+import com.evst.account.domain.ExistenceIndex.Register;
+import com.evst.account.domain.ExistenceIndex.Registered;
 import com.evst.account.domain.Message.AccountNotFoundResponse;
 import com.evst.account.domain.Message.DepositMoneyCommand;
 import com.evst.account.domain.Message.MakeTransferCommand;
+import com.evst.account.domain.Message.TransferNotFoundResponse;
 import com.evst.account.domain.Message.TransferRequestIsBeingCreated;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
 import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForTransfer;
 import com.evst.account.domain.TransferProtocolMessage.AccountReadyForTransfer;
+import com.evst.account.domain.TransferProtocolMessage.TransferEnvelope;
 import com.evst.account.domain.TransferProtocolMessage.TransferHasAlreadyStarted;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyToStart;
+import com.google.common.hash.BloomFilter;
+import com.typesafe.config.Config;
 
 import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
-import static java.util.UUID.randomUUID;
-
 /**
+ * Manages accounts and transfers of one partition of the identifiers space (see {@link AccountManagers}).
+ * Accounts of other partitions are reached through their managers using {@link AccountEnvelope}.
+ *
+ * In the sharded mode the manager does not create entities, but reaches them through the shard regions.
+ *
+ * In the local mode the manager passivates its entities the same way as the shard does: when an entity asks for
+ * passivation the manager buffers new messages for it, stops it and recreates it if anything has been buffered.
+ * If <code>account-manager.passivation.max-entities</code> is set, the least recently used entity is asked
+ * to passivate each time the number of live entities exceeds the limit.
+ *
+ * If <code>account-manager.optimistic-transfers</code> is set, transfer commands are sent to the transfers
+ * directly without checking readiness of the participants, the transfer itself handles missing accounts.
+ *
+ * If <code>account-manager.existence-filter.enabled</code> is set (the local mode only), identifiers of created
+ * accounts and transfers are registered in the {@link ExistenceIndex} before the entities are created, and lookups
+ * of the identifiers known to be absent are answered by the manager without creating the entities. The index is
+ * watched, if it stops (e.g. a write of the index has failed) the manager drops the filter and creates the entities
+ * without the registration, only the commands waiting for the registration at that moment are lost.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class AccountManager extends AbstractActor {
+public class AccountManager extends AbstractActorWithTimers {
+
+    private static final String PENDING_REQUEST_TIMEOUT_SETTING = "account-manager.pending-requests.timeout";
+    private static final String PENDING_REQUEST_SWEEP_INTERVAL_SETTING = "account-manager.pending-requests.sweep-interval";
+    private static final String SWEEP_TIMER = "sweep-pending-transfer-requests";
+    private static final String MAX_ENTITIES_SETTING = "account-manager.passivation.max-entities";
+    private static final String EXISTENCE_FILTER_SETTING = "account-manager.existence-filter.enabled";
+    private static final String EXISTENCE_INDEX_NAME = "existence-index";
+    private static final String OPTIMISTIC_TRANSFERS_SETTING = "account-manager.optimistic-transfers";
+    private static final int ENTITIES_INITIAL_CAPACITY = 16;
+    private static final int PENDING_REQUESTS_INITIAL_CAPACITY = 64;
+    private static final float ENTITIES_LOAD_FACTOR = 0.75f;
+
+    private final int partition;
+    private final int partitions;
+    private final int maxEntities;
+    private final boolean optimisticTransfers;
+    private final long pendingRequestTimeout;
+    private final Duration pendingRequestSweepInterval;
+    private final ActorRef accountRegion;
+    private final ActorRef transferRegion;
+    /**
+     * Index of the created identifiers, it's <code>null</code> if the filter is disabled or the index has stopped.
+     */
+    private ActorRef existenceIndex;
+
+    /**
+     * Filter of the registered identifiers, it's <code>null</code> until the {@link #existenceIndex} is recovered.
+     */
+    private BloomFilter<UUID> existenceFilter;
+
+    private final UuidHashMap<PendingTransferRequest> pendingTransferRequests = new UuidHashMap<>(
+        PENDING_REQUESTS_INITIAL_CAPACITY
+    );
 
-    private static final int CANCEL_PENDING_REQUEST_TIMEOUT = 1;
+    /**
+     * Pending requests in the creation order, so the expired ones are at the head. The finished requests are left
+     * in the queue until they reach the head.
+     */
+    private final ArrayDeque<PendingTransferRequest> pendingTransferRequestQueue = new ArrayDeque<>();
+    private long expiredTransferRequests;
 
-    private Map<UUID, PendingTransferRequest> pendingTransferRequests = new HashMap<>();
+    /**
+     * Live entities by name in the access order, so the least recently used one goes first.
+     */
+    private final Map<String, Class<? extends PassivatingEntity>> entities = new LinkedHashMap<>(
+        ENTITIES_INITIAL_CAPACITY, ENTITIES_LOAD_FACTOR, true
+    );
+
+    /**
+     * Messages buffered for the entities being passivated by their names.
+     */
+    private final Map<String, List<BufferedMessage>> passivatingEntities = new HashMap<>();
+
+    public AccountManager(int partition, int partitions) {
+        this.partition = partition;
+        this.partitions = partitions;
+        final Config config = getContext().getSystem().settings().config();
+        this.maxEntities = config.getInt(MAX_ENTITIES_SETTING);
+        this.optimisticTransfers = config.getBoolean(OPTIMISTIC_TRANSFERS_SETTING);
+        this.pendingRequestTimeout = config.getDuration(PENDING_REQUEST_TIMEOUT_SETTING).toNanos();
+        this.pendingRequestSweepInterval = config.getDuration(PENDING_REQUEST_SWEEP_INTERVAL_SETTING);
+        if (AccountManagers.isSharded(config)) {
+            final ClusterSharding sharding = ClusterSharding.get(getContext().getSystem());
+            this.accountRegion = sharding.shardRegion(AccountManagers.ACCOUNT_ENTITY_TYPE);
+            this.transferRegion = sharding.shardRegion(AccountManagers.TRANSFER_ENTITY_TYPE);
+            this.existenceIndex = null;
+        } else {
+            this.accountRegion = null;
+            this.transferRegion = null;
+            this.existenceIndex = config.getBoolean(EXISTENCE_FILTER_SETTING) ? getContext().watch(getContext().actorOf(
+                Props.create(ExistenceIndex.class, partition, partitions), EXISTENCE_INDEX_NAME
+            )) : null;
+        }
+    }
 
     @Override
     public Receive createReceive() {
         return receiveBuilder()
             .match(Message.CreateAccountCommand.class, cmd -> {
-                getOrCreateAccount(cmd.getId()).forward(cmd, getContext());
+                if (Transfer.CASH_IN_ACCOUNT_ID.equals(cmd.getId())) {
+                    getSender().tell(new Message.AccountAlreadyExistsResponse(cmd.getId()), getSelf());
+                } else {
+                    register(cmd.getId(), cmd);
+                }
             })
             .match(Message.RetrieveAccountCommand.class, cmd -> {
-                getOrCreateAccount(cmd.getId()).forward(cmd, getContext());
+                if (isKnownToBeAbsent(cmd.getId())) {
+                    getSender().tell(new AccountNotFoundResponse(cmd.getId()), getSelf());
+                } else {
+                    tellAccount(cmd.getId(), cmd, getSender());
+                }
             })
             .match(Message.RetrieveTransferCommand.class, cmd -> {
-                getOrCreateTransfer(cmd.getId()).forward(cmd, getContext());
+                if (isKnownToBeAbsent(cmd.getId())) {
+                    getSender().tell(new TransferNotFoundResponse(cmd.getId()), getSelf());
+                } else {
+                    tellTransfer(cmd.getId(), cmd, getSender());
+                }
             })
-            .match(MakeTransferCommand.class, this::reactOn)
-            .match(DepositMoneyCommand.class, this::reactOn)
-            .match(CancelPendingTransferRequest.class, cmd -> {
-                finishPendingTransferRequest(cmd.transferId);
+            .match(AccountEnvelope.class, envelope -> {
+                tellEntity(envelope.getAccountId(), Account.class, envelope.getMessage(), getSender());
+            })
+            .match(MakeTransferCommand.class, cmd -> {
+                if (Transfer.CASH_IN_ACCOUNT_ID.equals(cmd.getSourceAccountId()) ||
+                    Transfer.CASH_IN_ACCOUNT_ID.equals(cmd.getTargetAccountId())) {
+                    getSender().tell(new AccountNotFoundResponse(Transfer.CASH_IN_ACCOUNT_ID), getSelf());
+                } else {
+                    register(cmd.getId(), cmd);
+                }
+            })
+            .match(DepositMoneyCommand.class, cmd -> {
+                register(cmd.getId(), cmd);
+            })
+            .match(Recovered.class, recovered -> {
+                existenceFilter = recovered.getFilter();
+            })
+            .match(Registered.class, this::reactOn)
+            .match(SweepPendingTransferRequests.class, cmd -> {
+                sweepPendingTransferRequests();
+            })
+            .match(Message.RetrievePendingTransferRequestsCommand.class, cmd -> {
+                getSender().tell(new Message.PendingTransferRequestsResponse(
+                    pendingTransferRequests.size(), expiredTransferRequests
+                ), getSelf());
+            })
+            .match(Message.RetrieveLiveAccountsCommand.class, cmd -> {
+                getSender().tell(new Message.LiveAccountsResponse(liveAccounts()), getSelf());
             })
             .match(AccountReadyForTransfer.class, this::reactOn)
             .match(TransferReadyToStart.class, this::reactOn)
             .match(AccountNotFoundForTransfer.class, this::reactOn)
             .match(TransferHasAlreadyStarted.class, this::reactOn)
+            .match(ShardRegion.Passivate.class, this::reactOn)
+            .match(Terminated.class, this::reactOn)
             .build();
     }
 
-    private void reactOn(DepositMoneyCommand cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getId())) {
-            getSender().tell(new TransferRequestIsBeingCreated(cmd.getId()), getSelf());
+    private void reactOn(Registered registered) {
+        if (existenceFilter != null) {
+            existenceFilter.put(registered.getId());
+        }
+        create(registered.getMessage(), registered.getSender());
+    }
+
+    private void reactOn(DepositMoneyCommand cmd, ActorRef sender) {
+        final MakeTransferCommand transferCommand = new MakeTransferCommand(
+            cmd.getId(), Transfer.CASH_IN_ACCOUNT_ID, cmd.getTargetAccountId(), cmd.getAmount()
+        );
+        if (optimisticTransfers) {
+            tellTransfer(cmd.getId(), transferCommand, sender);
+        } else if (pendingTransferRequests.containsKey(cmd.getId())) {
+            sender.tell(new TransferRequestIsBeingCreated(cmd.getId()), getSelf());
         } else {
-            final UUID tempAccountId = randomUUID();
-            final ActorRef source = getContext().actorOf(
-                Props.create(Account.class, tempAccountId, cmd.getAmount()), tempAccountId.toString()
-            );
-            final ActorRef target = getOrCreateAccount(cmd.getTargetAccountId());
-            final ActorRef transfer = getOrCreateTransfer(cmd.getId());
-            final PendingTransferRequest request = new PendingTransferRequest(
-                new MakeTransferCommand(cmd.getId(), tempAccountId, cmd.getTargetAccountId(), cmd.getAmount()),
-                getSender(), transfer
-            );
-            createPendingTransferRequest(request, source, target, transfer);
+            createPendingTransferRequest(new PendingTransferRequest(transferCommand, sender));
         }
     }
 
-    private void reactOn(MakeTransferCommand cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getId())) {
-            getSender().tell(new TransferRequestIsBeingCreated(cmd.getId()), getSelf());
+    private void reactOn(MakeTransferCommand cmd, ActorRef sender) {
+        if (optimisticTransfers) {
+            tellTransfer(cmd.getId(), cmd, sender);
+        } else if (pendingTransferRequests.containsKey(cmd.getId())) {
+            sender.tell(new TransferRequestIsBeingCreated(cmd.getId()), getSelf());
         } else {
-            final ActorRef source = getOrCreateAccount(cmd.getSourceAccountId());
-            final ActorRef target = getOrCreateAccount(cmd.getTargetAccountId());
-            final ActorRef transfer = getOrCreateTransfer(cmd.getId());
-            final PendingTransferRequest request = new PendingTransferRequest(cmd, getSender(), transfer);
-            createPendingTransferRequest(request, source, target, transfer);
+            createPendingTransferRequest(new PendingTransferRequest(cmd, sender));
         }
     }
 
     private void reactOn(AccountReadyForTransfer cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getTransferId())) {
-            final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        if (request != null) {
             request.markReady(cmd.getAccountId());
             if (request.isReady()) {
-                request.transfer.tell(request.command, request.sender);
+                tellTransfer(request.command.getId(), request.command, request.sender);
                 finishPendingTransferRequest(cmd.getTransferId());
             }
         }
     }
 
     private void reactOn(TransferReadyToStart cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getTransferId())) {
-            final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        if (request != null) {
             request.markReady(cmd.getTransferId());
             if (request.isReady()) {
-                request.transfer.tell(request.command, request.sender);
+                tellTransfer(request.command.getId(), request.command, request.sender);
                 finishPendingTransferRequest(cmd.getTransferId());
             }
         }
     }
 
     private void reactOn(AccountNotFoundForTransfer cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getTransferId())) {
-            final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        if (request != null) {
             request.sender.tell(new AccountNotFoundResponse(cmd.getAccountId()), getSelf());
             finishPendingTransferRequest(cmd.getTransferId());
         }
     }
 
     private void reactOn(TransferHasAlreadyStarted cmd) {
-        if (pendingTransferRequests.containsKey(cmd.getTransferId())) {
-            final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        final PendingTransferRequest request = pendingTransferRequests.get(cmd.getTransferId());
+        if (request != null) {
             request.sender.tell(new Message.TransferAlreadyExistsResponse(cmd.getTransferId()), getSelf());
             finishPendingTransferRequest(cmd.getTransferId());
         }
     }
 
-    private void createPendingTransferRequest(PendingTransferRequest request, ActorRef source, ActorRef target, ActorRef transfer) {
+    private void reactOn(ShardRegion.Passivate passivate) {
+        final String name = getSender().path().name();
+        if (entities.containsKey(name) && !passivatingEntities.containsKey(name)) {
+            passivatingEntities.put(name, new ArrayList<>());
+            getSender().tell(passivate.stopMessage(), getSelf());
+        }
+    }
+
+    private void reactOn(Terminated terminated) {
+        if (terminated.getActor().equals(existenceIndex)) {
+            getContext().getSystem().log().warning(
+                "Existence index of the partition {} has stopped, the manager continues without the filter", partition
+            );
+            existenceIndex = null;
+            existenceFilter = null;
+            return;
+        }
+        final String name = terminated.getActor().path().name();
+        final Class<? extends PassivatingEntity> type = entities.remove(name);
+        final List<BufferedMessage> buffer = passivatingEntities.remove(name);
+        if (type != null && buffer != null && !buffer.isEmpty()) {
+            final ActorRef entity = getOrCreateEntity(UUID.fromString(name), type);
+            buffer.forEach(message -> entity.tell(message.message, message.sender));
+        }
+    }
+
+    /**
+     * Registers the identifier of the entity to be created in the existence index (if it's enabled)
+     * and creates it when the identifier is persisted.
+     */
+    private void register(UUID id, Object command) {
+        if (existenceIndex == null) {
+            create(command, getSender());
+        } else {
+            existenceIndex.tell(new Register(id, command, getSender()), getSelf());
+        }
+    }
+
+    private void create(Object command, ActorRef sender) {
+        if (command instanceof Message.CreateAccountCommand) {
+            tellAccount(((Message.CreateAccountCommand) command).getId(), command, sender);
+        } else if (command instanceof MakeTransferCommand) {
+            reactOn((MakeTransferCommand) command, sender);
+        } else if (command instanceof DepositMoneyCommand) {
+            reactOn((DepositMoneyCommand) command, sender);
+        }
+    }
+
+    private boolean isKnownToBeAbsent(UUID id) {
+        return existenceFilter != null && !existenceFilter.mightContain(id);
+    }
+
+    private void createPendingTransferRequest(PendingTransferRequest request) {
         final MakeTransferCommand cmd = request.command;
         pendingTransferRequests.put(cmd.getId(), request);
-        source.tell(new TransferReadyCheck(cmd.getId()), getSelf());
-        target.tell(new TransferReadyCheck(cmd.getId()), getSelf());
-        transfer.tell(new TransferReadyCheck(cmd.getId()), getSelf());
-        getContext().getSystem().getScheduler().scheduleOnce(
-            Duration.ofSeconds(CANCEL_PENDING_REQUEST_TIMEOUT),
-            getSelf(),
-            new CancelPendingTransferRequest(cmd.getId()),
-            getContext().getSystem().dispatcher(),
-            null
-        );
+        pendingTransferRequestQueue.addLast(request);
+        if (!Transfer.CASH_IN_ACCOUNT_ID.equals(cmd.getSourceAccountId())) {
+            tellAccount(cmd.getSourceAccountId(), new TransferReadyCheck(cmd.getId()), getSelf());
+        }
+        tellAccount(cmd.getTargetAccountId(), new TransferReadyCheck(cmd.getId()), getSelf());
+        tellTransfer(cmd.getId(), new TransferReadyCheck(cmd.getId()), getSelf());
+        if (!getTimers().isTimerActive(SWEEP_TIMER)) {
+            getTimers().startPeriodicTimer(SWEEP_TIMER, new SweepPendingTransferRequests(), pendingRequestSweepInterval);
+        }
+    }
+
+    /**
+     * Drops the requests which are pending longer than the timeout. Requests are ordered by the creation time,
+     * so it stops at the first not expired one, the finished requests met on the way are skipped.
+     * The timer is stopped when there is nothing to sweep.
+     */
+    private void sweepPendingTransferRequests() {
+        final long now = System.nanoTime();
+        while (!pendingTransferRequestQueue.isEmpty()) {
+            final PendingTransferRequest request = pendingTransferRequestQueue.peekFirst();
+            final UUID transferId = request.command.getId();
+            if (pendingTransferRequests.get(transferId) == request) {
+                if (now - request.createdAt < pendingRequestTimeout) {
+                    break;
+                }
+                pendingTransferRequests.remove(transferId);
+                expiredTransferRequests++;
+                getContext().getSystem().log().debug("Transfer request has expired id:{}", transferId);
+            }
+            pendingTransferRequestQueue.pollFirst();
+        }
+        if (pendingTransferRequests.isEmpty()) {
+            pendingTransferRequestQueue.clear();
+            getTimers().cancel(SWEEP_TIMER);
+        }
     }
 
     private void finishPendingTransferRequest(UUID transferId) {
@@ -142,51 +360,148 @@ public class AccountManager extends AbstractActor {
         }
     }
 
-    private ActorRef getOrCreateAccount(UUID id) {
+    /**
+     * Sends the message to the account directly if it's owned by this manager,
+     * otherwise sends it through the manager owning the account or through the shard region.
+     */
+    private void tellAccount(UUID accountId, Object message, ActorRef sender) {
+        if (accountRegion != null) {
+            accountRegion.tell(new AccountEnvelope(accountId, message), sender);
+        } else if (owns(accountId)) {
+            tellEntity(accountId, Account.class, message, sender);
+        } else {
+            AccountManagers.selectAccountOwner(getContext(), accountId).tell(new AccountEnvelope(accountId, message), sender);
+        }
+    }
+
+    /**
+     * Sends the message to the transfer. Transfers are always owned by the manager which received
+     * the transfer command, so in the local mode the transfer is a child of this manager.
+     */
+    private void tellTransfer(UUID transferId, Object message, ActorRef sender) {
+        if (transferRegion != null) {
+            transferRegion.tell(new TransferEnvelope(transferId, message), sender);
+        } else {
+            tellEntity(transferId, Transfer.class, message, sender);
+        }
+    }
+
+    /**
+     * Lists the live accounts from the most recently used one, the entities are kept in the access order.
+     */
+    private List<UUID> liveAccounts() {
+        final List<UUID> accounts = new ArrayList<>();
+        entities.forEach((name, type) -> {
+            if (type == Account.class) {
+                accounts.add(UUID.fromString(name));
+            }
+        });
+        Collections.reverse(accounts);
+        return accounts;
+    }
+
+    private boolean owns(UUID id) {
+        return AccountManagers.partitionOf(id, partitions) == partition;
+    }
+
+    /**
+     * Sends the message to the child entity, creating it if needed. If the entity is being passivated the message
+     * is buffered until the entity is stopped and created again.
+     */
+    private void tellEntity(UUID id, Class<? extends PassivatingEntity> type, Object message, ActorRef sender) {
         final String name = id.toString();
-        return getContext().findChild(name).orElseGet(
-            () -> getContext().actorOf(Props.create(Account.class, id), name)
-        );
+        final List<BufferedMessage> buffer = passivatingEntities.get(name);
+        if (buffer != null) {
+            buffer.add(new BufferedMessage(message, sender));
+        } else {
+            getOrCreateEntity(id, type).tell(message, sender);
+        }
     }
 
-    private ActorRef getOrCreateTransfer(UUID id) {
+    private ActorRef getOrCreateEntity(UUID id, Class<? extends PassivatingEntity> type) {
         final String name = id.toString();
-        return getContext().findChild(name).orElseGet(
-            () -> getContext().actorOf(Props.create(Transfer.class, id), name)
-        );
+        // marks the entity as the most recently used one
+        entities.get(name);
+        return getContext().findChild(name).orElseGet(() -> {
+            final ActorRef entity = getContext().watch(getContext().actorOf(Props.create(type, id), name));
+            entities.put(name, type);
+            limitEntities();
+            return entity;
+        });
+    }
+
+    /**
+     * Asks the least recently used entity to passivate if there are too many of them. The entity is moved to
+     * the end of the queue, so the next one is asked next time if it refuses.
+     */
+    private void limitEntities() {
+        if (maxEntities > 0 && entities.size() - passivatingEntities.size() > maxEntities) {
+            String eldest = null;
+            for (String name : entities.keySet()) {
+                if (!passivatingEntities.containsKey(name)) {
+                    eldest = name;
+                    break;
+                }
+            }
+            entities.get(eldest);
+            getContext().findChild(eldest).ifPresent(
+                entity -> entity.tell(PassivatingEntity.REQUEST_PASSIVATION, getSelf())
+            );
+        }
     }
 
+    /**
+     * Request waiting for the readiness of the transfer and its accounts, it counts the participants
+     * which aren't ready yet.
+     */
     private static class PendingTransferRequest {
 
+        private static final int PARTICIPANTS = 3;
+
         final MakeTransferCommand command;
         final ActorRef sender;
-        final ActorRef transfer;
-        final Map<UUID, Boolean> readiness = new HashMap<>();
+        final long createdAt = System.nanoTime();
+        final UuidHashMap<Boolean> readiness = new UuidHashMap<>(PARTICIPANTS);
+        int notReady;
 
-        PendingTransferRequest(MakeTransferCommand command, ActorRef sender, ActorRef transfer) {
+        PendingTransferRequest(MakeTransferCommand command, ActorRef sender) {
             this.command = command;
             this.sender = sender;
-            this.transfer = transfer;
-            readiness.put(command.getId(), false);
-            readiness.put(command.getSourceAccountId(), false);
-            readiness.put(command.getTargetAccountId(), false);
+            await(command.getId());
+            if (!Transfer.CASH_IN_ACCOUNT_ID.equals(command.getSourceAccountId())) {
+                await(command.getSourceAccountId());
+            }
+            await(command.getTargetAccountId());
         }
 
         boolean isReady() {
-            return readiness.values().stream().reduce(true, (a, b) -> a && b);
+            return notReady == 0;
         }
 
         void markReady(UUID id) {
-            readiness.put(id, true);
+            if (Boolean.FALSE.equals(readiness.put(id, Boolean.TRUE))) {
+                notReady--;
+            }
+        }
+
+        private void await(UUID id) {
+            if (readiness.put(id, Boolean.FALSE) == null) {
+                notReady++;
+            }
         }
     }
 
-    private class CancelPendingTransferRequest {
+    private static class BufferedMessage {
 
-        private UUID transferId;
+        final Object message;
+        final ActorRef sender;
 
-        CancelPendingTransferRequest(UUID transferId) {
-            this.transferId = transferId;
+        BufferedMessage(Object message, ActorRef sender) {
+            this.message = message;
+            this.sender = sender;
         }
     }
+
+    private static class SweepPendingTransferRequests {
+    }
 }
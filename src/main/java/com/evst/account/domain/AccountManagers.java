@@ -0,0 +1,205 @@
+package com.evst.account.domain;
+
+import akka.actor.AbstractActor.ActorContext;
+import akka.actor.ActorRef;
+import akka.actor.ActorSelection;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.cluster.sharding.ClusterSharding;
+import akka.cluster.sharding.ClusterShardingSettings;
+import akka.cluster.sharding.ShardRegion;
+import com.evst.account.domain.Message.LiveAccountsResponse;
+import com.evst.account.domain.Message.PendingTransferRequestsResponse;
+import com.evst.account.domain.Message.RetrieveLiveAccountsCommand;
+import com.evst.account.domain.Message.RetrievePendingTransferRequestsCommand;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.TransferEnvelope;
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static akka.pattern.Patterns.ask;
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Pool of {@link AccountManager} actors. Each manager owns a slice of the identifiers space, so all the commands
+ * for the same account or transfer are served by the same manager, while different entities are spread between
+ * the managers and processed in parallel.
+ *
+ * Managers are started as top level actors, the number of them is defined by the
+ * <code>account-manager.partitions</code> setting.
+ *
+ * In the <code>sharded</code> mode (see <code>account-manager.mode</code> setting) accounts and transfers are
+ * cluster sharded entities, so they are spread between the cluster nodes. Managers are still started on each node
+ * to coordinate transfer requests, but they reach entities through the shard regions instead of creating them.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class AccountManagers {
+
+    static final String ACCOUNT_ENTITY_TYPE = "Account";
+    static final String TRANSFER_ENTITY_TYPE = "Transfer";
+
+    private static final String PARTITIONS_SETTING = "account-manager.partitions";
+    private static final String MODE_SETTING = "account-manager.mode";
+    private static final String SHARDS_SETTING = "account-manager.sharding.shards";
+    private static final String SHARDED_MODE = "sharded";
+    private static final String MANAGER_NAME_PREFIX = "accounts-";
+    private static final String MANAGER_PATH_PREFIX = "/user/" + MANAGER_NAME_PREFIX;
+
+    private final List<ActorRef> managers;
+
+    private AccountManagers(List<ActorRef> managers) {
+        this.managers = managers;
+    }
+
+    /**
+     * Starts account managers in the given actor system. In the sharded mode it also starts
+     * shard regions for accounts and transfers.
+     *
+     * @param system actor system to start managers in
+     * @return started managers
+     */
+    public static AccountManagers start(ActorSystem system) {
+        final Config config = system.settings().config();
+        if (isSharded(config)) {
+            startSharding(system, config.getInt(SHARDS_SETTING));
+        }
+        final int partitions = getPartitions(config);
+        final List<ActorRef> managers = new ArrayList<>(partitions);
+        for (int partition = 0; partition < partitions; partition++) {
+            managers.add(system.actorOf(
+                Props.create(AccountManager.class, partition, partitions), MANAGER_NAME_PREFIX + partition
+            ));
+        }
+        return new AccountManagers(Collections.unmodifiableList(managers));
+    }
+
+    /**
+     * Looks up the manager owning the entity (account or transfer) with the given identifier.
+     *
+     * @param id entity identifier
+     * @return manager responsible for the entity
+     */
+    public ActorRef managerOf(UUID id) {
+        return managers.get(partitionOf(id, managers.size()));
+    }
+
+    /**
+     * Collects statistics of the pending transfer requests from all the managers.
+     *
+     * @param timeout timeout to wait for each of the managers
+     * @return total numbers of the pending and expired transfer requests
+     */
+    public CompletionStage<PendingTransferRequestsResponse> pendingTransferRequests(Duration timeout) {
+        CompletionStage<PendingTransferRequestsResponse> total = CompletableFuture.completedFuture(
+            new PendingTransferRequestsResponse(0, 0L)
+        );
+        for (ActorRef manager : managers) {
+            total = total.thenCombine(
+                ask(manager, new RetrievePendingTransferRequestsCommand(), timeout),
+                (sum, response) -> new PendingTransferRequestsResponse(
+                    sum.getPending() + ((PendingTransferRequestsResponse) response).getPending(),
+                    sum.getExpired() + ((PendingTransferRequestsResponse) response).getExpired()
+                )
+            );
+        }
+        return total;
+    }
+
+    /**
+     * Collects the live accounts of all the managers. In the sharded mode the managers don't own the entities,
+     * so the list is empty.
+     *
+     * @param timeout timeout to wait for each of the managers
+     * @return identifiers of the live accounts, the most recently used ones of each manager go first
+     */
+    public CompletionStage<List<UUID>> liveAccounts(Duration timeout) {
+        CompletionStage<List<UUID>> all = CompletableFuture.completedFuture(new ArrayList<>());
+        for (ActorRef manager : managers) {
+            all = all.thenCombine(ask(manager, new RetrieveLiveAccountsCommand(), timeout), (accounts, response) -> {
+                accounts.addAll(((LiveAccountsResponse) response).getAccountIds());
+                return accounts;
+            });
+        }
+        return all;
+    }
+
+    /**
+     * Selects the actor to send {@link AccountEnvelope} to from inside of an actor: the manager owning
+     * the account or the account shard region in the sharded mode.
+     *
+     * @param context context of the actor looking for the account
+     * @param accountId account identifier
+     * @return selection of the account owner
+     */
+    static ActorSelection selectAccountOwner(ActorContext context, UUID accountId) {
+        final Config config = context.getSystem().settings().config();
+        if (isSharded(config)) {
+            return context.actorSelection(ClusterSharding.get(context.getSystem()).shardRegion(ACCOUNT_ENTITY_TYPE).path());
+        }
+        return context.actorSelection(MANAGER_PATH_PREFIX + partitionOf(accountId, getPartitions(config)));
+    }
+
+    static boolean isSharded(Config config) {
+        return SHARDED_MODE.equals(config.getString(MODE_SETTING));
+    }
+
+    static int partitionOf(UUID id, int partitions) {
+        return Math.floorMod(id.hashCode(), partitions);
+    }
+
+    private static void startSharding(ActorSystem system, int shards) {
+        final ClusterSharding sharding = ClusterSharding.get(system);
+        final ClusterShardingSettings settings = ClusterShardingSettings.create(system);
+        final EntityMessageExtractor extractor = new EntityMessageExtractor(shards);
+        sharding.start(ACCOUNT_ENTITY_TYPE, Props.create(Account.class), settings, extractor);
+        sharding.start(TRANSFER_ENTITY_TYPE, Props.create(Transfer.class), settings, extractor);
+    }
+
+    private static int getPartitions(Config config) {
+        final int partitions = config.getInt(PARTITIONS_SETTING);
+        checkArgument(partitions > 0, "Number of account manager partitions has to be positive");
+        return partitions;
+    }
+
+    /**
+     * Routes {@link AccountEnvelope} and {@link TransferEnvelope} to the sharded entities,
+     * the entity identifier is the identifier of the account or transfer.
+     */
+    static final class EntityMessageExtractor extends ShardRegion.HashCodeMessageExtractor {
+
+        EntityMessageExtractor(int maxNumberOfShards) {
+            super(maxNumberOfShards);
+        }
+
+        @Override
+        public String entityId(Object message) {
+            String entityId = null;
+            if (message instanceof AccountEnvelope) {
+                entityId = ((AccountEnvelope) message).getAccountId().toString();
+            } else if (message instanceof TransferEnvelope) {
+                entityId = ((TransferEnvelope) message).getTransferId().toString();
+            }
+            return entityId;
+        }
+
+        @Override
+        public Object entityMessage(Object message) {
+            Object entityMessage = message;
+            if (message instanceof AccountEnvelope) {
+                entityMessage = ((AccountEnvelope) message).getMessage();
+            } else if (message instanceof TransferEnvelope) {
+                entityMessage = ((TransferEnvelope) message).getMessage();
+            }
+            return entityMessage;
+        }
+    }
+
+}
@@ -3,7 +3,6 @@ package com.evst.account.domain;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 
@@ -43,7 +42,7 @@ public interface AccountService {
      * @throws TransferAlreadyExistsException if there is already created transfer with the same unique identifier
      * @throws TransferIsBeingCreatedException if a transfer with the same unique identifier is being created
      */
-    CompletionStage<TransferState> makeTransfer(UUID uniqueId, UUID source, UUID target, BigDecimal amount)
+    CompletionStage<TransferState> makeTransfer(UUID uniqueId, UUID source, UUID target, Money amount)
         throws AccountNotFoundException, TransferAlreadyExistsException, TransferIsBeingCreatedException;
 
     /**
@@ -67,7 +66,7 @@ public interface AccountService {
      * @throws TransferAlreadyExistsException if there is already created transfer with the same unique identifier
      * @throws TransferIsBeingCreatedException if a transfer with the same unique identifier is being created
      */
-    CompletionStage<TransferState> depositMoney(UUID uniqueId, UUID target, BigDecimal amount)
+    CompletionStage<TransferState> depositMoney(UUID uniqueId, UUID target, Money amount)
         throws AccountNotFoundException, TransferAlreadyExistsException, TransferIsBeingCreatedException;
 
     @Getter
@@ -1,15 +1,13 @@
 package com.evst.account.domain;
 
-import akka.actor.ActorRef;
 import com.evst.account.domain.Message.AccountSnapshotResponse;
 import com.evst.account.domain.Message.TransferSnapshotResponse;
+import com.evst.account.domain.TransferProtocolMessage.TransferHasAlreadyStarted;
 import com.typesafe.config.Config;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 import java.util.concurrent.CompletionStage;
 import javax.inject.Inject;
-import javax.inject.Named;
 
 import static akka.pattern.Patterns.ask;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -27,12 +25,12 @@ public class AccountServiceActorImpl implements AccountService {
     private static final String MAKE_TRANSFER_TIMEOUT = "timeout.transfer.make";
     private static final String DEPOSIT_TIMEOUT = "timeout.account.deposit";
 
-    private final ActorRef accountManager;
+    private final AccountManagers accountManagers;
     private final Config config;
 
     @Inject
-    public AccountServiceActorImpl(@Named("accounts") ActorRef accountManager, Config config) {
-        this.accountManager = accountManager;
+    public AccountServiceActorImpl(AccountManagers accountManagers, Config config) {
+        this.accountManagers = accountManagers;
         this.config = config;
     }
 
@@ -41,7 +39,7 @@ public class AccountServiceActorImpl implements AccountService {
         checkNotNull(id, "Request id can not be null");
         checkNotNull(name, "Name can not be null");
         return ask(
-            accountManager,
+            accountManagers.managerOf(id),
             new Message.CreateAccountCommand(id, name),
             config.getDuration(CREATE_ACCOUNT_TIMEOUT)
         ).thenApply(message -> {
@@ -62,7 +60,7 @@ public class AccountServiceActorImpl implements AccountService {
     public CompletionStage<AccountState> retrieveAccount(UUID id) {
         checkNotNull(id, "Account id can not be null");
         return ask(
-            accountManager,
+            accountManagers.managerOf(id),
             new Message.RetrieveAccountCommand(id),
             config.getDuration(RETRIEVE_ACCOUNT_TIMEOUT)
         ).thenApply(message -> {
@@ -80,14 +78,14 @@ public class AccountServiceActorImpl implements AccountService {
     }
 
     @Override
-    public CompletionStage<TransferState> makeTransfer(UUID uniqueId, UUID source, UUID target, BigDecimal amount)
+    public CompletionStage<TransferState> makeTransfer(UUID uniqueId, UUID source, UUID target, Money amount)
         throws AccountNotFoundException, TransferAlreadyExistsException {
         checkNotNull(uniqueId, "Unique id can not be null");
         checkNotNull(source, "Source account id can not be null");
         checkNotNull(target, "Target account id can not be null");
         checkNotNull(amount, "Amount can not be null");
         return ask(
-            accountManager,
+            accountManagers.managerOf(uniqueId),
             new Message.MakeTransferCommand(uniqueId, source, target, amount),
             config.getDuration(MAKE_TRANSFER_TIMEOUT)
         ).thenApply(message -> {
@@ -98,6 +96,12 @@ public class AccountServiceActorImpl implements AccountService {
                 throw new TransferAlreadyExistsException(
                     transferId, format("Transfer with id %s has been already created", transferId)
                 );
+            } else if (message instanceof TransferHasAlreadyStarted) {
+                // reply of the transfer itself in the optimistic mode
+                final UUID transferId = ((TransferHasAlreadyStarted) message).getTransferId();
+                throw new TransferAlreadyExistsException(
+                    transferId, format("Transfer with id %s has been already created", transferId)
+                );
             } else if (message instanceof Message.AccountNotFoundResponse) {
                 final UUID notFoundId = ((Message.AccountNotFoundResponse) message).getId();
                 throw new AccountNotFoundException(
@@ -118,7 +122,7 @@ public class AccountServiceActorImpl implements AccountService {
     public CompletionStage<TransferState> retrieveTransfer(UUID id) throws TransferNotFoundException {
         checkNotNull(id, "Transfer id can not be null");
         return ask(
-            accountManager,
+            accountManagers.managerOf(id),
             new Message.RetrieveTransferCommand(id),
             config.getDuration(RETRIEVE_TRANSFER_TIMEOUT)
         ).thenApply(message -> {
@@ -136,13 +140,13 @@ public class AccountServiceActorImpl implements AccountService {
     }
 
     @Override
-    public CompletionStage<TransferState> depositMoney(UUID uniqueId, UUID target, BigDecimal amount) {
+    public CompletionStage<TransferState> depositMoney(UUID uniqueId, UUID target, Money amount) {
         checkNotNull(uniqueId, "Unique id can not be null");
         checkNotNull(target, "Target account id can not be null");
         checkNotNull(amount, "Amount can not be null");
-        checkArgument(amount.compareTo(BigDecimal.ZERO) > 0, "Amount has to be positive number");
+        checkArgument(amount.isPositive(), "Amount has to be positive number");
         return ask(
-            accountManager,
+            accountManagers.managerOf(uniqueId),
             new Message.DepositMoneyCommand(uniqueId, target, amount),
             config.getDuration(DEPOSIT_TIMEOUT)
         ).thenApply(message -> {
@@ -153,6 +157,12 @@ public class AccountServiceActorImpl implements AccountService {
                 throw new TransferAlreadyExistsException(
                     transferId, format("Transfer with id %s has been already created", transferId)
                 );
+            } else if (message instanceof TransferHasAlreadyStarted) {
+                // reply of the transfer itself in the optimistic mode
+                final UUID transferId = ((TransferHasAlreadyStarted) message).getTransferId();
+                throw new TransferAlreadyExistsException(
+                    transferId, format("Transfer with id %s has been already created", transferId)
+                );
             } else if (message instanceof Message.AccountNotFoundResponse) {
                 final UUID notFoundId = ((Message.AccountNotFoundResponse) message).getId();
                 throw new AccountNotFoundException(
@@ -1,45 +1,105 @@
 package com.evst.account.domain;
 
-import com.google.common.collect.ImmutableMap;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
 import static com.google.common.base.Preconditions.checkArgument;
-import static java.math.BigDecimal.ZERO;
-import static java.util.stream.Collectors.toSet;
 
 /**
  * Account state. The only way to change it is to apply events using the {@link #update(Event)} method.
  *
+ * The transfers are kept in {@link PersistentHashMap}s, so an event shares them with the previous state
+ * and changes only one entry, the cost of an event doesn't grow with the number of the transfers.
+ *
+ * A completed transfer is watched until its transfer confirms all the deliveries and sends the final
+ * {@link TransferProtocolMessage.ForgetTransfer}, which is applied as {@link TransferForgotten}. The completed
+ * transfers are also kept in the {@link CompletionQueue} in order of the completion, so the account can expire
+ * the oldest ones if the forgetting is late or lost (see {@link #completedTransfersToExpire(int, long)}).
+ * An expired transfer can't recognize its late redeliveries anymore, so the account keeps the completion time
+ * of the newest expired transfer and rejects the blocks of the transfers started before it
+ * (see {@link #isStartedBeforeExpired(Date)}).
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-@AllArgsConstructor
 @Getter
 @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
 public class AccountState implements Serializable {
 
     private final UUID id;
     private final String name;
-    private final BigDecimal balance;
+    private final Money balance;
     private final Date createdAt;
     private final Date updatedAt;
 
-    private final Map<UUID, ActiveTransfer> currentTransfers;
+    @Getter(AccessLevel.NONE)
+    private final PersistentHashMap<UUID, ActiveTransfer> currentTransfers;
 
     /**
      * Holds completed transactions before we make it sure that there are no any
-     * active deliveries from the transfer actor. So it's safe to clean up this just
-     * after transaction termination by sending an additional message from the transfer actor.
+     * active deliveries from the transfer actor. The transfer actor sends an additional message
+     * when all its deliveries are confirmed, so a late redelivery finds the transfer here.
      */
-    private final Map<UUID, ActiveTransfer> watchedCompletedTransfers;
+    @Getter(AccessLevel.NONE)
+    private final PersistentHashMap<UUID, ActiveTransfer> watchedCompletedTransfers;
+
+    /**
+     * Watched completed transfers in order of the completion, it can hold the already forgotten ones
+     * behind the head.
+     */
+    @Getter(AccessLevel.NONE)
+    private final CompletionQueue completionQueue;
+
+    /**
+     * Completion time in milliseconds of the newest expired transfer, 0 if none has been expired.
+     */
+    private final long expiredUpTo;
+
+    /**
+     * Creates the state, the maps of the transfers are copied unless they are {@link PersistentHashMap}s.
+     * The watched completed transfers are queued as completed at the <code>updatedAt</code> time.
+     */
+    public AccountState(UUID id, String name, Money balance, Date createdAt, Date updatedAt,
+                        Map<UUID, ActiveTransfer> currentTransfers, Map<UUID, ActiveTransfer> watchedCompletedTransfers) {
+        this(
+            id, name, balance, createdAt, updatedAt, currentTransfers, watchedCompletedTransfers,
+            queueOf(watchedCompletedTransfers, updatedAt), 0
+        );
+    }
+
+    AccountState(UUID id, String name, Money balance, Date createdAt, Date updatedAt,
+                 Map<UUID, ActiveTransfer> currentTransfers, Map<UUID, ActiveTransfer> watchedCompletedTransfers,
+                 CompletionQueue completionQueue, long expiredUpTo) {
+        this.id = id;
+        this.name = name;
+        this.balance = balance;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.currentTransfers = PersistentHashMap.copyOf(currentTransfers);
+        this.watchedCompletedTransfers = PersistentHashMap.copyOf(watchedCompletedTransfers);
+        this.completionQueue = skipForgotten(completionQueue, this.watchedCompletedTransfers);
+        this.expiredUpTo = expiredUpTo;
+    }
+
+    public Map<UUID, ActiveTransfer> getCurrentTransfers() {
+        return currentTransfers;
+    }
+
+    public Map<UUID, ActiveTransfer> getWatchedCompletedTransfers() {
+        return watchedCompletedTransfers;
+    }
+
+    CompletionQueue getCompletionQueue() {
+        return completionQueue;
+    }
 
     /**
      * Apply an {@link Event} to the state and produce the new one.
@@ -51,6 +111,15 @@ public class AccountState implements Serializable {
         return event.mutate(this);
     }
 
+    /**
+     * Number of the transfers held by the account, the part of the state which grows with the load.
+     *
+     * @return number of the current and the watched completed transfers
+     */
+    public int transferCount() {
+        return currentTransfers.size() + watchedCompletedTransfers.size();
+    }
+
     /**
      * Checks if the the account has active transfer with the given id.
      *
@@ -81,6 +150,41 @@ public class AccountState implements Serializable {
         return watchedCompletedTransfers.containsKey(id);
     }
 
+    /**
+     * Checks if the transfer could have been completed and expired already, so its block can be a late redelivery
+     * the account doesn't recognize.
+     *
+     * @param startedAt start time of the transfer
+     * @return <code>true</code> if the transfer has been started before the newest expired one was completed
+     */
+    public boolean isStartedBeforeExpired(Date startedAt) {
+        return startedAt.getTime() <= expiredUpTo;
+    }
+
+    /**
+     * Selects the oldest watched completed transfers to expire, so that no more than <code>maxCount</code>
+     * transfers are left and none of them has been completed before <code>completedBefore</code>.
+     *
+     * @param maxCount maximum number of the watched completed transfers to keep
+     * @param completedBefore completion time in milliseconds of the oldest transfer to keep
+     * @return identifiers and completion times of the transfers to expire, oldest first
+     */
+    List<CompletionQueue.Entry> completedTransfersToExpire(int maxCount, long completedBefore) {
+        final List<CompletionQueue.Entry> expired = new ArrayList<>();
+        int left = watchedCompletedTransfers.size();
+        // the queue is popped instead of iterated, usually the head isn't expired and nothing else is touched
+        for (CompletionQueue queue = completionQueue; !queue.isEmpty() && left > 0; queue = queue.pop()) {
+            if (left <= maxCount && queue.headTime() >= completedBefore) {
+                break;
+            }
+            if (watchedCompletedTransfers.containsKey(queue.headId())) {
+                expired.add(new CompletionQueue.Entry(queue.headId(), queue.headTime()));
+                left--;
+            }
+        }
+        return expired;
+    }
+
     /**
      * Check if the balance is sufficient to block given amount.
      *
@@ -88,18 +192,47 @@ public class AccountState implements Serializable {
      * @return <code>true</code> if the the balance is sufficient and <code>false</code> if not
      * @throws IllegalArgumentException if
      */
-    public boolean hasSufficientBalanceToBlock(BigDecimal amount) {
-        checkArgument(amount != null && amount.compareTo(ZERO) > 0, "Amount have to be positive number");
+    public boolean hasSufficientBalanceToBlock(Money amount) {
+        checkArgument(amount != null && amount.isPositive(), "Amount have to be positive number");
         return balance.compareTo(amount) >= 0;
     }
 
+    /**
+     * Check if the amount can be deposited without the overflow of the balance.
+     *
+     * @param amount Amount requested to deposit.
+     * @return <code>true</code> if the the balance can hold the amount and <code>false</code> if not
+     */
+    public boolean canDeposit(Money amount) {
+        return balance.canAdd(amount);
+    }
+
+    private static CompletionQueue queueOf(Map<UUID, ActiveTransfer> transfers, Date time) {
+        CompletionQueue queue = CompletionQueue.empty();
+        for (UUID transferId : transfers.keySet()) {
+            queue = queue.plus(transferId, time.getTime());
+        }
+        return queue;
+    }
+
+    /**
+     * Drops the forgotten transfers from the head of the queue, so the head is always a watched transfer.
+     */
+    private static CompletionQueue skipForgotten(CompletionQueue queue, Map<UUID, ActiveTransfer> watched) {
+        while (!queue.isEmpty() && !watched.containsKey(queue.headId())) {
+            queue = queue.pop();
+        }
+        return queue;
+    }
+
     @AllArgsConstructor
+    @Getter(AccessLevel.PACKAGE)
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
-    private static class ActiveTransfer implements Serializable {
+    static class ActiveTransfer implements Serializable {
         private final UUID id;
         private final UUID sourceAccountId;
         private final UUID targetAccountId;
-        private final BigDecimal amount;
+        private final Money amount;
     }
 
     public interface Event extends Serializable {
@@ -115,6 +248,7 @@ public class AccountState implements Serializable {
     }
 
     @AllArgsConstructor
+    @Getter
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     public static final class Created implements Event, Serializable {
 
@@ -122,52 +256,74 @@ public class AccountState implements Serializable {
         private final String name;
         private final Date time;
 
+        /**
+         * Scale of the amounts of the account, the current scale of the ledger. It isn't written to the journal,
+         * the recovered event gets the scale of the ledger as all the recovered amounts do.
+         */
+        private final int scale;
+
         @Override
         public AccountState mutate(AccountState account) {
             if (account != null) {
                 throw new IllegalStateException("Create event can not be applied for already created account");
             }
             return new AccountState(
-                id, name, new BigDecimal(0.0), time, time, ImmutableMap.of(), ImmutableMap.of()
+                id, name, Money.zero(scale), time, time, PersistentHashMap.empty(), PersistentHashMap.empty()
             );
         }
     }
 
     @AllArgsConstructor
+    @Getter
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     public static final class MoneyBlocked implements Event, Serializable {
 
         private final UUID transactionId;
         private final UUID targetAccount;
-        private final BigDecimal amount;
+        private final Money amount;
         private final Date time;
 
         @Override
         public AccountState mutate(AccountState account) {
             checkArgument(account.hasSufficientBalanceToBlock(amount), "Insufficient balance");
             return new AccountState(
-                account.id, account.name, account.balance.subtract(amount), account.createdAt, this.time,
-                ImmutableMap.<UUID, ActiveTransfer>builder()
-                    .putAll(account.currentTransfers)
-                    .put(transactionId, new ActiveTransfer(transactionId, account.id, targetAccount, amount))
-                    .build(),
-                ImmutableMap.<UUID, ActiveTransfer>builder()
-                    .putAll(account.watchedCompletedTransfers)
-                    .build()
+                account.id, account.name, account.balance.minus(amount), account.createdAt, this.time,
+                account.currentTransfers.plus(transactionId, new ActiveTransfer(transactionId, account.id, targetAccount, amount)),
+                account.watchedCompletedTransfers, account.completionQueue, account.expiredUpTo
             );
         }
     }
 
+    @AllArgsConstructor
+    @Getter
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    public static final class MoneyUnblocked implements Event, Serializable {
+
+        private final UUID transferId;
+        private final Date time;
+
+        @Override
+        public AccountState mutate(AccountState account) {
+            final ActiveTransfer trx = account.currentTransfers.get(transferId);
+            return new AccountState(
+                account.id, account.name, account.balance.plus(trx.amount), account.createdAt, this.time,
+                account.currentTransfers.minus(transferId),
+                account.watchedCompletedTransfers, account.completionQueue, account.expiredUpTo
+            );
+        }
+    }
+
+    @Getter
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     public static final class MoneyDeposited implements Event, Serializable {
 
         private final UUID transactionId;
         private final UUID sourceAccountId;
-        private final BigDecimal amount;
+        private final Money amount;
         private final Date time;
 
-        public MoneyDeposited(UUID transactionId, UUID sourceAccountId, BigDecimal amount, Date time) {
-            checkArgument(amount != null && amount.compareTo(ZERO) > 0, "Amount have to be positive");
+        public MoneyDeposited(UUID transactionId, UUID sourceAccountId, Money amount, Date time) {
+            checkArgument(amount != null && amount.isPositive(), "Amount have to be positive");
             this.transactionId = transactionId;
             this.sourceAccountId = sourceAccountId;
             this.amount = amount;
@@ -176,15 +332,15 @@ public class AccountState implements Serializable {
 
         @Override
         public AccountState mutate(AccountState account) {
-
             return new AccountState(
-                account.id, account.name, account.balance.add(amount), account.createdAt, this.time,
-                account.currentTransfers, account.watchedCompletedTransfers
+                account.id, account.name, account.balance.plus(amount), account.createdAt, this.time,
+                account.currentTransfers, account.watchedCompletedTransfers, account.completionQueue, account.expiredUpTo
             );
         }
     }
 
     @AllArgsConstructor
+    @Getter
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     public static final class TransferCompleted implements Event, Serializable {
 
@@ -196,20 +352,55 @@ public class AccountState implements Serializable {
             final ActiveTransfer trx = account.currentTransfers.get(transferId);
             return new AccountState(
                 account.id, account.name, account.balance, account.createdAt, this.time,
-                ImmutableMap.<UUID, ActiveTransfer>builder()
-                    .putAll(account.currentTransfers
-                        .entrySet().stream()
-                        .filter(e -> !e.getKey().equals(transferId))
-                        .collect(toSet())
-                    ).build(),
-                ImmutableMap.<UUID, ActiveTransfer>builder()
-                    .putAll(account.watchedCompletedTransfers)
-                    // Consider to not to hold completed transfers. TransferCompleted is the terminate event in the
-                    // protocol, so to do clean up we have to be sure that akka guarantees delivery of the other message
-                    // types "happens before" this one in ANY CASE. At the moment we just collect completed transfers
-                    // to ensure safeness
-                    .put(trx.id, trx)
-                    .build()
+                account.currentTransfers.minus(transferId),
+                // the completed transfer is watched until the transfer actor tells that there are no deliveries
+                // left, which could be redelivered after this one (see TransferForgotten)
+                account.watchedCompletedTransfers.plus(trx.id, trx),
+                account.completionQueue.plus(trx.id, time.getTime()), account.expiredUpTo
+            );
+        }
+    }
+
+    /**
+     * The completed transfer isn't watched anymore, the transfer has confirmed all its deliveries.
+     */
+    @AllArgsConstructor
+    @Getter
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    public static final class TransferForgotten implements Event, Serializable {
+
+        private final UUID transferId;
+        private final Date time;
+
+        @Override
+        public AccountState mutate(AccountState account) {
+            return new AccountState(
+                account.id, account.name, account.balance, account.createdAt, account.updatedAt,
+                account.currentTransfers, account.watchedCompletedTransfers.minus(transferId), account.completionQueue,
+                account.expiredUpTo
+            );
+        }
+    }
+
+    /**
+     * The completed transfer isn't watched anymore, the account has expired it by the age or the number
+     * of the watched transfers. The transfers started before its completion are rejected from now on.
+     */
+    @AllArgsConstructor
+    @Getter
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    public static final class TransferExpired implements Event, Serializable {
+
+        private final UUID transferId;
+        private final Date completedAt;
+        private final Date time;
+
+        @Override
+        public AccountState mutate(AccountState account) {
+            return new AccountState(
+                account.id, account.name, account.balance, account.createdAt, account.updatedAt,
+                account.currentTransfers, account.watchedCompletedTransfers.minus(transferId), account.completionQueue,
+                Math.max(account.expiredUpTo, completedAt.getTime())
             );
         }
     }
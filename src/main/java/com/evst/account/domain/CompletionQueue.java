@@ -0,0 +1,222 @@
+package com.evst.account.domain;
+
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+
+/**
+ * Immutable queue of the completed transfers in order of their completion, the oldest one is the head.
+ * It's a pair of linked lists sharing the nodes with the queues it's derived from: the head list in order
+ * and the tail list in reverse order, which is reversed into the head list when the head list runs out.
+ * {@link #plus(UUID, long)} and {@link #pop()} cost amortized O(1) time, a node holds just the identifier
+ * and the time.
+ *
+ * The queue doesn't support a removal of an entry from the middle, the owner skips the entries it doesn't hold
+ * anymore when they reach the head.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class CompletionQueue implements Iterable<CompletionQueue.Entry>, Serializable {
+
+    private static final CompletionQueue EMPTY = new CompletionQueue(null, null, 0);
+
+    /**
+     * Entries from the head in order, it's empty only if the whole queue is empty.
+     */
+    private final transient Node head;
+
+    /**
+     * Entries from the tail in reverse order.
+     */
+    private final transient Node tail;
+
+    private final transient int size;
+
+    private CompletionQueue(Node head, Node tail, int size) {
+        this.head = head;
+        this.tail = tail;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty queue.
+     *
+     * @return the empty queue
+     */
+    static CompletionQueue empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Creates the queue with the entry added to the tail.
+     *
+     * @param id identifier of the transfer
+     * @param time completion time of the transfer in milliseconds
+     * @return the new queue
+     */
+    CompletionQueue plus(UUID id, long time) {
+        final Node node = new Node(id.getMostSignificantBits(), id.getLeastSignificantBits(), time, null);
+        if (head == null) {
+            return new CompletionQueue(node, null, 1);
+        }
+        return new CompletionQueue(head, node.prepend(tail), size + 1);
+    }
+
+    /**
+     * Creates the queue without the head entry.
+     *
+     * @return the new queue
+     * @throws NoSuchElementException if the queue is empty
+     */
+    CompletionQueue pop() {
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        if (head.next != null) {
+            return new CompletionQueue(head.next, tail, size - 1);
+        }
+        return size == 1 ? EMPTY : new CompletionQueue(reverse(tail), null, size - 1);
+    }
+
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Identifier of the oldest transfer.
+     *
+     * @return identifier of the head entry
+     * @throws NoSuchElementException if the queue is empty
+     */
+    UUID headId() {
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        return head.id();
+    }
+
+    /**
+     * Completion time of the oldest transfer.
+     *
+     * @return time of the head entry in milliseconds
+     * @throws NoSuchElementException if the queue is empty
+     */
+    long headTime() {
+        if (head == null) {
+            throw new NoSuchElementException();
+        }
+        return head.time;
+    }
+
+    /**
+     * Iterates the entries from the head, the tail list is reversed when the iteration reaches it.
+     */
+    @Override
+    public Iterator<Entry> iterator() {
+        return new Iterator<Entry>() {
+
+            private Node next = head;
+            private boolean tailReversed;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Entry entry = new Entry(next.id(), next.time);
+                next = next.next;
+                if (next == null && !tailReversed) {
+                    next = reverse(tail);
+                    tailReversed = true;
+                }
+                return entry;
+            }
+        };
+    }
+
+    private static Node reverse(Node list) {
+        Node reversed = null;
+        for (Node node = list; node != null; node = node.next) {
+            reversed = new Node(node.msb, node.lsb, node.time, reversed);
+        }
+        return reversed;
+    }
+
+    /**
+     * The linked lists are written as arrays, so a long queue doesn't exhaust the stack of the Java serialization.
+     */
+    private Object writeReplace() {
+        final long[] entries = new long[size * 3];
+        int i = 0;
+        for (Entry entry : this) {
+            entries[i++] = entry.getId().getMostSignificantBits();
+            entries[i++] = entry.getId().getLeastSignificantBits();
+            entries[i++] = entry.getTime();
+        }
+        return new SerializedForm(entries);
+    }
+
+    /**
+     * Identifier and completion time of a transfer.
+     */
+    @Value
+    static class Entry {
+        private UUID id;
+        private long time;
+    }
+
+    private static final class Node {
+
+        private final long msb;
+        private final long lsb;
+        private final long time;
+        private final Node next;
+
+        Node(long msb, long lsb, long time, Node next) {
+            this.msb = msb;
+            this.lsb = lsb;
+            this.time = time;
+            this.next = next;
+        }
+
+        UUID id() {
+            return new UUID(msb, lsb);
+        }
+
+        Node prepend(Node list) {
+            return new Node(msb, lsb, time, list);
+        }
+    }
+
+    private static final class SerializedForm implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long[] entries;
+
+        SerializedForm(long[] entries) {
+            this.entries = entries;
+        }
+
+        private Object readResolve() {
+            CompletionQueue queue = EMPTY;
+            for (int i = 0; i < entries.length; i += 3) {
+                queue = queue.plus(new UUID(entries[i], entries[i + 1]), entries[i + 2]);
+            }
+            return queue;
+        }
+    }
+
+}
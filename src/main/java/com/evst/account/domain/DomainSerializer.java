@@ -0,0 +1,460 @@
+package com.evst.account.domain;
+
+import akka.actor.ExtendedActorSystem;
+import akka.persistence.AtLeastOnceDelivery.AtLeastOnceDeliverySnapshot;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.serialization.Serializers;
+import com.evst.account.domain.AccountState.ActiveTransfer;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForDelivery;
+import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForTransfer;
+import com.evst.account.domain.TransferProtocolMessage.AccountReadyForTransfer;
+import com.evst.account.domain.TransferProtocolMessage.BalanceOverflowOnDeposit;
+import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
+import com.evst.account.domain.TransferProtocolMessage.CompleteTransfer;
+import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
+import com.evst.account.domain.TransferProtocolMessage.InsufficientBalanceToBlock;
+import com.evst.account.domain.TransferProtocolMessage.MoneyBlockedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.MoneyUnblockedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferCompletedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.TransferExpiredOnBlock;
+import com.evst.account.domain.TransferProtocolMessage.TransferForgottenSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferHasAlreadyStarted;
+import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
+import com.evst.account.domain.TransferProtocolMessage.TransferReadyToStart;
+import com.evst.account.domain.TransferProtocolMessage.UnblockMoney;
+import lombok.Value;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.UncheckedIOException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compact binary serializer of the events, snapshots and transfer protocol messages of the domain.
+ * Identifiers are written as two longs, amounts as a scale and a long of the minor units and dates as milliseconds.
+ * The amounts are read with the scale of the ledger (<code>ledger.scale</code>), the ones written with another scale
+ * are converted.
+ *
+ * The manifests are a part of the journal format, so they must never be changed or reused,
+ * as well as the order of the fields and the ordinals of {@link TransferState.Status} (new statuses are appended).
+ * A changed format gets a new manifest, the old manifest is kept to read the records written with it.
+ * Records written before the serializer was bound keep the identifier of the Java serializer, their classes
+ * have been changed since then, so they are read by {@link LegacyJavaSerializer}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class DomainSerializer extends SerializerWithStringManifest {
+
+    private static final int IDENTIFIER = 7301;
+    private static final String LEDGER_SCALE_SETTING = "ledger.scale";
+
+    private final ExtendedActorSystem system;
+    private final int scale;
+    private final Map<Class<?>, Format<?>> formatsByClass = new HashMap<>();
+    private final Map<String, Format<?>> formatsByManifest = new HashMap<>();
+
+    private Serialization serialization;
+
+    /**
+     * Creates the serializer, called by Akka for the bindings in the configuration.
+     *
+     * @param system actor system used to serialize nested messages
+     */
+    public DomainSerializer(ExtendedActorSystem system) {
+        this.system = system;
+        this.scale = system.settings().config().getInt(LEDGER_SCALE_SETTING);
+        registerAccountFormats();
+        registerTransferFormats();
+        registerProtocolFormats();
+    }
+
+    private void registerAccountFormats() {
+        register(AccountState.class, "AE", this::writeAccount, this::readAccount);
+        // the scale isn't written, all the amounts are read with the scale of the ledger and so is the balance started
+        register(AccountState.Created.class, "AC", (e, out) -> {
+            writeId(out, e.getId());
+            out.writeUTF(e.getName());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.Created(readId(in), in.readUTF(), readDate(in), scale));
+        register(AccountState.MoneyBlocked.class, "AB", (e, out) -> {
+            writeId(out, e.getTransactionId());
+            writeId(out, e.getTargetAccount());
+            writeAmount(out, e.getAmount());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.MoneyBlocked(readId(in), readId(in), readAmount(in), readDate(in)));
+        register(AccountState.MoneyUnblocked.class, "AU", (e, out) -> {
+            writeId(out, e.getTransferId());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.MoneyUnblocked(readId(in), readDate(in)));
+        register(AccountState.MoneyDeposited.class, "AD", (e, out) -> {
+            writeId(out, e.getTransactionId());
+            writeId(out, e.getSourceAccountId());
+            writeAmount(out, e.getAmount());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.MoneyDeposited(readId(in), readId(in), readAmount(in), readDate(in)));
+        register(AccountState.TransferCompleted.class, "AT", (e, out) -> {
+            writeId(out, e.getTransferId());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.TransferCompleted(readId(in), readDate(in)));
+        register(AccountState.TransferForgotten.class, "AF", (e, out) -> {
+            writeId(out, e.getTransferId());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.TransferForgotten(readId(in), readDate(in)));
+        register(AccountState.TransferExpired.class, "AX", (e, out) -> {
+            writeId(out, e.getTransferId());
+            writeDate(out, e.getCompletedAt());
+            writeDate(out, e.getTime());
+        }, in -> new AccountState.TransferExpired(readId(in), readDate(in), readDate(in)));
+    }
+
+    private void registerTransferFormats() {
+        register(TransferState.class, "TV", this::writeTransfer, this::readTransfer);
+        register(TransferSnapshot.class, "TSD", (s, out) -> {
+            writeTransfer(s.getState(), out);
+            writeNested(out, s.getDeliverySnapshot());
+        }, in -> new TransferSnapshot(readTransfer(in), (AtLeastOnceDeliverySnapshot) readNested(in)));
+        register(TransferState.TransferStarted.class, "TST", (e, out) -> {
+            writeId(out, e.getId());
+            writeId(out, e.getSourceAccountId());
+            writeId(out, e.getTargetAccountId());
+            writeAmount(out, e.getAmount());
+        }, in -> new TransferState.TransferStarted(readId(in), readId(in), readId(in), readAmount(in)));
+        register(TransferState.MoneyBlocked.class, "TB",
+            (e, out) -> out.writeLong(e.getDeliveryId()),
+            in -> new TransferState.MoneyBlocked(in.readLong())
+        );
+        register(TransferState.MoneyBlockFailed.class, "TBF", (e, out) -> {
+            out.writeLong(e.getDeliveryId());
+            out.writeByte(e.getStatus().ordinal());
+        }, in -> new TransferState.MoneyBlockFailed(in.readLong(), readStatus(in)));
+        register(TransferState.MoneyDeposited.class, "TD",
+            (e, out) -> out.writeLong(e.getDeliveryId()),
+            in -> new TransferState.MoneyDeposited(in.readLong())
+        );
+        register(TransferState.MoneyDepositFailed.class, "TDF", (e, out) -> {
+            out.writeLong(e.getDeliveryId());
+            out.writeByte(e.getStatus().ordinal());
+        }, in -> new TransferState.MoneyDepositFailed(in.readLong(), readStatus(in)));
+        register(TransferState.MoneyUnblocked.class, "TU",
+            (e, out) -> out.writeLong(e.getDeliveryId()),
+            in -> new TransferState.MoneyUnblocked(in.readLong())
+        );
+        register(TransferState.TransferCompleted.class, "TC",
+            (e, out) -> out.writeLong(e.getDeliveryId()),
+            in -> new TransferState.TransferCompleted(in.readLong())
+        );
+        register(TransferState.TransferForgotten.class, "TF",
+            (e, out) -> out.writeLong(e.getDeliveryId()),
+            in -> new TransferState.TransferForgotten(in.readLong())
+        );
+    }
+
+    private void registerProtocolFormats() {
+        register(AccountEnvelope.class, "PAE", (m, out) -> {
+            writeId(out, m.getAccountId());
+            writeNested(out, m.getMessage());
+        }, in -> new AccountEnvelope(readId(in), readNested(in)));
+        register(TransferEnvelope.class, "PTE", (m, out) -> {
+            writeId(out, m.getTransferId());
+            writeNested(out, m.getMessage());
+        }, in -> new TransferEnvelope(readId(in), readNested(in)));
+        register(TransferReadyCheck.class, "PRC",
+            (m, out) -> writeId(out, m.getTransferId()),
+            in -> new TransferReadyCheck(readId(in))
+        );
+        register(AccountReadyForTransfer.class, "PAR", (m, out) -> {
+            writeId(out, m.getTransferId());
+            writeId(out, m.getAccountId());
+        }, in -> new AccountReadyForTransfer(readId(in), readId(in)));
+        register(AccountNotFoundForTransfer.class, "PAN", (m, out) -> {
+            writeId(out, m.getTransferId());
+            writeId(out, m.getAccountId());
+        }, in -> new AccountNotFoundForTransfer(readId(in), readId(in)));
+        register(AccountNotFoundForDelivery.class, "PAD", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getAccountId());
+        }, in -> new AccountNotFoundForDelivery(in.readLong(), readId(in)));
+        register(TransferReadyToStart.class, "PTR",
+            (m, out) -> writeId(out, m.getTransferId()),
+            in -> new TransferReadyToStart(readId(in))
+        );
+        register(TransferHasAlreadyStarted.class, "PTH",
+            (m, out) -> writeId(out, m.getTransferId()),
+            in -> new TransferHasAlreadyStarted(readId(in))
+        );
+        register(BlockMoney.class, "PBT", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getTransferId());
+            writeId(out, m.getTargetAccountId());
+            writeAmount(out, m.getAmount());
+            writeDate(out, m.getStartedAt());
+        }, in -> new BlockMoney(in.readLong(), readId(in), readId(in), readAmount(in), readDate(in)));
+        register(MoneyBlockedSuccessfully.class, "PBS",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new MoneyBlockedSuccessfully(in.readLong())
+        );
+        register(InsufficientBalanceToBlock.class, "PIB",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new InsufficientBalanceToBlock(in.readLong())
+        );
+        register(TransferExpiredOnBlock.class, "PEB",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new TransferExpiredOnBlock(in.readLong())
+        );
+        register(UnblockMoney.class, "PUM", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getTransferId());
+        }, in -> new UnblockMoney(in.readLong(), readId(in)));
+        register(MoneyUnblockedSuccessfully.class, "PUS",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new MoneyUnblockedSuccessfully(in.readLong())
+        );
+        register(DepositMoney.class, "PDM", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getTransferId());
+            writeId(out, m.getSourceAccount());
+            writeAmount(out, m.getAmount());
+        }, in -> new DepositMoney(in.readLong(), readId(in), readId(in), readAmount(in)));
+        register(MoneyDepositedSuccessfully.class, "PDS",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new MoneyDepositedSuccessfully(in.readLong())
+        );
+        register(BalanceOverflowOnDeposit.class, "PDO",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new BalanceOverflowOnDeposit(in.readLong())
+        );
+        register(CompleteTransfer.class, "PCT", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getTransferId());
+        }, in -> new CompleteTransfer(in.readLong(), readId(in)));
+        register(TransferCompletedSuccessfully.class, "PCS",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new TransferCompletedSuccessfully(in.readLong())
+        );
+        register(ForgetTransfer.class, "PFT", (m, out) -> {
+            out.writeLong(m.getDeliveryId());
+            writeId(out, m.getTransferId());
+        }, in -> new ForgetTransfer(in.readLong(), readId(in)));
+        register(TransferForgottenSuccessfully.class, "PFS",
+            (m, out) -> out.writeLong(m.getDeliveryId()),
+            in -> new TransferForgottenSuccessfully(in.readLong())
+        );
+    }
+
+    @Override
+    public int identifier() {
+        return IDENTIFIER;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        return formatOf(o).getManifest();
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            formatOf(o).write(o, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        final Format<?> format = formatsByManifest.get(manifest);
+        if (format == null) {
+            throw new NotSerializableException("Unknown manifest " + manifest);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            return format.getReader().read(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> void register(Class<T> type, String manifest, Writer<T> writer, Reader<T> reader) {
+        final Format<T> format = new Format<>(manifest, writer, reader);
+        formatsByClass.put(type, format);
+        formatsByManifest.put(manifest, format);
+    }
+
+    private Format<?> formatOf(Object o) {
+        final Format<?> format = formatsByClass.get(o.getClass());
+        if (format == null) {
+            throw new IllegalArgumentException("Can't serialize object of type " + o.getClass());
+        }
+        return format;
+    }
+
+    private void writeAccount(AccountState account, DataOutputStream out) throws IOException {
+        writeId(out, account.getId());
+        out.writeUTF(account.getName());
+        writeAmount(out, account.getBalance());
+        writeDate(out, account.getCreatedAt());
+        writeDate(out, account.getUpdatedAt());
+        writeTransfers(out, account.getCurrentTransfers());
+        writeTransfers(out, account.getWatchedCompletedTransfers());
+        final CompletionQueue queue = account.getCompletionQueue();
+        out.writeInt(queue.size());
+        for (CompletionQueue.Entry entry : queue) {
+            writeId(out, entry.getId());
+            out.writeLong(entry.getTime());
+        }
+        out.writeLong(account.getExpiredUpTo());
+    }
+
+    private AccountState readAccount(DataInputStream in) throws IOException {
+        final UUID id = readId(in);
+        final String name = in.readUTF();
+        final Money balance = readAmount(in);
+        final Date createdAt = readDate(in);
+        final Date updatedAt = readDate(in);
+        final Map<UUID, ActiveTransfer> currentTransfers = readTransfers(in);
+        final Map<UUID, ActiveTransfer> watchedCompletedTransfers = readTransfers(in);
+        final int size = in.readInt();
+        CompletionQueue queue = CompletionQueue.empty();
+        for (int i = 0; i < size; i++) {
+            queue = queue.plus(readId(in), in.readLong());
+        }
+        return new AccountState(
+            id, name, balance, createdAt, updatedAt, currentTransfers, watchedCompletedTransfers, queue, in.readLong()
+        );
+    }
+
+    private static void writeTransfers(DataOutputStream out, Map<UUID, ActiveTransfer> transfers) throws IOException {
+        out.writeInt(transfers.size());
+        for (ActiveTransfer transfer : transfers.values()) {
+            writeId(out, transfer.getId());
+            writeId(out, transfer.getSourceAccountId());
+            writeId(out, transfer.getTargetAccountId());
+            writeAmount(out, transfer.getAmount());
+        }
+    }
+
+    private Map<UUID, ActiveTransfer> readTransfers(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        PersistentHashMap<UUID, ActiveTransfer> transfers = PersistentHashMap.empty();
+        for (int i = 0; i < size; i++) {
+            final ActiveTransfer transfer = new ActiveTransfer(readId(in), readId(in), readId(in), readAmount(in));
+            transfers = transfers.plus(transfer.getId(), transfer);
+        }
+        return transfers;
+    }
+
+    private void writeTransfer(TransferState transfer, DataOutputStream out) throws IOException {
+        writeId(out, transfer.getId());
+        writeId(out, transfer.getSourceAccountId());
+        writeId(out, transfer.getTargetAccountId());
+        writeAmount(out, transfer.getAmount());
+        out.writeByte(transfer.getStatus().ordinal());
+    }
+
+    private TransferState readTransfer(DataInputStream in) throws IOException {
+        return new TransferState(readId(in), readId(in), readId(in), readAmount(in), readStatus(in));
+    }
+
+    /**
+     * Writes an object of any type with the serializer bound to it, used for the messages in the envelopes
+     * and the delivery snapshots.
+     */
+    private void writeNested(DataOutputStream out, Object o) throws IOException {
+        final Serializer serializer = serialization().findSerializerFor(o);
+        final byte[] bytes = serializer.toBinary(o);
+        out.writeInt(serializer.identifier());
+        out.writeUTF(Serializers.manifestFor(serializer, o));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private Object readNested(DataInputStream in) throws IOException {
+        final int serializerId = in.readInt();
+        final String manifest = in.readUTF();
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return serialization().deserialize(bytes, serializerId, manifest).get();
+    }
+
+    private Serialization serialization() {
+        // the extension can't be requested in the constructor, it's not initialized while creating the serializers
+        if (serialization == null) {
+            serialization = SerializationExtension.get(system);
+        }
+        return serialization;
+    }
+
+    private static void writeId(DataOutputStream out, UUID id) throws IOException {
+        out.writeLong(id.getMostSignificantBits());
+        out.writeLong(id.getLeastSignificantBits());
+    }
+
+    private static UUID readId(DataInputStream in) throws IOException {
+        return new UUID(in.readLong(), in.readLong());
+    }
+
+    private static void writeAmount(DataOutputStream out, Money amount) throws IOException {
+        out.writeByte(amount.getScale());
+        out.writeLong(amount.getUnits());
+    }
+
+    /**
+     * Reads the amount with the scale of the ledger.
+     *
+     * @throws ArithmeticException if the amount can't be represented with the scale of the ledger
+     */
+    private Money readAmount(DataInputStream in) throws IOException {
+        final int amountScale = in.readByte();
+        return Money.of(in.readLong(), amountScale).withScale(scale);
+    }
+
+    private static void writeDate(DataOutputStream out, Date date) throws IOException {
+        out.writeLong(date.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        return new Date(in.readLong());
+    }
+
+    private static TransferState.Status readStatus(DataInputStream in) throws IOException {
+        return TransferState.Status.values()[in.readByte()];
+    }
+
+    @FunctionalInterface
+    private interface Writer<T> {
+        void write(T o, DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    @Value
+    private static class Format<T> {
+        private String manifest;
+        private Writer<T> writer;
+        private Reader<T> reader;
+
+        @SuppressWarnings("unchecked")
+        void write(Object o, DataOutputStream out) throws IOException {
+            writer.write((T) o, out);
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package com.evst.account.domain;
+
+import akka.persistence.journal.Tagged;
+import com.typesafe.config.Config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tags of the persisted events, the read side streams the events by them without replaying each entity.
+ * An event is tagged by the type of its entity, e.g. <code>account</code>, and by the partition of the entity,
+ * e.g. <code>account-3</code>. All the events of an entity have the same partition tag, so they can be processed
+ * in order by a consumer of the partition.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class EventTags {
+
+    /**
+     * Tag of all the account events.
+     */
+    public static final String ACCOUNT = "account";
+
+    /**
+     * Tag of all the transfer events.
+     */
+    public static final String TRANSFER = "transfer";
+
+    private static final String TAG_PARTITIONS_SETTING = "read-journal.tag-partitions";
+
+    private final int partitions;
+
+    private EventTags(int partitions) {
+        this.partitions = partitions;
+    }
+
+    /**
+     * Creates the tags with the number of partitions from the configuration.
+     *
+     * @param config configuration of the system
+     * @return event tags
+     */
+    public static EventTags fromConfig(Config config) {
+        return new EventTags(config.getInt(TAG_PARTITIONS_SETTING));
+    }
+
+    /**
+     * Builds the tag of the partition.
+     *
+     * @param tag tag of the entity type
+     * @param partition number of the partition
+     * @return partition tag
+     */
+    public static String partitionTag(String tag, int partition) {
+        return tag + "-" + partition;
+    }
+
+    /**
+     * Finds the partition of the entity.
+     *
+     * @param persistenceId persistence identifier of the entity
+     * @return number of the partition from 0 to the number of partitions exclusive
+     */
+    public int partitionOf(String persistenceId) {
+        return Math.floorMod(persistenceId.hashCode(), partitions);
+    }
+
+    /**
+     * Wraps the event with its tags, the journal stores the event and indexes it by the tags.
+     *
+     * @param tag tag of the entity type
+     * @param persistenceId persistence identifier of the entity
+     * @param event event to persist
+     * @return tagged event
+     */
+    public Tagged tag(String tag, String persistenceId, Object event) {
+        final Set<String> tags = new HashSet<>();
+        tags.add(tag);
+        tags.add(partitionTag(tag, partitionOf(persistenceId)));
+        return new Tagged(event, tags);
+    }
+
+}
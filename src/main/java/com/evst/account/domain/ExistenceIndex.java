@@ -0,0 +1,189 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorRef;
+import akka.persistence.AbstractPersistentActor;
+import akka.persistence.DeleteMessagesFailure;
+import akka.persistence.DeleteMessagesSuccess;
+import akka.persistence.DeleteSnapshotsFailure;
+import akka.persistence.DeleteSnapshotsSuccess;
+import akka.persistence.RecoveryCompleted;
+import akka.persistence.SaveSnapshotFailure;
+import akka.persistence.SaveSnapshotSuccess;
+import akka.persistence.SnapshotOffer;
+import akka.persistence.SnapshotSelectionCriteria;
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnel;
+import com.google.common.hash.PrimitiveSink;
+import com.typesafe.config.Config;
+import lombok.Value;
+
+import java.io.Serializable;
+import java.util.UUID;
+
+/**
+ * Persisted index of the account and transfer identifiers created through the {@link AccountManager},
+ * held in memory as a Bloom filter. Each manager has its own index of the identifiers of its partition.
+ *
+ * The identifier is registered before the creating command is passed to the entity: the manager sends
+ * {@link Register} to the index and routes the command only when it gets {@link Registered} back,
+ * so the filter never misses an existing entity. After the recovery the index sends a copy of the filter
+ * to the manager with {@link Recovered}.
+ *
+ * A snapshot of the filter is saved each <code>akka.persistence.snapshot-store.interval.existence-index</code>
+ * registrations, it covers all the registrations before it, so the older events and snapshots are deleted
+ * when it's saved. If the index fails to persist or to recover it's stopped and the manager goes on without
+ * the filter.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+class ExistenceIndex extends AbstractPersistentActor {
+
+    private static final String SAVE_SNAPSHOT_INTERVAL_SETTING = "akka.persistence.snapshot-store.interval.existence-index";
+    private static final String EXPECTED_INSERTIONS_SETTING = "account-manager.existence-filter.expected-insertions";
+    private static final String FALSE_POSITIVE_PROBABILITY_SETTING =
+        "account-manager.existence-filter.false-positive-probability";
+
+    private final String persistenceId;
+
+    private BloomFilter<UUID> filter;
+    private int saveSnapshotInterval;
+
+    ExistenceIndex(int partition, int partitions) {
+        // the index is only valid for the same partitioning of the identifiers space
+        this.persistenceId = "existence-index-" + partition + "-of-" + partitions;
+    }
+
+    @Override
+    public String persistenceId() {
+        return persistenceId;
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        saveSnapshotInterval = getContext().getSystem().settings().config().getInt(SAVE_SNAPSHOT_INTERVAL_SETTING);
+    }
+
+    @Override
+    public Receive createReceiveRecover() {
+        return receiveBuilder()
+            .match(IdentifierRegistered.class, e -> getFilter().put(e.getId()))
+            .match(SnapshotOffer.class, ss -> filter = (BloomFilter<UUID>) ss.snapshot())
+            .match(RecoveryCompleted.class, completed -> {
+                getContext().getParent().tell(new Recovered(getFilter().copy()), getSelf());
+            })
+            .build();
+    }
+
+    @Override
+    public Receive createReceive() {
+        return receiveBuilder()
+            .match(Register.class, this::reactOn)
+            .match(SaveSnapshotSuccess.class, this::reactOn)
+            .match(SaveSnapshotFailure.class, failure -> {
+                getContext().getSystem().log().warning("Snapshot of the index {} has not been saved", persistenceId);
+            })
+            .match(DeleteMessagesSuccess.class, success -> {
+                getContext().getSystem().log().debug(
+                    "Events of the index {} up to {} have been deleted", persistenceId, success.toSequenceNr()
+                );
+            })
+            .match(DeleteMessagesFailure.class, failure -> {
+                getContext().getSystem().log().warning(
+                    "Events of the index {} up to {} have not been deleted: {}",
+                    persistenceId, failure.toSequenceNr(), failure.cause().getMessage()
+                );
+            })
+            .match(DeleteSnapshotsSuccess.class, success -> {
+                getContext().getSystem().log().debug(
+                    "Snapshots of the index {} up to {} have been deleted", persistenceId, success.criteria().maxSequenceNr()
+                );
+            })
+            .match(DeleteSnapshotsFailure.class, failure -> {
+                getContext().getSystem().log().warning(
+                    "Snapshots of the index {} up to {} have not been deleted: {}",
+                    persistenceId, failure.criteria().maxSequenceNr(), failure.cause().getMessage()
+                );
+            })
+            .build();
+    }
+
+    private void reactOn(Register cmd) {
+        persistAsync(new IdentifierRegistered(cmd.getId()), e -> {
+            filter.put(e.getId());
+            if (lastSequenceNr() % saveSnapshotInterval == 0) {
+                // the filter keeps changing while the snapshot store writes it
+                saveSnapshot(filter.copy());
+            }
+            getSender().tell(new Registered(cmd.getId(), cmd.getMessage(), cmd.getSender()), getSelf());
+        });
+    }
+
+    /**
+     * Deletes the events and the snapshots covered by the saved snapshot, a failed deletion is retried
+     * by the next snapshot.
+     */
+    private void reactOn(SaveSnapshotSuccess saveSnapshotSuccess) {
+        final long sequenceNr = saveSnapshotSuccess.metadata().sequenceNr();
+        deleteMessages(sequenceNr);
+        deleteSnapshots(SnapshotSelectionCriteria.create(sequenceNr - 1, Long.MAX_VALUE));
+    }
+
+    private BloomFilter<UUID> getFilter() {
+        if (filter == null) {
+            final Config config = getContext().getSystem().settings().config();
+            filter = BloomFilter.create(
+                UuidFunnel.INSTANCE,
+                config.getLong(EXPECTED_INSERTIONS_SETTING),
+                config.getDouble(FALSE_POSITIVE_PROBABILITY_SETTING)
+            );
+        }
+        return filter;
+    }
+
+    /**
+     * Command from the manager to register the identifier before passing the message to the entity.
+     */
+    @Value
+    static class Register implements Serializable {
+        private UUID id;
+        private Object message;
+        private ActorRef sender;
+    }
+
+    /**
+     * Reply to {@link Register}, the identifier is persisted and the message can be passed to the entity.
+     */
+    @Value
+    static class Registered implements Serializable {
+        private UUID id;
+        private Object message;
+        private ActorRef sender;
+    }
+
+    /**
+     * Notification to the manager with the recovered filter.
+     */
+    @Value
+    static class Recovered implements Serializable {
+        private BloomFilter<UUID> filter;
+    }
+
+    /**
+     * Event of the index.
+     */
+    @Value
+    static class IdentifierRegistered implements Serializable {
+        private UUID id;
+    }
+
+    private enum UuidFunnel implements Funnel<UUID> {
+        INSTANCE;
+
+        @Override
+        public void funnel(UUID id, PrimitiveSink into) {
+            into.putLong(id.getMostSignificantBits()).putLong(id.getLeastSignificantBits());
+        }
+    }
+
+}
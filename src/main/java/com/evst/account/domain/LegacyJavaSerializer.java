@@ -0,0 +1,276 @@
+package com.evst.account.domain;
+
+import akka.actor.ExtendedActorSystem;
+import akka.serialization.JavaSerializer;
+import akka.util.ClassLoaderObjectInputStream;
+import com.evst.account.domain.AccountState.ActiveTransfer;
+import com.google.common.collect.ImmutableMap;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.FieldDefaults;
+import scala.Option;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Java serializer which also reads the events and the account snapshots written with it before
+ * {@link DomainSerializer} was bound. Their classes have been changed since then (the amounts are {@link Money},
+ * the transfers are kept in {@link PersistentHashMap}s, some fields are added), so these records can't be read
+ * into them. The descriptors of the records are replaced with the legacy classes having the same fields,
+ * which are converted to the current events and states with the amounts in the scale of the ledger.
+ * A descriptor is only replaced if its fields are the fields of the legacy class, any other object is read
+ * as the Java serializer does. The transfers didn't save snapshots at that time, only their events are converted.
+ *
+ * The serializer is bound as <code>java</code> with the identifier of the Java serializer, so the journal and
+ * the snapshot store written before the domain serializer are recovered. The records are converted each time
+ * they are read, the accounts save their new snapshots with the domain serializer.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class LegacyJavaSerializer extends JavaSerializer {
+
+    private static final String LEDGER_SCALE_SETTING = "ledger.scale";
+
+    /**
+     * Legacy classes by the names of the classes written to the journal.
+     */
+    private static final Map<String, Class<?>> LEGACY_CLASSES = ImmutableMap.<String, Class<?>>builder()
+        .put("com.evst.account.domain.AccountState", LegacyAccountState.class)
+        .put("com.evst.account.domain.AccountState$ActiveTransfer", LegacyActiveTransfer.class)
+        .put("com.evst.account.domain.AccountState$Created", LegacyCreated.class)
+        .put("com.evst.account.domain.AccountState$MoneyBlocked", LegacyAccountMoneyBlocked.class)
+        .put("com.evst.account.domain.AccountState$MoneyDeposited", LegacyAccountMoneyDeposited.class)
+        .put("com.evst.account.domain.AccountState$TransferCompleted", LegacyAccountTransferCompleted.class)
+        .put("com.evst.account.domain.TransferState$TransferStarted", LegacyTransferStarted.class)
+        .put("com.evst.account.domain.TransferState$Notification", LegacyNotification.class)
+        .put("com.evst.account.domain.TransferState$MoneyBlocked", LegacyTransferMoneyBlocked.class)
+        .put("com.evst.account.domain.TransferState$MoneyBlockFailed", LegacyMoneyBlockFailed.class)
+        .put("com.evst.account.domain.TransferState$MoneyDeposited", LegacyTransferMoneyDeposited.class)
+        .put("com.evst.account.domain.TransferState$TransferCompleted", LegacyTransferTransferCompleted.class)
+        .build();
+
+    private final int scale;
+
+    /**
+     * Creates the serializer, called by Akka for the <code>java</code> serializer in the configuration.
+     *
+     * @param system actor system of the serializer
+     */
+    public LegacyJavaSerializer(ExtendedActorSystem system) {
+        super(system);
+        this.scale = system.settings().config().getInt(LEDGER_SCALE_SETTING);
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, Option<Class<?>> clazz) {
+        // actor references are resolved with the current system, as the Java serializer does
+        final Object o = JavaSerializer.currentSystem().withValue(system(), () -> readObject(bytes));
+        return o instanceof LegacyRecord ? ((LegacyRecord) o).convert(scale) : o;
+    }
+
+    private Object readObject(byte[] bytes) {
+        try (ObjectInputStream in = new LegacyObjectInputStream(system().dynamicAccess().classLoader(), bytes)) {
+            return in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Can't deserialize object of unknown class", e);
+        }
+    }
+
+    /**
+     * Converts a legacy decimal amount to the scale of the ledger.
+     *
+     * @throws ArithmeticException if the amount can't be represented with the scale of the ledger
+     */
+    private static Money money(BigDecimal amount, int scale) {
+        return Money.of(amount.setScale(scale, RoundingMode.UNNECESSARY).unscaledValue().longValueExact(), scale);
+    }
+
+    private static Map<UUID, ActiveTransfer> transfers(Map<UUID, LegacyActiveTransfer> transfers, int scale) {
+        final Map<UUID, ActiveTransfer> converted = new HashMap<>();
+        transfers.forEach((id, transfer) -> converted.put(id, transfer.convert(scale)));
+        return converted;
+    }
+
+    private static final class LegacyObjectInputStream extends ClassLoaderObjectInputStream {
+
+        LegacyObjectInputStream(ClassLoader classLoader, byte[] bytes) throws IOException {
+            super(classLoader, new ByteArrayInputStream(bytes));
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            final ObjectStreamClass descriptor = super.readClassDescriptor();
+            final Class<?> legacyClass = LEGACY_CLASSES.get(descriptor.getName());
+            if (legacyClass != null) {
+                // the serial version of the legacy class isn't checked, the fields are
+                final ObjectStreamClass legacyDescriptor = ObjectStreamClass.lookup(legacyClass);
+                if (fieldsOf(legacyDescriptor).equals(fieldsOf(descriptor))) {
+                    return legacyDescriptor;
+                }
+            }
+            return descriptor;
+        }
+
+        private static Set<String> fieldsOf(ObjectStreamClass descriptor) {
+            return Arrays.stream(descriptor.getFields())
+                .map(f -> f.getName() + " " + (f.isPrimitive() ? String.valueOf(f.getTypeCode()) : f.getTypeString()))
+                .collect(toSet());
+        }
+    }
+
+    /**
+     * Object written with the Java serializer before the domain serializer, it's only created by the deserialization.
+     */
+    private interface LegacyRecord extends Serializable {
+        Object convert(int scale);
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyAccountState implements LegacyRecord {
+        UUID id;
+        String name;
+        BigDecimal balance;
+        Date createdAt;
+        Date updatedAt;
+        Map<UUID, LegacyActiveTransfer> currentTransfers;
+        Map<UUID, LegacyActiveTransfer> watchedCompletedTransfers;
+
+        @Override
+        public AccountState convert(int scale) {
+            // the watched completed transfers are queued as completed at the update
+            return new AccountState(
+                id, name, money(balance, scale), createdAt, updatedAt,
+                transfers(currentTransfers, scale), transfers(watchedCompletedTransfers, scale)
+            );
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyActiveTransfer implements LegacyRecord {
+        UUID id;
+        UUID sourceAccountId;
+        UUID targetAccountId;
+        BigDecimal amount;
+
+        @Override
+        public ActiveTransfer convert(int scale) {
+            return new ActiveTransfer(id, sourceAccountId, targetAccountId, money(amount, scale));
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyCreated implements LegacyRecord {
+        UUID id;
+        String name;
+        Date time;
+
+        @Override
+        public Object convert(int scale) {
+            return new AccountState.Created(id, name, time, scale);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyAccountMoneyBlocked implements LegacyRecord {
+        UUID transactionId;
+        UUID targetAccount;
+        BigDecimal amount;
+        Date time;
+
+        @Override
+        public Object convert(int scale) {
+            return new AccountState.MoneyBlocked(transactionId, targetAccount, money(amount, scale), time);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyAccountMoneyDeposited implements LegacyRecord {
+        UUID transactionId;
+        UUID sourceAccountId;
+        BigDecimal amount;
+        Date time;
+
+        @Override
+        public Object convert(int scale) {
+            return new AccountState.MoneyDeposited(transactionId, sourceAccountId, money(amount, scale), time);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyAccountTransferCompleted implements LegacyRecord {
+        UUID transferId;
+        Date time;
+
+        @Override
+        public Object convert(int scale) {
+            return new AccountState.TransferCompleted(transferId, time);
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyTransferStarted implements LegacyRecord {
+        UUID id;
+        UUID sourceAccountId;
+        UUID targetAccountId;
+        BigDecimal amount;
+
+        @Override
+        public Object convert(int scale) {
+            return new TransferState.TransferStarted(id, sourceAccountId, targetAccountId, money(amount, scale));
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private abstract static class LegacyNotification implements LegacyRecord {
+        @Getter Long deliveryId;
+    }
+
+    private static final class LegacyTransferMoneyBlocked extends LegacyNotification {
+        @Override
+        public Object convert(int scale) {
+            return new TransferState.MoneyBlocked(getDeliveryId());
+        }
+    }
+
+    @FieldDefaults(level = AccessLevel.PRIVATE)
+    private static final class LegacyMoneyBlockFailed extends LegacyNotification {
+        TransferState.Status status;
+
+        @Override
+        public Object convert(int scale) {
+            return new TransferState.MoneyBlockFailed(getDeliveryId(), status);
+        }
+    }
+
+    private static final class LegacyTransferMoneyDeposited extends LegacyNotification {
+        @Override
+        public Object convert(int scale) {
+            return new TransferState.MoneyDeposited(getDeliveryId());
+        }
+    }
+
+    private static final class LegacyTransferTransferCompleted extends LegacyNotification {
+        @Override
+        public Object convert(int scale) {
+            return new TransferState.TransferCompleted(getDeliveryId());
+        }
+    }
+
+}
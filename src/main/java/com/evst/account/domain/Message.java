@@ -4,7 +4,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Value;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.util.List;
 import java.util.UUID;
 
 /**
@@ -121,7 +121,7 @@ public abstract class Message implements Serializable {
         private final UUID id;
         private final UUID sourceAccountId;
         private final UUID targetAccountId;
-        private final BigDecimal amount;
+        private final Money amount;
     }
 
     /**
@@ -142,7 +142,7 @@ public abstract class Message implements Serializable {
     public static class DepositMoneyCommand extends Message {
         private final UUID id;
         private final UUID targetAccountId;
-        private final BigDecimal amount;
+        private final Money amount;
     }
 
     /**
@@ -155,4 +155,42 @@ public abstract class Message implements Serializable {
         private final UUID id;
     }
 
+    /**
+     * Command to the {@link AccountManager} to retrieve statistics of the transfer requests
+     * waiting for readiness of the participants.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class RetrievePendingTransferRequestsCommand extends Message {
+    }
+
+    /**
+     * Number of the currently pending transfer requests and the number of requests expired since the start,
+     * sent as a response to {@link RetrievePendingTransferRequestsCommand} message from the account manager.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class PendingTransferRequestsResponse extends Message {
+        private final int pending;
+        private final long expired;
+    }
+
+    /**
+     * Command to the {@link AccountManager} to list its live accounts.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class RetrieveLiveAccountsCommand extends Message {
+    }
+
+    /**
+     * Identifiers of the live accounts of the manager from the most recently used one,
+     * sent as a response to {@link RetrieveLiveAccountsCommand} message from the account manager.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    public static class LiveAccountsResponse extends Message {
+        private final List<UUID> accountIds;
+    }
+
 }
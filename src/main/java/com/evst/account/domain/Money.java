@@ -0,0 +1,164 @@
+package com.evst.account.domain;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+import java.io.Serializable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Amount of money as a number of the minor units, e.g. cents for the scale 2. All the amounts of a ledger have
+ * the same scale (<code>ledger.scale</code>), the arithmetic of the amounts with different scales is rejected
+ * and the overflow of the units throws {@link ArithmeticException} instead of wrapping around.
+ *
+ * The amounts are converted from and to the decimal numbers of the API only by the {@link com.evst.account.api.Mapper},
+ * so the domain doesn't allocate the big numbers to add or compare the amounts.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public final class Money implements Comparable<Money>, Serializable {
+
+    /**
+     * The largest scale which leaves a whole unit in a long.
+     */
+    public static final int MAX_SCALE = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_SCALE + 1];
+    private static final Money[] ZEROS = new Money[MAX_SCALE + 1];
+
+    static {
+        long power = 1;
+        for (int scale = 0; scale <= MAX_SCALE; scale++) {
+            POWERS_OF_TEN[scale] = power;
+            ZEROS[scale] = new Money(0, scale);
+            power *= 10;
+        }
+    }
+
+    private final long units;
+    private final int scale;
+
+    /**
+     * Creates the amount.
+     *
+     * @param units number of the minor units
+     * @param scale number of the decimal digits of a minor unit
+     * @return the amount
+     * @throws IllegalArgumentException if the scale is out of 0..{@link #MAX_SCALE}
+     */
+    public static Money of(long units, int scale) {
+        checkScale(scale);
+        return units == 0 ? ZEROS[scale] : new Money(units, scale);
+    }
+
+    /**
+     * Returns the zero amount, it's shared.
+     *
+     * @param scale number of the decimal digits of a minor unit
+     * @return the zero amount
+     */
+    public static Money zero(int scale) {
+        checkScale(scale);
+        return ZEROS[scale];
+    }
+
+    public boolean isPositive() {
+        return units > 0;
+    }
+
+    /**
+     * Adds the amount.
+     *
+     * @param other amount of the same scale
+     * @return the sum
+     * @throws ArithmeticException if the sum overflows
+     */
+    public Money plus(Money other) {
+        checkSameScale(other);
+        return other.units == 0 ? this : of(Math.addExact(units, other.units), scale);
+    }
+
+    /**
+     * Subtracts the amount.
+     *
+     * @param other amount of the same scale
+     * @return the difference
+     * @throws ArithmeticException if the difference overflows
+     */
+    public Money minus(Money other) {
+        checkSameScale(other);
+        return other.units == 0 ? this : of(Math.subtractExact(units, other.units), scale);
+    }
+
+    /**
+     * Checks if the amount can be added without the overflow.
+     *
+     * @param other amount of the same scale
+     * @return <code>true</code> if {@link #plus(Money)} doesn't overflow
+     */
+    public boolean canAdd(Money other) {
+        checkSameScale(other);
+        final long sum = units + other.units;
+        // the overflow changes the sign of the sum to the opposite of the both operands
+        return ((units ^ sum) & (other.units ^ sum)) >= 0;
+    }
+
+    /**
+     * Converts the amount to another scale, e.g. an amount written with a scale the ledger doesn't use anymore.
+     *
+     * @param newScale the new scale
+     * @return the same amount with the new scale
+     * @throws ArithmeticException if the amount has more digits than the new scale keeps or the units overflow
+     */
+    public Money withScale(int newScale) {
+        checkScale(newScale);
+        if (newScale == scale) {
+            return this;
+        }
+        if (newScale > scale) {
+            return of(Math.multiplyExact(units, POWERS_OF_TEN[newScale - scale]), newScale);
+        }
+        final long divisor = POWERS_OF_TEN[scale - newScale];
+        if (units % divisor != 0) {
+            throw new ArithmeticException("Amount " + this + " can't be represented with the scale " + newScale);
+        }
+        return of(units / divisor, newScale);
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        checkSameScale(other);
+        return Long.compare(units, other.units);
+    }
+
+    /**
+     * Formats the amount as a plain decimal number with the digits of the scale.
+     */
+    @Override
+    public String toString() {
+        final String digits = Long.toString(units);
+        final int signLength = units < 0 ? 1 : 0;
+        if (scale == 0) {
+            return digits;
+        }
+        final StringBuilder text = new StringBuilder(digits.length() + scale + 2).append(digits, 0, signLength);
+        for (int i = digits.length() - signLength; i <= scale; i++) {
+            text.append('0');
+        }
+        text.append(digits, signLength, digits.length());
+        return text.insert(text.length() - scale, '.').toString();
+    }
+
+    private void checkSameScale(Money other) {
+        checkArgument(scale == other.scale, "Amounts of the scales %s and %s can't be mixed", scale, other.scale);
+    }
+
+    private static void checkScale(int scale) {
+        checkArgument(scale >= 0 && scale <= MAX_SCALE, "Scale %s is out of 0..%s", scale, MAX_SCALE);
+    }
+
+}
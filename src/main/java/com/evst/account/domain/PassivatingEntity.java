@@ -0,0 +1,91 @@
+package com.evst.account.domain;
+
+import akka.actor.ReceiveTimeout;
+import akka.cluster.sharding.ShardRegion;
+import akka.persistence.AbstractPersistentActorWithAtLeastOnceDelivery;
+
+import java.io.Serializable;
+import java.time.Duration;
+
+/**
+ * Base class of the entities (accounts and transfers) which can be stopped to free the memory and recovered back
+ * on demand. The entity asks its parent (the {@link AccountManager} or the shard) to passivate it when it has been
+ * idle for the <code>account-manager.passivation.idle-timeout</code> or when the parent requests it by sending
+ * {@link #REQUEST_PASSIVATION}. The parent stops buffering messages for the entity, sends it {@link #STOP}
+ * and recreates the entity if anything has been buffered in between.
+ *
+ * The entity refuses to passivate while it is not safe, see {@link #canBePassivated()}. Commands arriving while
+ * an event is being persisted are stashed by the persistent actor, so such requests are processed only after
+ * the persist handler has run.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+abstract class PassivatingEntity extends AbstractPersistentActorWithAtLeastOnceDelivery {
+
+    /**
+     * Request from the parent to passivate the entity (used to limit the number of live entities).
+     */
+    static final Serializable REQUEST_PASSIVATION = new RequestPassivation();
+
+    /**
+     * Message sent back to the entity by its parent to stop it after all the messages sent before.
+     */
+    static final Serializable STOP = new Stop();
+
+    private static final String IDLE_TIMEOUT_SETTING = "account-manager.passivation.idle-timeout";
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        final Duration idleTimeout = getContext().getSystem().settings().config().getDuration(IDLE_TIMEOUT_SETTING);
+        if (!idleTimeout.isZero()) {
+            getContext().setReceiveTimeout(idleTimeout);
+        }
+    }
+
+    /**
+     * Behavior handling passivation, it has to be combined with the behavior of the entity.
+     *
+     * @return passivation behavior
+     */
+    protected Receive passivationBehavior() {
+        return receiveBuilder()
+            .match(ReceiveTimeout.class, timeout -> passivate())
+            .match(RequestPassivation.class, request -> passivate())
+            .match(Stop.class, stop -> stopEntity())
+            .build();
+    }
+
+    /**
+     * Asks the parent to passivate the entity if it can be done safely at the moment.
+     */
+    protected void passivate() {
+        if (canBePassivated()) {
+            getContext().getParent().tell(new ShardRegion.Passivate(STOP), getSelf());
+        }
+    }
+
+    /**
+     * Stops the entity on {@link #STOP}. Entities holding writes which are not durable yet can postpone it.
+     */
+    protected void stopEntity() {
+        getContext().stop(getSelf());
+    }
+
+    /**
+     * Checks that the entity doesn't hold anything which is not recoverable from the journal.
+     * By default it means there are no unconfirmed deliveries.
+     *
+     * @return <code>true</code> if the entity can be stopped
+     */
+    protected boolean canBePassivated() {
+        return numberOfUnconfirmed() == 0;
+    }
+
+    private static final class RequestPassivation implements Serializable {
+    }
+
+    private static final class Stop implements Serializable {
+    }
+
+}
@@ -0,0 +1,396 @@
+package com.evst.account.domain;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable hash map sharing the structure with the maps it's derived from, a hash array mapped trie.
+ * {@link #plus(Object, Object)} and {@link #minus(Object)} copy only the path from the root to the changed entry,
+ * so a change costs O(log32 n) time and garbage instead of a copy of the whole map.
+ *
+ * Each node holds the entries and the child nodes of up to 32 slots selected by 5 bits of the key hash, a bitmap
+ * tells which slots are taken. The slots are pairs in one array: a key and its value or <code>null</code>
+ * and a child node. Keys with the same hash are kept in a collision node. Null keys and values aren't supported.
+ *
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class PersistentHashMap<K, V> extends AbstractMap<K, V> implements Serializable {
+
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    /**
+     * Levels of the bitmap nodes needed to consume a 32 bit hash plus a collision node.
+     */
+    private static final int MAX_DEPTH = 8;
+    private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+    private final Node root;
+    private final int size;
+
+    private PersistentHashMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * Returns the empty map.
+     *
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     * @return the empty map
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> empty() {
+        return (PersistentHashMap<K, V>) EMPTY;
+    }
+
+    /**
+     * Copies the map unless it's a persistent map already.
+     *
+     * @param map map to copy
+     * @param <K> type of the keys
+     * @param <V> type of the values
+     * @return persistent map with the same entries
+     */
+    @SuppressWarnings("unchecked")
+    static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+        if (map instanceof PersistentHashMap) {
+            return (PersistentHashMap<K, V>) map;
+        }
+        PersistentHashMap<K, V> copy = empty();
+        for (Map.Entry<? extends K, ? extends V> entry : map.entrySet()) {
+            copy = copy.plus(entry.getKey(), entry.getValue());
+        }
+        return copy;
+    }
+
+    /**
+     * Creates the map with the entry added or replaced.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @return the new map or this one if it has the same entry
+     */
+    PersistentHashMap<K, V> plus(K key, V value) {
+        final boolean[] added = new boolean[1];
+        final Node node = (root == null ? BitmapNode.EMPTY : root).put(0, hash(key), key, value, added);
+        return node == root ? this : new PersistentHashMap<>(node, added[0] ? size + 1 : size);
+    }
+
+    /**
+     * Creates the map without the entry.
+     *
+     * @param key key of the entry
+     * @return the new map or this one if it has no such entry
+     */
+    PersistentHashMap<K, V> minus(Object key) {
+        if (root == null) {
+            return this;
+        }
+        final Node node = root.remove(0, hash(key), key);
+        if (node == root) {
+            return this;
+        }
+        return node == null ? empty() : new PersistentHashMap<>(node, size - 1);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        return root == null || key == null ? null : (V) root.find(0, hash(key), key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private static int hash(Object key) {
+        return key.hashCode();
+    }
+
+    private static int bitOf(int hash, int shift) {
+        return 1 << ((hash >>> shift) & MASK);
+    }
+
+    private static Object[] copyWith(Object[] array, int index, Object value) {
+        final Object[] copy = array.clone();
+        copy[index] = value;
+        return copy;
+    }
+
+    /**
+     * Node of the trie, its array holds the pairs of the slots.
+     */
+    private abstract static class Node implements Serializable {
+
+        final Object[] array;
+
+        Node(Object[] array) {
+            this.array = array;
+        }
+
+        /**
+         * Finds the value of the key.
+         *
+         * @return the value or <code>null</code> if there is no such key
+         */
+        abstract Object find(int shift, int hash, Object key);
+
+        /**
+         * Puts the entry, sets the flag if a new key has been added.
+         *
+         * @return the new node or this one if it already holds the entry
+         */
+        abstract Node put(int shift, int hash, Object key, Object value, boolean[] added);
+
+        /**
+         * Removes the entry.
+         *
+         * @return the new node, this one if there is no such key or <code>null</code> if the node is empty
+         */
+        abstract Node remove(int shift, int hash, Object key);
+    }
+
+    private static final class BitmapNode extends Node {
+
+        static final BitmapNode EMPTY = new BitmapNode(0, new Object[0]);
+
+        private final int bitmap;
+
+        BitmapNode(int bitmap, Object[] array) {
+            super(array);
+            this.bitmap = bitmap;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int bit = bitOf(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return null;
+            }
+            final int index = indexOf(bit);
+            final Object slotKey = array[index];
+            final Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                return ((Node) slotValue).find(shift + BITS, hash, key);
+            }
+            return key.equals(slotKey) ? slotValue : null;
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            final int bit = bitOf(hash, shift);
+            final int index = indexOf(bit);
+            if ((bitmap & bit) == 0) {
+                added[0] = true;
+                final Object[] copy = new Object[array.length + 2];
+                System.arraycopy(array, 0, copy, 0, index);
+                copy[index] = key;
+                copy[index + 1] = value;
+                System.arraycopy(array, index, copy, index + 2, array.length - index);
+                return new BitmapNode(bitmap | bit, copy);
+            }
+            final Object slotKey = array[index];
+            final Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                final Node child = ((Node) slotValue).put(shift + BITS, hash, key, value, added);
+                return child == slotValue ? this : new BitmapNode(bitmap, copyWith(array, index + 1, child));
+            }
+            if (key.equals(slotKey)) {
+                return slotValue == value ? this : new BitmapNode(bitmap, copyWith(array, index + 1, value));
+            }
+            added[0] = true;
+            final Object[] copy = copyWith(array, index, null);
+            copy[index + 1] = pair(shift + BITS, slotKey, slotValue, hash, key, value);
+            return new BitmapNode(bitmap, copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            final int bit = bitOf(hash, shift);
+            if ((bitmap & bit) == 0) {
+                return this;
+            }
+            final int index = indexOf(bit);
+            final Object slotKey = array[index];
+            final Object slotValue = array[index + 1];
+            if (slotKey == null) {
+                final Node child = ((Node) slotValue).remove(shift + BITS, hash, key);
+                if (child == slotValue) {
+                    return this;
+                }
+                if (child != null) {
+                    return new BitmapNode(bitmap, copyWith(array, index + 1, child));
+                }
+            } else if (!key.equals(slotKey)) {
+                return this;
+            }
+            if (bitmap == bit) {
+                return null;
+            }
+            final Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+            return new BitmapNode(bitmap ^ bit, copy);
+        }
+
+        private int indexOf(int bit) {
+            return 2 * Integer.bitCount(bitmap & (bit - 1));
+        }
+
+        /**
+         * Creates the node holding two entries which have met in one slot.
+         */
+        private static Node pair(int shift, Object key1, Object value1, int hash2, Object key2, Object value2) {
+            final int hash1 = hash(key1);
+            if (hash1 == hash2) {
+                return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+            }
+            final boolean[] added = new boolean[1];
+            return EMPTY.put(shift, hash1, key1, value1, added).put(shift, hash2, key2, value2, added);
+        }
+    }
+
+    private static final class CollisionNode extends Node {
+
+        private final int hash;
+
+        CollisionNode(int hash, Object[] array) {
+            super(array);
+            this.hash = hash;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key) {
+            final int index = indexOf(key);
+            return index < 0 ? null : array[index + 1];
+        }
+
+        @Override
+        Node put(int shift, int hash, Object key, Object value, boolean[] added) {
+            if (hash != this.hash) {
+                // the keys of this node take one slot of a bitmap node at this level
+                return new BitmapNode(bitOf(this.hash, shift), new Object[] {null, this}).put(shift, hash, key, value, added);
+            }
+            final int index = indexOf(key);
+            if (index >= 0) {
+                return array[index + 1] == value ? this : new CollisionNode(hash, copyWith(array, index + 1, value));
+            }
+            added[0] = true;
+            final Object[] copy = Arrays.copyOf(array, array.length + 2);
+            copy[array.length] = key;
+            copy[array.length + 1] = value;
+            return new CollisionNode(hash, copy);
+        }
+
+        @Override
+        Node remove(int shift, int hash, Object key) {
+            final int index = indexOf(key);
+            if (index < 0) {
+                return this;
+            }
+            if (array.length == 2) {
+                return null;
+            }
+            final Object[] copy = new Object[array.length - 2];
+            System.arraycopy(array, 0, copy, 0, index);
+            System.arraycopy(array, index + 2, copy, index, array.length - index - 2);
+            return new CollisionNode(hash, copy);
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < array.length; i += 2) {
+                if (key.equals(array[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * Walks the trie depth first keeping the arrays of the visited nodes and the positions in them on a stack.
+     */
+    private final class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Object[][] arrays = new Object[MAX_DEPTH + 1][];
+        private final int[] positions = new int[MAX_DEPTH + 1];
+        private int depth = -1;
+        private Entry<K, V> next;
+
+        EntryIterator() {
+            if (root != null) {
+                depth = 0;
+                arrays[0] = root.array;
+            }
+            advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            final Entry<K, V> entry = next;
+            advance();
+            return entry;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void advance() {
+            while (depth >= 0) {
+                final Object[] array = arrays[depth];
+                final int position = positions[depth];
+                if (position >= array.length) {
+                    depth--;
+                    continue;
+                }
+                positions[depth] = position + 2;
+                if (array[position] == null) {
+                    depth++;
+                    arrays[depth] = ((Node) array[position + 1]).array;
+                    positions[depth] = 0;
+                } else {
+                    next = new SimpleImmutableEntry<>((K) array[position], (V) array[position + 1]);
+                    return;
+                }
+            }
+            next = null;
+        }
+    }
+
+}
@@ -1,44 +1,105 @@
 package com.evst.account.domain;
 
 import akka.actor.ActorRef;
-import akka.actor.ActorSelection;
-import akka.persistence.AbstractPersistentActorWithAtLeastOnceDelivery;
+import akka.japi.Function;
+import akka.japi.Procedure;
+import akka.persistence.DeleteSnapshotsFailure;
+import akka.persistence.DeleteSnapshotsSuccess;
+import akka.persistence.SaveSnapshotFailure;
+import akka.persistence.SaveSnapshotSuccess;
 import akka.persistence.SnapshotOffer;
+import akka.persistence.SnapshotSelectionCriteria;
 import com.evst.account.domain.Message.MakeTransferCommand;
 import com.evst.account.domain.Message.RetrieveTransferCommand;
 import com.evst.account.domain.Message.TransferNotFoundResponse;
 import com.evst.account.domain.Message.TransferSnapshotResponse;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForDelivery;
+import com.evst.account.domain.TransferProtocolMessage.BalanceOverflowOnDeposit;
 import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
 import com.evst.account.domain.TransferProtocolMessage.CompleteTransfer;
 import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
 import com.evst.account.domain.TransferProtocolMessage.InsufficientBalanceToBlock;
 import com.evst.account.domain.TransferProtocolMessage.MoneyBlockedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.MoneyUnblockedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferCompletedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferExpiredOnBlock;
+import com.evst.account.domain.TransferProtocolMessage.TransferForgottenSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferHasAlreadyStarted;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyToStart;
+import com.evst.account.domain.TransferProtocolMessage.UnblockMoney;
 import com.evst.account.domain.TransferState.Event;
 import com.evst.account.domain.TransferState.MoneyBlockFailed;
 import com.evst.account.domain.TransferState.MoneyBlocked;
+import com.evst.account.domain.TransferState.MoneyDepositFailed;
 import com.evst.account.domain.TransferState.MoneyDeposited;
+import com.evst.account.domain.TransferState.MoneyUnblocked;
+import com.evst.account.domain.TransferState.Notification;
 import com.evst.account.domain.TransferState.TransferCompleted;
+import com.evst.account.domain.TransferState.TransferForgotten;
 import com.evst.account.domain.TransferState.TransferStarted;
 
+import java.util.Date;
 import java.util.UUID;
 
+import static com.evst.account.domain.TransferState.Status.ACCOUNT_NOT_FOUND;
+import static com.evst.account.domain.TransferState.Status.BALANCE_OVERFLOW;
+import static com.evst.account.domain.TransferState.Status.EXPIRED;
+import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
 import static com.evst.account.domain.TransferState.Status.LOW_BALANCE;
 
 /**
+ * Transfer entity. Moves money from the source to the target account: blocks it on the source account,
+ * deposits it to the target one and completes the transfer on the source account.
+ *
+ * Deposit is a transfer from the {@link #CASH_IN_ACCOUNT_ID}, the money is deposited to the target account
+ * directly and the transfer is completed as soon as it's done.
+ *
+ * Accounts are not required to be checked before the transfer is started. If the source account is not found
+ * the transfer fails, if the target account is not found the blocked money is returned to the source account
+ * with {@link UnblockMoney} and then the transfer fails. The initiator gets {@link Message.AccountNotFoundResponse}.
+ * If the deposit would overflow the balance of the target account the transfer fails with
+ * {@link TransferState.Status#BALANCE_OVERFLOW} the same way, returning the blocked money first.
+ * {@link BlockMoney} carries the start time of the transfer, the source account rejects the transfers started
+ * before the completed transfers it has expired and the transfer fails with {@link TransferState.Status#EXPIRED}.
+ *
+ * The source account watches the completed transfer to recognize the late redeliveries, so when the completion
+ * is confirmed, which is the last of the deliveries, the transfer sends {@link ForgetTransfer} to the account.
+ * The messages of the transfer to the account take the same route, so the redeliveries sent before arrive before it.
+ *
+ * The state is saved as a {@link TransferSnapshot} with the deliveries when the transfer gets finished and each
+ * <code>akka.persistence.snapshot-store.interval.transfer</code> events, after the deliveries have been updated
+ * by the event, and the older snapshots are deleted. No delivery is started after the transfer is finished, so
+ * a finished transfer is recovered from its snapshot and the few events after it, which only confirm
+ * the deliveries. The events are persisted with the {@link EventTags} of the transfer.
+ *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
-public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
+public class Transfer extends PassivatingEntity {
 
-    private static final String ACCOUNT_ACTOR_PATH_SETTING = "actor.pathprefix.account";
+    /**
+     * Source account identifier of deposits. There is no such account, it can't be used by other transfers.
+     */
+    public static final UUID CASH_IN_ACCOUNT_ID = new UUID(0L, 0L);
+
+    private static final String SAVE_SNAPSHOT_INTERVAL_SETTING = "akka.persistence.snapshot-store.interval.transfer";
 
     private UUID id;
     private TransferState transfer;
     private ActorRef initiator;
+    private int saveSnapshotInterval;
+
+    private final EventTags tags = EventTags.fromConfig(getContext().getSystem().settings().config());
+
+    /**
+     * Creates the transfer as a sharded entity, identifier of the transfer is the name of the entity.
+     */
+    public Transfer() {
+        this.id = UUID.fromString(getSelf().path().name());
+    }
 
     public Transfer(UUID id) {
         this.id = id;
@@ -49,11 +110,21 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
         return id.toString();
     }
 
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        saveSnapshotInterval = getContext().getSystem().settings().config().getInt(SAVE_SNAPSHOT_INTERVAL_SETTING);
+    }
+
     @Override
     public Receive createReceiveRecover() {
         return receiveBuilder()
-            .match(Event.class, e -> transfer = e.mutate(this.transfer, getDeliverySnapshot()))
-            .match(SnapshotOffer.class, ss -> transfer = (TransferState) ss.snapshot())
+            .match(Event.class, this::recover)
+            .match(SnapshotOffer.class, ss -> {
+                final TransferSnapshot snapshot = (TransferSnapshot) ss.snapshot();
+                transfer = snapshot.getState();
+                setDeliverySnapshot(snapshot.getDeliverySnapshot());
+            })
             .build();
     }
 
@@ -65,14 +136,25 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
             .match(MakeTransferCommand.class, this::reactOn)
             .match(MoneyBlockedSuccessfully.class, this::reactOn)
             .match(InsufficientBalanceToBlock.class, this::reactOn)
+            .match(TransferExpiredOnBlock.class, this::reactOn)
             .match(MoneyDepositedSuccessfully.class, this::reactOn)
+            .match(BalanceOverflowOnDeposit.class, this::reactOn)
             .match(TransferCompletedSuccessfully.class, this::reactOn)
-            .build();
+            .match(TransferForgottenSuccessfully.class, this::reactOn)
+            .match(AccountNotFoundForDelivery.class, this::reactOn)
+            .match(MoneyUnblockedSuccessfully.class, this::reactOn)
+            .match(SaveSnapshotSuccess.class, this::reactOn)
+            .match(SaveSnapshotFailure.class, this::reactOn)
+            .match(DeleteSnapshotsSuccess.class, this::reactOn)
+            .match(DeleteSnapshotsFailure.class, this::reactOn)
+            .build()
+            .orElse(passivationBehavior());
     }
 
     private void reactOn(RetrieveTransferCommand retrieveTransferCommand) {
         if (transfer == null) {
             getSender().tell(new TransferNotFoundResponse(id), getSelf());
+            passivate();
         } else {
             getSender().tell(new TransferSnapshotResponse(transfer), getSelf());
         }
@@ -87,12 +169,12 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
     }
 
     private void reactOn(MoneyBlockedSuccessfully cmd) {
-        persist(
+        persistEvent(
             new MoneyBlocked(cmd.getDeliveryId()),
             event -> {
                 updateState(event);
                 confirmDelivery(event.getDeliveryId());
-                deliver(toTargetAccount(), dId ->
+                deliverToAccount(transfer.getTargetAccountId(), dId ->
                     new DepositMoney(dId, id, transfer.getSourceAccountId(), transfer.getAmount())
                 );
             }
@@ -100,7 +182,7 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
     }
 
     private void reactOn(InsufficientBalanceToBlock cmd) {
-        persist(
+        persistEvent(
             new MoneyBlockFailed(cmd.getDeliveryId(), LOW_BALANCE),
             event -> {
                 updateState(event);
@@ -113,44 +195,99 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
         );
     }
 
+    private void reactOn(TransferExpiredOnBlock cmd) {
+        if (transfer == null || transfer.getStatus() != IN_PROGRESS) {
+            // the reply to a late redelivery of the finished transfer
+            return;
+        }
+        persistEvent(
+            new MoneyBlockFailed(cmd.getDeliveryId(), EXPIRED),
+            event -> {
+                updateState(event);
+                confirmDelivery(event.getDeliveryId());
+                if (initiator != null) {
+                    initiator.tell(new Message.TransferResponse(transfer), getSelf());
+                }
+            }
+        );
+    }
+
     private void reactOn(MoneyDepositedSuccessfully cmd) {
-        persist(
+        if (isDeposit()) {
+            persistEvent(
+                new TransferCompleted(cmd.getDeliveryId()),
+                event -> {
+                    updateState(event);
+                    confirmDelivery(event.getDeliveryId());
+                    if (initiator != null) {
+                        initiator.tell(new Message.TransferResponse(transfer), getSelf());
+                    }
+                }
+            );
+            return;
+        }
+        persistEvent(
             new MoneyDeposited(cmd.getDeliveryId()),
             event -> {
                 updateState(event);
                 confirmDelivery(event.getDeliveryId());
-                deliver(toSourceAccount(), dId ->
+                deliverToAccount(transfer.getSourceAccountId(), dId ->
                     new CompleteTransfer(dId, transfer.getId())
                 );
             }
         );
     }
 
+    private void reactOn(BalanceOverflowOnDeposit cmd) {
+        if (transfer == null || transfer.getStatus() != IN_PROGRESS) {
+            return;
+        }
+        persistEvent(
+            new MoneyDepositFailed(cmd.getDeliveryId(), BALANCE_OVERFLOW),
+            event -> {
+                updateState(event);
+                confirmDelivery(event.getDeliveryId());
+                if (!isDeposit()) {
+                    deliverToAccount(transfer.getSourceAccountId(), dId -> new UnblockMoney(dId, id));
+                } else if (initiator != null) {
+                    initiator.tell(new Message.TransferResponse(transfer), getSelf());
+                }
+            }
+        );
+    }
+
     private void reactOn(MakeTransferCommand cmd) {
         if (transfer != null) {
             getSender().tell(new TransferHasAlreadyStarted(id), getSelf());
         } else {
-            persist(
+            persistEvent(
                 new TransferStarted(
                     cmd.getId(), cmd.getSourceAccountId(), cmd.getTargetAccountId(), cmd.getAmount()
                 ),
                 event -> {
                     initiator = getSender();
                     updateState(event);
-                    deliver(toSourceAccount(), dId ->
-                        new BlockMoney(dId, cmd.getId(), cmd.getTargetAccountId(), cmd.getAmount())
-                    );
+                    if (isDeposit()) {
+                        deliverToAccount(cmd.getTargetAccountId(), dId ->
+                            new DepositMoney(dId, cmd.getId(), cmd.getSourceAccountId(), cmd.getAmount())
+                        );
+                    } else {
+                        final Date startedAt = new Date();
+                        deliverToAccount(cmd.getSourceAccountId(), dId ->
+                            new BlockMoney(dId, cmd.getId(), cmd.getTargetAccountId(), cmd.getAmount(), startedAt)
+                        );
+                    }
                 }
             );
         }
     }
 
     private void reactOn(TransferCompletedSuccessfully cmd) {
-        persist(
+        persistEvent(
             new TransferCompleted(cmd.getDeliveryId()),
             event -> {
                 updateState(event);
-                confirmDelivery(event.getDeliveryId());
+                final boolean confirmed = confirmDelivery(event.getDeliveryId());
                 if (initiator != null) {
                     // if it's reincarnated TransferActor just let to fail with request timeout
                     initiator.tell(
@@ -158,28 +295,128 @@ public class Transfer extends AbstractPersistentActorWithAtLeastOnceDelivery {
                         getSelf()
                     );
                 }
+                if (confirmed) {
+                    // a duplicate of the confirmation doesn't start one more forgetting
+                    deliverToAccount(transfer.getSourceAccountId(), dId -> new ForgetTransfer(dId, id));
+                }
             }
         );
     }
 
-    private ActorSelection toSourceAccount() {
-        return toAccount(transfer.getSourceAccountId());
+    private void reactOn(TransferForgottenSuccessfully cmd) {
+        persistEvent(
+            new TransferForgotten(cmd.getDeliveryId()),
+            event -> {
+                updateState(event);
+                confirmDelivery(event.getDeliveryId());
+            }
+        );
     }
 
-    private ActorSelection toTargetAccount() {
-        return toAccount(transfer.getTargetAccountId());
+    private void reactOn(AccountNotFoundForDelivery cmd) {
+        if (transfer == null || transfer.getStatus() != IN_PROGRESS) {
+            return;
+        }
+        final boolean moneyBlocked = !isDeposit() && cmd.getAccountId().equals(transfer.getTargetAccountId());
+        final Event failure = transfer.getSourceAccountId().equals(cmd.getAccountId()) ?
+            new MoneyBlockFailed(cmd.getDeliveryId(), ACCOUNT_NOT_FOUND) :
+            new MoneyDepositFailed(cmd.getDeliveryId(), moneyBlocked ? IN_PROGRESS : ACCOUNT_NOT_FOUND);
+        persistEvent(
+            failure,
+            event -> {
+                updateState(event);
+                confirmDelivery(cmd.getDeliveryId());
+                if (moneyBlocked) {
+                    deliverToAccount(transfer.getSourceAccountId(), dId -> new UnblockMoney(dId, id));
+                } else if (initiator != null) {
+                    initiator.tell(new Message.AccountNotFoundResponse(cmd.getAccountId()), getSelf());
+                }
+            }
+        );
     }
 
-    private void updateState(Event event) {
-        transfer = event.mutate(transfer, getDeliverySnapshot());
+    private void reactOn(MoneyUnblockedSuccessfully cmd) {
+        persistEvent(
+            new MoneyUnblocked(cmd.getDeliveryId()),
+            event -> {
+                updateState(event);
+                confirmDelivery(event.getDeliveryId());
+                if (initiator == null) {
+                    return;
+                }
+                if (transfer.getStatus() == ACCOUNT_NOT_FOUND) {
+                    initiator.tell(new Message.AccountNotFoundResponse(transfer.getTargetAccountId()), getSelf());
+                } else {
+                    initiator.tell(new Message.TransferResponse(transfer), getSelf());
+                }
+            }
+        );
+    }
+
+    private void reactOn(SaveSnapshotSuccess saveSnapshotSuccess) {
+        getContext().getSystem().log().debug("Snapshot of the transfer {} has been saved", id);
+        deleteSnapshots(SnapshotSelectionCriteria.create(saveSnapshotSuccess.metadata().sequenceNr() - 1, Long.MAX_VALUE));
+    }
+
+    private void reactOn(SaveSnapshotFailure saveSnapshotFailure) {
+        getContext().getSystem().log().error("Snapshot of the transfer {} has not been saved", id);
+    }
+
+    private void reactOn(DeleteSnapshotsSuccess deleteSnapshotsSuccess) {
+        getContext().getSystem().log().debug(
+            "Snapshots of the transfer {} up to {} have been deleted", id, deleteSnapshotsSuccess.criteria().maxSequenceNr()
+        );
     }
 
-    private ActorSelection toAccount(UUID id) {
-        return getContext().actorSelection(getAccountPathPrefix() + id.toString());
+    private void reactOn(DeleteSnapshotsFailure deleteSnapshotsFailure) {
+        getContext().getSystem().log().warning(
+            "Snapshots of the transfer {} up to {} have not been deleted: {}",
+            id, deleteSnapshotsFailure.criteria().maxSequenceNr(), deleteSnapshotsFailure.cause().getMessage()
+        );
+    }
+
+    /**
+     * Applies the recovered event, the deliveries confirmed by the events after the snapshot are confirmed again.
+     */
+    private void recover(Event event) {
+        transfer = event.mutate(transfer);
+        if (event instanceof Notification) {
+            confirmDelivery(((Notification) event).getDeliveryId());
+        }
     }
 
-    private String getAccountPathPrefix() {
-        return getContext().getSystem().settings().config().getString(ACCOUNT_ACTOR_PATH_SETTING);
+    /**
+     * Persists the event and saves a snapshot after the handler if the event finishes the transfer or the interval
+     * is reached, the snapshot includes the deliveries confirmed and started by the handler.
+     */
+    private <E extends Event> void persistEvent(E event, Procedure<E> handler) {
+        persist(tags.tag(EventTags.TRANSFER, persistenceId(), event), tagged -> {
+            final boolean inProgress = transfer == null || transfer.getStatus() == IN_PROGRESS;
+            handler.apply(event);
+            final boolean finished = inProgress && transfer.getStatus() != IN_PROGRESS;
+            if (finished || lastSequenceNr() % saveSnapshotInterval == 0) {
+                saveSnapshot(new TransferSnapshot(transfer, getDeliverySnapshot()));
+            }
+        });
+    }
+
+    private boolean isDeposit() {
+        return CASH_IN_ACCOUNT_ID.equals(transfer.getSourceAccountId());
+    }
+
+    private void updateState(Event event) {
+        transfer = event.mutate(transfer);
+    }
+
+    /**
+     * Delivers the message to the account through the manager owning the account (or the shard region),
+     * so the account is found (or recovered) wherever it's placed.
+     */
+    private void deliverToAccount(UUID accountId, Function<Long, Object> message) {
+        deliver(
+            AccountManagers.selectAccountOwner(getContext(), accountId),
+            dId -> new AccountEnvelope(accountId, message.apply(dId))
+        );
     }
 
 }
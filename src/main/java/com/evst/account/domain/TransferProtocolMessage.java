@@ -4,7 +4,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Value;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.util.Date;
 import java.util.UUID;
 
 /**
@@ -15,6 +15,28 @@ import java.util.UUID;
  */
 abstract class TransferProtocolMessage implements Serializable {
 
+    /**
+     * Envelope to send a message to the account through the {@link AccountManager} owning the account
+     * or through the account shard region. The message is unwrapped and forwarded to the account
+     * keeping the original sender.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class AccountEnvelope extends TransferProtocolMessage {
+        private UUID accountId;
+        private Object message;
+    }
+
+    /**
+     * Envelope to send a message to the transfer. Used to route messages to the sharded transfer entities.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class TransferEnvelope extends TransferProtocolMessage {
+        private UUID transferId;
+        private Object message;
+    }
+
     /**
      * First message from the {@link AccountManager} to check readiness of all participants:
      * source and target accounts (check for existence) and transfer (check that has not been created yet).
@@ -47,6 +69,17 @@ abstract class TransferProtocolMessage implements Serializable {
         private UUID accountId;
     }
 
+    /**
+     * Notification from the account that it doesn't exist, sent as a reply to the messages delivered
+     * from the transfer ({@link BlockMoney}, {@link DepositMoney}, {@link UnblockMoney} and {@link CompleteTransfer}).
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class AccountNotFoundForDelivery extends TransferProtocolMessage {
+        private Long deliveryId;
+        private UUID accountId;
+    }
+
     /**
      * Notification from transfer that it's ready to start,
      * sent as a reply to {@link TransferReadyCheck} message from transfer to account manager.
@@ -76,7 +109,12 @@ abstract class TransferProtocolMessage implements Serializable {
         private Long deliveryId;
         private UUID transferId;
         private UUID targetAccountId;
-        private BigDecimal amount;
+        private Money amount;
+
+        /**
+         * Time when the transfer has been started.
+         */
+        private Date startedAt;
     }
 
     /**
@@ -99,12 +137,45 @@ abstract class TransferProtocolMessage implements Serializable {
         private Long deliveryId;
     }
 
+    /**
+     * Notification from the source account that money is not blocked because the transfer has been started
+     * before the newest completed transfer expired by the account, so it can be a late redelivery of an expired
+     * transfer. Sent as a reply to {@link BlockMoney} message from source account to transfer.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class TransferExpiredOnBlock extends TransferProtocolMessage {
+        private Long deliveryId;
+    }
+
+    /**
+     * Compensating command from the transfer to source account to return the blocked money back
+     * when the money can not be deposited to the target account.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class UnblockMoney extends TransferProtocolMessage {
+        private Long deliveryId;
+        private UUID transferId;
+    }
+
+    /**
+     * Notification from the source account that blocked money has been returned to the balance,
+     * sent as a reply to {@link UnblockMoney} message from source account to transfer.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class MoneyUnblockedSuccessfully extends TransferProtocolMessage {
+        private Long deliveryId;
+    }
+
     /**
      * Command from the transfer to target account to deposit specified amount of money.
      *
-     * At the moment there is no other notifications to it instead of {@link MoneyDepositedSuccessfully}.
-     * It's so for simplicity, but business logic can be supported here. For example to support blocked account
-     * we can add compensation operation for source account to get blocked money back.
+     * At the moment there is no other notifications to it instead of {@link MoneyDepositedSuccessfully} and
+     * {@link BalanceOverflowOnDeposit}. It's so for simplicity, but business logic can be supported here.
+     * For example to support blocked account we can add compensation operation for source account to get
+     * blocked money back.
      */
     @Value
     @EqualsAndHashCode(callSuper = false)
@@ -112,7 +183,7 @@ abstract class TransferProtocolMessage implements Serializable {
         private Long deliveryId;
         private UUID transferId;
         private UUID sourceAccount;
-        private BigDecimal amount;
+        private Money amount;
     }
 
     /**
@@ -125,6 +196,16 @@ abstract class TransferProtocolMessage implements Serializable {
         private Long deliveryId;
     }
 
+    /**
+     * Notification from the target account that the deposit would overflow the balance,
+     * sent as a reply to {@link DepositMoney} message from target account to transfer.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class BalanceOverflowOnDeposit extends TransferProtocolMessage {
+        private Long deliveryId;
+    }
+
     /**
      * Command from the transfer to source account to complete transfer.
      */
@@ -145,4 +226,25 @@ abstract class TransferProtocolMessage implements Serializable {
         private Long deliveryId;
     }
 
+    /**
+     * Final command from the transfer to source account to stop watching the completed transfer, sent when
+     * all the other deliveries of the transfer are confirmed, so none of them can be redelivered after it.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class ForgetTransfer extends TransferProtocolMessage {
+        private Long deliveryId;
+        private UUID transferId;
+    }
+
+    /**
+     * Notification from the source account that the completed transfer isn't watched anymore,
+     * sent as a reply to {@link ForgetTransfer} message from source account to transfer.
+     */
+    @Value
+    @EqualsAndHashCode(callSuper = false)
+    static class TransferForgottenSuccessfully extends TransferProtocolMessage {
+        private Long deliveryId;
+    }
+
 }
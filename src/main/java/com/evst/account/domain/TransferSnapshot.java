@@ -0,0 +1,19 @@
+package com.evst.account.domain;
+
+import akka.persistence.AtLeastOnceDelivery.AtLeastOnceDeliverySnapshot;
+import lombok.Value;
+
+import java.io.Serializable;
+
+/**
+ * Persisted snapshot of the transfer actor: the state of the transfer and the deliveries to resend after
+ * a reincarnation. The deliveries are captured only when the snapshot is saved, so the events and the state
+ * read by the clients don't carry them.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Value
+class TransferSnapshot implements Serializable {
+    private TransferState state;
+    private AtLeastOnceDeliverySnapshot deliverySnapshot;
+}
@@ -1,6 +1,5 @@
 package com.evst.account.domain;
 
-import akka.persistence.AtLeastOnceDelivery.AtLeastOnceDeliverySnapshot;
 import lombok.AccessLevel;
 import lombok.AllArgsConstructor;
 import lombok.EqualsAndHashCode;
@@ -8,9 +7,11 @@ import lombok.Getter;
 import lombok.experimental.FieldDefaults;
 
 import java.io.Serializable;
-import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Optional;
 import java.util.UUID;
 
+import static com.evst.account.domain.TransferState.Status.ACCOUNT_NOT_FOUND;
 import static com.evst.account.domain.TransferState.Status.COMPLETED;
 import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
 import static com.google.common.base.Preconditions.checkArgument;
@@ -19,7 +20,8 @@ import static com.google.common.base.Preconditions.checkArgument;
  * Represents the state model of the transfer. It's immutable object,
  * the only way to get a new state is to apply an {@link Event} producing the next state.
  *
- * Transfer state also holds the state of the akka delivery snapshot {@link AtLeastOnceDeliverySnapshot}.
+ * The state is the value the transfer is read as, the deliveries of the transfer actor aren't part of it.
+ * They are kept by the actor and saved next to the state only in its snapshots (see {@link TransferSnapshot}).
  *
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
  */
@@ -32,14 +34,9 @@ public class TransferState implements Serializable {
     private final UUID id;
     private final UUID sourceAccountId;
     private final UUID targetAccountId;
-    private final BigDecimal amount;
+    private final Money amount;
     private final Status status;
 
-    /**
-     * Adds delivery state to resend pended messages after a reincarnation.
-     */
-    private final AtLeastOnceDeliverySnapshot deliverySnapshot;
-
     /**
      * Transfer status.
      */
@@ -47,7 +44,10 @@ public class TransferState implements Serializable {
 
         IN_PROGRESS("in_progress"),
         COMPLETED("completed"),
-        LOW_BALANCE("low_balance");
+        LOW_BALANCE("low_balance"),
+        ACCOUNT_NOT_FOUND("account_not_found"),
+        BALANCE_OVERFLOW("balance_overflow"),
+        EXPIRED("expired");
 
         private String code;
 
@@ -58,12 +58,22 @@ public class TransferState implements Serializable {
         public String getCode() {
             return code;
         }
+
+        /**
+         * Finds the status by its code.
+         *
+         * @param code code of the status
+         * @return the status or nothing if the code is unknown
+         */
+        public static Optional<Status> fromCode(String code) {
+            return Arrays.stream(values()).filter(status -> status.code.equals(code)).findFirst();
+        }
     }
 
     /**
      * Event that can change a transfer state. Used to replay event sourced transfer state.
      */
-    interface Event extends Serializable {
+    public interface Event extends Serializable {
 
         /**
          * Mutate state applying the event. Produce new state.
@@ -71,7 +81,7 @@ public class TransferState implements Serializable {
          * @param state old state
          * @return state after applying the event.
          */
-        TransferState mutate(TransferState state, AtLeastOnceDeliverySnapshot deliverySnapshot);
+        TransferState mutate(TransferState state);
 
     }
 
@@ -79,18 +89,19 @@ public class TransferState implements Serializable {
      * Indicates that transfer has been started. Initialize the state of the just created transfer.
      */
     @AllArgsConstructor
+    @Getter(AccessLevel.PACKAGE)
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     static final class TransferStarted implements Event, Serializable {
 
         private UUID id;
         private UUID sourceAccountId;
         private UUID targetAccountId;
-        private BigDecimal amount;
+        private Money amount;
 
         @Override
-        public TransferState mutate(TransferState state, AtLeastOnceDeliverySnapshot deliverySnapshot) {
+        public TransferState mutate(TransferState state) {
             checkArgument(state == null, "Start event can not be applied for already started transfer");
-            return new TransferState(id, sourceAccountId, targetAccountId, amount, IN_PROGRESS, deliverySnapshot);
+            return new TransferState(id, sourceAccountId, targetAccountId, amount, IN_PROGRESS);
         }
     }
 
@@ -104,11 +115,9 @@ public class TransferState implements Serializable {
         @Getter private Long deliveryId;
 
         @Override
-        public TransferState mutate(TransferState state, AtLeastOnceDeliverySnapshot deliverySnapshot) {
-            return new TransferState(
-                state.id, state.sourceAccountId, state.targetAccountId, state.amount,
-                state.status, deliverySnapshot
-            );
+        public TransferState mutate(TransferState state) {
+            // the notification only confirms a delivery, which isn't a part of the state
+            return state;
         }
     }
 
@@ -125,6 +134,7 @@ public class TransferState implements Serializable {
     /**
      * Notification about failed money block operation from the source account of the transfer.
      */
+    @Getter(AccessLevel.PACKAGE)
     @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
     static final class MoneyBlockFailed extends Notification {
 
@@ -136,10 +146,9 @@ public class TransferState implements Serializable {
         }
 
         @Override
-        public TransferState mutate(TransferState state, AtLeastOnceDeliverySnapshot deliverySnapshot) {
+        public TransferState mutate(TransferState state) {
             return new TransferState(
-                state.id, state.sourceAccountId, state.targetAccountId, state.amount,
-                status, deliverySnapshot
+                state.id, state.sourceAccountId, state.targetAccountId, state.amount, status
             );
         }
     }
@@ -154,6 +163,49 @@ public class TransferState implements Serializable {
         }
     }
 
+    /**
+     * Notification about failed deposit operation from the target account of the transfer.
+     * If the money has been blocked on the source account it stays in progress until the money is unblocked.
+     */
+    @Getter(AccessLevel.PACKAGE)
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static final class MoneyDepositFailed extends Notification {
+
+        private Status status;
+
+        MoneyDepositFailed(Long deliveryId, Status status) {
+            super(deliveryId);
+            this.status = status;
+        }
+
+        @Override
+        public TransferState mutate(TransferState state) {
+            return new TransferState(
+                state.id, state.sourceAccountId, state.targetAccountId, state.amount, status
+            );
+        }
+    }
+
+    /**
+     * Notification about the money returned to the source account after failed deposit. The transfer fails
+     * with the status of the failed deposit, it's still in progress if the target account hasn't been found.
+     */
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static final class MoneyUnblocked extends Notification {
+
+        MoneyUnblocked(Long deliveryId) {
+            super(deliveryId);
+        }
+
+        @Override
+        public TransferState mutate(TransferState state) {
+            return new TransferState(
+                state.id, state.sourceAccountId, state.targetAccountId, state.amount,
+                state.status == IN_PROGRESS ? ACCOUNT_NOT_FOUND : state.status
+            );
+        }
+    }
+
     /**
      * Notification about successful deposit operation from the target account of the transfer.
      */
@@ -165,12 +217,22 @@ public class TransferState implements Serializable {
         }
 
         @Override
-        public TransferState mutate(TransferState state, AtLeastOnceDeliverySnapshot deliverySnapshot) {
+        public TransferState mutate(TransferState state) {
             return new TransferState(
-                state.id, state.sourceAccountId, state.targetAccountId, state.amount,
-                COMPLETED, deliverySnapshot
+                state.id, state.sourceAccountId, state.targetAccountId, state.amount, COMPLETED
             );
         }
     }
 
+    /**
+     * Notification from the source account that the completed transfer has been forgotten,
+     * it changes only the deliveries of the finished transfer.
+     */
+    @FieldDefaults(makeFinal = true, level = AccessLevel.PRIVATE)
+    static final class TransferForgotten extends Notification {
+        TransferForgotten(Long deliveryId) {
+            super(deliveryId);
+        }
+    }
+
 }
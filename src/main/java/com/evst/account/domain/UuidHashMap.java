@@ -0,0 +1,201 @@
+package com.evst.account.domain;
+
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Mutable hash map keyed by the identifiers, it keeps a key as its two longs in one array next to the keys of the
+ * neighbouring slots instead of a {@link UUID} object and an entry node per key. The slots are open addressed
+ * with the linear probing, a removed entry is filled by the following entries of its probe sequence, so there are
+ * no tombstones and a lookup stops at the first empty slot. Null values aren't supported, an empty slot has
+ * no value.
+ *
+ * The map isn't thread safe, it's meant for the state confined to an actor.
+ *
+ * @param <V> type of the values
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class UuidHashMap<V> {
+
+    private static final int MIN_CAPACITY = 4;
+    private static final int MAX_CAPACITY = 1 << 30;
+    /**
+     * 2^64 divided by the golden ratio, the multiplication spreads the bits of the key over the high bits
+     * the slot is taken from.
+     */
+    private static final long HASH_MULTIPLIER = 0x9E3779B97F4A7C15L;
+
+    /**
+     * Most and least significant bits of the key of slot <code>i</code> at <code>2 * i</code> and
+     * <code>2 * i + 1</code>.
+     */
+    private long[] keys;
+    private Object[] values;
+    private int size;
+    private int resizeThreshold;
+    private int shift;
+
+    /**
+     * Creates the map holding the expected number of the entries without a resize.
+     *
+     * @param expectedSize expected number of the entries
+     */
+    UuidHashMap(int expectedSize) {
+        checkArgument(expectedSize >= 0, "Expected size %s is negative", expectedSize);
+        int capacity = MIN_CAPACITY;
+        while (capacity < MAX_CAPACITY && thresholdOf(capacity) < expectedSize) {
+            capacity <<= 1;
+        }
+        allocate(capacity);
+    }
+
+    V get(UUID key) {
+        return get(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    }
+
+    /**
+     * Finds the value of the key given by its bits.
+     *
+     * @param msb most significant bits of the key
+     * @param lsb least significant bits of the key
+     * @return the value or <code>null</code> if there is no such key
+     */
+    @SuppressWarnings("unchecked")
+    V get(long msb, long lsb) {
+        final int slot = find(msb, lsb);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    boolean containsKey(UUID key) {
+        return find(key.getMostSignificantBits(), key.getLeastSignificantBits()) >= 0;
+    }
+
+    /**
+     * Puts the entry.
+     *
+     * @param key key of the entry
+     * @param value value of the entry
+     * @return the previous value of the key or <code>null</code> if it's a new key
+     */
+    @SuppressWarnings("unchecked")
+    V put(UUID key, V value) {
+        checkArgument(value != null, "Null values aren't supported");
+        final long msb = key.getMostSignificantBits();
+        final long lsb = key.getLeastSignificantBits();
+        final int slot = find(msb, lsb);
+        if (slot >= 0) {
+            final V previous = (V) values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        insert(-slot - 1, msb, lsb, value);
+        if (++size > resizeThreshold) {
+            resize();
+        }
+        return null;
+    }
+
+    /**
+     * Removes the entry.
+     *
+     * @param key key of the entry
+     * @return the removed value or <code>null</code> if there is no such key
+     */
+    @SuppressWarnings("unchecked")
+    V remove(UUID key) {
+        final int slot = find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+        if (slot < 0) {
+            return null;
+        }
+        final V previous = (V) values[slot];
+        removeAt(slot);
+        size--;
+        return previous;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Finds the slot of the key.
+     *
+     * @return the slot of the key or <code>-slot - 1</code> of the empty slot ending its probe sequence
+     */
+    private int find(long msb, long lsb) {
+        final int mask = values.length - 1;
+        int slot = home(msb, lsb);
+        while (values[slot] != null) {
+            if (keys[2 * slot] == msb && keys[2 * slot + 1] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -slot - 1;
+    }
+
+    private int home(long msb, long lsb) {
+        return (int) (((msb * HASH_MULTIPLIER) ^ lsb) * HASH_MULTIPLIER >>> shift);
+    }
+
+    private void insert(int slot, long msb, long lsb, Object value) {
+        keys[2 * slot] = msb;
+        keys[2 * slot + 1] = lsb;
+        values[slot] = value;
+    }
+
+    /**
+     * Empties the slot and moves back the following entries of the cluster which can't be found past the hole.
+     * An entry can fill the hole if the hole is between its home slot and its current slot.
+     */
+    private void removeAt(int slot) {
+        final int mask = values.length - 1;
+        int hole = slot;
+        int next = (slot + 1) & mask;
+        while (values[next] != null) {
+            final int home = home(keys[2 * next], keys[2 * next + 1]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                insert(hole, keys[2 * next], keys[2 * next + 1], values[next]);
+                hole = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[hole] = null;
+    }
+
+    private void resize() {
+        if (values.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Map can't hold more than " + resizeThreshold + " entries");
+        }
+        final long[] oldKeys = keys;
+        final Object[] oldValues = values;
+        allocate(oldValues.length << 1);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                final long msb = oldKeys[2 * i];
+                final long lsb = oldKeys[2 * i + 1];
+                insert(-find(msb, lsb) - 1, msb, lsb, oldValues[i]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[2 * capacity];
+        values = new Object[capacity];
+        resizeThreshold = thresholdOf(capacity);
+        shift = Long.numberOfLeadingZeros(capacity) + 1;
+    }
+
+    /**
+     * Keeps the load factor under 3/4, the probe sequences stay short with the mixed hash.
+     */
+    private static int thresholdOf(int capacity) {
+        return capacity / 4 * 3;
+    }
+
+}
@@ -0,0 +1,209 @@
+package com.evst.account.journal;
+
+import akka.Done;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.Terminated;
+import akka.dispatch.Futures;
+import akka.japi.pf.ReceiveBuilder;
+import akka.pattern.Patterns;
+import akka.persistence.AtomicWrite;
+import akka.persistence.JournalProtocol;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.Tagged;
+import akka.persistence.journal.japi.AsyncWriteJournal;
+import akka.persistence.journal.leveldb.LeveldbJournal;
+import com.typesafe.config.Config;
+import scala.PartialFunction;
+import scala.concurrent.Future;
+import scala.concurrent.duration.FiniteDuration;
+import scala.runtime.BoxedUnit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import static scala.collection.JavaConverters.asScalaSet;
+import static scala.collection.JavaConverters.seqAsJavaList;
+import static scala.collection.JavaConverters.setAsJavaSet;
+
+/**
+ * Journal plugin keeping the messages in the memory of the journal actor, nothing is written to the disk and all
+ * the messages are lost when the actor system stops. It's meant for the tests, the load tests and the stateless
+ * demo nodes.
+ *
+ * The messages of a persistence identifier are kept in a {@link SequenceIndex} ordered by the sequence numbers
+ * and the tagged events in a log per tag, the offset of an event is its position in the log. The tag and
+ * the identifiers queries of the leveldb journal protocol are served, so the {@link com.evst.account.query.ReadJournal}
+ * works with this journal as well.
+ *
+ * Akka runs the replays outside of the journal actor, concurrently with the writes, so the messages are changed
+ * and read under the lock of {@link #messages}. A replay copies its messages under the lock and passes them
+ * to the callback without it. The tag logs are used only inside the journal actor.
+ *
+ * The replies to the writes and the replays can be delayed by <code>write-latency</code> and
+ * <code>replay-latency</code> to emulate a storage device. {@link #RESET} drops all the messages,
+ * it's answered with {@link Done}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class InMemoryJournal extends AsyncWriteJournal {
+
+    /**
+     * Drops all the messages of the journal.
+     */
+    public static final Object RESET = "reset";
+
+    private final Duration writeLatency;
+    private final Duration replayLatency;
+    /**
+     * Messages of the persistence identifiers, guarded by the lock of the map.
+     */
+    private final Map<String, SequenceIndex<PersistentRepr>> messages = new HashMap<>();
+    private final Map<String, List<PersistentRepr>> tags = new HashMap<>();
+    private final Set<ActorRef> persistenceIdsSubscribers = new HashSet<>();
+
+    /**
+     * Creates the journal, called by Akka with the configuration of the plugin.
+     *
+     * @param config configuration of the plugin
+     */
+    public InMemoryJournal(Config config) {
+        this.writeLatency = config.getDuration("write-latency");
+        this.replayLatency = config.getDuration("replay-latency");
+    }
+
+    @Override
+    public PartialFunction<Object, BoxedUnit> receivePluginInternal() {
+        final AbstractActor.Receive receive = ReceiveBuilder.create()
+            .match(LeveldbJournal.ReplayTaggedMessages.class, this::replayTagged)
+            .matchEquals(LeveldbJournal.SubscribeAllPersistenceIds$.MODULE$, subscribe -> {
+                persistenceIdsSubscribers.add(sender());
+                context().watch(sender());
+                final Set<String> persistenceIds;
+                synchronized (messages) {
+                    persistenceIds = new HashSet<>(messages.keySet());
+                }
+                sender().tell(new LeveldbJournal.CurrentPersistenceIds(asScalaSet(persistenceIds).<String>toSet()), self());
+            })
+            .match(Terminated.class, terminated -> persistenceIdsSubscribers.remove(terminated.actor()))
+            .matchEquals(RESET, reset -> {
+                synchronized (messages) {
+                    messages.clear();
+                }
+                tags.clear();
+                sender().tell(Done.getInstance(), self());
+            })
+            .build();
+        return receive.onMessage();
+    }
+
+    @Override
+    public Future<Iterable<Optional<Exception>>> doAsyncWriteMessages(Iterable<AtomicWrite> writes) {
+        final List<Optional<Exception>> results = new ArrayList<>();
+        for (AtomicWrite write : writes) {
+            final List<PersistentRepr> untagged = new ArrayList<>();
+            for (PersistentRepr message : seqAsJavaList(write.payload())) {
+                untagged.add(untagged(message));
+            }
+            synchronized (messages) {
+                final SequenceIndex<PersistentRepr> log = messagesOf(write.persistenceId());
+                for (PersistentRepr message : untagged) {
+                    log.add(message.sequenceNr(), message);
+                }
+            }
+            results.add(Optional.empty());
+        }
+        return delayed(writeLatency, results);
+    }
+
+    @Override
+    public Future<Void> doAsyncDeleteMessagesTo(String persistenceId, long toSequenceNr) {
+        synchronized (messages) {
+            messagesOf(persistenceId).deleteTo(toSequenceNr);
+        }
+        return delayed(writeLatency, null);
+    }
+
+    @Override
+    public Future<Void> doAsyncReplayMessages(String persistenceId, long fromSequenceNr, long toSequenceNr, long max,
+                                              Consumer<PersistentRepr> replayCallback) {
+        final List<PersistentRepr> replayed;
+        synchronized (messages) {
+            final SequenceIndex<PersistentRepr> log = messages.get(persistenceId);
+            replayed = log == null ? Collections.emptyList() : log.valuesBetween(fromSequenceNr, toSequenceNr, max);
+        }
+        replayed.forEach(replayCallback);
+        return delayed(replayLatency, null);
+    }
+
+    @Override
+    public Future<Long> doAsyncReadHighestSequenceNr(String persistenceId, long fromSequenceNr) {
+        synchronized (messages) {
+            final SequenceIndex<PersistentRepr> log = messages.get(persistenceId);
+            return Futures.successful(log == null ? 0L : log.getHighestSequenceNr());
+        }
+    }
+
+    /**
+     * Replays the events of the tag after the offset the same way the leveldb journal does.
+     */
+    private void replayTagged(LeveldbJournal.ReplayTaggedMessages replay) {
+        final List<PersistentRepr> events = tags.getOrDefault(replay.tag(), Collections.emptyList());
+        final long highestOffset = events.size();
+        final long from = Math.min(Math.max(replay.fromSequenceNr(), 0), highestOffset);
+        final long to = Math.min(replay.toSequenceNr(), highestOffset);
+        for (long offset = from + 1, sent = 0; offset <= to && sent < replay.max(); offset++, sent++) {
+            replay.replyTo().tell(
+                new LeveldbJournal.ReplayedTaggedMessage(events.get((int) offset - 1), replay.tag(), offset), ActorRef.noSender()
+            );
+        }
+        replay.replyTo().tell(new JournalProtocol.RecoverySuccess(highestOffset), self());
+    }
+
+    /**
+     * Appends the tagged events to the logs of their tags and drops the tags.
+     */
+    private PersistentRepr untagged(PersistentRepr message) {
+        if (!(message.payload() instanceof Tagged)) {
+            return message;
+        }
+        final Tagged tagged = (Tagged) message.payload();
+        final PersistentRepr untagged = message.withPayload(tagged.payload());
+        for (String tag : setAsJavaSet(tagged.tags())) {
+            tags.computeIfAbsent(tag, key -> new ArrayList<>()).add(untagged);
+        }
+        return untagged;
+    }
+
+    /**
+     * Finds or creates the messages of the persistence identifier, the lock of {@link #messages} has to be held.
+     */
+    private SequenceIndex<PersistentRepr> messagesOf(String persistenceId) {
+        SequenceIndex<PersistentRepr> log = messages.get(persistenceId);
+        if (log == null) {
+            log = new SequenceIndex<>();
+            messages.put(persistenceId, log);
+            for (ActorRef subscriber : persistenceIdsSubscribers) {
+                subscriber.tell(new LeveldbJournal.PersistenceIdAdded(persistenceId), self());
+            }
+        }
+        return log;
+    }
+
+    private <T> Future<T> delayed(Duration latency, T result) {
+        return latency.isZero() ? Futures.successful(result) : Patterns.after(
+            FiniteDuration.create(latency.toNanos(), TimeUnit.NANOSECONDS), context().system().scheduler(),
+            context().dispatcher(), Futures.successful(result)
+        );
+    }
+
+}
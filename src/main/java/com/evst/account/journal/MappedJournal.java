@@ -0,0 +1,218 @@
+package com.evst.account.journal;
+
+import akka.actor.AbstractActor;
+import akka.actor.Cancellable;
+import akka.dispatch.Futures;
+import akka.japi.pf.ReceiveBuilder;
+import akka.persistence.AtomicWrite;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.Tagged;
+import akka.persistence.journal.japi.AsyncWriteJournal;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+import scala.PartialFunction;
+import scala.concurrent.Future;
+import scala.runtime.BoxedUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static scala.collection.JavaConverters.seqAsJavaList;
+
+/**
+ * Journal plugin storing the messages in the {@link SegmentedLog}, an append-only log of memory mapped files,
+ * with an in-memory {@link SequenceIndex} of each persistence identifier. The index is rebuilt by reading
+ * the log when the journal starts.
+ *
+ * The writes are flushed to the storage device according to the <code>fsync</code> setting: after each atomic
+ * write, after each batch of writes passed to the journal or each <code>fsync-interval</code>. Messages are
+ * deleted only logically, the space of the log is not reclaimed. The tags of the events are dropped, the events
+ * can't be queried by the tags.
+ *
+ * Akka runs the replays outside of the journal actor, concurrently with the writes, so the indexes are changed
+ * and read under the lock of {@link #indexes}. A replay copies the positions of its messages under the lock
+ * and reads the messages from the log without it.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MappedJournal extends AsyncWriteJournal {
+
+    private static final Object FSYNC = "fsync";
+
+    private final SegmentedLog log;
+    private final FsyncPolicy fsyncPolicy;
+    private final Duration fsyncInterval;
+    /**
+     * Indexes of the persistence identifiers, guarded by the lock of the map.
+     */
+    private final Map<String, SequenceIndex<Long>> indexes = new HashMap<>();
+    private final Serialization serialization = SerializationExtension.get(context().system());
+
+    private Cancellable fsyncTask;
+
+    /**
+     * Creates the journal, called by Akka with the configuration of the plugin.
+     *
+     * @param config configuration of the plugin
+     * @throws IOException if the log can't be opened
+     */
+    public MappedJournal(Config config) throws IOException {
+        this.log = new SegmentedLog(new File(config.getString("dir")), config.getBytes("segment-size"));
+        this.fsyncPolicy = FsyncPolicy.valueOf(config.getString("fsync").toUpperCase(Locale.ROOT));
+        this.fsyncInterval = config.getDuration("fsync-interval");
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        synchronized (indexes) {
+            log.recover(record -> {
+                if (record.getType() == SegmentedLog.DELETION) {
+                    indexOf(record.getPersistenceId()).deleteTo(record.getSequenceNr());
+                } else {
+                    indexOf(record.getPersistenceId()).add(record.getSequenceNr(), record.getPosition());
+                }
+            });
+        }
+        if (fsyncPolicy == FsyncPolicy.INTERVAL) {
+            fsyncTask = context().system().scheduler().schedule(
+                fsyncInterval, fsyncInterval, self(), FSYNC, context().dispatcher(), self()
+            );
+        }
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        if (fsyncTask != null) {
+            fsyncTask.cancel();
+        }
+        log.close();
+        super.postStop();
+    }
+
+    @Override
+    public PartialFunction<Object, BoxedUnit> receivePluginInternal() {
+        final AbstractActor.Receive receive = ReceiveBuilder.create()
+            .matchEquals(FSYNC, fsync -> log.force())
+            .build();
+        return receive.onMessage();
+    }
+
+    @Override
+    public Future<Iterable<Optional<Exception>>> doAsyncWriteMessages(Iterable<AtomicWrite> messages) {
+        final List<Optional<Exception>> results = new ArrayList<>();
+        try {
+            for (AtomicWrite write : messages) {
+                results.add(write(write));
+                if (fsyncPolicy == FsyncPolicy.WRITE) {
+                    log.force();
+                }
+            }
+            if (fsyncPolicy == FsyncPolicy.BATCH) {
+                log.force();
+            }
+        } catch (IOException e) {
+            return Futures.failed(e);
+        }
+        return Futures.successful(results);
+    }
+
+    @Override
+    public Future<Void> doAsyncDeleteMessagesTo(String persistenceId, long toSequenceNr) {
+        try {
+            synchronized (indexes) {
+                log.append(SegmentedLog.DELETION, persistenceId, toSequenceNr, new byte[0]);
+                indexOf(persistenceId).deleteTo(toSequenceNr);
+            }
+            if (fsyncPolicy != FsyncPolicy.INTERVAL) {
+                log.force();
+            }
+        } catch (IOException e) {
+            return Futures.failed(e);
+        }
+        return Futures.successful(null);
+    }
+
+    @Override
+    public Future<Void> doAsyncReplayMessages(String persistenceId, long fromSequenceNr, long toSequenceNr, long max,
+                                              Consumer<PersistentRepr> replayCallback) {
+        final List<Long> positions;
+        synchronized (indexes) {
+            final SequenceIndex<Long> index = indexes.get(persistenceId);
+            positions = index == null ? Collections.emptyList() : index.valuesBetween(fromSequenceNr, toSequenceNr, max);
+        }
+        for (long position : positions) {
+            replayCallback.accept(serialization.deserialize(log.payloadAt(position), PersistentRepr.class).get());
+        }
+        return Futures.successful(null);
+    }
+
+    @Override
+    public Future<Long> doAsyncReadHighestSequenceNr(String persistenceId, long fromSequenceNr) {
+        synchronized (indexes) {
+            final SequenceIndex<Long> index = indexes.get(persistenceId);
+            return Futures.successful(index == null ? 0L : index.getHighestSequenceNr());
+        }
+    }
+
+    /**
+     * Appends all the messages of the atomic write or nothing if any of them can't be serialized.
+     */
+    private Optional<Exception> write(AtomicWrite write) throws IOException {
+        final List<PersistentRepr> messages = seqAsJavaList(write.payload());
+        final List<byte[]> serialized = new ArrayList<>(messages.size());
+        try {
+            for (PersistentRepr message : messages) {
+                serialized.add(serialization.serialize(untagged(message)).get());
+            }
+            for (byte[] bytes : serialized) {
+                checkArgument(log.fits(write.persistenceId(), bytes), "Message of %s bytes doesn't fit a segment", bytes.length);
+            }
+        } catch (RuntimeException e) {
+            return Optional.of(e);
+        }
+        synchronized (indexes) {
+            final SequenceIndex<Long> index = indexOf(write.persistenceId());
+            for (int i = 0; i < messages.size(); i++) {
+                final long sequenceNr = messages.get(i).sequenceNr();
+                index.add(sequenceNr, log.append(SegmentedLog.MESSAGE, write.persistenceId(), sequenceNr, serialized.get(i)));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Drops the tags of the message, the journal doesn't index the events by the tags.
+     */
+    private static PersistentRepr untagged(PersistentRepr message) {
+        return message.payload() instanceof Tagged ? message.withPayload(((Tagged) message.payload()).payload()) : message;
+    }
+
+    /**
+     * Finds or creates the index of the persistence identifier, the lock of {@link #indexes} has to be held.
+     */
+    private SequenceIndex<Long> indexOf(String persistenceId) {
+        return indexes.computeIfAbsent(persistenceId, id -> new SequenceIndex<>());
+    }
+
+    /**
+     * When the appended messages are flushed to the storage device.
+     */
+    enum FsyncPolicy {
+        WRITE,
+        BATCH,
+        INTERVAL
+    }
+
+}
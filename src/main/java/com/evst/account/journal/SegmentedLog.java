@@ -0,0 +1,234 @@
+package com.evst.account.journal;
+
+import lombok.Value;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Append-only log of records split into segment files of the same size, each of them is mapped into memory.
+ * A record is <code>[body length][crc32 of the body][body]</code>, the body is
+ * <code>[type][persistence id length][persistence id][sequence number][payload]</code>.
+ * Unused space of a segment is filled with zeros, so the zero length marks the end of the segment.
+ *
+ * The position of a record is the number of the segment in the high 32 bits and the offset in the low ones.
+ * The log isn't thread safe, except {@link #payloadAt(long)}: a record can be read by another thread once
+ * its position has been published to it safely, e.g. under a lock held by the writer while appending.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class SegmentedLog implements Closeable {
+
+    /**
+     * Type of the record holding a persisted message.
+     */
+    static final byte MESSAGE = 1;
+
+    /**
+     * Type of the record holding a deletion of the messages up to the sequence number.
+     */
+    static final byte DELETION = 2;
+
+    private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES;
+    private static final int BODY_HEADER = Byte.BYTES + Short.BYTES + Long.BYTES;
+    private static final String SEGMENT_FORMAT = "segment-%010d.log";
+
+    private final File dir;
+    private final int segmentSize;
+    /**
+     * Segments by their numbers, new ones are added by the writer while the records are read by other threads.
+     */
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+
+    private MappedByteBuffer current;
+    private boolean dirty;
+
+    SegmentedLog(File dir, long segmentSize) throws IOException {
+        checkArgument(segmentSize > RECORD_HEADER && segmentSize <= Integer.MAX_VALUE, "Invalid segment size %s", segmentSize);
+        this.dir = dir;
+        this.segmentSize = (int) segmentSize;
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create the journal directory " + dir);
+        }
+        final String[] files = dir.list((d, name) -> name.startsWith("segment-"));
+        Arrays.sort(files);
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].equals(String.format(SEGMENT_FORMAT, i))) {
+                throw new IOException("Segment " + i + " of the journal " + dir + " is missing");
+            }
+            openSegment(i);
+        }
+        if (segments.isEmpty()) {
+            openSegment(0);
+        }
+        current = segments.get(segments.size() - 1);
+    }
+
+    /**
+     * Reads all the valid records, the writing is continued after the last of them.
+     * A record partially written by a crash is ignored and overwritten by the next append.
+     *
+     * @param consumer consumer of the records in the order of writing
+     */
+    void recover(Consumer<Record> consumer) {
+        for (int segment = 0; segment < segments.size(); segment++) {
+            final ByteBuffer buffer = segments.get(segment).duplicate();
+            buffer.position(0);
+            Record record = readAt(buffer, segment);
+            while (record != null) {
+                consumer.accept(record);
+                record = readAt(buffer, segment);
+            }
+            if (segment == segments.size() - 1) {
+                current.position(buffer.position());
+            }
+        }
+    }
+
+    /**
+     * Appends a record, a new segment is started if it doesn't fit the current one.
+     *
+     * @param type type of the record
+     * @param persistenceId persistence identifier
+     * @param sequenceNr sequence number
+     * @param payload payload of the record
+     * @return position of the record
+     * @throws IOException if a new segment can't be created
+     * @throws IllegalArgumentException if the record is bigger than a segment
+     */
+    long append(byte type, String persistenceId, long sequenceNr, byte[] payload) throws IOException {
+        final byte[] id = persistenceId.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = recordLength(id, payload) - RECORD_HEADER;
+        checkArgument(RECORD_HEADER + bodyLength <= segmentSize, "Record of %s bytes doesn't fit a segment", bodyLength);
+        if (current.remaining() < RECORD_HEADER + bodyLength) {
+            // the rest of the segment stays zero, it's the end mark
+            current.force();
+            openSegment(segments.size());
+            current = segments.get(segments.size() - 1);
+        }
+        final int offset = current.position();
+        current.position(offset + RECORD_HEADER);
+        current.put(type).putShort((short) id.length).put(id).putLong(sequenceNr).put(payload);
+        final CRC32 crc = new CRC32();
+        final ByteBuffer body = current.duplicate();
+        body.position(offset + RECORD_HEADER).limit(offset + RECORD_HEADER + bodyLength);
+        crc.update(body);
+        current.putInt(offset, bodyLength).putInt(offset + Integer.BYTES, (int) crc.getValue());
+        dirty = true;
+        return position(segments.size() - 1, offset);
+    }
+
+    /**
+     * Checks that the record is not bigger than a segment.
+     *
+     * @param persistenceId persistence identifier
+     * @param payload payload of the record
+     * @return <code>true</code> if the record can be appended
+     */
+    boolean fits(String persistenceId, byte[] payload) {
+        return recordLength(persistenceId.getBytes(StandardCharsets.UTF_8), payload) <= segmentSize;
+    }
+
+    /**
+     * Reads the payload of the record at the position.
+     *
+     * @param position position returned by {@link #append(byte, String, long, byte[])} or {@link #recover(Consumer)}
+     * @return payload of the record
+     */
+    byte[] payloadAt(long position) {
+        final ByteBuffer buffer = segments.get((int) (position >>> Integer.SIZE)).duplicate();
+        final int offset = (int) position;
+        final int bodyLength = buffer.getInt(offset);
+        final int idLength = buffer.getShort(offset + RECORD_HEADER + Byte.BYTES);
+        final byte[] payload = new byte[bodyLength - BODY_HEADER - idLength];
+        buffer.position(offset + RECORD_HEADER + BODY_HEADER + idLength);
+        buffer.get(payload);
+        return payload;
+    }
+
+    /**
+     * Flushes the records appended since the last call to the storage device.
+     */
+    void force() {
+        if (dirty) {
+            current.force();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public void close() {
+        // the mapped buffers stay valid after closing of the files, they are unmapped by the garbage collector
+        force();
+    }
+
+    private void openSegment(int number) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, String.format(SEGMENT_FORMAT, number)), "rw")) {
+            segments.add(file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+        }
+    }
+
+    private static int recordLength(byte[] id, byte[] payload) {
+        return RECORD_HEADER + BODY_HEADER + id.length + payload.length;
+    }
+
+    private static Record readAt(ByteBuffer buffer, int segment) {
+        if (!hasRecordAt(buffer)) {
+            return null;
+        }
+        final int offset = buffer.position();
+        final ByteBuffer body = buffer.duplicate();
+        body.position(offset + RECORD_HEADER);
+        final byte type = body.get();
+        final byte[] id = new byte[body.getShort()];
+        body.get(id);
+        final long sequenceNr = body.getLong();
+        buffer.position(offset + RECORD_HEADER + buffer.getInt(offset));
+        return new Record(type, new String(id, StandardCharsets.UTF_8), sequenceNr, position(segment, offset));
+    }
+
+    private static boolean hasRecordAt(ByteBuffer buffer) {
+        final int offset = buffer.position();
+        boolean valid = false;
+        if (buffer.remaining() >= RECORD_HEADER) {
+            final int bodyLength = buffer.getInt(offset);
+            if (bodyLength >= BODY_HEADER && bodyLength <= buffer.remaining() - RECORD_HEADER) {
+                final ByteBuffer body = buffer.duplicate();
+                body.position(offset + RECORD_HEADER).limit(offset + RECORD_HEADER + bodyLength);
+                final CRC32 crc = new CRC32();
+                crc.update(body);
+                valid = (int) crc.getValue() == buffer.getInt(offset + Integer.BYTES);
+            }
+        }
+        return valid;
+    }
+
+    private static long position(int segment, int offset) {
+        return (long) segment << Integer.SIZE | offset;
+    }
+
+    /**
+     * Record found by the recovery, without the payload.
+     */
+    @Value
+    static class Record {
+        private byte type;
+        private String persistenceId;
+        private long sequenceNr;
+        private long position;
+    }
+
+}
@@ -0,0 +1,110 @@
+package com.evst.account.journal;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Values of the messages of one persistence identifier ordered by the sequence numbers: the positions
+ * of the messages in the {@link SegmentedLog} or the messages themselves kept in the memory. Deleted messages
+ * are dropped from the index, the highest sequence number is kept after the deletion.
+ *
+ * @param <V> type of the values
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class SequenceIndex<V> {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] sequenceNrs = new long[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size;
+
+    @Getter private long highestSequenceNr;
+    @Getter private long deletedTo;
+
+    /**
+     * Adds the value of the message. Messages with the same or higher sequence numbers written before
+     * are replaced, they could be left by a failed write.
+     *
+     * @param sequenceNr sequence number of the message
+     * @param value value of the message
+     */
+    void add(long sequenceNr, V value) {
+        if (sequenceNr <= deletedTo) {
+            return;
+        }
+        while (size > 0 && sequenceNrs[size - 1] >= sequenceNr) {
+            values[--size] = null;
+        }
+        if (size == sequenceNrs.length) {
+            sequenceNrs = Arrays.copyOf(sequenceNrs, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        sequenceNrs[size] = sequenceNr;
+        values[size] = value;
+        size++;
+        highestSequenceNr = Math.max(highestSequenceNr, sequenceNr);
+    }
+
+    /**
+     * Drops the messages up to the sequence number inclusive.
+     *
+     * @param toSequenceNr sequence number of the last deleted message
+     */
+    void deleteTo(long toSequenceNr) {
+        if (toSequenceNr <= deletedTo) {
+            return;
+        }
+        deletedTo = toSequenceNr;
+        final int from = indexFrom(toSequenceNr + 1);
+        System.arraycopy(sequenceNrs, from, sequenceNrs, 0, size - from);
+        System.arraycopy(values, from, values, 0, size - from);
+        Arrays.fill(values, size - from, size, null);
+        size -= from;
+    }
+
+    /**
+     * Finds the first message with the sequence number not less than the given one.
+     *
+     * @param sequenceNr sequence number
+     * @return index of the message or {@link #size()} if there is no such message
+     */
+    int indexFrom(long sequenceNr) {
+        final int found = Arrays.binarySearch(sequenceNrs, 0, size, sequenceNr);
+        return found >= 0 ? found : -found - 1;
+    }
+
+    /**
+     * Finds the first message with the sequence number greater than the given one.
+     *
+     * @param sequenceNr sequence number
+     * @return index of the message or {@link #size()} if there is no such message
+     */
+    int indexAfter(long sequenceNr) {
+        final int found = Arrays.binarySearch(sequenceNrs, 0, size, sequenceNr);
+        return found >= 0 ? found + 1 : -found - 1;
+    }
+
+    /**
+     * Copies the values of the messages in the range, the copy can be read after the index is changed.
+     *
+     * @param fromSequenceNr sequence number of the first message, inclusive
+     * @param toSequenceNr sequence number of the last message, inclusive
+     * @param max maximal number of the messages
+     * @return values of the messages in the order of the sequence numbers
+     */
+    @SuppressWarnings("unchecked")
+    List<V> valuesBetween(long fromSequenceNr, long toSequenceNr, long max) {
+        final int from = indexFrom(fromSequenceNr);
+        final int end = (int) Math.min(indexAfter(toSequenceNr), from + Math.min(max, size));
+        return from < end ? (List<V>) Arrays.asList(Arrays.copyOfRange(values, from, end)) : Collections.emptyList();
+    }
+
+    int size() {
+        return size;
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.evst.account.query;
+
+import lombok.Value;
+
+/**
+ * Event read from the journal with its position.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Value
+public class EventEnvelope {
+
+    /**
+     * Position of the event in the stream: the sequence number within the tag for the tag queries and the sequence
+     * number of the event for the persistence identifier queries. The stream can be resumed after it.
+     */
+    private long offset;
+
+    private String persistenceId;
+    private long sequenceNr;
+    private Object event;
+
+}
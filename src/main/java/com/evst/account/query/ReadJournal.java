@@ -0,0 +1,279 @@
+package com.evst.account.query;
+
+import akka.NotUsed;
+import akka.actor.AbstractActor;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
+import akka.japi.Pair;
+import akka.pattern.Patterns;
+import akka.persistence.JournalProtocol;
+import akka.persistence.Persistence;
+import akka.persistence.PersistentRepr;
+import akka.persistence.journal.leveldb.LeveldbJournal;
+import akka.stream.OverflowStrategy;
+import akka.stream.javadsl.Source;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static scala.collection.JavaConverters.setAsJavaSet;
+
+/**
+ * Read side of the journal, streams the persisted events without recovering the entities.
+ *
+ * The <code>current</code> queries complete when all the events stored at the moment are emitted, the live ones
+ * look for the new events each <code>read-journal.refresh-interval</code> after that and never complete.
+ * The events are read by pages of <code>read-journal.page-size</code> events, so the journal isn't blocked
+ * by a long stream.
+ *
+ * The persistence identifier queries work with any journal. The tag and the identifiers queries use the protocol
+ * of the leveldb journal, the same one the leveldb read journal of Akka is built on.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ReadJournal {
+
+    private static final String REFRESH_INTERVAL_SETTING = "read-journal.refresh-interval";
+    private static final String PAGE_SIZE_SETTING = "read-journal.page-size";
+    private static final String TIMEOUT_SETTING = "read-journal.timeout";
+
+    private final ActorSystem system;
+    private final ActorRef journal;
+    private final Duration refreshInterval;
+    private final int pageSize;
+    private final Duration timeout;
+
+    /**
+     * Creates the read journal of the default journal plugin.
+     *
+     * @param system actor system
+     */
+    public ReadJournal(ActorSystem system) {
+        final Config config = system.settings().config();
+        this.system = system;
+        this.journal = Persistence.get(system).journalFor("", ConfigFactory.empty());
+        this.refreshInterval = config.getDuration(REFRESH_INTERVAL_SETTING);
+        this.pageSize = config.getInt(PAGE_SIZE_SETTING);
+        this.timeout = config.getDuration(TIMEOUT_SETTING);
+    }
+
+    /**
+     * Streams the events with the tag, e.g. one of the {@link com.evst.account.domain.EventTags}.
+     *
+     * @param tag tag of the events
+     * @param offset offset of the last processed event, the stream starts after it, 0 to start from the beginning
+     * @return live stream of the events in the order of the tag offsets
+     */
+    public Source<EventEnvelope, NotUsed> eventsByTag(String tag, long offset) {
+        return pages(offset + 1, Long.MAX_VALUE, true, byTag(tag));
+    }
+
+    /**
+     * Streams the events with the tag stored at the moment.
+     *
+     * @param tag tag of the events
+     * @param offset offset of the last processed event, the stream starts after it, 0 to start from the beginning
+     * @return finite stream of the events in the order of the tag offsets
+     */
+    public Source<EventEnvelope, NotUsed> currentEventsByTag(String tag, long offset) {
+        return pages(offset + 1, Long.MAX_VALUE, false, byTag(tag));
+    }
+
+    /**
+     * Streams the events of the entity.
+     *
+     * @param persistenceId persistence identifier of the entity
+     * @param fromSequenceNr sequence number of the first event inclusive
+     * @param toSequenceNr sequence number of the last event inclusive, the stream completes after it
+     * @return live stream of the events
+     */
+    public Source<EventEnvelope, NotUsed> eventsByPersistenceId(String persistenceId, long fromSequenceNr, long toSequenceNr) {
+        return pages(fromSequenceNr, toSequenceNr, true, byPersistenceId(persistenceId, toSequenceNr));
+    }
+
+    /**
+     * Streams the events of the entity stored at the moment.
+     *
+     * @param persistenceId persistence identifier of the entity
+     * @param fromSequenceNr sequence number of the first event inclusive
+     * @param toSequenceNr sequence number of the last event inclusive
+     * @return finite stream of the events
+     */
+    public Source<EventEnvelope, NotUsed> currentEventsByPersistenceId(String persistenceId, long fromSequenceNr,
+                                                                       long toSequenceNr) {
+        return pages(fromSequenceNr, toSequenceNr, false, byPersistenceId(persistenceId, toSequenceNr));
+    }
+
+    /**
+     * Streams the identifiers of the entities which have persisted events, including the new ones.
+     *
+     * @return live stream of the persistence identifiers
+     */
+    public Source<String, NotUsed> persistenceIds() {
+        return persistenceIdNotifications().mapConcat(ReadJournal::persistenceIdsOf);
+    }
+
+    /**
+     * Streams the identifiers of the entities which have persisted events at the moment. The stream fails with
+     * {@link TimeoutException} if the journal doesn't answer within <code>read-journal.timeout</code>, the journals
+     * which don't serve the query (the mapped and the shared ones) never answer.
+     *
+     * @return finite stream of the persistence identifiers
+     */
+    public Source<String, NotUsed> currentPersistenceIds() {
+        return persistenceIdNotifications().take(1).initialTimeout(timeout).mapConcat(ReadJournal::persistenceIdsOf);
+    }
+
+    /**
+     * Reads the offset of the last event with the tag.
+     *
+     * @param tag tag of the events
+     * @return future with the offset, 0 if there are no events with the tag
+     */
+    public CompletionStage<Long> currentOffset(String tag) {
+        return replay(replyTo -> new LeveldbJournal.ReplayTaggedMessages(Long.MAX_VALUE, Long.MAX_VALUE, 0, tag, replyTo))
+            .thenApply(Page::getHighestSequenceNr);
+    }
+
+    private BiFunction<Long, ActorRef, Object> byTag(String tag) {
+        // the journal replays the tagged events after the given offset
+        return (from, replyTo) -> new LeveldbJournal.ReplayTaggedMessages(from - 1, Long.MAX_VALUE, pageSize, tag, replyTo);
+    }
+
+    private BiFunction<Long, ActorRef, Object> byPersistenceId(String persistenceId, long toSequenceNr) {
+        return (from, replyTo) -> new JournalProtocol.ReplayMessages(from, toSequenceNr, pageSize, persistenceId, replyTo);
+    }
+
+    /**
+     * The journal replies with the current identifiers to the subscription and then notifies about the new ones
+     * until the subscriber stops.
+     */
+    private Source<Object, NotUsed> persistenceIdNotifications() {
+        return Source.actorRef(pageSize, OverflowStrategy.fail()).mapMaterializedValue(subscriber -> {
+            journal.tell(LeveldbJournal.SubscribeAllPersistenceIds$.MODULE$, subscriber);
+            return NotUsed.getInstance();
+        });
+    }
+
+    private static Iterable<String> persistenceIdsOf(Object notification) {
+        return notification instanceof LeveldbJournal.CurrentPersistenceIds ?
+            setAsJavaSet(((LeveldbJournal.CurrentPersistenceIds) notification).allPersistenceIds()) :
+            Collections.singletonList(((LeveldbJournal.PersistenceIdAdded) notification).persistenceId());
+    }
+
+    private Source<EventEnvelope, NotUsed> pages(long from, long to, boolean live, BiFunction<Long, ActorRef, Object> request) {
+        return Source.unfoldAsync(new Cursor(from, false, false), cursor -> {
+            if (cursor.isFinished() || cursor.getFrom() > to) {
+                return CompletableFuture.completedFuture(Optional.<Pair<Cursor, List<EventEnvelope>>>empty());
+            }
+            final Function<ActorRef, Object> page = replyTo -> request.apply(cursor.getFrom(), replyTo);
+            final CompletionStage<Page> events = cursor.isIdle() ?
+                Patterns.after(refreshInterval, system.scheduler(), system.dispatcher(), () -> replay(page)) :
+                replay(page);
+            return events.thenApply(read -> next(cursor, read.getEvents(), live));
+        }).mapConcat(events -> events);
+    }
+
+    private Optional<Pair<Cursor, List<EventEnvelope>>> next(Cursor cursor, List<EventEnvelope> events, boolean live) {
+        final Cursor next;
+        if (events.isEmpty()) {
+            next = new Cursor(cursor.getFrom(), true, !live);
+        } else {
+            final long from = events.get(events.size() - 1).getOffset() + 1;
+            next = new Cursor(from, false, !live && events.size() < pageSize);
+        }
+        return next.isFinished() && events.isEmpty() ? Optional.empty() : Optional.of(Pair.create(next, events));
+    }
+
+    private CompletionStage<Page> replay(Function<ActorRef, Object> request) {
+        final CompletableFuture<Page> result = new CompletableFuture<>();
+        system.actorOf(Props.create(Replay.class, journal, request, result, timeout));
+        return result;
+    }
+
+    /**
+     * Position of a paged stream: the offset to read from, if the last page was empty and if there is nothing
+     * more to read.
+     */
+    @Value
+    private static class Cursor {
+        private long from;
+        private boolean idle;
+        private boolean finished;
+    }
+
+    /**
+     * Replayed events and the highest sequence number of the persistence identifier or the tag.
+     */
+    @Value
+    private static class Page {
+        private List<EventEnvelope> events;
+        private long highestSequenceNr;
+    }
+
+    /**
+     * Requests a page of the events from the journal and collects the replayed events.
+     */
+    static final class Replay extends AbstractActor {
+
+        private final ActorRef journal;
+        private final Function<ActorRef, Object> request;
+        private final CompletableFuture<Page> result;
+        private final Duration timeout;
+        private final List<EventEnvelope> events = new ArrayList<>();
+
+        Replay(ActorRef journal, Function<ActorRef, Object> request, CompletableFuture<Page> result,
+               Duration timeout) {
+            this.journal = journal;
+            this.request = request;
+            this.result = result;
+            this.timeout = timeout;
+        }
+
+        @Override
+        public void preStart() {
+            getContext().setReceiveTimeout(timeout);
+            journal.tell(request.apply(getSelf()), getSelf());
+        }
+
+        @Override
+        public Receive createReceive() {
+            return receiveBuilder()
+                .match(LeveldbJournal.ReplayedTaggedMessage.class, replayed -> collect(replayed.offset(), replayed.persistent()))
+                .match(JournalProtocol.ReplayedMessage.class, replayed -> collect(
+                    replayed.persistent().sequenceNr(), replayed.persistent()
+                ))
+                .match(JournalProtocol.RecoverySuccess.class, success -> complete(success.highestSequenceNr(), null))
+                .match(JournalProtocol.ReplayMessagesFailure.class, failure -> complete(0, failure.cause()))
+                .match(ReceiveTimeout.class, t -> complete(0, new TimeoutException("The journal hasn't replied in " + timeout)))
+                .build();
+        }
+
+        private void collect(long offset, PersistentRepr persistent) {
+            events.add(new EventEnvelope(offset, persistent.persistenceId(), persistent.sequenceNr(), persistent.payload()));
+        }
+
+        private void complete(long highestSequenceNr, Throwable failure) {
+            if (failure == null) {
+                result.complete(new Page(events, highestSequenceNr));
+            } else {
+                result.completeExceptionally(failure);
+            }
+            getContext().stop(getSelf());
+        }
+    }
+
+}
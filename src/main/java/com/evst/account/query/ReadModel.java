@@ -0,0 +1,306 @@
+package com.evst.account.query;
+
+import akka.actor.ActorSystem;
+import akka.event.LoggingAdapter;
+import akka.japi.function.Creator;
+import akka.serialization.SerializationExtension;
+import akka.stream.Materializer;
+import akka.stream.javadsl.RestartSource;
+import akka.stream.javadsl.Source;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.EventTags;
+import com.evst.account.domain.TransferState;
+import com.typesafe.config.Config;
+import lombok.Value;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Read side projection of the accounts and the transfers. The views of the entities are kept in memory and updated
+ * by the live streams of the events tagged with {@link EventTags#ACCOUNT} and {@link EventTags#TRANSFER}, so the
+ * reads don't touch the entity actors. The views are eventually consistent with the entities.
+ *
+ * A client reads its own writes by passing the {@link ReadToken} returned by {@link #token()} after the write,
+ * the read waits for the projection to apply the events up to the token for <code>read-your-writes-timeout</code>.
+ * Each view holds the sequence number of the last applied event, so an event delivered twice after a restart
+ * of a stream is applied once.
+ *
+ * The model is started only if <code>read-model.enabled</code> is set, it needs the tag queries of the leveldb
+ * journal. With <code>read-model.store.enabled</code> the views are saved to a checkpoint file each
+ * <code>checkpoint-interval</code> and the streams continue from the checkpoint after a restart.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public final class ReadModel {
+
+    private static final String ENABLED_SETTING = "read-model.enabled";
+    private static final String TIMEOUT_SETTING = "read-model.read-your-writes-timeout";
+    private static final String STORE_SETTING = "read-model.store";
+
+    private static final Duration MIN_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+    private static final double RANDOM_FACTOR = 0.2;
+
+    private final ActorSystem system;
+    private final ReadJournal readJournal;
+    private final Duration readYourWritesTimeout;
+    private final Map<UUID, View<AccountState>> accounts = new ConcurrentHashMap<>();
+    private final Map<UUID, View<TransferState>> transfers = new ConcurrentHashMap<>();
+    private final TransferIndex transferIndex = new TransferIndex();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private volatile long accountOffset;
+    private volatile long transferOffset;
+
+    private ReadModel(ActorSystem system, ReadJournal readJournal) {
+        this.system = system;
+        this.readJournal = readJournal;
+        this.readYourWritesTimeout = system.settings().config().getDuration(TIMEOUT_SETTING);
+    }
+
+    /**
+     * Starts the projection in the given actor system, it's loaded from the checkpoint if the store is enabled.
+     *
+     * @param system actor system to run the event streams in
+     * @param materializer materializer of the event streams
+     * @return started read model or a disabled one which has no views
+     * @throws IOException if the checkpoint can't be loaded
+     */
+    public static ReadModel start(ActorSystem system, Materializer materializer) throws IOException {
+        final Config config = system.settings().config();
+        final boolean enabled = config.getBoolean(ENABLED_SETTING);
+        final ReadModel model = new ReadModel(system, enabled ? new ReadJournal(system) : null);
+        if (enabled) {
+            final Config storeConfig = config.getConfig(STORE_SETTING);
+            if (storeConfig.getBoolean("enabled")) {
+                model.startCheckpoints(new ReadModelStore(
+                    new File(storeConfig.getString("dir")), SerializationExtension.get(system)
+                ), storeConfig.getDuration("checkpoint-interval"));
+            }
+            model.startProjection(materializer);
+        }
+        return model;
+    }
+
+    /**
+     * Checks if the model is running, a disabled model has no views, so all the reads go to the entities.
+     *
+     * @return <code>true</code> if the model is running
+     */
+    public boolean isEnabled() {
+        return readJournal != null;
+    }
+
+    /**
+     * Reads the view of the account.
+     *
+     * @param id account identifier
+     * @param token token of the write to read, the view may be older without the token
+     * @return future with the view or nothing if there is no view or the token hasn't been reached in time
+     */
+    public CompletionStage<Optional<AccountState>> account(UUID id, Optional<ReadToken> token) {
+        return read(token, () -> Optional.ofNullable(accounts.get(id)).map(View::getState));
+    }
+
+    /**
+     * Reads the view of the transfer.
+     *
+     * @param id transfer identifier
+     * @param token token of the write to read, the view may be older without the token
+     * @return future with the view or nothing if there is no view or the token hasn't been reached in time
+     */
+    public CompletionStage<Optional<TransferState>> transfer(UUID id, Optional<ReadToken> token) {
+        return read(token, () -> Optional.ofNullable(transfers.get(id)).map(View::getState));
+    }
+
+    /**
+     * Reads a page of the transfers of the account from the {@link TransferIndex}. There is no other source
+     * of the transfers of an account, so the page is read even if the token hasn't been reached in time.
+     *
+     * @param accountId account identifier
+     * @param status status of the transfers or nothing to read all of them
+     * @param after cursor of the previous page, 0 for the first page
+     * @param limit maximal size of the page
+     * @param token token of the write to read, the page may be older without the token
+     * @return future with the page
+     */
+    public CompletionStage<TransferPage> accountTransfers(UUID accountId, Optional<TransferState.Status> status, long after,
+                                                          int limit, Optional<ReadToken> token) {
+        return awaitIfPassed(token).thenApply(reached -> {
+            final TransferIndex.Page page = transferIndex.find(accountId, status, after, limit);
+            final List<TransferState> states = page.getTransferIds().stream()
+                .map(transfers::get)
+                .filter(Objects::nonNull)
+                .map(View::getState)
+                .collect(Collectors.toList());
+            return new TransferPage(states, page.getCursor(), page.isMore());
+        });
+    }
+
+    /**
+     * Reads the token of the events persisted at the moment. Called after a write has completed, it covers
+     * the events of the write.
+     *
+     * @return future with the token or nothing if the model is disabled or the journal can't be read
+     */
+    public CompletionStage<Optional<ReadToken>> token() {
+        if (!isEnabled()) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        return readJournal.currentOffset(EventTags.ACCOUNT)
+            .thenCombine(readJournal.currentOffset(EventTags.TRANSFER), ReadToken::new)
+            .thenApply(Optional::of)
+            .exceptionally(e -> Optional.empty());
+    }
+
+    /**
+     * Token of the events applied to the views.
+     *
+     * @return current token of the projection
+     */
+    public ReadToken currentToken() {
+        return new ReadToken(accountOffset, transferOffset);
+    }
+
+    private <T> CompletionStage<Optional<T>> read(Optional<ReadToken> token, Supplier<Optional<T>> view) {
+        return awaitIfPassed(token).thenApply(reached -> reached ? view.get() : Optional.empty());
+    }
+
+    private CompletionStage<Boolean> awaitIfPassed(Optional<ReadToken> token) {
+        return token.map(this::await).orElse(CompletableFuture.completedFuture(true));
+    }
+
+    /**
+     * Waits for the projection to reach the token, the waiters are checked after each applied event.
+     */
+    private CompletionStage<Boolean> await(ReadToken token) {
+        final Waiter waiter = new Waiter(token, new CompletableFuture<>());
+        waiters.add(waiter);
+        notifyWaiters();
+        if (!waiter.getResult().isDone()) {
+            system.scheduler().scheduleOnce(readYourWritesTimeout, () -> {
+                waiters.remove(waiter);
+                waiter.getResult().complete(false);
+            }, system.dispatcher());
+        }
+        return waiter.getResult();
+    }
+
+    private void notifyWaiters() {
+        final ReadToken current = currentToken();
+        for (Waiter waiter : waiters) {
+            if (current.reached(waiter.getToken())) {
+                waiters.remove(waiter);
+                waiter.getResult().complete(true);
+            }
+        }
+    }
+
+    private void startProjection(Materializer materializer) {
+        final LoggingAdapter log = system.log();
+        restarting(() -> readJournal.eventsByTag(EventTags.ACCOUNT, accountOffset)).runForeach(envelope -> {
+            apply(accounts, envelope, state -> ((AccountState.Event) envelope.getEvent()).mutate(state), (previous, next) -> {
+            }, log);
+            accountOffset = envelope.getOffset();
+            notifyWaiters();
+        }, materializer);
+        restarting(() -> readJournal.eventsByTag(EventTags.TRANSFER, transferOffset)).runForeach(envelope -> {
+            apply(transfers, envelope, state -> ((TransferState.Event) envelope.getEvent()).mutate(state),
+                (previous, next) -> transferIndex.update(previous, next, envelope.getOffset()), log);
+            transferOffset = envelope.getOffset();
+            notifyWaiters();
+        }, materializer);
+    }
+
+    private static Source<EventEnvelope, ?> restarting(Creator<Source<EventEnvelope, ?>> events) {
+        return RestartSource.withBackoff(MIN_BACKOFF, MAX_BACKOFF, RANDOM_FACTOR, events);
+    }
+
+    /**
+     * Applies the event to the view of the entity unless it has been applied before and passes the previous
+     * and the new state to the listener. The views don't hold the delivery state of the transfers.
+     */
+    private static <T> void apply(Map<UUID, View<T>> views, EventEnvelope envelope, Function<T, T> mutation,
+                                  BiConsumer<T, T> listener, LoggingAdapter log) {
+        final UUID id = UUID.fromString(envelope.getPersistenceId());
+        final View<T> view = views.get(id);
+        if (view == null || view.getSequenceNr() < envelope.getSequenceNr()) {
+            try {
+                final T previous = view == null ? null : view.getState();
+                final T next = mutation.apply(previous);
+                views.put(id, new View<>(envelope.getSequenceNr(), next));
+                listener.accept(previous, next);
+            } catch (RuntimeException e) {
+                log.warning("Event {} of {} can't be applied to the view: {}", envelope.getSequenceNr(), id, e.getMessage());
+            }
+        }
+    }
+
+    private void startCheckpoints(ReadModelStore store, Duration interval) throws IOException {
+        store.load().ifPresent(checkpoint -> {
+            accounts.putAll(checkpoint.getAccounts());
+            transfers.putAll(checkpoint.getTransfers());
+            transferIndex.restore(
+                checkpoint.getTransfers().entrySet().stream()
+                    .collect(Collectors.toMap(Map.Entry::getKey, view -> view.getValue().getState())),
+                checkpoint.getTransferOffsets()
+            );
+            accountOffset = checkpoint.getToken().getAccountOffset();
+            transferOffset = checkpoint.getToken().getTransferOffset();
+        });
+        system.scheduler().schedule(interval, interval, () -> checkpoint(store), system.dispatcher());
+    }
+
+    /**
+     * Saves the views, the offsets are read before the views, so the views may include events after the offsets.
+     * These events are skipped when they are delivered again.
+     */
+    private void checkpoint(ReadModelStore store) {
+        final ReadToken token = currentToken();
+        try {
+            store.save(new ReadModelStore.Checkpoint(
+                token, new HashMap<>(accounts), new HashMap<>(transfers), transferIndex.offsets()
+            ));
+        } catch (IOException e) {
+            system.log().error(e, "Read model checkpoint {} can't be saved", token);
+        }
+    }
+
+    /**
+     * State of an entity after the event with the sequence number.
+     *
+     * @param <T> type of the state
+     */
+    @Value
+    static class View<T> {
+        private long sequenceNr;
+        private T state;
+    }
+
+    /**
+     * Read waiting for the projection to reach the token.
+     */
+    @Value
+    private static class Waiter {
+        private ReadToken token;
+        private CompletableFuture<Boolean> result;
+    }
+
+}
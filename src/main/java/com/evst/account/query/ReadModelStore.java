@@ -0,0 +1,148 @@
+package com.evst.account.query;
+
+import akka.serialization.Serialization;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.TransferState;
+import lombok.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * On-disk checkpoint of the {@link ReadModel}: the views and the offsets of the event streams they include.
+ * The checkpoint is written to a temporary file which atomically replaces the previous one, so a crash leaves
+ * either the previous or the new checkpoint. The views are serialized with the serializers bound to them.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class ReadModelStore {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path path;
+    private final Serialization serialization;
+
+    ReadModelStore(File dir, Serialization serialization) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create the read model directory " + dir);
+        }
+        this.path = new File(dir, "read-model.dat").toPath();
+        this.serialization = serialization;
+    }
+
+    /**
+     * Loads the last checkpoint. A checkpoint of another format is ignored, the views are rebuilt from the journal.
+     *
+     * @return the checkpoint or nothing if it hasn't been saved yet or has another format
+     * @throws IOException if the checkpoint can't be read
+     */
+    Optional<Checkpoint> load() throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            Optional<Checkpoint> checkpoint = Optional.empty();
+            if (in.readInt() == FORMAT_VERSION) {
+                final ReadToken token = new ReadToken(in.readLong(), in.readLong());
+                checkpoint = Optional.of(new Checkpoint(token, readViews(in), readViews(in), readOffsets(in)));
+            }
+            return checkpoint;
+        }
+    }
+
+    /**
+     * Saves the checkpoint replacing the previous one.
+     *
+     * @param checkpoint checkpoint to save
+     * @throws IOException if the checkpoint can't be written
+     */
+    void save(Checkpoint checkpoint) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(checkpoint.getToken().getAccountOffset());
+            out.writeLong(checkpoint.getToken().getTransferOffset());
+            writeViews(out, checkpoint.getAccounts());
+            writeViews(out, checkpoint.getTransfers());
+            writeOffsets(out, checkpoint.getTransferOffsets());
+        }
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private <T> void writeViews(DataOutputStream out, Map<UUID, ReadModel.View<T>> views) throws IOException {
+        out.writeInt(views.size());
+        for (Map.Entry<UUID, ReadModel.View<T>> view : views.entrySet()) {
+            out.writeLong(view.getKey().getMostSignificantBits());
+            out.writeLong(view.getKey().getLeastSignificantBits());
+            out.writeLong(view.getValue().getSequenceNr());
+            final Object state = view.getValue().getState();
+            final Serializer serializer = serialization.findSerializerFor(state);
+            final byte[] bytes = serializer.toBinary(state);
+            out.writeInt(serializer.identifier());
+            out.writeUTF(Serializers.manifestFor(serializer, state));
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Map<UUID, ReadModel.View<T>> readViews(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final Map<UUID, ReadModel.View<T>> views = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            final UUID id = new UUID(in.readLong(), in.readLong());
+            final long sequenceNr = in.readLong();
+            final int serializerId = in.readInt();
+            final String manifest = in.readUTF();
+            final byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            final T state = (T) serialization.deserialize(bytes, serializerId, manifest).get();
+            views.put(id, new ReadModel.View<>(sequenceNr, state));
+        }
+        return views;
+    }
+
+    private static void writeOffsets(DataOutputStream out, Map<UUID, Long> offsets) throws IOException {
+        out.writeInt(offsets.size());
+        for (Map.Entry<UUID, Long> offset : offsets.entrySet()) {
+            out.writeLong(offset.getKey().getMostSignificantBits());
+            out.writeLong(offset.getKey().getLeastSignificantBits());
+            out.writeLong(offset.getValue());
+        }
+    }
+
+    private static Map<UUID, Long> readOffsets(DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final Map<UUID, Long> offsets = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            offsets.put(new UUID(in.readLong(), in.readLong()), in.readLong());
+        }
+        return offsets;
+    }
+
+    /**
+     * Views of the read model including the events up to the offsets of the token and the offsets of the start
+     * events of the transfers which restore the {@link TransferIndex}.
+     */
+    @Value
+    static class Checkpoint {
+        private ReadToken token;
+        private Map<UUID, ReadModel.View<AccountState>> accounts;
+        private Map<UUID, ReadModel.View<TransferState>> transfers;
+        private Map<UUID, Long> transferOffsets;
+    }
+
+}
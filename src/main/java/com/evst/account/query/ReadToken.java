@@ -0,0 +1,54 @@
+package com.evst.account.query;
+
+import lombok.Value;
+
+/**
+ * Read-your-writes token: offsets of the last account and transfer events persisted when a write has completed.
+ * A read with the token is served by the {@link ReadModel} after it has applied the events up to the offsets.
+ *
+ * The token is passed as <code>[account offset].[transfer offset]</code>.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Value
+public class ReadToken {
+
+    /**
+     * Token which is reached by any state of the read model.
+     */
+    public static final ReadToken INITIAL = new ReadToken(0, 0);
+
+    private long accountOffset;
+    private long transferOffset;
+
+    /**
+     * Parses the token.
+     *
+     * @param token token as returned by {@link #toString()}
+     * @return parsed token
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ReadToken parse(String token) {
+        final int separator = token.indexOf('.');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Malformed read token " + token);
+        }
+        return new ReadToken(Long.parseLong(token.substring(0, separator)), Long.parseLong(token.substring(separator + 1)));
+    }
+
+    /**
+     * Checks if the state of the read model with this token includes the events of the other token.
+     *
+     * @param token other token
+     * @return <code>true</code> if both offsets are not less than the offsets of the other token
+     */
+    public boolean reached(ReadToken token) {
+        return accountOffset >= token.accountOffset && transferOffset >= token.transferOffset;
+    }
+
+    @Override
+    public String toString() {
+        return accountOffset + "." + transferOffset;
+    }
+
+}
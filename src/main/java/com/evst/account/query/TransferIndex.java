@@ -0,0 +1,149 @@
+package com.evst.account.query;
+
+import com.evst.account.domain.Transfer;
+import com.evst.account.domain.TransferState;
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary index of the transfers by the accounts they touch. A transfer is keyed by the offset of its start event
+ * in the transfer tag, the offsets grow in the order the transfers are started, so they order the transfers
+ * of an account by time and serve as the pagination cursor.
+ *
+ * Each account has a sorted map of all its transfers and one per status, a transfer is moved between the status
+ * maps when its status changes. A page is a lookup of the cursor followed by a scan of the page, so its cost
+ * is logarithmic in the number of the transfers of the account. The cash-in account of the deposits isn't indexed.
+ *
+ * The index is updated by one thread, the projection of the transfers, and read by any.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class TransferIndex {
+
+    private static final NavigableMap<Long, UUID> EMPTY = Collections.emptyNavigableMap();
+
+    private final Map<Key, NavigableMap<Long, UUID>> entries = new ConcurrentHashMap<>();
+    private final Map<UUID, Long> offsets = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes the new state of the transfer.
+     *
+     * @param previous state before the event, <code>null</code> for the start event
+     * @param next state after the event
+     * @param offset offset of the event in the transfer tag
+     */
+    void update(TransferState previous, TransferState next, long offset) {
+        if (previous == null) {
+            offsets.put(next.getId(), offset);
+            add(next, null, offset);
+            add(next, next.getStatus(), offset);
+        } else if (previous.getStatus() != next.getStatus() && offsets.containsKey(next.getId())) {
+            final long started = offsets.get(next.getId());
+            remove(previous, previous.getStatus(), started);
+            add(next, next.getStatus(), started);
+        }
+    }
+
+    /**
+     * Reads a page of the transfers of the account.
+     *
+     * @param accountId account identifier
+     * @param status status of the transfers or nothing to read all of them
+     * @param after cursor of the previous page, 0 for the first page
+     * @param limit maximal size of the page
+     * @return page of the transfer identifiers with the next cursor
+     */
+    Page find(UUID accountId, Optional<TransferState.Status> status, long after, int limit) {
+        final NavigableMap<Long, UUID> transfers = entries.getOrDefault(new Key(accountId, status.orElse(null)), EMPTY);
+        final List<UUID> ids = new ArrayList<>(Math.min(limit, transfers.size()));
+        final Iterator<Map.Entry<Long, UUID>> iterator = transfers.tailMap(after, false).entrySet().iterator();
+        long cursor = after;
+        while (ids.size() < limit && iterator.hasNext()) {
+            final Map.Entry<Long, UUID> entry = iterator.next();
+            ids.add(entry.getValue());
+            cursor = entry.getKey();
+        }
+        return new Page(ids, cursor, iterator.hasNext());
+    }
+
+    /**
+     * Offsets of the start events of the transfers, they are saved with the views to restore the index.
+     *
+     * @return copy of the offsets by the transfer identifiers
+     */
+    Map<UUID, Long> offsets() {
+        return new HashMap<>(offsets);
+    }
+
+    /**
+     * Rebuilds the index of the saved transfers.
+     *
+     * @param transfers states of the transfers
+     * @param startOffsets offsets of the start events returned by {@link #offsets()}
+     */
+    void restore(Map<UUID, TransferState> transfers, Map<UUID, Long> startOffsets) {
+        startOffsets.forEach((id, offset) -> {
+            final TransferState transfer = transfers.get(id);
+            if (transfer != null) {
+                update(null, transfer, offset);
+            }
+        });
+    }
+
+    private void add(TransferState transfer, TransferState.Status status, long offset) {
+        for (UUID accountId : accountsOf(transfer)) {
+            entries.computeIfAbsent(new Key(accountId, status), key -> new ConcurrentSkipListMap<>()).put(offset, transfer.getId());
+        }
+    }
+
+    private void remove(TransferState transfer, TransferState.Status status, long offset) {
+        for (UUID accountId : accountsOf(transfer)) {
+            final NavigableMap<Long, UUID> transfers = entries.get(new Key(accountId, status));
+            if (transfers != null) {
+                transfers.remove(offset);
+            }
+        }
+    }
+
+    private static List<UUID> accountsOf(TransferState transfer) {
+        final List<UUID> accounts = new ArrayList<>(2);
+        if (!Transfer.CASH_IN_ACCOUNT_ID.equals(transfer.getSourceAccountId())) {
+            accounts.add(transfer.getSourceAccountId());
+        }
+        if (!transfer.getTargetAccountId().equals(transfer.getSourceAccountId())) {
+            accounts.add(transfer.getTargetAccountId());
+        }
+        return accounts;
+    }
+
+    /**
+     * Account and the status of its transfers, <code>null</code> status stands for all the transfers.
+     */
+    @Value
+    private static class Key {
+        private UUID accountId;
+        private TransferState.Status status;
+    }
+
+    /**
+     * Transfers of a page and the cursor of the next one.
+     */
+    @Value
+    static class Page {
+        private List<UUID> transferIds;
+        private long cursor;
+        private boolean more;
+    }
+
+}
@@ -0,0 +1,28 @@
+package com.evst.account.query;
+
+import com.evst.account.domain.TransferState;
+import lombok.Value;
+
+import java.util.List;
+
+/**
+ * Page of the transfers of an account in the order they were started.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+@Value
+public class TransferPage {
+
+    private List<TransferState> transfers;
+
+    /**
+     * Cursor to read the next page from.
+     */
+    private long cursor;
+
+    /**
+     * If there are transfers after the page.
+     */
+    private boolean more;
+
+}
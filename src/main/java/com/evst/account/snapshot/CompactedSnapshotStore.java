@@ -0,0 +1,137 @@
+package com.evst.account.snapshot;
+
+import akka.actor.AbstractActor;
+import akka.actor.Cancellable;
+import akka.dispatch.Futures;
+import akka.japi.pf.ReceiveBuilder;
+import akka.persistence.SelectedSnapshot;
+import akka.persistence.SnapshotMetadata;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.persistence.serialization.Snapshot;
+import akka.persistence.snapshot.japi.SnapshotStore;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import com.typesafe.config.Config;
+import scala.PartialFunction;
+import scala.concurrent.Future;
+import scala.runtime.BoxedUnit;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Snapshot store plugin keeping only the latest snapshot of each persistence identifier in a single
+ * {@link SnapshotFile}. Loading of a snapshot is an index lookup and a positional read of the file.
+ *
+ * The selection criteria are applied to the latest snapshot only: if it doesn't match, nothing is loaded
+ * and the entity is recovered from the journal. The file is compacted each <code>compaction-interval</code>
+ * when the replaced and deleted snapshots take more than <code>compaction-garbage-ratio</code> of it.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class CompactedSnapshotStore extends SnapshotStore {
+
+    private static final Object COMPACT = "compact";
+
+    private final SnapshotFile file;
+    private final Duration compactionInterval;
+    private final double compactionGarbageRatio;
+    private final Serialization serialization = SerializationExtension.get(context().system());
+
+    private Cancellable compactionTask;
+
+    /**
+     * Creates the snapshot store, called by Akka with the configuration of the plugin.
+     *
+     * @param config configuration of the plugin
+     * @throws IOException if the file can't be opened
+     */
+    public CompactedSnapshotStore(Config config) throws IOException {
+        this.file = new SnapshotFile(new File(config.getString("dir")));
+        this.compactionInterval = config.getDuration("compaction-interval");
+        this.compactionGarbageRatio = config.getDouble("compaction-garbage-ratio");
+    }
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+        compactionTask = context().system().scheduler().schedule(
+            compactionInterval, compactionInterval, self(), COMPACT, context().dispatcher(), self()
+        );
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        compactionTask.cancel();
+        file.close();
+        super.postStop();
+    }
+
+    @Override
+    public PartialFunction<Object, BoxedUnit> receivePluginInternal() {
+        final AbstractActor.Receive receive = ReceiveBuilder.create()
+            .matchEquals(COMPACT, compact -> {
+                if (file.garbageRatio() > compactionGarbageRatio) {
+                    file.compact();
+                }
+            })
+            .build();
+        return receive.onMessage();
+    }
+
+    @Override
+    public Future<Optional<SelectedSnapshot>> doLoadAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        final SnapshotFile.Entry entry = file.find(persistenceId);
+        Optional<SelectedSnapshot> selected = Optional.empty();
+        try {
+            if (entry != null && criteria.matches(metadataOf(entry))) {
+                final Snapshot snapshot = serialization.deserialize(file.read(entry), Snapshot.class).get();
+                selected = Optional.of(SelectedSnapshot.create(metadataOf(entry), snapshot.data()));
+            }
+        } catch (IOException e) {
+            return Futures.failed(e);
+        }
+        return Futures.successful(selected);
+    }
+
+    @Override
+    public Future<Void> doSaveAsync(SnapshotMetadata metadata, Object snapshot) {
+        try {
+            final byte[] payload = serialization.serialize(new Snapshot(snapshot)).get();
+            file.save(metadata.persistenceId(), metadata.sequenceNr(), metadata.timestamp(), payload);
+        } catch (IOException | RuntimeException e) {
+            return Futures.failed(e);
+        }
+        return Futures.successful(null);
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(SnapshotMetadata metadata) {
+        final SnapshotFile.Entry entry = file.find(metadata.persistenceId());
+        final boolean matches = entry != null && entry.getSequenceNr() == metadata.sequenceNr() &&
+            (metadata.timestamp() == 0 || entry.getTimestamp() == metadata.timestamp());
+        return matches ? delete(entry) : Futures.successful(null);
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        final SnapshotFile.Entry entry = file.find(persistenceId);
+        return entry != null && criteria.matches(metadataOf(entry)) ? delete(entry) : Futures.successful(null);
+    }
+
+    private Future<Void> delete(SnapshotFile.Entry entry) {
+        try {
+            file.delete(entry.getPersistenceId(), entry.getSequenceNr());
+        } catch (IOException e) {
+            return Futures.failed(e);
+        }
+        return Futures.successful(null);
+    }
+
+    private static SnapshotMetadata metadataOf(SnapshotFile.Entry entry) {
+        return new SnapshotMetadata(entry.getPersistenceId(), entry.getSequenceNr(), entry.getTimestamp());
+    }
+
+}
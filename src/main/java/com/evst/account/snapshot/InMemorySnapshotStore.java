@@ -0,0 +1,116 @@
+package com.evst.account.snapshot;
+
+import akka.Done;
+import akka.actor.AbstractActor;
+import akka.dispatch.Futures;
+import akka.japi.pf.ReceiveBuilder;
+import akka.pattern.Patterns;
+import akka.persistence.SelectedSnapshot;
+import akka.persistence.SnapshotMetadata;
+import akka.persistence.SnapshotSelectionCriteria;
+import akka.persistence.snapshot.japi.SnapshotStore;
+import com.typesafe.config.Config;
+import scala.PartialFunction;
+import scala.concurrent.Future;
+import scala.concurrent.duration.FiniteDuration;
+import scala.runtime.BoxedUnit;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot store plugin keeping the snapshots in the memory of the store actor, nothing is written to the disk
+ * and all the snapshots are lost when the actor system stops. It's the pair of the
+ * {@link com.evst.account.journal.InMemoryJournal}.
+ *
+ * All the snapshots of a persistence identifier are kept by their sequence numbers, the latest one matching
+ * the selection criteria is loaded. The replies to the saves and the loads can be delayed by <code>save-latency</code>
+ * and <code>load-latency</code>. {@link #RESET} drops all the snapshots, it's answered with {@link Done}.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class InMemorySnapshotStore extends SnapshotStore {
+
+    /**
+     * Drops all the snapshots of the store.
+     */
+    public static final Object RESET = "reset";
+
+    private final Duration saveLatency;
+    private final Duration loadLatency;
+    private final Map<String, NavigableMap<Long, SelectedSnapshot>> snapshots = new HashMap<>();
+
+    /**
+     * Creates the snapshot store, called by Akka with the configuration of the plugin.
+     *
+     * @param config configuration of the plugin
+     */
+    public InMemorySnapshotStore(Config config) {
+        this.saveLatency = config.getDuration("save-latency");
+        this.loadLatency = config.getDuration("load-latency");
+    }
+
+    @Override
+    public PartialFunction<Object, BoxedUnit> receivePluginInternal() {
+        final AbstractActor.Receive receive = ReceiveBuilder.create()
+            .matchEquals(RESET, reset -> {
+                snapshots.clear();
+                sender().tell(Done.getInstance(), self());
+            })
+            .build();
+        return receive.onMessage();
+    }
+
+    @Override
+    public Future<Optional<SelectedSnapshot>> doLoadAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        Optional<SelectedSnapshot> selected = Optional.empty();
+        final NavigableMap<Long, SelectedSnapshot> saved = snapshots.get(persistenceId);
+        if (saved != null) {
+            selected = saved.headMap(criteria.maxSequenceNr(), true).descendingMap().values().stream()
+                .filter(snapshot -> criteria.matches(snapshot.metadata()))
+                .findFirst();
+        }
+        return delayed(loadLatency, selected);
+    }
+
+    @Override
+    public Future<Void> doSaveAsync(SnapshotMetadata metadata, Object snapshot) {
+        snapshots.computeIfAbsent(metadata.persistenceId(), id -> new TreeMap<>())
+            .put(metadata.sequenceNr(), SelectedSnapshot.create(metadata, snapshot));
+        return delayed(saveLatency, null);
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(SnapshotMetadata metadata) {
+        final NavigableMap<Long, SelectedSnapshot> saved = snapshots.get(metadata.persistenceId());
+        if (saved != null) {
+            final SelectedSnapshot snapshot = saved.get(metadata.sequenceNr());
+            if (snapshot != null && (metadata.timestamp() == 0 || snapshot.metadata().timestamp() == metadata.timestamp())) {
+                saved.remove(metadata.sequenceNr());
+            }
+        }
+        return Futures.successful(null);
+    }
+
+    @Override
+    public Future<Void> doDeleteAsync(String persistenceId, SnapshotSelectionCriteria criteria) {
+        final NavigableMap<Long, SelectedSnapshot> saved = snapshots.get(persistenceId);
+        if (saved != null) {
+            saved.headMap(criteria.maxSequenceNr(), true).values().removeIf(snapshot -> criteria.matches(snapshot.metadata()));
+        }
+        return Futures.successful(null);
+    }
+
+    private <T> Future<T> delayed(Duration latency, T result) {
+        return latency.isZero() ? Futures.successful(result) : Patterns.after(
+            FiniteDuration.create(latency.toNanos(), TimeUnit.NANOSECONDS), context().system().scheduler(),
+            context().dispatcher(), Futures.successful(result)
+        );
+    }
+
+}
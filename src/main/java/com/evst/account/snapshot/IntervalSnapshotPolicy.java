@@ -0,0 +1,37 @@
+package com.evst.account.snapshot;
+
+import com.typesafe.config.Config;
+
+/**
+ * Saves a snapshot each <code>interval</code> events.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class IntervalSnapshotPolicy implements SnapshotPolicy {
+
+    private final int interval;
+
+    /**
+     * Creates the policy from the configuration.
+     *
+     * @param config configuration with the <code>interval</code> setting
+     */
+    public IntervalSnapshotPolicy(Config config) {
+        this(config.getInt("interval"));
+    }
+
+    /**
+     * Creates the policy with the given interval.
+     *
+     * @param interval number of the events between the snapshots
+     */
+    public IntervalSnapshotPolicy(int interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public boolean shouldSaveSnapshot(Progress progress) {
+        return progress.getSequenceNr() % interval == 0;
+    }
+
+}
@@ -0,0 +1,65 @@
+package com.evst.account.snapshot;
+
+import com.typesafe.config.Config;
+
+import java.time.Duration;
+
+/**
+ * Saves a snapshot when the estimated replay time of the events after the last snapshot exceeds the target.
+ * The replay time of an event is measured by the recovery of the entity, <code>replay-cost</code> is used
+ * until it's measured.
+ *
+ * The hot entities, writing at least <code>hot-write-rate</code> events per second, keep the recovery under the
+ * <code>recovery-target</code>. The cold ones are cheap to replay and are rarely recovered, they save a snapshot
+ * only when the replay exceeds the <code>cold-recovery-limit</code>, which is usually never. A snapshot is not saved
+ * before there are at least as many events as the size of the state, so a big state isn't rewritten to replace
+ * a few events which are cheaper to replay than the snapshot is to load.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class RecoveryTimeSnapshotPolicy implements SnapshotPolicy {
+
+    private final long recoveryTargetNanos;
+    private final long coldRecoveryLimitNanos;
+    private final double hotWriteRate;
+    private final long defaultReplayNanosPerEvent;
+
+    /**
+     * Creates the policy from the configuration.
+     *
+     * @param config configuration of the policy
+     */
+    public RecoveryTimeSnapshotPolicy(Config config) {
+        this(
+            config.getDuration("recovery-target"), config.getDuration("cold-recovery-limit"),
+            config.getDouble("hot-write-rate"), config.getDuration("replay-cost")
+        );
+    }
+
+    /**
+     * Creates the policy.
+     *
+     * @param recoveryTarget replay time of the events which triggers a snapshot of a hot entity
+     * @param coldRecoveryLimit replay time of the events which triggers a snapshot of a cold entity
+     * @param hotWriteRate events per second which make an entity hot
+     * @param replayCost replay time of an event before it's measured
+     */
+    public RecoveryTimeSnapshotPolicy(Duration recoveryTarget, Duration coldRecoveryLimit, double hotWriteRate,
+                                      Duration replayCost) {
+        this.recoveryTargetNanos = recoveryTarget.toNanos();
+        this.coldRecoveryLimitNanos = coldRecoveryLimit.toNanos();
+        this.hotWriteRate = hotWriteRate;
+        this.defaultReplayNanosPerEvent = replayCost.toNanos();
+    }
+
+    @Override
+    public boolean shouldSaveSnapshot(Progress progress) {
+        final long replayNanosPerEvent = progress.getReplayNanosPerEvent() > 0 ?
+            progress.getReplayNanosPerEvent() :
+            defaultReplayNanosPerEvent;
+        final long estimatedReplayNanos = progress.getEventsSinceSnapshot() * replayNanosPerEvent;
+        final long limitNanos = progress.getEventsPerSecond() >= hotWriteRate ? recoveryTargetNanos : coldRecoveryLimitNanos;
+        return estimatedReplayNanos >= limitNanos && progress.getEventsSinceSnapshot() >= progress.getStateSize();
+    }
+
+}
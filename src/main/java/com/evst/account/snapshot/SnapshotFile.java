@@ -0,0 +1,258 @@
+package com.evst.account.snapshot;
+
+import lombok.Value;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * File holding the latest snapshot of each persistence identifier. Snapshots and deletions are appended
+ * to the file and an in-memory index points to the live snapshot of each identifier, so a snapshot is loaded
+ * with one positional read. Replaced and deleted snapshots are garbage which is removed by {@link #compact()},
+ * it rewrites the live snapshots to a new file replacing the old one.
+ *
+ * A record is <code>[body length][crc32 of the body][body]</code>, the body is
+ * <code>[type][persistence id length][persistence id][sequence number][timestamp][payload]</code>.
+ * The index is rebuilt by reading the headers of the records when the file is opened.
+ * The file isn't thread safe.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+final class SnapshotFile implements Closeable {
+
+    private static final byte SNAPSHOT = 1;
+    private static final byte DELETION = 2;
+
+    private static final int RECORD_HEADER = Integer.BYTES + Integer.BYTES;
+    private static final int BODY_HEADER = Byte.BYTES + Short.BYTES + Long.BYTES + Long.BYTES;
+
+    private final Path path;
+    private final Map<String, Entry> index = new HashMap<>();
+
+    private FileChannel channel;
+    private long size;
+    private long liveBytes;
+
+    SnapshotFile(File dir) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create the snapshot directory " + dir);
+        }
+        this.path = new File(dir, "snapshots.dat").toPath();
+        this.channel = open(path);
+        recover();
+    }
+
+    /**
+     * Finds the live snapshot of the persistence identifier.
+     *
+     * @param persistenceId persistence identifier
+     * @return the snapshot entry or <code>null</code> if there is no snapshot
+     */
+    Entry find(String persistenceId) {
+        return index.get(persistenceId);
+    }
+
+    /**
+     * Reads the payload of the snapshot.
+     *
+     * @param entry entry returned by {@link #find(String)}
+     * @return serialized snapshot
+     * @throws IOException if the file can't be read
+     */
+    byte[] read(Entry entry) throws IOException {
+        final ByteBuffer payload = ByteBuffer.allocate(entry.getLength() - RECORD_HEADER - entry.getPayloadOffset());
+        readFully(payload, entry.getPosition() + RECORD_HEADER + entry.getPayloadOffset());
+        return payload.array();
+    }
+
+    /**
+     * Saves the snapshot, it replaces the snapshot of the identifier with a lower or the same sequence number.
+     * The record is flushed to the storage device before the method returns.
+     *
+     * @param persistenceId persistence identifier
+     * @param sequenceNr sequence number of the snapshot
+     * @param timestamp timestamp of the snapshot
+     * @param payload serialized snapshot
+     * @throws IOException if the file can't be written
+     */
+    void save(String persistenceId, long sequenceNr, long timestamp, byte[] payload) throws IOException {
+        final Entry entry = append(SNAPSHOT, persistenceId, sequenceNr, timestamp, payload);
+        channel.force(false);
+        apply(entry);
+    }
+
+    /**
+     * Deletes the snapshot of the identifier if it has the same or a lower sequence number.
+     *
+     * @param persistenceId persistence identifier
+     * @param sequenceNr sequence number of the snapshot
+     * @throws IOException if the file can't be written
+     */
+    void delete(String persistenceId, long sequenceNr) throws IOException {
+        apply(append(DELETION, persistenceId, sequenceNr, 0L, new byte[0]));
+    }
+
+    /**
+     * Share of the file taken by replaced and deleted snapshots.
+     *
+     * @return garbage ratio from 0 to 1
+     */
+    double garbageRatio() {
+        return size == 0 ? 0 : (double) (size - liveBytes) / size;
+    }
+
+    /**
+     * Rewrites the live snapshots to a new file which atomically replaces the current one.
+     *
+     * @throws IOException if the file can't be written
+     */
+    void compact() throws IOException {
+        final Path compacted = path.resolveSibling(path.getFileName() + ".compacting");
+        final Map<String, Entry> moved = new HashMap<>();
+        try (FileChannel target = FileChannel.open(
+            compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE
+        )) {
+            long position = 0;
+            for (Entry entry : index.values()) {
+                final ByteBuffer record = ByteBuffer.allocate(entry.getLength());
+                readFully(record, entry.getPosition());
+                record.flip();
+                while (record.hasRemaining()) {
+                    target.write(record, position + record.position());
+                }
+                moved.put(entry.getPersistenceId(), entry.movedTo(position));
+                position += entry.getLength();
+            }
+            target.force(true);
+        }
+        channel.close();
+        Files.move(compacted, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        channel = open(path);
+        index.clear();
+        index.putAll(moved);
+        size = channel.size();
+        liveBytes = size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Entry append(byte type, String persistenceId, long sequenceNr, long timestamp, byte[] payload)
+        throws IOException {
+        final byte[] id = persistenceId.getBytes(StandardCharsets.UTF_8);
+        final int bodyLength = BODY_HEADER + id.length + payload.length;
+        final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + bodyLength);
+        record.position(RECORD_HEADER);
+        record.put(type).putShort((short) id.length).put(id).putLong(sequenceNr).putLong(timestamp).put(payload);
+        final CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER, bodyLength);
+        record.putInt(0, bodyLength).putInt(Integer.BYTES, (int) crc.getValue());
+        record.rewind();
+        final long position = size;
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        size += record.capacity();
+        return new Entry(type, persistenceId, sequenceNr, timestamp, position, record.capacity(), BODY_HEADER + id.length);
+    }
+
+    private void apply(Entry entry) {
+        final Entry current = index.get(entry.getPersistenceId());
+        if (current != null && current.getSequenceNr() <= entry.getSequenceNr()) {
+            index.remove(entry.getPersistenceId());
+            liveBytes -= current.getLength();
+        }
+        if (entry.getType() == SNAPSHOT && !index.containsKey(entry.getPersistenceId())) {
+            index.put(entry.getPersistenceId(), entry);
+            liveBytes += entry.getLength();
+        }
+    }
+
+    /**
+     * Reads the records up to the end of the file or to the first broken one, it's cut off.
+     */
+    private void recover() throws IOException {
+        final long fileSize = channel.size();
+        final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER + BODY_HEADER);
+        Entry entry = null;
+        do {
+            if (entry != null) {
+                apply(entry);
+                size += entry.getLength();
+            }
+            entry = null;
+            header.clear();
+            if (fileSize - size >= header.capacity()) {
+                readFully(header, size);
+                final int bodyLength = header.getInt(0);
+                if (bodyLength >= BODY_HEADER && bodyLength <= fileSize - size - RECORD_HEADER) {
+                    entry = readEntry(size, bodyLength, header.getInt(Integer.BYTES));
+                }
+            }
+        } while (entry != null);
+        channel.truncate(size);
+    }
+
+    private Entry readEntry(long position, int bodyLength, int checksum) throws IOException {
+        final ByteBuffer body = ByteBuffer.allocate(bodyLength);
+        readFully(body, position + RECORD_HEADER);
+        final CRC32 crc = new CRC32();
+        crc.update(body.array());
+        Entry entry = null;
+        if ((int) crc.getValue() == checksum) {
+            body.flip();
+            final byte type = body.get();
+            final byte[] id = new byte[body.getShort()];
+            body.get(id);
+            entry = new Entry(
+                type, new String(id, StandardCharsets.UTF_8), body.getLong(), body.getLong(),
+                position, RECORD_HEADER + bodyLength, BODY_HEADER + id.length
+            );
+        }
+        return entry;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of the snapshot file " + path);
+            }
+        }
+    }
+
+    private static FileChannel open(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Index entry of a record.
+     */
+    @Value
+    static class Entry {
+        private byte type;
+        private String persistenceId;
+        private long sequenceNr;
+        private long timestamp;
+        private long position;
+        private int length;
+        private int payloadOffset;
+
+        Entry movedTo(long newPosition) {
+            return new Entry(type, persistenceId, sequenceNr, timestamp, newPosition, length, payloadOffset);
+        }
+    }
+
+}
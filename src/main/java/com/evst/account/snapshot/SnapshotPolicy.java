@@ -0,0 +1,79 @@
+package com.evst.account.snapshot;
+
+import com.typesafe.config.Config;
+import lombok.Value;
+
+/**
+ * Decides when a persistent entity saves a snapshot of its state. The entity asks the policy after each
+ * persisted event and passes the measured {@link Progress} since the last snapshot.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public interface SnapshotPolicy {
+
+    /**
+     * Decides if the snapshot has to be saved after the event just persisted.
+     *
+     * @param progress events and measurements since the last snapshot
+     * @return <code>true</code> to save the snapshot
+     */
+    boolean shouldSaveSnapshot(Progress progress);
+
+    /**
+     * Creates the policy by the <code>type</code> setting: <code>interval</code> for {@link IntervalSnapshotPolicy},
+     * <code>recovery-time</code> for {@link RecoveryTimeSnapshotPolicy} or a name of a class implementing the
+     * interface with a public constructor taking the same configuration.
+     *
+     * @param config configuration of the policy
+     * @return snapshot policy
+     */
+    static SnapshotPolicy create(Config config) {
+        final String type = config.getString("type");
+        final SnapshotPolicy policy;
+        if ("interval".equals(type)) {
+            policy = new IntervalSnapshotPolicy(config);
+        } else if ("recovery-time".equals(type)) {
+            policy = new RecoveryTimeSnapshotPolicy(config);
+        } else {
+            try {
+                policy = Class.forName(type).asSubclass(SnapshotPolicy.class).getConstructor(Config.class).newInstance(config);
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalArgumentException("Can't create the snapshot policy " + type, e);
+            }
+        }
+        return policy;
+    }
+
+    /**
+     * Progress of the entity since the last snapshot.
+     */
+    @Value
+    class Progress {
+
+        /**
+         * Sequence number of the last persisted event.
+         */
+        private long sequenceNr;
+
+        /**
+         * Number of the events persisted after the last snapshot, they are replayed by the recovery.
+         */
+        private long eventsSinceSnapshot;
+
+        /**
+         * Replay time of an event measured by the last recovery of the entity, 0 if it hasn't been measured.
+         */
+        private long replayNanosPerEvent;
+
+        /**
+         * Size of the state in its own units, e.g. a number of the held entries.
+         */
+        private int stateSize;
+
+        /**
+         * Average number of the events persisted per second since the recovery of the entity.
+         */
+        private double eventsPerSecond;
+    }
+
+}
@@ -1,9 +1,7 @@
 package com.evst.account;
 
 
-import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
-import akka.actor.Props;
 import akka.http.javadsl.marshallers.jackson.Jackson;
 import akka.http.javadsl.model.ContentTypes;
 import akka.http.javadsl.model.HttpRequest;
@@ -11,19 +9,23 @@ import akka.http.javadsl.server.Route;
 import akka.http.javadsl.testkit.JUnitRouteTest;
 import akka.http.javadsl.testkit.TestRoute;
 import akka.stream.ActorMaterializer;
+import com.evst.account.api.AccountEventData;
 import com.evst.account.api.AccountReadData;
 import com.evst.account.api.DepositReadData;
 import com.evst.account.api.TransferReadData;
 import com.evst.account.domain.AbstractPersistedActorTest;
-import com.evst.account.domain.AccountManager;
+import com.evst.account.domain.AccountManagers;
 import com.evst.account.domain.AccountService;
 import com.evst.account.domain.AccountServiceActorImpl;
 import com.evst.account.domain.TransferState;
+import com.evst.account.query.ReadJournal;
+import com.evst.account.query.ReadModel;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.inject.AbstractModule;
 import com.google.inject.Guice;
 import com.google.inject.Injector;
-import com.google.inject.name.Names;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
 import com.typesafe.config.Config;
 import org.junit.After;
 import org.junit.Before;
@@ -37,10 +39,12 @@ import static akka.http.javadsl.model.ContentTypes.APPLICATION_JSON;
 import static akka.http.javadsl.model.StatusCodes.BAD_REQUEST;
 import static akka.http.javadsl.model.StatusCodes.CONFLICT;
 import static akka.http.javadsl.model.StatusCodes.NOT_FOUND;
+import static akka.http.javadsl.model.StatusCodes.NOT_IMPLEMENTED;
 import static akka.http.javadsl.model.StatusCodes.OK;
 import static com.evst.account.Helpers.resourceAsString;
 import static com.evst.account.domain.TransferState.Status.COMPLETED;
 import static com.evst.account.domain.TransferState.Status.LOW_BALANCE;
+import static org.assertj.core.api.Assertions.assertThat;
 
 /**
  * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
@@ -84,7 +88,7 @@ public class ServicesRoutesTest extends JUnitRouteTest {
             .assertContentType(APPLICATION_JSON)
             .assertEntityAs(
                 Jackson.unmarshaller(om, AccountReadData.class),
-                new AccountReadData(id, name, new BigDecimal(0.0))
+                new AccountReadData(id, name, new BigDecimal("0.00"))
             );
     }
 
@@ -101,7 +105,7 @@ public class ServicesRoutesTest extends JUnitRouteTest {
     public void whenAccountCreatedThenItIsAllowedToDeposit() {
 
         final UUID transferId = UUID.randomUUID();
-        final BigDecimal amount = new BigDecimal(100.0);
+        final BigDecimal amount = new BigDecimal("100.00");
         final UUID id = UUID.randomUUID();
         final String name = "test";
 
@@ -121,7 +125,7 @@ public class ServicesRoutesTest extends JUnitRouteTest {
     public void whenAccountNotCreatedThenItIsNotAllowedToDeposit() {
 
         final UUID transferId = UUID.randomUUID();
-        final BigDecimal amount = new BigDecimal(100.0);
+        final BigDecimal amount = new BigDecimal("100.00");
         final UUID id = UUID.randomUUID();
 
         route.run(createDepositRequest(transferId, id, amount))
@@ -129,6 +133,18 @@ public class ServicesRoutesTest extends JUnitRouteTest {
             .assertContentType(ContentTypes.TEXT_PLAIN_UTF8);
     }
 
+    @Test
+    public void whenAmountHasMoreDigitsThanLedgerScaleThenBadRequest() {
+
+        final UUID id = UUID.randomUUID();
+        route.run(createAccountRequest(id, "test")).assertStatusCode(OK);
+
+        route.run(createDepositRequest(UUID.randomUUID(), id, new BigDecimal("0.001")))
+            .assertStatusCode(BAD_REQUEST);
+        route.run(createTransferRequest(UUID.randomUUID(), id, UUID.randomUUID(), new BigDecimal("1e30")))
+            .assertStatusCode(BAD_REQUEST);
+    }
+
     @Test
     public void whenTransferNotCreatedThenItIsNotAllowedToRetrieve() {
 
@@ -144,9 +160,9 @@ public class ServicesRoutesTest extends JUnitRouteTest {
 
         final UUID transferId = UUID.randomUUID();
         final UUID depositTransferId = UUID.randomUUID();
-        final BigDecimal amount = new BigDecimal(100.0);
+        final BigDecimal amount = new BigDecimal("100.00");
         final UUID sourceId = UUID.randomUUID();
-        final BigDecimal initialSourceBalance = new BigDecimal(100.0);
+        final BigDecimal initialSourceBalance = new BigDecimal("100.00");
         final UUID targetId = UUID.randomUUID();
 
         route.run(createAccountRequest(sourceId, "source")).assertStatusCode(OK);
@@ -187,9 +203,9 @@ public class ServicesRoutesTest extends JUnitRouteTest {
     public void whenInsufficientSourceBalanceThenTransferFail() {
         final UUID transferId = UUID.randomUUID();
         final UUID depositTransferId = UUID.randomUUID();
-        final BigDecimal amount = new BigDecimal(100.0);
+        final BigDecimal amount = new BigDecimal("100.00");
         final UUID sourceId = UUID.randomUUID();
-        final BigDecimal initialSourceBalance = new BigDecimal(50.0);
+        final BigDecimal initialSourceBalance = new BigDecimal("50.00");
         final UUID targetId = UUID.randomUUID();
 
         route.run(createAccountRequest(sourceId, "source")).assertStatusCode(OK);
@@ -205,11 +221,53 @@ public class ServicesRoutesTest extends JUnitRouteTest {
             );
     }
 
+    @Test
+    public void whenAccountHasEventsThenHistoryIsStreamedAsNdjson() throws IOException {
+        final UUID id = UUID.randomUUID();
+        final UUID firstDepositId = UUID.randomUUID();
+        final UUID secondDepositId = UUID.randomUUID();
+        route.run(createAccountRequest(id, "history")).assertStatusCode(OK);
+        route.run(createDepositRequest(firstDepositId, id, new BigDecimal(10))).assertStatusCode(OK);
+        route.run(createDepositRequest(secondDepositId, id, new BigDecimal(20))).assertStatusCode(OK);
+
+        final String[] all = route.run(HttpRequest.GET(String.format("/accounts/%s/events", id)))
+            .assertStatusCode(OK)
+            .assertMediaType("application/x-ndjson")
+            .entityString().split("\n");
+        assertThat(all).hasSize(3);
+        assertThat(om.readValue(all[0], AccountEventData.class).getType()).isEqualTo("created");
+        final AccountEventData deposit = om.readValue(all[1], AccountEventData.class);
+        assertThat(deposit.getSequenceNr()).isEqualTo(2L);
+        assertThat(deposit.getType()).isEqualTo("money_deposited");
+        assertThat(deposit.getTransferId()).isEqualTo(firstDepositId);
+        assertThat(deposit.getAmount()).isEqualByComparingTo(new BigDecimal(10));
+
+        final String[] page = route.run(HttpRequest.GET(String.format("/accounts/%s/events?from_sequence_nr=3&limit=5", id)))
+            .assertStatusCode(OK)
+            .entityString().split("\n");
+        assertThat(page).hasSize(1);
+        assertThat(om.readValue(page[0], AccountEventData.class).getTransferId()).isEqualTo(secondDepositId);
+
+        route.run(HttpRequest.GET(String.format("/accounts/%s/events?to_time=0", id)))
+            .assertStatusCode(OK)
+            .assertEntity("");
+        route.run(HttpRequest.GET(String.format("/accounts/%s/events?limit=0", id)))
+            .assertStatusCode(BAD_REQUEST);
+        route.run(HttpRequest.GET(String.format("/accounts/%s/events", UUID.randomUUID())))
+            .assertStatusCode(NOT_FOUND);
+    }
+
+    @Test
+    public void whenReadModelIsDisabledThenTransfersOfAccountAreNotListed() {
+        route.run(HttpRequest.GET(String.format("/accounts/%s/transfers", UUID.randomUUID())))
+            .assertStatusCode(NOT_IMPLEMENTED);
+    }
+
     @Test
     public void whenIncorrectRequestSentThenBadRequestResponse() {
 
         final UUID transferId = UUID.randomUUID();
-        final BigDecimal amount = new BigDecimal(100.0);
+        final BigDecimal amount = new BigDecimal("100.00");
         final UUID id = UUID.randomUUID();
         final String name = "test";
 
@@ -286,13 +344,18 @@ public class ServicesRoutesTest extends JUnitRouteTest {
             bind(Config.class).toInstance(systemDelegate.getConfig());
             bind(ActorSystem.class).toInstance(systemDelegate.getSystem());
             bind(ActorMaterializer.class).toInstance(ActorMaterializer.create(systemDelegate.getSystem()));
-            bind(ActorRef.class).annotatedWith(Names.named("accounts")).toInstance(
-                systemDelegate.getSystem().actorOf(Props.create(AccountManager.class), "accounts")
-            );
+            bind(AccountManagers.class).toInstance(AccountManagers.start(systemDelegate.getSystem()));
+            bind(ReadJournal.class).toInstance(new ReadJournal(systemDelegate.getSystem()));
             bind(ObjectMapper.class).toProvider(ObjectMapperProvider.class).asEagerSingleton();
             bind(AccountService.class).to(AccountServiceActorImpl.class).asEagerSingleton();
             bind(Route.class).toProvider(AccountServiceRouteProvider.class);
         }
+
+        @Provides
+        @Singleton
+        ReadModel readModel(ActorSystem actorSystem, ActorMaterializer actorMaterializer) throws IOException {
+            return ReadModel.start(actorSystem, actorMaterializer);
+        }
     }
 
 }
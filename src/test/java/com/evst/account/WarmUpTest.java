@@ -0,0 +1,156 @@
+package com.evst.account;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.testkit.InfoFilter;
+import akka.testkit.WarningFilter;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.domain.AbstractPersistedActorTest;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import com.evst.account.query.ReadJournal;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.typesafe.config.Config;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class WarmUpTest extends AbstractPersistedActorTest {
+
+    @BeforeEach
+    public void enableWarmUp() throws IOException {
+        TestKit.shutdownActorSystem(system);
+        config = config.withValue(
+            "warm-up.enabled", fromAnyRef(true)
+        ).withValue(
+            "warm-up.recent-accounts-file", fromAnyRef(temporaryFolder.newFolder("warm_up").getAbsolutePath() + "/recent-accounts")
+        ).withValue(
+            "warm-up.progress-interval", fromAnyRef(1)
+        );
+        system = ActorSystem.create("test", config);
+    }
+
+    @Test
+    public void whenRecentAccountsAreSavedThenTheyAreRecoveredOnNextStart() throws Exception {
+        final List<UUID> accounts = Arrays.asList(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+        final Injector injector = injector();
+        createAccounts(injector.getInstance(AccountManagers.class), accounts);
+        injector.getInstance(WarmUp.class).saveRecentAccounts().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        // the service is restarted, the accounts are recovered from the journal
+        restartWith("warm-up.source", "recent");
+        final Injector restarted = injector();
+        final WarmUp.Result result = restarted.getInstance(WarmUp.class).run().toCompletableFuture().get(5, TimeUnit.SECONDS);
+
+        assertThat(result.getAccounts()).isEqualTo(3L);
+        assertThat(result.getFailed()).isEqualTo(0L);
+        assertThat(restarted.getInstance(AccountManagers.class).liveAccounts(Duration.ofSeconds(1))
+            .toCompletableFuture().get(5, TimeUnit.SECONDS)).containsExactlyInAnyOrderElementsOf(accounts);
+    }
+
+    @Test
+    public void whenJournalIsTheSourceThenOnlyAccountsAreRecoveredAndProgressIsReported() throws Exception {
+        restartWith("warm-up.source", "journal");
+        final Injector injector = injector();
+        final AccountManagers managers = injector.getInstance(AccountManagers.class);
+        final UUID accountId = UUID.randomUUID();
+        createAccounts(managers, Arrays.asList(accountId, UUID.randomUUID()));
+        new TestKit(system) {
+            {
+                // the deposit is a transfer entity in the journal, it's not recovered by the warm-up
+                final UUID depositId = UUID.randomUUID();
+                managers.managerOf(depositId).tell(new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef());
+                expectMsgClass(Message.TransferResponse.class);
+            }
+        };
+
+        final WarmUp warmUp = injector.getInstance(WarmUp.class);
+        final WarmUp.Result result = new InfoFilter(
+            null, "Warm-up has recovered \\d accounts in \\d+ ms", true, false, 2
+        ).intercept(() -> warmUp.run().toCompletableFuture().join(), system);
+
+        assertThat(result.getAccounts()).isEqualTo(2L);
+        assertThat(result.getFailed()).isEqualTo(0L);
+        assertThat(result.getDuration()).isGreaterThan(Duration.ZERO).isLessThan(config.getDuration("warm-up.max-duration"));
+    }
+
+    @Test
+    public void whenJournalDoesNotListPersistenceIdsThenWarmUpIsSkipped() throws Exception {
+        config = config.withValue(
+            "akka.persistence.journal.plugin", fromAnyRef("akka.persistence.journal.mapped")
+        ).withValue(
+            "akka.persistence.journal.mapped.dir", fromAnyRef(temporaryFolder.newFolder("mapped_journal").getAbsolutePath())
+        ).withValue(
+            "read-journal.timeout", fromAnyRef("300 ms")
+        );
+        restartWith("warm-up.source", "journal");
+        final WarmUp warmUp = injector().getInstance(WarmUp.class);
+
+        final WarmUp.Result result = new WarningFilter(
+            null, "The journal doesn't list the persistence identifiers, the warm-up is skipped", false, false, 1
+        ).intercept(() -> warmUp.run().toCompletableFuture().join(), system);
+
+        assertThat(result.getAccounts()).isEqualTo(0L);
+    }
+
+    @Test
+    public void whenWarmUpExceedsMaxDurationThenItIsStopped() throws Exception {
+        // the mapped journal never answers the query, the warm-up waits for it longer than the max duration
+        config = config.withValue(
+            "akka.persistence.journal.plugin", fromAnyRef("akka.persistence.journal.mapped")
+        ).withValue(
+            "akka.persistence.journal.mapped.dir", fromAnyRef(temporaryFolder.newFolder("mapped_journal").getAbsolutePath())
+        ).withValue(
+            "warm-up.source", fromAnyRef("journal")
+        );
+        restartWith("warm-up.max-duration", "300 ms");
+        final WarmUp warmUp = injector().getInstance(WarmUp.class);
+
+        final WarmUp.Result result = new WarningFilter(
+            null, "Warm-up has been stopped after 300 ms", false, false, 1
+        ).intercept(() -> warmUp.run().toCompletableFuture().join(), system);
+
+        assertThat(result.getAccounts()).isEqualTo(0L);
+        assertThat(result.getDuration()).isGreaterThanOrEqualTo(Duration.ofMillis(300));
+    }
+
+    private void createAccounts(AccountManagers managers, List<UUID> accounts) {
+        new TestKit(system) {
+            {
+                for (UUID id : accounts) {
+                    managers.managerOf(id).tell(new Message.CreateAccountCommand(id, "warm-up"), getRef());
+                    expectMsg(new Message.AccountCreatedResponse(id));
+                }
+            }
+        };
+    }
+
+    private Injector injector() {
+        return Guice.createInjector(new AbstractModule() {
+            @Override
+            protected void configure() {
+                bind(Config.class).toInstance(config);
+                bind(ActorSystem.class).toInstance(system);
+                bind(ActorMaterializer.class).toInstance(ActorMaterializer.create(system));
+                bind(AccountManagers.class).toInstance(AccountManagers.start(system));
+                bind(ReadJournal.class).toInstance(new ReadJournal(system));
+            }
+        });
+    }
+
+}
@@ -2,6 +2,7 @@ package com.evst.account.api;
 
 import com.evst.account.ObjectMapperProvider;
 import com.evst.account.domain.AccountState;
+import com.evst.account.domain.Money;
 import com.evst.account.domain.TransferState;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.common.collect.ImmutableMap;
@@ -15,6 +16,7 @@ import java.util.UUID;
 
 import static com.evst.account.Helpers.resourceAsString;
 import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.assertj.core.util.DateUtil.yesterday;
 
@@ -31,10 +33,10 @@ public class MappingTest {
     public static void init() {
         final Date now = yesterday();
         accountState = new AccountState(
-            UUID.randomUUID(), "test", new BigDecimal(100.0), now, now, ImmutableMap.of(), ImmutableMap.of()
+            UUID.randomUUID(), "test", Money.of(10000, 2), now, now, ImmutableMap.of(), ImmutableMap.of()
         );
         transferState = new TransferState(
-            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), new BigDecimal(100.0), IN_PROGRESS, null
+            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Money.of(10000, 2), IN_PROGRESS
         );
     }
 
@@ -45,7 +47,7 @@ public class MappingTest {
         assertThat(transferReadData.getSourceAccountId()).isEqualTo(transferState.getSourceAccountId());
         assertThat(transferReadData.getTargetAccountId()).isEqualTo(transferState.getTargetAccountId());
         assertThat(transferReadData.getStatus()).isEqualTo(transferState.getStatus().getCode());
-        assertThat(transferReadData.getAmount()).isEqualTo(transferState.getAmount());
+        assertThat(transferReadData.getAmount()).isEqualTo(Mapper.decimal(transferState.getAmount()));
 
         final String expectedJSON = String.format(
             resourceAsString("com/evst/account/api/transfer_read_data.template"),
@@ -64,7 +66,7 @@ public class MappingTest {
         assertThat(depositReadData.getTransferId()).isEqualTo(transferState.getId());
         assertThat(depositReadData.getTargetAccountId()).isEqualTo(transferState.getTargetAccountId());
         assertThat(depositReadData.getStatus()).isEqualTo(transferState.getStatus().getCode());
-        assertThat(depositReadData.getAmount()).isEqualTo(transferState.getAmount());
+        assertThat(depositReadData.getAmount()).isEqualTo(Mapper.decimal(transferState.getAmount()));
 
         final String expectedJSON = String.format(
             resourceAsString("com/evst/account/api/deposit_read_data.template"),
@@ -81,7 +83,28 @@ public class MappingTest {
         final AccountReadData accountReadData = Mapper.accountData(accountState);
         assertThat(accountReadData.getId()).isEqualTo(accountState.getId());
         assertThat(accountReadData.getName()).isEqualTo(accountState.getName());
-        assertThat(accountReadData.getBalance()).isEqualTo(accountState.getBalance());
+        assertThat(accountReadData.getBalance()).isEqualTo(new BigDecimal("100.00"));
+    }
+
+    @Test
+    public void whenMapsAccountEventThenNotApplicableFieldsAreOmitted() throws JsonProcessingException {
+        final AccountState.Created created = new AccountState.Created(accountState.getId(), "test", new Date(1000), 2);
+        assertThat(objectMapperProvider.get().writeValueAsString(Mapper.accountEventData(1, created)))
+            .isEqualTo("{\"sequence_nr\":1,\"type\":\"created\",\"time\":1000}");
+
+        final UUID transferId = UUID.randomUUID();
+        final AccountState.MoneyDeposited deposited = new AccountState.MoneyDeposited(transferId, null, Money.of(1000, 2), new Date(2000));
+        assertThat(Mapper.accountEventData(2, deposited))
+            .isEqualTo(new AccountEventData(2, "money_deposited", new Date(2000), transferId, null, new BigDecimal("10.00")));
+    }
+
+    @Test
+    public void whenDecimalAmountIsConvertedThenItKeepsTheLedgerScale() {
+        assertThat(Mapper.money(new BigDecimal("12.5"), 2)).isEqualTo(Money.of(1250, 2));
+        assertThat(Mapper.decimal(Money.of(1250, 2))).isEqualTo(new BigDecimal("12.50"));
+        assertThatThrownBy(() -> Mapper.money(new BigDecimal("0.001"), 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Mapper.money(new BigDecimal("1e30"), 2)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> Mapper.money(null, 2)).isInstanceOf(IllegalArgumentException.class);
     }
 
     @Test
@@ -2,6 +2,7 @@ package com.evst.account.domain;
 
 import akka.actor.ActorSystem;
 import akka.testkit.javadsl.TestKit;
+import com.evst.account.InMemoryStorage;
 import com.evst.account.TemporaryFolderExtension;
 import com.typesafe.config.Config;
 import com.typesafe.config.ConfigFactory;
@@ -32,7 +33,7 @@ public abstract class AbstractPersistedActorTest {
         temporaryFolder.getRoot().setWritable(true);
         journal = temporaryFolder.newFolder("temp_journal");
         snapshot = temporaryFolder.newFolder("temp_snapshot");
-        config = ConfigFactory.load("application").withValue(
+        config = InMemoryStorage.configure(ConfigFactory.load("application")).withValue(
             "akka.persistence.journal.leveldb.dir", fromAnyRef(journal.getAbsolutePath())
         ).withValue(
             "akka.persistence.snapshot-store.local.dir", fromAnyRef(snapshot.getAbsolutePath())
@@ -43,6 +44,15 @@ public abstract class AbstractPersistedActorTest {
         );
     }
 
+    /**
+     * Restarts the actor system with the changed setting, the storage isn't kept unless it's on the disk.
+     */
+    protected void restartWith(String setting, Object value) {
+        TestKit.shutdownActorSystem(system);
+        config = config.withValue(setting, fromAnyRef(value));
+        system = ActorSystem.create("test", config);
+    }
+
     @AfterEach
     public void teardown() {
         TestKit.shutdownActorSystem(system);
@@ -0,0 +1,109 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
+import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.InsufficientBalanceToBlock;
+import com.evst.account.domain.TransferProtocolMessage.MoneyBlockedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class AccountBatchingTest extends AbstractPersistedActorTest {
+
+    private static final int DEPOSITS = 100;
+
+    private ActorSystem batchingSystem;
+
+    @BeforeEach
+    public void startBatchingSystem() throws IOException {
+        batchingSystem = ActorSystem.create("batching", config.withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(temporaryFolder.newFolder("batching_journal").getAbsolutePath())
+        ).withValue(
+            "account-manager.batching.enabled", fromAnyRef(true)
+        ).withValue(
+            "account-manager.batching.max-batch-size", fromAnyRef(8)
+        ));
+    }
+
+    @AfterEach
+    public void shutdownBatchingSystem() {
+        TestKit.shutdownActorSystem(batchingSystem);
+    }
+
+    @Test
+    public void whenCommandsArriveDuringWriteThenAllAreAcknowledgedInOrderAndDurable() {
+        new TestKit(batchingSystem) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final ActorRef accountRef = batchingSystem.actorOf(Props.create(Account.class, accountId));
+
+                accountRef.tell(new Message.CreateAccountCommand(accountId, "hot"), getRef());
+                for (long i = 0; i < DEPOSITS; i++) {
+                    accountRef.tell(
+                        new DepositMoney(i, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(100, 2)), getRef()
+                    );
+                }
+                accountRef.tell(new Message.RetrieveAccountCommand(accountId), getRef());
+
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                for (long i = 0; i < DEPOSITS; i++) {
+                    expectMsg(new MoneyDepositedSuccessfully(i));
+                }
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(DEPOSITS * 100, 2));
+
+                watch(accountRef);
+                batchingSystem.stop(accountRef);
+                expectTerminated(accountRef);
+
+                final ActorRef recovered = batchingSystem.actorOf(Props.create(Account.class, accountId));
+                recovered.tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(DEPOSITS * 100, 2));
+            }
+        };
+    }
+
+    @Test
+    public void whenBlocksArriveDuringWriteThenTheyAreValidatedAgainstAcceptedEvents() {
+        new TestKit(batchingSystem) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final UUID targetId = UUID.randomUUID();
+                final ActorRef accountRef = batchingSystem.actorOf(Props.create(Account.class, accountId));
+
+                accountRef.tell(new Message.CreateAccountCommand(accountId, "hot"), getRef());
+                accountRef.tell(
+                    new DepositMoney(0L, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(10000, 2)), getRef()
+                );
+                accountRef.tell(new BlockMoney(1L, UUID.randomUUID(), targetId, Money.of(6000, 2), new Date()), getRef());
+                accountRef.tell(new BlockMoney(2L, UUID.randomUUID(), targetId, Money.of(6000, 2), new Date()), getRef());
+
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                expectMsg(new MoneyDepositedSuccessfully(0L));
+                expectMsg(new MoneyBlockedSuccessfully(1L));
+                expectMsg(new InsufficientBalanceToBlock(2L));
+
+                accountRef.tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(4000, 2));
+            }
+        };
+    }
+
+}
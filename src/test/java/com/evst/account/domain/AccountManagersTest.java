@@ -0,0 +1,300 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorIdentity;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Identify;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.InMemoryStorage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.evst.account.domain.TransferState.Status.COMPLETED;
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class AccountManagersTest extends AbstractPersistedActorTest {
+
+    @Test
+    public void whenPartitionCalculatedThenItIsStableAndInRange() {
+        for (int i = 0; i < 1000; i++) {
+            final UUID id = UUID.randomUUID();
+            final int partition = AccountManagers.partitionOf(id, 8);
+            assertThat(partition).isBetween(0, 7);
+            assertThat(AccountManagers.partitionOf(new UUID(id.getMostSignificantBits(), id.getLeastSignificantBits()), 8))
+                .isEqualTo(partition);
+        }
+    }
+
+    @Test
+    public void whenAccountsInDifferentPartitionsThenTransferCompletes() {
+        new TestKit(system) {
+            {
+                final int partitions = config.getInt("account-manager.partitions");
+                final AccountManagers managers = AccountManagers.start(system);
+
+                final UUID sourceId = UUID.randomUUID();
+                final UUID targetId = idOfOtherPartition(partitions, sourceId);
+                final UUID transferId = idOfOtherPartition(partitions, sourceId, targetId);
+                final UUID depositId = idOfOtherPartition(partitions, sourceId);
+
+                managers.managerOf(sourceId).tell(new Message.CreateAccountCommand(sourceId, "source"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(sourceId));
+                managers.managerOf(targetId).tell(new Message.CreateAccountCommand(targetId, "target"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(targetId));
+
+                managers.managerOf(depositId).tell(
+                    new Message.DepositMoneyCommand(depositId, sourceId, Money.of(10000, 2)), getRef()
+                );
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+
+                managers.managerOf(transferId).tell(
+                    new Message.MakeTransferCommand(transferId, sourceId, targetId, Money.of(4000, 2)), getRef()
+                );
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+
+                managers.managerOf(sourceId).tell(new Message.RetrieveAccountCommand(sourceId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(6000, 2));
+                managers.managerOf(targetId).tell(new Message.RetrieveAccountCommand(targetId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(4000, 2));
+            }
+        };
+    }
+
+    @Test
+    public void whenAccountsAreLiveThenTheyAreListedWithoutTransfers() throws Exception {
+        final AccountManagers managers = AccountManagers.start(system);
+        final UUID accountId = UUID.randomUUID();
+        new TestKit(system) {
+            {
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "live"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                final UUID depositId = UUID.randomUUID();
+                managers.managerOf(depositId).tell(new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef());
+                expectMsgClass(Message.TransferResponse.class);
+                assertThat(managers.liveAccounts(Duration.ofSeconds(1)).toCompletableFuture().get(3, TimeUnit.SECONDS))
+                    .contains(accountId).doesNotContain(depositId);
+            }
+        };
+    }
+
+    @Test
+    public void whenIdentifierIsUnknownThenManagerRepliesWithoutCreatingEntity() {
+        final AccountManagers managers = startWithExistenceFilter();
+        new TestKit(system) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final UUID transferId = UUID.randomUUID();
+
+                managers.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                expectMsg(new Message.AccountNotFoundResponse(accountId));
+                assertThat(childExists(this, managers, accountId)).isFalse();
+                managers.managerOf(transferId).tell(new Message.RetrieveTransferCommand(transferId), getRef());
+                expectMsg(new Message.TransferNotFoundResponse(transferId));
+                assertThat(childExists(this, managers, transferId)).isFalse();
+            }
+        };
+    }
+
+    @Test
+    public void whenManagersRestartedThenCreatedAccountIsFound() {
+        final UUID accountId = UUID.randomUUID();
+        final AccountManagers created = startWithExistenceFilter();
+        new TestKit(system) {
+            {
+                created.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "account"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                // the storage is kept by the actor system, so only the managers are restarted
+                for (int partition = 0; partition < config.getInt("account-manager.partitions"); partition++) {
+                    final ActorRef manager = created.managerOf(idOfPartition(partition));
+                    watch(manager);
+                    system.stop(manager);
+                    expectTerminated(manager);
+                }
+            }
+        };
+        final AccountManagers restarted = startManagersWithExistenceFilter();
+        new TestKit(system) {
+            {
+                restarted.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getName())
+                    .isEqualTo("account");
+            }
+        };
+    }
+
+    @Test
+    public void whenExistenceIndexStopsThenEntitiesAreCreatedWithoutIt() {
+        final AccountManagers managers = startWithExistenceFilter();
+        new TestKit(system) {
+            {
+                final int partition = 0;
+                final ActorRef manager = managers.managerOf(idOfPartition(partition));
+                system.actorSelection(manager.path().child("existence-index")).tell(new Identify(partition), getRef());
+                final ActorRef index = expectMsgClass(ActorIdentity.class).getActorRef().get();
+                watch(index);
+                system.stop(index);
+                expectTerminated(index);
+
+                // the registrations sent before the manager learns about the stop are lost
+                final UUID accountId = awaitAssert(Duration.ofSeconds(3), () -> {
+                    final UUID id = idOfPartition(partition);
+                    manager.tell(new Message.CreateAccountCommand(id, "without index"), getRef());
+                    expectMsg(Duration.ofMillis(300), new Message.AccountCreatedResponse(id));
+                    return id;
+                });
+                manager.tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getName())
+                    .isEqualTo("without index");
+                final UUID unknownId = idOfPartition(partition);
+                manager.tell(new Message.RetrieveAccountCommand(unknownId), getRef());
+                expectMsg(new Message.AccountNotFoundResponse(unknownId));
+            }
+        };
+    }
+
+    @Test
+    public void whenTransfersAreOptimisticThenTheyStartWithoutReadinessCheck() {
+        restartWith("account-manager.optimistic-transfers", true);
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                final UUID sourceId = UUID.randomUUID();
+                final UUID targetId = UUID.randomUUID();
+                final UUID depositId = UUID.randomUUID();
+                final UUID transferId = UUID.randomUUID();
+                final UUID missingId = UUID.randomUUID();
+
+                managers.managerOf(sourceId).tell(new Message.CreateAccountCommand(sourceId, "source"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(sourceId));
+                managers.managerOf(targetId).tell(new Message.CreateAccountCommand(targetId, "target"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(targetId));
+                managers.managerOf(depositId).tell(
+                    new Message.DepositMoneyCommand(depositId, sourceId, Money.of(10000, 2)), getRef()
+                );
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+
+                final Message.MakeTransferCommand transfer = new Message.MakeTransferCommand(
+                    transferId, sourceId, targetId, Money.of(4000, 2)
+                );
+                managers.managerOf(transferId).tell(transfer, getRef());
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+                managers.managerOf(transferId).tell(transfer, getRef());
+                expectMsg(new TransferProtocolMessage.TransferHasAlreadyStarted(transferId));
+
+                final UUID failedId = UUID.randomUUID();
+                managers.managerOf(failedId).tell(
+                    new Message.MakeTransferCommand(failedId, sourceId, missingId, Money.of(1000, 2)), getRef()
+                );
+                expectMsg(new Message.AccountNotFoundResponse(missingId));
+                managers.managerOf(sourceId).tell(new Message.RetrieveAccountCommand(sourceId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(6000, 2));
+            }
+        };
+    }
+
+    @Test
+    public void whenParticipantDoesNotReplyThenPendingRequestExpires() throws Exception {
+        restartWith("account-manager.pending-requests.timeout", "200 ms");
+        new TestKit(system) {
+            {
+                final int partitions = config.getInt("account-manager.partitions");
+                final AccountManagers managers = AccountManagers.start(system);
+                assertThat(managers.pendingTransferRequests(Duration.ofSeconds(1)).toCompletableFuture().get())
+                    .isEqualTo(new Message.PendingTransferRequestsResponse(0, 0L));
+
+                final UUID transferId = UUID.randomUUID();
+                final UUID accountId = idOfOtherPartition(partitions, transferId);
+                final ActorRef silentManager = managers.managerOf(accountId);
+                watch(silentManager);
+                system.stop(silentManager);
+                expectTerminated(silentManager);
+
+                final ActorRef manager = managers.managerOf(transferId);
+                manager.tell(
+                    new Message.MakeTransferCommand(transferId, accountId, accountId, Money.of(1000, 2)), getRef()
+                );
+                manager.tell(new Message.RetrievePendingTransferRequestsCommand(), getRef());
+                expectMsg(new Message.PendingTransferRequestsResponse(1, 0L));
+                awaitAssert(() -> {
+                    manager.tell(new Message.RetrievePendingTransferRequestsCommand(), getRef());
+                    expectMsg(new Message.PendingTransferRequestsResponse(0, 1L));
+                    return null;
+                });
+            }
+        };
+    }
+
+    /**
+     * Restarts the actor system with the existence filter enabled on the in-memory storage, the indexes snapshot
+     * often, so the recovery uses the snapshots and the deletions of the older events.
+     */
+    private AccountManagers startWithExistenceFilter() {
+        TestKit.shutdownActorSystem(system);
+        config = InMemoryStorage.configure(config.withValue("in-memory-storage.enabled", fromAnyRef(true)))
+            .withValue("account-manager.existence-filter.enabled", fromAnyRef(true))
+            .withValue("akka.persistence.snapshot-store.interval.existence-index", fromAnyRef(2));
+        system = ActorSystem.create("test", config);
+        return startManagersWithExistenceFilter();
+    }
+
+    /**
+     * Starts the managers and waits until the indexes of all of them are recovered, the lookups are answered
+     * by the entities until the filter is recovered. The registration is possible only after the recovery.
+     */
+    private AccountManagers startManagersWithExistenceFilter() {
+        final AccountManagers managers = AccountManagers.start(system);
+        final int partitions = config.getInt("account-manager.partitions");
+        new TestKit(system) {
+            {
+                for (int partition = 0; partition < partitions; partition++) {
+                    final UUID id = idOfPartition(partition);
+                    managers.managerOf(id).tell(new Message.CreateAccountCommand(id, "partition"), getRef());
+                    expectMsg(new Message.AccountCreatedResponse(id));
+                }
+            }
+        };
+        return managers;
+    }
+
+    private boolean childExists(TestKit probe, AccountManagers managers, UUID id) {
+        system.actorSelection(managers.managerOf(id).path().child(id.toString())).tell(new Identify(id), probe.getRef());
+        return probe.expectMsgClass(ActorIdentity.class).getActorRef().isPresent();
+    }
+
+    private UUID idOfPartition(int partition) {
+        final int partitions = config.getInt("account-manager.partitions");
+        UUID id = UUID.randomUUID();
+        while (AccountManagers.partitionOf(id, partitions) != partition) {
+            id = UUID.randomUUID();
+        }
+        return id;
+    }
+
+    private static UUID idOfOtherPartition(int partitions, UUID... others) {
+        while (true) {
+            final UUID id = UUID.randomUUID();
+            boolean unique = true;
+            for (UUID other : others) {
+                unique &= AccountManagers.partitionOf(id, partitions) != AccountManagers.partitionOf(other, partitions);
+            }
+            if (unique || partitions <= others.length) {
+                return id;
+            }
+        }
+    }
+
+}
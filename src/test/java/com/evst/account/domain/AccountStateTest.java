@@ -2,12 +2,14 @@ package com.evst.account.domain;
 
 import com.evst.account.domain.AccountState.MoneyBlocked;
 import com.evst.account.domain.AccountState.MoneyDeposited;
+import com.evst.account.domain.AccountState.MoneyUnblocked;
 import com.evst.account.domain.AccountState.TransferCompleted;
+import com.evst.account.domain.AccountState.TransferExpired;
+import com.evst.account.domain.AccountState.TransferForgotten;
 import com.google.common.collect.ImmutableMap;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
-import java.math.BigDecimal;
 import java.util.Date;
 import java.util.UUID;
 
@@ -27,7 +29,7 @@ public class AccountStateTest {
     public static void init() {
         final Date now = yesterday();
         state = new AccountState(
-            UUID.randomUUID(), "test", new BigDecimal(100.0), now, now, ImmutableMap.of(), ImmutableMap.of()
+            UUID.randomUUID(), "test", Money.of(10000, 2), now, now, ImmutableMap.of(), ImmutableMap.of()
         );
     }
 
@@ -36,11 +38,11 @@ public class AccountStateTest {
         final UUID id = UUID.randomUUID();
         final Date now = now();
         final String name = "test";
-        final AccountState state = new AccountState.Created(id, name, now).mutate(null);
+        final AccountState state = new AccountState.Created(id, name, now, 2).mutate(null);
 
         assertThat(state.getId()).isEqualByComparingTo(id);
         assertThat(state.getName()).isEqualTo(name);
-        assertThat(state.getBalance()).isEqualTo(new BigDecimal(0.0));
+        assertThat(state.getBalance()).isEqualTo(Money.zero(2));
         assertThat(state.getCurrentTransfers()).isEmpty();
         assertThat(state.getWatchedCompletedTransfers()).isEmpty();
         assertThat(state.getCreatedAt()).isEqualTo(now);
@@ -54,7 +56,7 @@ public class AccountStateTest {
         final String name = "test";
 
         assertThatExceptionOfType(IllegalStateException.class).isThrownBy(() ->
-            state.update(new AccountState.Created(id, name, now))
+            state.update(new AccountState.Created(id, name, now, 2))
         ).withMessage("Create event can not be applied for already created account");
     }
 
@@ -64,18 +66,18 @@ public class AccountStateTest {
             state.hasSufficientBalanceToBlock(null)
         );
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
-            state.hasSufficientBalanceToBlock(new BigDecimal(-1.0))
+            state.hasSufficientBalanceToBlock(Money.of(-100, 2))
         );
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
-            state.hasSufficientBalanceToBlock(new BigDecimal(0.0))
+            state.hasSufficientBalanceToBlock(Money.zero(2))
         );
     }
 
     @Test
     public void whenAskedForBalanceSufficiencyThenCalculateCorrectly() {
-        assertThat(state.hasSufficientBalanceToBlock(new BigDecimal(100.0))).isTrue();
-        assertThat(state.hasSufficientBalanceToBlock(new BigDecimal(50.0))).isTrue();
-        assertThat(state.hasSufficientBalanceToBlock(new BigDecimal(100.0).add(BigDecimal.valueOf(1, 15)))).isFalse();
+        assertThat(state.hasSufficientBalanceToBlock(Money.of(10000, 2))).isTrue();
+        assertThat(state.hasSufficientBalanceToBlock(Money.of(5000, 2))).isTrue();
+        assertThat(state.hasSufficientBalanceToBlock(Money.of(10001, 2))).isFalse();
     }
 
     @Test
@@ -83,17 +85,17 @@ public class AccountStateTest {
         final UUID id = UUID.randomUUID();
         final Date now = now();
 
-        final BigDecimal toBlock = new BigDecimal(30.0);
+        final Money toBlock = Money.of(3000, 2);
         final MoneyBlocked blocked = new MoneyBlocked(id, state.getId(), toBlock, now);
         final AccountState blockedState = state.update(blocked);
 
         assertThat(blockedState.hasActiveTransfer(id)).isTrue();
         assertThat(blockedState.hasCurrentTransfer(id)).isTrue();
-        assertThat(blockedState.getBalance()).isEqualTo(state.getBalance().subtract(toBlock));
+        assertThat(blockedState.getBalance()).isEqualTo(state.getBalance().minus(toBlock));
         assertThat(blockedState.getCreatedAt()).isEqualTo(state.getCreatedAt());
         assertThat(blockedState.getUpdatedAt()).isEqualTo(now);
 
-        final BigDecimal toBlockInsufficient = new BigDecimal(130.0);
+        final Money toBlockInsufficient = Money.of(13000, 2);
         final MoneyBlocked blockedInsufficient = new MoneyBlocked(id, state.getId(), toBlockInsufficient, now);
 
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
@@ -106,20 +108,33 @@ public class AccountStateTest {
         final UUID id = UUID.randomUUID();
         final Date now = now();
 
-        final BigDecimal toDeposit = new BigDecimal(30.0);
+        final Money toDeposit = Money.of(3000, 2);
         final MoneyDeposited deposited = new MoneyDeposited(id, state.getId(), toDeposit, now);
         final AccountState depositedState = state.update(deposited);
 
         assertThat(depositedState.hasActiveTransfer(id)).isFalse();
         assertThat(depositedState.hasCurrentTransfer(id)).isFalse();
-        assertThat(depositedState.getBalance()).isEqualTo(state.getBalance().add(toDeposit));
+        assertThat(depositedState.getBalance()).isEqualTo(state.getBalance().plus(toDeposit));
         assertThat(depositedState.getCreatedAt()).isEqualTo(state.getCreatedAt());
         assertThat(depositedState.getUpdatedAt()).isEqualTo(now);
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
-            new MoneyDeposited(id, state.getId(), new BigDecimal(-30.0), now)
+            new MoneyDeposited(id, state.getId(), Money.of(-3000, 2), now)
         );
         assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
-            new MoneyDeposited(id, state.getId(), new BigDecimal(0.0), now)
+            new MoneyDeposited(id, state.getId(), Money.zero(2), now)
+        );
+    }
+
+    @Test
+    public void whenDepositOverflowsBalanceThenItCanNotBeDeposited() {
+        final AccountState fullState = state.update(
+            new MoneyDeposited(UUID.randomUUID(), state.getId(), Money.of(Long.MAX_VALUE - 10000, 2), now())
+        );
+
+        assertThat(fullState.canDeposit(Money.of(1, 2))).isFalse();
+        assertThat(state.canDeposit(Money.of(1, 2))).isTrue();
+        assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() ->
+            fullState.update(new MoneyDeposited(UUID.randomUUID(), state.getId(), Money.of(1, 2), now()))
         );
     }
 
@@ -128,7 +143,7 @@ public class AccountStateTest {
         final UUID id = UUID.randomUUID();
         final Date yesterday = yesterday();
 
-        final BigDecimal toBlock = new BigDecimal(30.0);
+        final Money toBlock = Money.of(3000, 2);
         final MoneyBlocked blocked = new MoneyBlocked(id, state.getId(), toBlock, yesterday);
         final AccountState blockedState = state.update(blocked);
         final AccountState completedState = blockedState.update(new TransferCompleted(id, now()));
@@ -137,12 +152,69 @@ public class AccountStateTest {
         assertThat(completedState.hasWatchedCompletedTransfer(id)).isTrue();
     }
 
+    @Test
+    public void whenTransferForgottenThenItIsNotWatched() {
+        final UUID id = UUID.randomUUID();
+
+        final AccountState completedState = state
+            .update(new MoneyBlocked(id, state.getId(), Money.of(3000, 2), yesterday()))
+            .update(new TransferCompleted(id, now()));
+        final AccountState forgottenState = completedState.update(new TransferForgotten(id, now()));
+
+        assertThat(forgottenState.hasActiveTransfer(id)).isFalse();
+        assertThat(forgottenState.getBalance()).isEqualByComparingTo(completedState.getBalance());
+        assertThat(forgottenState.transferCount()).isZero();
+        assertThat(forgottenState.getCompletionQueue().isEmpty()).isTrue();
+    }
+
+    @Test
+    public void whenTooManyOrTooOldTransfersCompletedThenOldestAreExpired() {
+        final UUID[] ids = {UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()};
+        AccountState completedState = state;
+        for (int i = 0; i < ids.length; i++) {
+            completedState = completedState
+                .update(new MoneyBlocked(ids[i], state.getId(), Money.of(100, 2), yesterday()))
+                .update(new TransferCompleted(ids[i], new Date(1000L * (i + 1))));
+        }
+        // a forgotten transfer in the middle of the queue is skipped
+        completedState = completedState.update(new TransferForgotten(ids[1], now()));
+
+        assertThat(completedState.completedTransfersToExpire(3, 0)).isEmpty();
+        assertThat(completedState.completedTransfersToExpire(2, 0)).extracting(CompletionQueue.Entry::getId).containsExactly(ids[0]);
+        assertThat(completedState.completedTransfersToExpire(1, 0)).extracting(CompletionQueue.Entry::getId)
+            .containsExactly(ids[0], ids[2]);
+        assertThat(completedState.completedTransfersToExpire(3, 3500)).extracting(CompletionQueue.Entry::getTime)
+            .containsExactly(1000L, 3000L);
+        assertThat(completedState.completedTransfersToExpire(3, 5000)).extracting(CompletionQueue.Entry::getId)
+            .containsExactly(ids[0], ids[2], ids[3]);
+
+        final AccountState expiredState = completedState.update(new TransferExpired(ids[0], new Date(1000), now()));
+        assertThat(expiredState.getCompletionQueue().headId()).isEqualTo(ids[2]);
+        assertThat(expiredState.hasWatchedCompletedTransfer(ids[0])).isFalse();
+        assertThat(expiredState.getExpiredUpTo()).isEqualTo(1000L);
+        assertThat(expiredState.isStartedBeforeExpired(new Date(1000))).isTrue();
+        assertThat(expiredState.isStartedBeforeExpired(new Date(1001))).isFalse();
+        assertThat(completedState.isStartedBeforeExpired(new Date(0))).isFalse();
+    }
+
+    @Test
+    public void whenMoneyUnblockedThenItIsReturnedToBalance() {
+        final UUID id = UUID.randomUUID();
+
+        final Money toBlock = Money.of(3000, 2);
+        final AccountState blockedState = state.update(new MoneyBlocked(id, state.getId(), toBlock, yesterday()));
+        final AccountState unblockedState = blockedState.update(new MoneyUnblocked(id, now()));
+
+        assertThat(unblockedState.hasActiveTransfer(id)).isFalse();
+        assertThat(unblockedState.getBalance()).isEqualByComparingTo(state.getBalance());
+    }
+
     @Test
     public void whenNotificationCreatedTranDeliveryIdReturnedByGetter() {
         final UUID id = UUID.randomUUID();
         final Date yesterday = yesterday();
 
-        final BigDecimal toBlock = new BigDecimal(30.0);
+        final Money toBlock = Money.of(3000, 2);
         final MoneyBlocked blocked = new MoneyBlocked(id, state.getId(), toBlock, yesterday);
         final AccountState blockedState = state.update(blocked);
         final AccountState completedState = blockedState.update(new TransferCompleted(id, now()));
@@ -10,18 +10,23 @@ import com.evst.account.domain.Message.AccountSnapshotResponse;
 import com.evst.account.domain.Message.RetrieveAccountCommand;
 import com.evst.account.domain.TransferProtocolMessage.AccountNotFoundForTransfer;
 import com.evst.account.domain.TransferProtocolMessage.AccountReadyForTransfer;
+import com.evst.account.domain.TransferProtocolMessage.BalanceOverflowOnDeposit;
 import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
 import com.evst.account.domain.TransferProtocolMessage.CompleteTransfer;
 import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
 import com.evst.account.domain.TransferProtocolMessage.InsufficientBalanceToBlock;
 import com.evst.account.domain.TransferProtocolMessage.MoneyBlockedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferCompletedSuccessfully;
+import com.evst.account.domain.TransferProtocolMessage.TransferExpiredOnBlock;
+import com.evst.account.domain.TransferProtocolMessage.TransferForgottenSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
 import org.junit.jupiter.api.Test;
 
-import java.math.BigDecimal;
+import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -50,7 +55,7 @@ public class AccountTest extends AbstractPersistedActorTest {
                 accountRef.tell(new TransferReadyCheck(transferId), getRef());
                 expectMsg(new AccountReadyForTransfer(transferId, accountId));
 
-                final DepositMoney depositMoney = new DepositMoney(depositDeliveryId, transferId, accountId, new BigDecimal(30.0));
+                final DepositMoney depositMoney = new DepositMoney(depositDeliveryId, transferId, accountId, Money.of(3000, 2));
 
                 accountRef.tell(depositMoney, getRef());
                 expectMsg(new MoneyDepositedSuccessfully(depositDeliveryId));
@@ -70,7 +75,7 @@ public class AccountTest extends AbstractPersistedActorTest {
             {
                 final UUID accountId = UUID.randomUUID();
                 final String name = "test";
-                final ActorRef accountRef = system.actorOf(Props.create(Account.class, accountId, new BigDecimal(100.0)));
+                final ActorRef accountRef = fundedAccount(this, accountId, Money.of(10000, 2));
 
                 final UUID transferId = UUID.randomUUID();
                 final Long blockDeliveryId = 0L;
@@ -79,7 +84,7 @@ public class AccountTest extends AbstractPersistedActorTest {
                 accountRef.tell(new TransferReadyCheck(transferId), getRef());
                 expectMsg(new AccountReadyForTransfer(transferId, accountId));
 
-                final BlockMoney blockMoney = new BlockMoney(blockDeliveryId, transferId, accountId, new BigDecimal(50.0));
+                final BlockMoney blockMoney = new BlockMoney(blockDeliveryId, transferId, accountId, Money.of(5000, 2), new Date());
 
                 accountRef.tell(blockMoney, getRef());
                 expectMsg(new MoneyBlockedSuccessfully(blockDeliveryId));
@@ -96,6 +101,39 @@ public class AccountTest extends AbstractPersistedActorTest {
                 // check that it reacts correctly for resent message
                 accountRef.tell(complete, getRef());
                 expectMsg(new TransferCompletedSuccessfully(completeTransferDeliveryId));
+
+                final ForgetTransfer forget = new ForgetTransfer(1L, transferId);
+
+                accountRef.tell(forget, getRef());
+                expectMsg(new TransferForgottenSuccessfully(1L));
+
+                // check that it reacts correctly for resent messages after the transfer is forgotten
+                accountRef.tell(forget, getRef());
+                expectMsg(new TransferForgottenSuccessfully(1L));
+                accountRef.tell(complete, getRef());
+                expectMsg(new TransferCompletedSuccessfully(completeTransferDeliveryId));
+
+                accountRef.tell(new RetrieveAccountCommand(accountId), getRef());
+                final AccountState account = expectMsgClass(AccountSnapshotResponse.class).getAccount();
+                assertThat(account.transferCount()).isZero();
+                assertThat(account.getBalance()).isEqualByComparingTo(Money.of(5000, 2));
+            }
+        };
+    }
+
+    @Test
+    public void whenDepositOverflowsBalanceThenItIsRejected() {
+        new TestKit(system) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final ActorRef accountRef = fundedAccount(this, accountId, Money.of(Long.MAX_VALUE, 2));
+
+                accountRef.tell(new DepositMoney(1L, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(1, 2)), getRef());
+                expectMsg(new BalanceOverflowOnDeposit(1L));
+
+                accountRef.tell(new RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(Long.MAX_VALUE, 2));
             }
         };
     }
@@ -106,7 +144,7 @@ public class AccountTest extends AbstractPersistedActorTest {
             {
                 final UUID accountId = UUID.randomUUID();
                 final String name = "test";
-                final ActorRef accountRef = system.actorOf(Props.create(Account.class, accountId, new BigDecimal(100.0)));
+                final ActorRef accountRef = fundedAccount(this, accountId, Money.of(10000, 2));
 
                 final UUID transferId = UUID.randomUUID();
                 final Long blockDeliveryId = 0L;
@@ -115,12 +153,50 @@ public class AccountTest extends AbstractPersistedActorTest {
                 accountRef.tell(new TransferReadyCheck(transferId), getRef());
                 expectMsg(new AccountReadyForTransfer(transferId, accountId));
 
-                accountRef.tell(new BlockMoney(blockDeliveryId, transferId, accountId, new BigDecimal(150.0)), getRef());
+                accountRef.tell(new BlockMoney(blockDeliveryId, transferId, accountId, Money.of(15000, 2), new Date()), getRef());
                 expectMsg(new InsufficientBalanceToBlock(blockDeliveryId));
             }
         };
     }
 
+    @Test
+    public void whenExpiredTransferBlockIsRedeliveredThenItIsRejected() {
+        restartWith("account-manager.completed-transfers.max-count", 1);
+        new TestKit(system) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final UUID targetId = UUID.randomUUID();
+                final ActorRef accountRef = fundedAccount(this, accountId, Money.of(10000, 2));
+
+                final BlockMoney expiredBlock = new BlockMoney(1L, UUID.randomUUID(), targetId, Money.of(1000, 2), new Date());
+                accountRef.tell(expiredBlock, getRef());
+                expectMsg(new MoneyBlockedSuccessfully(1L));
+                accountRef.tell(new CompleteTransfer(2L, expiredBlock.getTransferId()), getRef());
+                expectMsg(new TransferCompletedSuccessfully(2L));
+
+                // the completion of the next transfer expires the first one
+                final UUID nextId = UUID.randomUUID();
+                accountRef.tell(new BlockMoney(3L, nextId, targetId, Money.of(1000, 2), new Date()), getRef());
+                expectMsg(new MoneyBlockedSuccessfully(3L));
+                accountRef.tell(new CompleteTransfer(4L, nextId), getRef());
+                expectMsg(new TransferCompletedSuccessfully(4L));
+
+                accountRef.tell(expiredBlock, getRef());
+                expectMsg(new TransferExpiredOnBlock(1L));
+
+                accountRef.tell(new RetrieveAccountCommand(accountId), getRef());
+                final AccountState account = expectMsgClass(AccountSnapshotResponse.class).getAccount();
+                assertThat(account.getBalance()).isEqualByComparingTo(Money.of(8000, 2));
+                assertThat(account.hasWatchedCompletedTransfer(expiredBlock.getTransferId())).isFalse();
+
+                // the transfers started after the expired one was completed are still blocked
+                final Date startedAfter = new Date(account.getExpiredUpTo() + 1);
+                accountRef.tell(new BlockMoney(5L, UUID.randomUUID(), targetId, Money.of(1000, 2), startedAfter), getRef());
+                expectMsg(new MoneyBlockedSuccessfully(5L));
+            }
+        };
+    }
+
     @Test
     public void whenAccountNotExistsThenImpossibleToRetrieveIt() {
         new TestKit(system) {
@@ -149,7 +225,7 @@ public class AccountTest extends AbstractPersistedActorTest {
                 final AccountSnapshotResponse response = expectMsgClass(AccountSnapshotResponse.class);
                 assertThat(response.getAccount().getId()).isEqualByComparingTo(accountId);
                 assertThat(response.getAccount().getName()).isEqualTo(name);
-                assertThat(response.getAccount().getBalance()).isEqualTo(new BigDecimal(0.0));
+                assertThat(response.getAccount().getBalance()).isEqualTo(Money.zero(2));
             }
         };
     }
@@ -186,6 +262,36 @@ public class AccountTest extends AbstractPersistedActorTest {
         };
     }
 
+    @Test
+    public void whenSnapshotSavedThenOlderEventsAreDeleted() {
+        restartWith("akka.persistence.snapshot-store.retention.account.enabled", true);
+        new TestKit(system) {
+            {
+                final UUID accountId = UUID.randomUUID();
+                final AtomicReference<ActorRef> accountRef = new AtomicReference<>();
+
+                // a snapshot after each event, the deletion keeps the events after the two previous snapshots
+                assertThat(new DebugFilter(
+                    null, String.format("Events of the account %s up to 1 have been deleted, 1 events reclaimed", accountId), false, false, 1
+                ).intercept(() -> {
+                    accountRef.set(fundedAccount(this, accountId, Money.of(10000, 2)));
+                    accountRef.get().tell(new DepositMoney(1L, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(100, 2)), getRef());
+                    expectMsg(new MoneyDepositedSuccessfully(1L));
+                    return true;
+                }, system)).isTrue();
+
+                watch(accountRef.get());
+                system.stop(accountRef.get());
+                expectTerminated(accountRef.get());
+
+                final ActorRef recovered = system.actorOf(Props.create(Account.class, accountId));
+                recovered.tell(new RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(10100, 2));
+            }
+        };
+    }
+
     @Test
     public void testSnapshotCanNotBeSaved() {
         new TestKit(system) {
@@ -210,4 +316,13 @@ public class AccountTest extends AbstractPersistedActorTest {
         };
     }
 
+    private ActorRef fundedAccount(TestKit probe, UUID accountId, Money amount) {
+        final ActorRef accountRef = system.actorOf(Props.create(Account.class, accountId));
+        accountRef.tell(new Message.CreateAccountCommand(accountId, "test"), probe.getRef());
+        probe.expectMsg(new Message.AccountCreatedResponse(accountId));
+        accountRef.tell(new DepositMoney(0L, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, amount), probe.getRef());
+        probe.expectMsg(new MoneyDepositedSuccessfully(0L));
+        return accountRef;
+    }
+
 }
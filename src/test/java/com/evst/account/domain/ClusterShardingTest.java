@@ -0,0 +1,148 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Address;
+import akka.actor.Props;
+import akka.cluster.Cluster;
+import akka.cluster.Member;
+import akka.cluster.MemberStatus;
+import akka.persistence.journal.leveldb.SharedLeveldbJournal;
+import akka.persistence.journal.leveldb.SharedLeveldbStore;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.TemporaryFolderExtension;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.StreamSupport;
+
+import static com.evst.account.domain.TransferState.Status.COMPLETED;
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * Runs several cluster nodes in the same JVM on the loopback interface. Nodes share the journal,
+ * so sharded entities can be recovered on any of them.
+ *
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ClusterShardingTest {
+
+    private static final int NODES = 3;
+    private static final Duration TIMEOUT = Duration.ofSeconds(20);
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private final List<ActorSystem> systems = new ArrayList<>();
+    private final List<AccountManagers> managers = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        final File journal = temporaryFolder.newFolder("shared_journal");
+        final File snapshot = temporaryFolder.newFolder("temp_snapshot");
+        final Config config = ConfigFactory.parseString(
+            "akka.actor.provider = cluster\n"
+                + "akka.remote.netty.tcp.hostname = \"127.0.0.1\"\n"
+                + "akka.remote.netty.tcp.port = 0\n"
+                + "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n"
+                + "akka.persistence.journal.plugin = \"akka.persistence.journal.leveldb-shared\"\n"
+                + "account-manager.mode = sharded\n"
+        ).withFallback(ConfigFactory.load("application")).withValue(
+            "akka.persistence.journal.leveldb-shared.store.dir", fromAnyRef(journal.getAbsolutePath())
+        ).withValue(
+            "akka.persistence.snapshot-store.local.dir", fromAnyRef(snapshot.getAbsolutePath())
+        );
+        for (int i = 0; i < NODES; i++) {
+            systems.add(ActorSystem.create("cluster-test", config));
+        }
+
+        final ActorRef store = systems.get(0).actorOf(Props.create(SharedLeveldbStore.class), "store");
+        final Address seed = Cluster.get(systems.get(0)).selfAddress();
+        for (ActorSystem system : systems) {
+            SharedLeveldbJournal.setStore(store, system);
+            Cluster.get(system).join(seed);
+        }
+        new TestKit(systems.get(0)) {
+            {
+                awaitAssert(TIMEOUT, () -> {
+                    for (ActorSystem system : systems) {
+                        assertThat(upMembers(system)).isEqualTo(NODES);
+                    }
+                    return null;
+                });
+            }
+        };
+        for (ActorSystem system : systems) {
+            managers.add(AccountManagers.start(system));
+        }
+    }
+
+    @AfterEach
+    public void teardown() {
+        systems.forEach(TestKit::shutdownActorSystem);
+        systems.clear();
+        managers.clear();
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenEntitiesAreShardedThenTransferCompletesThroughAnyNode() {
+        // each node is asked by its own probe, so the replies are sent through the remoting
+        final List<TestKit> probes = new ArrayList<>();
+        systems.forEach(system -> probes.add(new TestKit(system)));
+
+        final UUID sourceId = UUID.randomUUID();
+        final UUID targetId = UUID.randomUUID();
+        final UUID depositId = UUID.randomUUID();
+        final UUID transferId = UUID.randomUUID();
+
+        managers.get(0).managerOf(sourceId).tell(
+            new Message.CreateAccountCommand(sourceId, "source"), probes.get(0).getRef()
+        );
+        probes.get(0).expectMsg(TIMEOUT, new Message.AccountCreatedResponse(sourceId));
+        managers.get(1).managerOf(targetId).tell(
+            new Message.CreateAccountCommand(targetId, "target"), probes.get(1).getRef()
+        );
+        probes.get(1).expectMsg(TIMEOUT, new Message.AccountCreatedResponse(targetId));
+
+        managers.get(2).managerOf(depositId).tell(
+            new Message.DepositMoneyCommand(depositId, sourceId, Money.of(10000, 2)), probes.get(2).getRef()
+        );
+        assertThat(probes.get(2).expectMsgClass(TIMEOUT, Message.TransferResponse.class).getTransferState().getStatus())
+            .isEqualTo(COMPLETED);
+
+        managers.get(1).managerOf(transferId).tell(
+            new Message.MakeTransferCommand(transferId, sourceId, targetId, Money.of(3000, 2)), probes.get(1).getRef()
+        );
+        assertThat(probes.get(1).expectMsgClass(TIMEOUT, Message.TransferResponse.class).getTransferState().getStatus())
+            .isEqualTo(COMPLETED);
+
+        managers.get(2).managerOf(sourceId).tell(new Message.RetrieveAccountCommand(sourceId), probes.get(2).getRef());
+        assertThat(probes.get(2).expectMsgClass(TIMEOUT, Message.AccountSnapshotResponse.class).getAccount().getBalance())
+            .isEqualByComparingTo(Money.of(7000, 2));
+        managers.get(0).managerOf(targetId).tell(new Message.RetrieveAccountCommand(targetId), probes.get(0).getRef());
+        assertThat(probes.get(0).expectMsgClass(TIMEOUT, Message.AccountSnapshotResponse.class).getAccount().getBalance())
+            .isEqualByComparingTo(Money.of(3000, 2));
+        managers.get(0).managerOf(transferId).tell(new Message.RetrieveTransferCommand(transferId), probes.get(0).getRef());
+        assertThat(
+            probes.get(0).expectMsgClass(TIMEOUT, Message.TransferSnapshotResponse.class).getTransferState().getStatus()
+        ).isEqualTo(COMPLETED);
+    }
+
+    private static long upMembers(ActorSystem system) {
+        return StreamSupport.stream(Cluster.get(system).state().getMembers().spliterator(), false)
+            .map(Member::status)
+            .filter(MemberStatus.up()::equals)
+            .count();
+    }
+
+}
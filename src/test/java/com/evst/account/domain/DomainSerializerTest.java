@@ -0,0 +1,239 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorPaths;
+import akka.actor.ExtendedActorSystem;
+import akka.persistence.AtLeastOnceDelivery.AtLeastOnceDeliverySnapshot;
+import akka.persistence.AtLeastOnceDelivery.UnconfirmedDelivery;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.Serializers;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.BlockMoney;
+import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
+import com.evst.account.domain.TransferProtocolMessage.TransferEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.TransferExpiredOnBlock;
+import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Date;
+import java.util.UUID;
+
+import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
+import static com.evst.account.domain.TransferState.Status.LOW_BALANCE;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static scala.collection.JavaConverters.asScalaBuffer;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class DomainSerializerTest extends AbstractPersistedActorTest {
+
+    private static final int JAVA_SERIALIZER_ID = 1;
+    private static final UUID LEGACY_ACCOUNT_ID = UUID.fromString("00000000-0000-0000-0000-00000000000a");
+    private static final UUID LEGACY_TARGET_ID = UUID.fromString("00000000-0000-0000-0000-00000000000b");
+    private static final UUID LEGACY_DEPOSIT_ID = UUID.fromString("00000000-0000-0000-0000-00000000000d");
+    private static final UUID LEGACY_TRANSFER_ID = UUID.fromString("00000000-0000-0000-0000-00000000000e");
+
+    private Serialization serialization;
+
+    @BeforeEach
+    public void initSerialization() {
+        serialization = SerializationExtension.get(system);
+    }
+
+    @Test
+    public void whenAccountEventsAndStateAreSerializedThenTheyAreRestored() {
+        final UUID accountId = UUID.randomUUID();
+        final UUID transferId = UUID.randomUUID();
+        final Date now = new Date();
+        final AccountState.Event created = new AccountState.Created(accountId, "test", now, 2);
+        final AccountState.Event deposited = new AccountState.MoneyDeposited(
+            UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, Money.of(10025, 2), now
+        );
+        final AccountState.Event blocked = new AccountState.MoneyBlocked(
+            transferId, UUID.randomUUID(), Money.of(Long.MAX_VALUE, 2), now
+        );
+        final AccountState account = deposited.mutate(created.mutate(null));
+
+        assertThat(roundTrip(created)).isEqualToComparingFieldByFieldRecursively(created);
+        assertThat(roundTrip(deposited)).isEqualToComparingFieldByFieldRecursively(deposited);
+        assertThat(roundTrip(blocked)).isEqualToComparingFieldByFieldRecursively(blocked);
+        assertThat(roundTrip(new AccountState.TransferCompleted(transferId, now)))
+            .isEqualToComparingFieldByFieldRecursively(new AccountState.TransferCompleted(transferId, now));
+
+        final AccountState withTransfer = new AccountState.MoneyBlocked(
+            transferId, UUID.randomUUID(), Money.of(3050, 2), now
+        ).mutate(account);
+        assertThat(roundTrip(withTransfer)).isEqualToComparingFieldByFieldRecursively(withTransfer);
+        assertThat(((AccountState) roundTrip(withTransfer)).hasCurrentTransfer(transferId)).isTrue();
+
+        final AccountState completed = new AccountState.TransferCompleted(transferId, now).mutate(withTransfer);
+        final AccountState restored = (AccountState) roundTrip(completed);
+        assertThat(restored.hasWatchedCompletedTransfer(transferId)).isTrue();
+        assertThat(restored.getCompletionQueue().headId()).isEqualTo(transferId);
+        assertThat(restored.getCompletionQueue().headTime()).isEqualTo(now.getTime());
+        assertThat(roundTrip(new AccountState.TransferForgotten(transferId, now)))
+            .isEqualToComparingFieldByFieldRecursively(new AccountState.TransferForgotten(transferId, now));
+
+        final AccountState.TransferExpired expired = new AccountState.TransferExpired(transferId, new Date(1000), now);
+        assertThat(roundTrip(expired)).isEqualToComparingFieldByFieldRecursively(expired);
+        assertThat(((AccountState) roundTrip(expired.mutate(completed))).getExpiredUpTo()).isEqualTo(1000L);
+    }
+
+    @Test
+    public void whenTransferStateWithDeliveriesIsSerializedThenItIsRestored() {
+        final UUID transferId = UUID.randomUUID();
+        final BlockMoney blockMoney = new BlockMoney(1L, transferId, UUID.randomUUID(), Money.of(1000, 2), new Date(1000));
+        final AtLeastOnceDeliverySnapshot deliverySnapshot = new AtLeastOnceDeliverySnapshot(1L, asScalaBuffer(
+            ImmutableList.of(new UnconfirmedDelivery(
+                1L, ActorPaths.fromString("akka://test/user/manager-1"), new AccountEnvelope(UUID.randomUUID(), blockMoney)
+            ))
+        ).toList());
+        final TransferState transfer = new TransferState(
+            transferId, UUID.randomUUID(), UUID.randomUUID(), Money.of(1000, 2), IN_PROGRESS
+        );
+        final TransferSnapshot snapshot = new TransferSnapshot(transfer, deliverySnapshot);
+
+        assertThat(roundTrip(transfer)).isEqualTo(transfer);
+        assertThat(roundTrip(snapshot)).isEqualTo(snapshot);
+        assertThat(roundTrip(new TransferState.MoneyBlockFailed(2L, LOW_BALANCE)))
+            .isEqualToComparingFieldByFieldRecursively(new TransferState.MoneyBlockFailed(2L, LOW_BALANCE));
+        assertThat(roundTrip(new TransferState.TransferStarted(transferId, UUID.randomUUID(), UUID.randomUUID(), Money.of(100, 2))))
+            .isInstanceOf(TransferState.TransferStarted.class);
+    }
+
+    @Test
+    public void whenProtocolMessagesAreSerializedThenTheyAreRestored() {
+        final UUID transferId = UUID.randomUUID();
+        final DepositMoney deposit = new DepositMoney(3L, transferId, UUID.randomUUID(), Money.of(1, 2));
+
+        assertThat(roundTrip(deposit)).isEqualTo(deposit);
+        assertThat(roundTrip(new ForgetTransfer(4L, transferId))).isEqualTo(new ForgetTransfer(4L, transferId));
+        assertThat(roundTrip(new TransferEnvelope(transferId, new TransferReadyCheck(transferId))))
+            .isEqualTo(new TransferEnvelope(transferId, new TransferReadyCheck(transferId)));
+        assertThat(roundTrip(new TransferExpiredOnBlock(5L))).isEqualTo(new TransferExpiredOnBlock(5L));
+        final BlockMoney blockMoney = new BlockMoney(1L, transferId, UUID.randomUUID(), Money.of(1000, 2), new Date(1000));
+        assertThat(roundTrip(blockMoney)).isEqualTo(blockMoney);
+    }
+
+    @Test
+    public void whenAmountWasWrittenWithAnotherScaleThenItIsReadWithTheLedgerScale() throws IOException {
+        final UUID transferId = UUID.randomUUID();
+        final UUID sourceId = UUID.randomUUID();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(transferId.getMostSignificantBits());
+        out.writeLong(transferId.getLeastSignificantBits());
+        out.writeLong(sourceId.getMostSignificantBits());
+        out.writeLong(sourceId.getLeastSignificantBits());
+        // amount 30.5 written with the scale of 1
+        out.writeByte(1);
+        out.writeLong(305);
+        out.writeLong(1000);
+        final Serializer serializer = serialization.serializerFor(AccountState.Event.class);
+
+        assertThat(serialization.deserialize(bytes.toByteArray(), serializer.identifier(), "AD").get())
+            .isEqualToComparingFieldByFieldRecursively(
+                new AccountState.MoneyDeposited(transferId, sourceId, Money.of(3050, 2), new Date(1000))
+            );
+    }
+
+    @Test
+    public void whenCreatedEventIsReadThenItGetsTheLedgerScale() throws IOException {
+        final UUID accountId = UUID.randomUUID();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeLong(accountId.getMostSignificantBits());
+        out.writeLong(accountId.getLeastSignificantBits());
+        out.writeUTF("test");
+        out.writeLong(1000);
+        final Serializer serializer = serialization.serializerFor(AccountState.Event.class);
+
+        final AccountState.Created created = (AccountState.Created) serialization.deserialize(
+            bytes.toByteArray(), serializer.identifier(), "AC"
+        ).get();
+        assertThat(created.getScale()).isEqualTo(2);
+        assertThat(created.mutate(null).getBalance()).isEqualTo(Money.zero(2));
+    }
+
+    @Test
+    public void whenEventIsSerializedThenItIsSmallerThanJavaSerialized() {
+        final AccountState.Event event = new AccountState.MoneyBlocked(
+            UUID.randomUUID(), UUID.randomUUID(), Money.of(3050, 2), new Date()
+        );
+        final byte[] java = new JavaSerializer((ExtendedActorSystem) system).toBinary(event);
+
+        assertThat(serialization.findSerializerFor(event)).isInstanceOf(DomainSerializer.class);
+        assertThat(serialization.serialize(event).get().length).isLessThan(java.length / 4);
+    }
+
+    @Test
+    public void whenEventsWereWrittenByJavaSerializerThenTheyAreConvertedWithTheLedgerScale() throws IOException {
+        assertThat(readLegacy("created.ser"))
+            .isEqualToComparingFieldByFieldRecursively(new AccountState.Created(LEGACY_ACCOUNT_ID, "legacy", new Date(1000), 2));
+        assertThat(readLegacy("money_deposited.ser")).isEqualToComparingFieldByFieldRecursively(
+            new AccountState.MoneyDeposited(LEGACY_DEPOSIT_ID, Transfer.CASH_IN_ACCOUNT_ID, Money.of(10000, 2), new Date(2000))
+        );
+        assertThat(readLegacy("money_blocked.ser")).isEqualToComparingFieldByFieldRecursively(
+            new AccountState.MoneyBlocked(LEGACY_TRANSFER_ID, LEGACY_TARGET_ID, Money.of(3050, 2), new Date(3000))
+        );
+        assertThat(readLegacy("transfer_completed.ser"))
+            .isEqualToComparingFieldByFieldRecursively(new AccountState.TransferCompleted(LEGACY_TRANSFER_ID, new Date(4000)));
+        assertThat(readLegacy("transfer_started.ser")).isEqualToComparingFieldByFieldRecursively(
+            new TransferState.TransferStarted(LEGACY_TRANSFER_ID, LEGACY_ACCOUNT_ID, LEGACY_TARGET_ID, Money.of(3050, 2))
+        );
+        assertThat(readLegacy("money_block_failed.ser"))
+            .isEqualToComparingFieldByFieldRecursively(new TransferState.MoneyBlockFailed(2L, LOW_BALANCE));
+    }
+
+    @Test
+    public void whenAccountSnapshotWasWrittenByJavaSerializerThenItIsConverted() throws IOException {
+        final UUID currentTransferId = UUID.fromString("00000000-0000-0000-0000-00000000000f");
+        final AccountState account = (AccountState) readLegacy("account_state.ser");
+
+        assertThat(account.getId()).isEqualTo(LEGACY_ACCOUNT_ID);
+        assertThat(account.getBalance()).isEqualTo(Money.of(5950, 2));
+        assertThat(account.getCurrentTransfers().get(currentTransferId).getAmount()).isEqualTo(Money.of(1000, 2));
+        assertThat(account.hasWatchedCompletedTransfer(LEGACY_TRANSFER_ID)).isTrue();
+        // the watched completed transfers are queued as completed at the last update of the account
+        assertThat(account.getCompletionQueue().headTime()).isEqualTo(4000L);
+        // the next snapshot of the account is written by the domain serializer
+        assertThat(roundTrip(account)).isEqualToComparingFieldByFieldRecursively(account);
+    }
+
+    @Test
+    public void whenOtherObjectIsWrittenByJavaSerializerThenItIsReadAsItIs() {
+        final ExistenceIndex.IdentifierRegistered registered = new ExistenceIndex.IdentifierRegistered(UUID.randomUUID());
+        final Serializer serializer = serialization.findSerializerFor(registered);
+
+        assertThat(serializer).isInstanceOf(LegacyJavaSerializer.class);
+        assertThat(serializer.identifier()).isEqualTo(JAVA_SERIALIZER_ID);
+        assertThat(serialization.deserialize(serializer.toBinary(registered), serializer.identifier(), "").get())
+            .isEqualTo(registered);
+    }
+
+    /**
+     * Reads a record written with the Java serializer by the classes the domain had before {@link DomainSerializer}.
+     */
+    private Object readLegacy(String name) throws IOException {
+        final byte[] bytes = Resources.toByteArray(Resources.getResource(getClass(), "legacy/" + name));
+        return serialization.deserialize(bytes, JAVA_SERIALIZER_ID, "").get();
+    }
+
+    private Object roundTrip(Object o) {
+        final Serializer serializer = serialization.findSerializerFor(o);
+        assertThat(serializer).isInstanceOf(DomainSerializer.class);
+        final byte[] bytes = serializer.toBinary(o);
+        return serialization.deserialize(bytes, serializer.identifier(), Serializers.manifestFor(serializer, o)).get();
+    }
+
+}
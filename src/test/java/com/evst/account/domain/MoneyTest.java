@@ -0,0 +1,57 @@
+package com.evst.account.domain;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThatExceptionOfType;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MoneyTest {
+
+    @Test
+    public void whenAmountsAreAddedOrSubtractedThenUnitsAreExact() {
+        assertThat(Money.of(1050, 2).plus(Money.of(25, 2))).isEqualTo(Money.of(1075, 2));
+        assertThat(Money.of(1050, 2).minus(Money.of(1050, 2))).isEqualTo(Money.zero(2));
+        assertThat(Money.of(1050, 2).compareTo(Money.of(1049, 2))).isPositive();
+    }
+
+    @Test
+    public void whenUnitsOverflowThenArithmeticFails() {
+        final Money max = Money.of(Long.MAX_VALUE, 2);
+
+        assertThat(max.canAdd(Money.of(1, 2))).isFalse();
+        assertThat(max.canAdd(Money.of(-1, 2))).isTrue();
+        assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() -> max.plus(Money.of(1, 2)));
+        assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() ->
+            Money.of(Long.MIN_VALUE, 2).minus(Money.of(1, 2))
+        );
+    }
+
+    @Test
+    public void whenScalesDifferThenAmountsAreNotMixed() {
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
+            Money.of(100, 2).plus(Money.of(100, 3))
+        );
+        assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() -> Money.of(1, Money.MAX_SCALE + 1));
+    }
+
+    @Test
+    public void whenScaleIsChangedThenAmountIsKeptOrConversionFails() {
+        assertThat(Money.of(305, 1).withScale(2)).isEqualTo(Money.of(3050, 2));
+        assertThat(Money.of(3050, 2).withScale(1)).isEqualTo(Money.of(305, 1));
+        assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() -> Money.of(3055, 2).withScale(1));
+        assertThatExceptionOfType(ArithmeticException.class).isThrownBy(() -> Money.of(Long.MAX_VALUE, 0).withScale(1));
+    }
+
+    @Test
+    public void whenAmountIsFormattedThenItIsPlainDecimal() {
+        assertThat(Money.of(1050, 2).toString()).isEqualTo("10.50");
+        assertThat(Money.of(5, 2).toString()).isEqualTo("0.05");
+        assertThat(Money.of(-5, 2).toString()).isEqualTo("-0.05");
+        assertThat(Money.of(-1234, 2).toString()).isEqualTo("-12.34");
+        assertThat(Money.of(42, 0).toString()).isEqualTo("42");
+    }
+
+}
@@ -0,0 +1,147 @@
+package com.evst.account.domain;
+
+import akka.actor.ActorIdentity;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Identify;
+import akka.actor.Terminated;
+import akka.testkit.javadsl.TestKit;
+import com.typesafe.config.Config;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static com.evst.account.domain.TransferState.Status.COMPLETED;
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PassivationTest extends AbstractPersistedActorTest {
+
+    private ActorSystem passivatingSystem;
+
+    @AfterEach
+    public void shutdownPassivatingSystem() {
+        if (passivatingSystem != null) {
+            TestKit.shutdownActorSystem(passivatingSystem);
+        }
+    }
+
+    @Test
+    public void whenEntityIsIdleThenItIsPassivatedAndRecoveredOnDemand() throws IOException {
+        startPassivatingSystem("200 ms", 0);
+        new TestKit(passivatingSystem) {
+            {
+                final AccountManagers managers = AccountManagers.start(passivatingSystem);
+                final UUID accountId = UUID.randomUUID();
+                final UUID depositId = UUID.randomUUID();
+
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "account"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                managers.managerOf(depositId).tell(
+                    new Message.DepositMoneyCommand(depositId, accountId, Money.of(10000, 2)), getRef()
+                );
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+
+                final ActorRef account = entityOf(managers, accountId);
+                watch(account);
+                expectTerminated(Duration.ofSeconds(3), account);
+
+                managers.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(10000, 2));
+                managers.managerOf(depositId).tell(new Message.RetrieveTransferCommand(depositId), getRef());
+                assertThat(expectMsgClass(Message.TransferSnapshotResponse.class).getTransferState().getStatus())
+                    .isEqualTo(COMPLETED);
+            }
+        };
+    }
+
+    @Test
+    public void whenTooManyEntitiesThenLeastRecentlyUsedIsPassivated() throws IOException {
+        startPassivatingSystem("0 s", 1);
+        new TestKit(passivatingSystem) {
+            {
+                final AccountManagers managers = AccountManagers.start(passivatingSystem);
+                final UUID firstId = UUID.randomUUID();
+                final UUID secondId = idOfSamePartition(firstId);
+
+                managers.managerOf(firstId).tell(new Message.CreateAccountCommand(firstId, "first"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(firstId));
+                final ActorRef first = entityOf(managers, firstId);
+                watch(first);
+
+                managers.managerOf(secondId).tell(new Message.CreateAccountCommand(secondId, "second"), getRef());
+                // the first account may be stopped before the second one replies
+                final List<Object> replies = receiveN(2);
+                assertThat(replies.contains(new Message.AccountCreatedResponse(secondId))).isTrue();
+                assertThat(replies.stream().anyMatch(Terminated.class::isInstance)).isTrue();
+
+                managers.managerOf(firstId).tell(new Message.RetrieveAccountCommand(firstId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getName())
+                    .isEqualTo("first");
+            }
+        };
+    }
+
+    @Test
+    public void whenAccountIsNotFoundThenItIsPassivatedImmediately() throws IOException {
+        startPassivatingSystem("2 minutes", 0);
+        new TestKit(passivatingSystem) {
+            {
+                final AccountManagers managers = AccountManagers.start(passivatingSystem);
+                final UUID accountId = UUID.randomUUID();
+
+                managers.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                expectMsg(new Message.AccountNotFoundResponse(accountId));
+                awaitAssert(() -> {
+                    passivatingSystem.actorSelection(entityPath(managers, accountId)).tell(
+                        new Identify(accountId), getRef()
+                    );
+                    assertThat(expectMsgClass(ActorIdentity.class).getActorRef().isPresent()).isFalse();
+                    return null;
+                });
+            }
+        };
+    }
+
+    private void startPassivatingSystem(String idleTimeout, int maxEntities) throws IOException {
+        final Config passivatingConfig = config.withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(temporaryFolder.newFolder("passivation_journal").getAbsolutePath())
+        ).withValue(
+            "account-manager.passivation.idle-timeout", fromAnyRef(idleTimeout)
+        ).withValue(
+            "account-manager.passivation.max-entities", fromAnyRef(maxEntities)
+        );
+        passivatingSystem = ActorSystem.create("passivation", passivatingConfig);
+    }
+
+    private ActorRef entityOf(AccountManagers managers, UUID id) {
+        return new TestKit(passivatingSystem) {
+            {
+                passivatingSystem.actorSelection(entityPath(managers, id)).tell(new Identify(id), getRef());
+            }
+        }.expectMsgClass(ActorIdentity.class).getActorRef().get();
+    }
+
+    private static String entityPath(AccountManagers managers, UUID id) {
+        return managers.managerOf(id).path().toStringWithoutAddress() + "/" + id;
+    }
+
+    private UUID idOfSamePartition(UUID other) {
+        final int partitions = config.getInt("account-manager.partitions");
+        UUID id = UUID.randomUUID();
+        while (AccountManagers.partitionOf(id, partitions) != AccountManagers.partitionOf(other, partitions)) {
+            id = UUID.randomUUID();
+        }
+        return id;
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.evst.account.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class PersistentHashMapTest {
+
+    @Test
+    public void whenEntriesAreAddedAndRemovedThenMapMatchesHashMap() {
+        final Random random = new Random(42);
+        final Map<Integer, Integer> expected = new HashMap<>();
+        PersistentHashMap<Integer, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 20000; i++) {
+            // narrow range of the keys, so the keys are replaced and removed often
+            final int key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                expected.remove(key);
+                map = map.minus(key);
+            } else {
+                expected.put(key, i);
+                map = map.plus(key, i);
+            }
+        }
+        assertThat(map).hasSize(expected.size()).isEqualTo(expected);
+        assertThat(map.get(Integer.MAX_VALUE)).isNull();
+    }
+
+    @Test
+    public void whenMapIsChangedThenPreviousVersionIsIntact() {
+        final PersistentHashMap<String, Integer> first = PersistentHashMap.<String, Integer>empty().plus("a", 1).plus("b", 2);
+        final PersistentHashMap<String, Integer> second = first.plus("c", 3).minus("a");
+
+        assertThat(first).containsOnlyKeys("a", "b");
+        assertThat(second).containsOnlyKeys("b", "c");
+        assertThat(first.minus("x")).isSameAs(first);
+        assertThat(first.plus("a", first.get("a"))).isSameAs(first);
+        assertThat(second.minus("b").minus("c")).isSameAs(PersistentHashMap.empty());
+    }
+
+    @Test
+    public void whenKeysHaveSameHashThenTheyAreKeptApart() {
+        PersistentHashMap<CollidingKey, Integer> map = PersistentHashMap.empty();
+        for (int i = 0; i < 10; i++) {
+            map = map.plus(new CollidingKey(i % 2, i), i);
+        }
+        assertThat(map).hasSize(10);
+        assertThat(map.get(new CollidingKey(0, 4))).isEqualTo(4);
+
+        for (int i = 0; i < 10; i += 3) {
+            map = map.minus(new CollidingKey(i % 2, i));
+        }
+        assertThat(map).hasSize(6).doesNotContainKey(new CollidingKey(0, 6)).containsKey(new CollidingKey(1, 7));
+    }
+
+    /**
+     * Key with the hash chosen by the test.
+     */
+    private static final class CollidingKey {
+
+        private final int hash;
+        private final int value;
+
+        CollidingKey(int hash, int value) {
+            this.hash = hash;
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CollidingKey && ((CollidingKey) o).value == value;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+}
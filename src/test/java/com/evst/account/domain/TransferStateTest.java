@@ -9,9 +9,10 @@ import org.assertj.core.api.AssertionsForClassTypes;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
-import java.math.BigDecimal;
 import java.util.UUID;
 
+import static com.evst.account.domain.TransferState.Status.ACCOUNT_NOT_FOUND;
+import static com.evst.account.domain.TransferState.Status.BALANCE_OVERFLOW;
 import static com.evst.account.domain.TransferState.Status.COMPLETED;
 import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
 import static com.evst.account.domain.TransferState.Status.LOW_BALANCE;
@@ -27,7 +28,7 @@ public class TransferStateTest {
     @BeforeAll
     public static void init() {
         state = new TransferState(
-            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), new BigDecimal(100.0), IN_PROGRESS, null
+            UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), Money.of(10000, 2), IN_PROGRESS
         );
     }
 
@@ -36,25 +37,24 @@ public class TransferStateTest {
         final UUID id = UUID.randomUUID();
         final UUID sourceId = UUID.randomUUID();
         final UUID targetId = UUID.randomUUID();
-        final BigDecimal transfer = new BigDecimal(30.0);
+        final Money transfer = Money.of(3000, 2);
         final TransferStarted started = new TransferStarted(id, sourceId, targetId, transfer);
-        final TransferState startedState = started.mutate(null, null);
+        final TransferState startedState = started.mutate(null);
 
         assertThat(startedState.getId()).isEqualByComparingTo(id);
         assertThat(startedState.getSourceAccountId()).isEqualByComparingTo(sourceId);
         assertThat(startedState.getTargetAccountId()).isEqualByComparingTo(targetId);
         assertThat(startedState.getStatus()).isEqualByComparingTo(IN_PROGRESS);
-        AssertionsForClassTypes.assertThat(startedState.getDeliverySnapshot()).isNull();
 
         AssertionsForClassTypes.assertThatExceptionOfType(IllegalArgumentException.class).isThrownBy(() ->
-            started.mutate(state, null)
+            started.mutate(state)
         );
     }
 
     @Test
     public void whenMoneyBlockedThenProduceTheSameState() {
         final MoneyBlocked blocked = new MoneyBlocked(0L);
-        final TransferState blockedState = blocked.mutate(state, null);
+        final TransferState blockedState = blocked.mutate(state);
 
         assertThat(blockedState).isEqualTo(state);
     }
@@ -62,7 +62,7 @@ public class TransferStateTest {
     @Test
     public void whenMoneyDepositedThenProduceTheSameState() {
         final MoneyDeposited deposited = new MoneyDeposited(0L);
-        final TransferState depositedState = deposited.mutate(state, null);
+        final TransferState depositedState = deposited.mutate(state);
 
         assertThat(depositedState).isEqualTo(state);
     }
@@ -70,7 +70,7 @@ public class TransferStateTest {
     @Test
     public void whenMoneyBlockFailedThenChangeStateStatus() {
         final MoneyBlockFailed blockFailed = new MoneyBlockFailed(0L, LOW_BALANCE);
-        final TransferState blockFailedState = blockFailed.mutate(state, null);
+        final TransferState blockFailedState = blockFailed.mutate(state);
 
         assertThat(blockFailedState.getStatus()).isEqualTo(LOW_BALANCE);
     }
@@ -78,16 +78,26 @@ public class TransferStateTest {
     @Test
     public void whenTransferCompletedThenChangeStateStatus() {
         final TransferCompleted completed = new TransferCompleted(0L);
-        final TransferState completedState = completed.mutate(state, null);
+        final TransferState completedState = completed.mutate(state);
 
         assertThat(completedState.getStatus()).isEqualTo(COMPLETED);
     }
 
+    @Test
+    public void whenDepositOverflowedThenStatusIsKeptAfterUnblock() {
+        final TransferState failedState = new TransferState.MoneyDepositFailed(0L, BALANCE_OVERFLOW).mutate(state);
+        final TransferState unblockedState = new TransferState.MoneyUnblocked(1L).mutate(failedState);
+
+        assertThat(unblockedState.getStatus()).isEqualTo(BALANCE_OVERFLOW);
+        assertThat(new TransferState.MoneyUnblocked(1L).mutate(state).getStatus()).isEqualTo(ACCOUNT_NOT_FOUND);
+    }
+
     @Test
     public void whenStatusCodeRequestedThenReturnSpecifiedValues() {
         assertThat(IN_PROGRESS.getCode()).isEqualTo("in_progress");
         assertThat(COMPLETED.getCode()).isEqualTo("completed");
         assertThat(LOW_BALANCE.getCode()).isEqualTo("low_balance");
+        assertThat(BALANCE_OVERFLOW.getCode()).isEqualTo("balance_overflow");
     }
 
     @Test
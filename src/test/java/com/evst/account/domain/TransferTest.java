@@ -1,25 +1,31 @@
 package com.evst.account.domain;
 
 import akka.actor.ActorRef;
-import akka.actor.ActorSystem;
 import akka.actor.Props;
+import akka.persistence.Persistence;
+import akka.persistence.SnapshotProtocol;
+import akka.persistence.SnapshotSelectionCriteria;
 import akka.testkit.javadsl.TestKit;
 import com.evst.account.domain.Message.AccountSnapshotResponse;
 import com.evst.account.domain.Message.RetrieveAccountCommand;
 import com.evst.account.domain.Message.RetrieveTransferCommand;
+import com.evst.account.domain.TransferProtocolMessage.AccountEnvelope;
+import com.evst.account.domain.TransferProtocolMessage.DepositMoney;
+import com.evst.account.domain.TransferProtocolMessage.ForgetTransfer;
+import com.evst.account.domain.TransferProtocolMessage.MoneyDepositedSuccessfully;
 import com.evst.account.domain.TransferProtocolMessage.TransferHasAlreadyStarted;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyCheck;
 import com.evst.account.domain.TransferProtocolMessage.TransferReadyToStart;
+import com.typesafe.config.ConfigFactory;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
-import java.math.BigDecimal;
 import java.util.UUID;
 
+import static com.evst.account.domain.TransferState.Status.ACCOUNT_NOT_FOUND;
 import static com.evst.account.domain.TransferState.Status.COMPLETED;
 import static com.evst.account.domain.TransferState.Status.LOW_BALANCE;
-import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 
@@ -36,33 +42,35 @@ public class TransferTest extends AbstractPersistedActorTest {
     private static ActorRef targetAccountRef;
     private static ActorRef transferRef;
 
-    private static BigDecimal initialSourceBalance;
-    private static BigDecimal transferAmount;
+    private static Money initialSourceBalance;
+    private static Money transferAmount;
 
     @BeforeEach
     public void setup() throws IOException {
 
         super.setup();
-        config = config.withValue("actor.pathprefix.account", fromAnyRef("/user/"));
-        system = ActorSystem.create("test", config);
 
         new TestKit(system) {
             {
+                final AccountManagers managers = AccountManagers.start(system);
+
                 sourceAccountId = UUID.randomUUID();
-                initialSourceBalance = new BigDecimal(100.0);
-                sourceAccountRef = system.actorOf(
-                    Props.create(Account.class, sourceAccountId, initialSourceBalance), sourceAccountId.toString()
-                );
+                initialSourceBalance = Money.of(10000, 2);
+                sourceAccountRef = managers.managerOf(sourceAccountId);
+                sourceAccountRef.tell(new Message.CreateAccountCommand(sourceAccountId, "source"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(sourceAccountId));
+                sourceAccountRef.tell(new AccountEnvelope(
+                    sourceAccountId, new DepositMoney(0L, UUID.randomUUID(), Transfer.CASH_IN_ACCOUNT_ID, initialSourceBalance)
+                ), getRef());
+                expectMsg(new MoneyDepositedSuccessfully(0L));
 
                 targetAccountId = UUID.randomUUID();
-                targetAccountRef = system.actorOf(
-                    Props.create(Account.class, targetAccountId), targetAccountId.toString()
-                );
+                targetAccountRef = managers.managerOf(targetAccountId);
                 targetAccountRef.tell(new Message.CreateAccountCommand(targetAccountId, "target"), getRef());
                 expectMsg(new Message.AccountCreatedResponse(targetAccountId));
 
                 transferId = UUID.randomUUID();
-                transferAmount = new BigDecimal(50.0);
+                transferAmount = Money.of(5000, 2);
                 transferRef = system.actorOf(Props.create(Transfer.class, transferId));
 
                 transferRef.tell(
@@ -103,7 +111,7 @@ public class TransferTest extends AbstractPersistedActorTest {
 
                 sourceAccountRef.tell(new RetrieveAccountCommand(sourceAccountId), getRef());
                 final AccountSnapshotResponse sourceResponse = expectMsgClass(AccountSnapshotResponse.class);
-                assertThat(sourceResponse.getAccount().getBalance()).isEqualTo(initialSourceBalance.subtract(transferAmount));
+                assertThat(sourceResponse.getAccount().getBalance()).isEqualTo(initialSourceBalance.minus(transferAmount));
             }
         };
     }
@@ -136,12 +144,76 @@ public class TransferTest extends AbstractPersistedActorTest {
         };
     }
 
+    @Test
+    public void whenDepositThenTargetIsCreditedDirectly() {
+        new TestKit(system) {
+            {
+                final UUID depositId = UUID.randomUUID();
+                final Money amount = Money.of(2500, 2);
+                final ActorRef depositRef = system.actorOf(Props.create(Transfer.class, depositId));
+
+                depositRef.tell(
+                    new Message.MakeTransferCommand(depositId, Transfer.CASH_IN_ACCOUNT_ID, targetAccountId, amount),
+                    getRef()
+                );
+                assertThat(expectMsgClass(Message.TransferResponse.class).getTransferState().getStatus())
+                    .isEqualByComparingTo(COMPLETED);
+
+                targetAccountRef.tell(new RetrieveAccountCommand(targetAccountId), getRef());
+                final AccountSnapshotResponse targetResponse = expectMsgClass(AccountSnapshotResponse.class);
+                assertThat(targetResponse.getAccount().getBalance()).isEqualByComparingTo(transferAmount.plus(amount));
+                assertThat(targetResponse.getAccount().getCurrentTransfers()).isEmpty();
+            }
+        };
+    }
+
+    @Test
+    public void whenTargetAccountNotFoundThenBlockedMoneyIsReturned() {
+        new TestKit(system) {
+            {
+                final UUID id = UUID.randomUUID();
+                final UUID missingId = UUID.randomUUID();
+                final ActorRef transfer = system.actorOf(Props.create(Transfer.class, id));
+
+                transfer.tell(new Message.MakeTransferCommand(id, sourceAccountId, missingId, transferAmount), getRef());
+                expectMsg(new Message.AccountNotFoundResponse(missingId));
+
+                transfer.tell(new RetrieveTransferCommand(id), getRef());
+                assertThat(expectMsgClass(Message.TransferSnapshotResponse.class).getTransferState().getStatus())
+                    .isEqualByComparingTo(ACCOUNT_NOT_FOUND);
+                sourceAccountRef.tell(new RetrieveAccountCommand(sourceAccountId), getRef());
+                final AccountSnapshotResponse sourceResponse = expectMsgClass(AccountSnapshotResponse.class);
+                assertThat(sourceResponse.getAccount().getBalance())
+                    .isEqualByComparingTo(initialSourceBalance.minus(transferAmount));
+                assertThat(sourceResponse.getAccount().hasActiveTransfer(id)).isFalse();
+            }
+        };
+    }
+
+    @Test
+    public void whenSourceAccountNotFoundThenTransferFails() {
+        new TestKit(system) {
+            {
+                final UUID id = UUID.randomUUID();
+                final UUID missingId = UUID.randomUUID();
+                final ActorRef transfer = system.actorOf(Props.create(Transfer.class, id));
+
+                transfer.tell(new Message.MakeTransferCommand(id, missingId, targetAccountId, transferAmount), getRef());
+                expectMsg(new Message.AccountNotFoundResponse(missingId));
+
+                transfer.tell(new RetrieveTransferCommand(id), getRef());
+                assertThat(expectMsgClass(Message.TransferSnapshotResponse.class).getTransferState().getStatus())
+                    .isEqualByComparingTo(ACCOUNT_NOT_FOUND);
+            }
+        };
+    }
+
     @Test
     public void whenTransferIsNotStartedThenItCaNotBeFound() {
         new TestKit(system) {
             {
                 final UUID transferId = UUID.randomUUID();
-                final BigDecimal transferAmount = new BigDecimal(50.0);
+                final Money transferAmount = Money.of(5000, 2);
                 final ActorRef transferRef = system.actorOf(Props.create(Transfer.class, transferId));
 
                 transferRef.tell(new RetrieveTransferCommand(transferId), getRef());
@@ -155,7 +227,7 @@ public class TransferTest extends AbstractPersistedActorTest {
         new TestKit(system) {
             {
                 final UUID id = UUID.randomUUID();
-                final BigDecimal amount = new BigDecimal(100500.0);
+                final Money amount = Money.of(10050000, 2);
                 final ActorRef transfer = system.actorOf(Props.create(Transfer.class, id));
 
                 transfer.tell(new Message.MakeTransferCommand(id, sourceAccountId, targetAccountId, amount), getRef());
@@ -165,4 +237,55 @@ public class TransferTest extends AbstractPersistedActorTest {
         };
     }
 
+    @Test
+    public void whenTransferCompletedThenItIsRecoveredFromSnapshot() {
+        new TestKit(system) {
+            {
+                final ActorRef snapshotStore = Persistence.get(system).snapshotStoreFor("", ConfigFactory.empty());
+                awaitAssert(() -> {
+                    snapshotStore.tell(new SnapshotProtocol.LoadSnapshot(
+                        transferId.toString(), SnapshotSelectionCriteria.latest(), Long.MAX_VALUE
+                    ), getRef());
+                    final SnapshotProtocol.LoadSnapshotResult result = expectMsgClass(SnapshotProtocol.LoadSnapshotResult.class);
+                    assertThat(result.snapshot().isDefined()).isTrue();
+                    final TransferSnapshot snapshot = (TransferSnapshot) result.snapshot().get().snapshot();
+                    assertThat(snapshot.getState().getStatus()).isEqualByComparingTo(COMPLETED);
+                    // the snapshot is saved when the transfer is completed, the account hasn't forgotten it yet
+                    assertThat(snapshot.getDeliverySnapshot().unconfirmedDeliveries().size()).isEqualTo(1);
+                    final AccountEnvelope pending = (AccountEnvelope) snapshot.getDeliverySnapshot()
+                        .unconfirmedDeliveries().head().message();
+                    assertThat(pending.getMessage()).isInstanceOf(ForgetTransfer.class);
+                    return null;
+                });
+                awaitAssert(() -> {
+                    sourceAccountRef.tell(new RetrieveAccountCommand(sourceAccountId), getRef());
+                    assertThat(expectMsgClass(AccountSnapshotResponse.class).getAccount().hasWatchedCompletedTransfer(transferId))
+                        .isFalse();
+                    return null;
+                });
+
+                watch(transferRef);
+                system.stop(transferRef);
+                expectTerminated(transferRef);
+
+                final ActorRef recovered = system.actorOf(Props.create(Transfer.class, transferId));
+                recovered.tell(new RetrieveTransferCommand(transferId), getRef());
+                assertThat(expectMsgClass(Message.TransferSnapshotResponse.class).getTransferState().getStatus())
+                    .isEqualByComparingTo(COMPLETED);
+
+                // the forgetting isn't snapshotted, it's replayed after the snapshot of the completion, the only one
+                snapshotStore.tell(new SnapshotProtocol.LoadSnapshot(
+                    transferId.toString(), SnapshotSelectionCriteria.latest(), Long.MAX_VALUE
+                ), getRef());
+                final SnapshotProtocol.LoadSnapshotResult result = expectMsgClass(SnapshotProtocol.LoadSnapshotResult.class);
+                final TransferSnapshot latest = (TransferSnapshot) result.snapshot().get().snapshot();
+                assertThat(latest.getDeliverySnapshot().unconfirmedDeliveries().size()).isEqualTo(1);
+                snapshotStore.tell(new SnapshotProtocol.LoadSnapshot(
+                    transferId.toString(), SnapshotSelectionCriteria.latest(), result.snapshot().get().metadata().sequenceNr() - 1
+                ), getRef());
+                assertThat(expectMsgClass(SnapshotProtocol.LoadSnapshotResult.class).snapshot().isDefined()).isFalse();
+            }
+        };
+    }
+
 }
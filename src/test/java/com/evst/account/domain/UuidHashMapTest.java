@@ -0,0 +1,60 @@
+package com.evst.account.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class UuidHashMapTest {
+
+    @Test
+    public void whenEntriesAreAddedAndRemovedThenMapMatchesHashMap() {
+        final Random random = new Random(42);
+        // narrow range of the keys, so the keys are replaced and removed often and the clusters of the slots are long
+        final UUID[] keys = new UUID[3000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = i % 2 == 0 ? new UUID(random.nextLong(), random.nextLong()) : new UUID(i / 64, i % 64);
+        }
+        final Map<UUID, Integer> expected = new HashMap<>();
+        final UuidHashMap<Integer> map = new UuidHashMap<>(0);
+        for (int i = 0; i < 50000; i++) {
+            final UUID key = keys[random.nextInt(keys.length)];
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key)).isEqualTo(expected.remove(key));
+            } else {
+                assertThat(map.put(key, i)).isEqualTo(expected.put(key, i));
+            }
+        }
+        assertThat(map.size()).isEqualTo(expected.size());
+        for (UUID key : keys) {
+            assertThat(map.get(key)).isEqualTo(expected.get(key));
+            assertThat(map.containsKey(key)).isEqualTo(expected.containsKey(key));
+        }
+    }
+
+    @Test
+    public void whenAllEntriesAreRemovedThenMapIsEmpty() {
+        final UuidHashMap<String> map = new UuidHashMap<>(2);
+        final UUID first = UUID.randomUUID();
+        final UUID second = UUID.randomUUID();
+        map.put(first, "first");
+        map.put(second, "second");
+
+        assertThat(map.get(first.getMostSignificantBits(), first.getLeastSignificantBits())).isEqualTo("first");
+        assertThat(map.remove(first)).isEqualTo("first");
+        assertThat(map.remove(first)).isNull();
+        assertThat(map.remove(second)).isEqualTo("second");
+        assertThat(map.isEmpty()).isTrue();
+        assertThat(map.get(second)).isNull();
+        assertThatThrownBy(() -> map.put(first, null)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.evst.account.journal;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.InMemoryStorage;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.EventTags;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import com.evst.account.query.EventEnvelope;
+import com.evst.account.query.ReadJournal;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class InMemoryJournalTest {
+
+    private static final int DEPOSITS = 3;
+
+    private ActorSystem system;
+
+    @BeforeEach
+    public void setup() {
+        system = ActorSystem.create("in-memory", InMemoryStorage.configure(
+            ConfigFactory.load("application").withValue("in-memory-storage.enabled", fromAnyRef(true))
+        ).withValue(
+            "akka.persistence.journal.in-memory.write-latency", fromAnyRef("1 ms")
+        ));
+    }
+
+    @AfterEach
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+    }
+
+    @Test
+    public void whenEventsArePersistedThenTheyAreQueriedUntilReset() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "in-memory"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                for (int i = 0; i < DEPOSITS; i++) {
+                    final UUID depositId = UUID.randomUUID();
+                    managers.managerOf(depositId).tell(
+                        new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef()
+                    );
+                    expectMsgClass(Message.TransferResponse.class);
+                }
+            }
+        };
+
+        final ActorMaterializer materializer = ActorMaterializer.create(system);
+        final ReadJournal readJournal = new ReadJournal(system);
+        final List<EventEnvelope> byTag = readJournal.currentEventsByTag(EventTags.ACCOUNT, 1)
+            .runWith(Sink.seq(), materializer).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(byTag).extracting(EventEnvelope::getOffset).containsExactly(2L, 3L, 4L);
+        assertThat(byTag).extracting(EventEnvelope::getEvent).allMatch(event -> event instanceof AccountState.MoneyDeposited);
+        assertThat(readJournal.currentPersistenceIds().runWith(Sink.seq(), materializer)
+            .toCompletableFuture().get(5, TimeUnit.SECONDS)).contains(accountId.toString());
+
+        InMemoryStorage.reset(system, Duration.ofSeconds(3)).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(readJournal.currentEventsByPersistenceId(accountId.toString(), 1, Long.MAX_VALUE)
+            .runWith(Sink.seq(), materializer).toCompletableFuture().get(5, TimeUnit.SECONDS)).isEmpty();
+        assertThat(readJournal.currentOffset(EventTags.ACCOUNT).toCompletableFuture().get(5, TimeUnit.SECONDS)).isZero();
+    }
+
+}
@@ -0,0 +1,87 @@
+package com.evst.account.journal;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.TemporaryFolderExtension;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class MappedJournalTest {
+
+    private static final int DEPOSITS = 50;
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private Config config;
+    private ActorSystem system;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        config = ConfigFactory.load("application").withValue(
+            "akka.persistence.journal.plugin", fromAnyRef("akka.persistence.journal.mapped")
+        ).withValue(
+            "akka.persistence.journal.mapped.dir", fromAnyRef(temporaryFolder.newFolder("mapped_journal").getAbsolutePath())
+        ).withValue(
+            // a few messages per segment
+            "akka.persistence.journal.mapped.segment-size", fromAnyRef("1 KiB")
+        ).withValue(
+            "akka.persistence.snapshot-store.local.dir", fromAnyRef(temporaryFolder.newFolder("temp_snapshot").getAbsolutePath())
+        ).withValue(
+            // recover from the journal only
+            "akka.persistence.snapshot-store.interval.account", fromAnyRef(Integer.MAX_VALUE)
+        );
+        system = ActorSystem.create("mapped", config);
+    }
+
+    @AfterEach
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenSystemIsRestartedThenAccountIsRecoveredFromSegments() {
+        final UUID accountId = UUID.randomUUID();
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "mapped"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                for (int i = 0; i < DEPOSITS; i++) {
+                    final UUID depositId = UUID.randomUUID();
+                    managers.managerOf(depositId).tell(
+                        new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef()
+                    );
+                    expectMsgClass(Message.TransferResponse.class);
+                }
+            }
+        };
+        TestKit.shutdownActorSystem(system);
+
+        system = ActorSystem.create("mapped", config);
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                managers.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(DEPOSITS * 100, 2));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,125 @@
+package com.evst.account.journal;
+
+import com.evst.account.TemporaryFolderExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SegmentedLogTest {
+
+    private static final int SEGMENT_SIZE = 256;
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private File dir;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        dir = temporaryFolder.newFolder("log");
+    }
+
+    @AfterEach
+    public void teardown() {
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenLogIsReopenedThenRecordsAreRecoveredFromAllSegments() throws IOException {
+        final List<Long> positions = new ArrayList<>();
+        final SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE);
+        for (int i = 0; i < 20; i++) {
+            positions.add(log.append(SegmentedLog.MESSAGE, "id", i + 1, new byte[] {(byte) i}));
+        }
+        log.append(SegmentedLog.DELETION, "id", 10, new byte[0]);
+        log.close();
+        assertThat(dir.list().length).isGreaterThan(1);
+
+        final List<SegmentedLog.Record> records = new ArrayList<>();
+        final SegmentedLog reopened = new SegmentedLog(dir, SEGMENT_SIZE);
+        reopened.recover(records::add);
+
+        assertThat(records).hasSize(21);
+        assertThat(records.get(20).getType()).isEqualTo(SegmentedLog.DELETION);
+        for (int i = 0; i < 20; i++) {
+            assertThat(records.get(i).getSequenceNr()).isEqualTo(i + 1);
+            assertThat(records.get(i).getPosition()).isEqualTo(positions.get(i));
+            assertThat(reopened.payloadAt(positions.get(i))).isEqualTo(new byte[] {(byte) i});
+        }
+    }
+
+    @Test
+    public void whenRecordsAreReadWhileNewSegmentsAreAddedThenPayloadsAreIntact() throws Exception {
+        final int count = 500;
+        final List<Long> published = new ArrayList<>();
+        final SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE);
+        final ExecutorService reader = Executors.newSingleThreadExecutor();
+        try {
+            // the positions are published under a lock as the journal does with its indexes
+            final Future<Integer> read = reader.submit(() -> {
+                int checked = 0;
+                while (checked < count) {
+                    final Long position;
+                    synchronized (published) {
+                        position = checked < published.size() ? published.get(checked) : null;
+                    }
+                    if (position != null) {
+                        assertThat(log.payloadAt(position)).isEqualTo(new byte[] {(byte) checked, (byte) (checked >> 8)});
+                        checked++;
+                    }
+                }
+                return checked;
+            });
+            for (int i = 0; i < count; i++) {
+                final long position = log.append(SegmentedLog.MESSAGE, "id", i + 1, new byte[] {(byte) i, (byte) (i >> 8)});
+                synchronized (published) {
+                    published.add(position);
+                }
+            }
+            assertThat(read.get(10, TimeUnit.SECONDS)).isEqualTo(count);
+        } finally {
+            reader.shutdownNow();
+            log.close();
+        }
+    }
+
+    @Test
+    public void whenLastRecordIsTornThenItIsIgnoredAndOverwritten() throws IOException {
+        final SegmentedLog log = new SegmentedLog(dir, SEGMENT_SIZE);
+        log.append(SegmentedLog.MESSAGE, "id", 1, new byte[] {1});
+        final long torn = log.append(SegmentedLog.MESSAGE, "id", 2, new byte[] {2, 2, 2});
+        log.close();
+        try (RandomAccessFile file = new RandomAccessFile(new File(dir, "segment-0000000000.log"), "rw")) {
+            // the last byte of the payload didn't reach the disk
+            file.seek((int) torn + 4 + 4 + 1 + 2 + 2 + 8 + 2);
+            file.write(0);
+        }
+
+        final List<SegmentedLog.Record> records = new ArrayList<>();
+        final SegmentedLog reopened = new SegmentedLog(dir, SEGMENT_SIZE);
+        reopened.recover(records::add);
+        assertThat(records).hasSize(1);
+
+        assertThat(reopened.append(SegmentedLog.MESSAGE, "id", 2, new byte[] {3})).isEqualTo(torn);
+        reopened.close();
+        records.clear();
+        new SegmentedLog(dir, SEGMENT_SIZE).recover(records::add);
+        assertThat(records).hasSize(2);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.evst.account.journal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SequenceIndexTest {
+
+    @Test
+    public void whenMessagesAreRewrittenAndDeletedThenRangeHasLatestValues() {
+        final SequenceIndex<String> index = new SequenceIndex<>();
+        for (long sequenceNr = 1; sequenceNr <= 40; sequenceNr++) {
+            index.add(sequenceNr, "first-" + sequenceNr);
+        }
+        index.add(39, "second-39");
+        index.deleteTo(10);
+        index.add(5, "deleted-5");
+
+        assertThat(index.size()).isEqualTo(29);
+        assertThat(index.getHighestSequenceNr()).isEqualTo(40L);
+        assertThat(index.valuesBetween(1, 12, Long.MAX_VALUE)).containsExactly("first-11", "first-12");
+        assertThat(index.valuesBetween(37, Long.MAX_VALUE, 2)).containsExactly("first-37", "first-38");
+        assertThat(index.valuesBetween(38, 45, Long.MAX_VALUE)).containsExactly("first-38", "second-39");
+        assertThat(index.valuesBetween(41, 45, Long.MAX_VALUE)).isEmpty();
+    }
+
+    @Test
+    public void whenIndexIsChangedAfterRangeIsCopiedThenRangeIsKept() {
+        final SequenceIndex<String> index = new SequenceIndex<>();
+        index.add(1, "first-1");
+        index.add(2, "first-2");
+        final List<String> range = index.valuesBetween(1, 2, Long.MAX_VALUE);
+
+        index.add(2, "second-2");
+        index.deleteTo(1);
+
+        assertThat(range).containsExactly("first-1", "first-2");
+    }
+
+}
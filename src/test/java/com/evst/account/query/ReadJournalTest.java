@@ -0,0 +1,87 @@
+package com.evst.account.query;
+
+import akka.stream.ActorMaterializer;
+import akka.stream.javadsl.Sink;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.domain.AbstractPersistedActorTest;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.EventTags;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ReadJournalTest extends AbstractPersistedActorTest {
+
+    @Test
+    public void whenEventsArePersistedThenTheyAreStreamedByTagAndPersistenceId() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final AccountManagers managers = AccountManagers.start(system);
+        createAccountWithDeposits(managers, accountId, 2);
+
+        final ActorMaterializer materializer = ActorMaterializer.create(system);
+        final ReadJournal readJournal = new ReadJournal(system);
+
+        final List<EventEnvelope> byTag = readJournal.currentEventsByTag(EventTags.ACCOUNT, 0)
+            .runWith(Sink.seq(), materializer).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(byTag).extracting(EventEnvelope::getOffset).containsExactly(1L, 2L, 3L);
+        assertThat(byTag).extracting(EventEnvelope::getPersistenceId).containsOnly(accountId.toString());
+        assertThat(byTag.get(0).getEvent()).isInstanceOf(AccountState.Created.class);
+        assertThat(byTag.get(2).getEvent()).isInstanceOf(AccountState.MoneyDeposited.class);
+
+        final String partition = EventTags.partitionTag(
+            EventTags.ACCOUNT, EventTags.fromConfig(config).partitionOf(accountId.toString())
+        );
+        assertThat(readJournal.currentEventsByTag(partition, 1).runWith(Sink.seq(), materializer)
+            .toCompletableFuture().get(5, TimeUnit.SECONDS)).extracting(EventEnvelope::getSequenceNr).containsExactly(2L, 3L);
+
+        assertThat(readJournal.currentEventsByPersistenceId(accountId.toString(), 2, Long.MAX_VALUE)
+            .runWith(Sink.seq(), materializer).toCompletableFuture().get(5, TimeUnit.SECONDS))
+            .extracting(EventEnvelope::getSequenceNr).containsExactly(2L, 3L);
+
+        assertThat(readJournal.currentPersistenceIds().runWith(Sink.seq(), materializer)
+            .toCompletableFuture().get(5, TimeUnit.SECONDS)).contains(accountId.toString());
+    }
+
+    @Test
+    public void whenEventIsPersistedAfterStartThenLiveQueryEmitsIt() throws Exception {
+        final UUID accountId = UUID.randomUUID();
+        final AccountManagers managers = AccountManagers.start(system);
+        createAccountWithDeposits(managers, accountId, 1);
+
+        final CompletionStage<EventEnvelope> next = new ReadJournal(system).eventsByTag(EventTags.ACCOUNT, 2)
+            .runWith(Sink.head(), ActorMaterializer.create(system));
+        Thread.sleep(200);
+        assertThat(next.toCompletableFuture().isDone()).isFalse();
+
+        createAccountWithDeposits(managers, UUID.randomUUID(), 0);
+        final EventEnvelope created = next.toCompletableFuture().get(3, TimeUnit.SECONDS);
+        assertThat(created.getOffset()).isEqualTo(3L);
+        assertThat(created.getEvent()).isInstanceOf(AccountState.Created.class);
+    }
+
+    private void createAccountWithDeposits(AccountManagers managers, UUID accountId, int deposits) {
+        new TestKit(system) {
+            {
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "query"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                for (int i = 0; i < deposits; i++) {
+                    final UUID depositId = UUID.randomUUID();
+                    managers.managerOf(depositId).tell(new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef());
+                    expectMsgClass(Message.TransferResponse.class);
+                }
+            }
+        };
+    }
+
+}
@@ -0,0 +1,122 @@
+package com.evst.account.query;
+
+import akka.actor.ActorSystem;
+import akka.stream.ActorMaterializer;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.TemporaryFolderExtension;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.AccountState;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import com.evst.account.domain.TransferState;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class ReadModelTest {
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private Config config;
+    private ActorSystem system;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        final File journal = temporaryFolder.newFolder("temp_journal");
+        config = ConfigFactory.load("application").withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(journal.getAbsolutePath())
+        ).withValue(
+            "akka.persistence.snapshot-store.local.dir", fromAnyRef(temporaryFolder.newFolder("temp_snapshot").getAbsolutePath())
+        ).withValue(
+            "read-model.enabled", fromAnyRef(true)
+        ).withValue(
+            "read-model.store.enabled", fromAnyRef(true)
+        ).withValue(
+            "read-model.store.dir", fromAnyRef(temporaryFolder.newFolder("read_model").getAbsolutePath())
+        ).withValue(
+            "read-model.store.checkpoint-interval", fromAnyRef("100 ms")
+        );
+        system = ActorSystem.create("read-model", config);
+    }
+
+    @AfterEach
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenReadWithTokenOfWriteThenViewIncludesWrite() throws Exception {
+        final ReadModel model = ReadModel.start(system, ActorMaterializer.create(system));
+        final AccountManagers managers = AccountManagers.start(system);
+        final UUID accountId = UUID.randomUUID();
+        final UUID depositId = UUID.randomUUID();
+        createAccountWithDeposit(managers, accountId, depositId);
+
+        final ReadToken token = model.token().toCompletableFuture().get(5, TimeUnit.SECONDS).get();
+        assertThat(token.getAccountOffset()).isEqualTo(2L);
+
+        final Optional<AccountState> account = model.account(accountId, Optional.of(token))
+            .toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(account).hasValueSatisfying(state -> assertThat(state.getBalance()).isEqualByComparingTo(Money.of(1000, 2)));
+        final Optional<TransferState> deposit = model.transfer(depositId, Optional.of(token))
+            .toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(deposit).hasValueSatisfying(state -> assertThat(state.getStatus()).isEqualTo(TransferState.Status.COMPLETED));
+
+        final TransferPage page = model.accountTransfers(
+            accountId, Optional.of(TransferState.Status.COMPLETED), 0, 10, Optional.of(token)
+        ).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        assertThat(page.getTransfers()).extracting(TransferState::getId).containsExactly(depositId);
+        assertThat(page.isMore()).isFalse();
+
+        final ReadToken unreachable = new ReadToken(token.getAccountOffset() + 1, token.getTransferOffset());
+        assertThat(model.account(accountId, Optional.of(unreachable)).toCompletableFuture().get(5, TimeUnit.SECONDS)).isEmpty();
+    }
+
+    @Test
+    public void whenModelIsRestartedThenViewsAreLoadedFromCheckpoint() throws Exception {
+        final ReadModel model = ReadModel.start(system, ActorMaterializer.create(system));
+        final UUID accountId = UUID.randomUUID();
+        createAccountWithDeposit(AccountManagers.start(system), accountId, UUID.randomUUID());
+        final ReadToken token = model.token().toCompletableFuture().get(5, TimeUnit.SECONDS).get();
+        model.account(accountId, Optional.of(token)).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Thread.sleep(300);
+        TestKit.shutdownActorSystem(system);
+
+        system = ActorSystem.create("read-model", config.withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(temporaryFolder.newFolder("empty_journal").getAbsolutePath())
+        ));
+        final ReadModel restarted = ReadModel.start(system, ActorMaterializer.create(system));
+        assertThat(restarted.currentToken().reached(token)).isTrue();
+        assertThat(restarted.account(accountId, Optional.empty()).toCompletableFuture().get(5, TimeUnit.SECONDS))
+            .hasValueSatisfying(state -> assertThat(state.getBalance()).isEqualByComparingTo(Money.of(1000, 2)));
+        assertThat(restarted.accountTransfers(accountId, Optional.empty(), 0, 10, Optional.empty())
+            .toCompletableFuture().get(5, TimeUnit.SECONDS).getTransfers()).hasSize(1);
+    }
+
+    private void createAccountWithDeposit(AccountManagers managers, UUID accountId, UUID depositId) {
+        new TestKit(system) {
+            {
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "read model"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                managers.managerOf(depositId).tell(new Message.DepositMoneyCommand(depositId, accountId, Money.of(1000, 2)), getRef());
+                expectMsgClass(Message.TransferResponse.class);
+            }
+        };
+    }
+
+}
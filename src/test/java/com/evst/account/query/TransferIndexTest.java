@@ -0,0 +1,76 @@
+package com.evst.account.query;
+
+import com.evst.account.domain.Money;
+import com.evst.account.domain.Transfer;
+import com.evst.account.domain.TransferState;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.Optional;
+import java.util.UUID;
+
+import static com.evst.account.domain.TransferState.Status.COMPLETED;
+import static com.evst.account.domain.TransferState.Status.IN_PROGRESS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class TransferIndexTest {
+
+    private final UUID account = UUID.randomUUID();
+    private final UUID other = UUID.randomUUID();
+
+    @Test
+    public void whenTransfersAreIndexedThenTheyArePagedInStartOrder() {
+        final TransferIndex index = new TransferIndex();
+        final TransferState first = started(account, other);
+        final TransferState second = started(other, account);
+        final TransferState third = started(account, other);
+        index.update(null, first, 1);
+        index.update(null, second, 4);
+        index.update(null, third, 7);
+
+        final TransferIndex.Page page = index.find(account, Optional.empty(), 0, 2);
+        assertThat(page.getTransferIds()).containsExactly(first.getId(), second.getId());
+        assertThat(page.isMore()).isTrue();
+        final TransferIndex.Page last = index.find(account, Optional.empty(), page.getCursor(), 2);
+        assertThat(last.getTransferIds()).containsExactly(third.getId());
+        assertThat(last.isMore()).isFalse();
+        assertThat(index.find(UUID.randomUUID(), Optional.empty(), 0, 2).getTransferIds()).isEmpty();
+    }
+
+    @Test
+    public void whenStatusChangesThenTransferMovesBetweenStatusFilters() {
+        final TransferIndex index = new TransferIndex();
+        final TransferState transfer = started(account, other);
+        index.update(null, transfer, 3);
+        assertThat(index.find(account, Optional.of(IN_PROGRESS), 0, 10).getTransferIds()).containsExactly(transfer.getId());
+
+        index.update(transfer, withStatus(transfer, COMPLETED), 5);
+        assertThat(index.find(account, Optional.of(IN_PROGRESS), 0, 10).getTransferIds()).isEmpty();
+        assertThat(index.find(other, Optional.of(COMPLETED), 0, 10).getTransferIds()).containsExactly(transfer.getId());
+        assertThat(index.find(other, Optional.empty(), 0, 10).getTransferIds()).containsExactly(transfer.getId());
+    }
+
+    @Test
+    public void whenIndexIsRestoredThenDepositsAreListedByTargetOnly() {
+        final TransferState deposit = withStatus(started(Transfer.CASH_IN_ACCOUNT_ID, account), COMPLETED);
+        final TransferIndex restored = new TransferIndex();
+        restored.restore(Collections.singletonMap(deposit.getId(), deposit), Collections.singletonMap(deposit.getId(), 2L));
+        assertThat(restored.find(account, Optional.of(COMPLETED), 0, 10).getTransferIds()).containsExactly(deposit.getId());
+        assertThat(restored.find(Transfer.CASH_IN_ACCOUNT_ID, Optional.empty(), 0, 10).getTransferIds()).isEmpty();
+        assertThat(restored.offsets()).containsEntry(deposit.getId(), 2L);
+    }
+
+    private static TransferState started(UUID source, UUID target) {
+        return new TransferState(UUID.randomUUID(), source, target, Money.of(100, 2), IN_PROGRESS);
+    }
+
+    private static TransferState withStatus(TransferState transfer, TransferState.Status status) {
+        return new TransferState(
+            transfer.getId(), transfer.getSourceAccountId(), transfer.getTargetAccountId(), transfer.getAmount(), status
+        );
+    }
+
+}
@@ -0,0 +1,89 @@
+package com.evst.account.snapshot;
+
+import akka.actor.ActorSystem;
+import akka.testkit.javadsl.TestKit;
+import com.evst.account.TemporaryFolderExtension;
+import com.evst.account.domain.AccountManagers;
+import com.evst.account.domain.Message;
+import com.evst.account.domain.Money;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import static com.typesafe.config.ConfigValueFactory.fromAnyRef;
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class CompactedSnapshotStoreTest {
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private Config config;
+    private ActorSystem system;
+    private File snapshots;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        snapshots = temporaryFolder.newFolder("compacted_snapshots");
+        config = ConfigFactory.load("application").withValue(
+            "akka.persistence.journal.leveldb.dir", fromAnyRef(temporaryFolder.newFolder("temp_journal").getAbsolutePath())
+        ).withValue(
+            "akka.persistence.snapshot-store.plugin", fromAnyRef("akka.persistence.snapshot-store.compacted")
+        ).withValue(
+            "akka.persistence.snapshot-store.compacted.dir", fromAnyRef(snapshots.getAbsolutePath())
+        ).withValue(
+            "akka.persistence.snapshot-store.compacted.compaction-interval", fromAnyRef("100 ms")
+        );
+        system = ActorSystem.create("compacted", config);
+    }
+
+    @AfterEach
+    public void teardown() {
+        TestKit.shutdownActorSystem(system);
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenAccountIsSnapshottedThenItIsRecoveredFromCompactedFile() {
+        final UUID accountId = UUID.randomUUID();
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                managers.managerOf(accountId).tell(new Message.CreateAccountCommand(accountId, "compacted"), getRef());
+                expectMsg(new Message.AccountCreatedResponse(accountId));
+                for (int i = 0; i < 10; i++) {
+                    final UUID depositId = UUID.randomUUID();
+                    managers.managerOf(depositId).tell(
+                        new Message.DepositMoneyCommand(depositId, accountId, Money.of(100, 2)), getRef()
+                    );
+                    expectMsgClass(Message.TransferResponse.class);
+                }
+                // every event of the account and the finished deposits are snapshotted, the replaced ones are removed
+                awaitAssert(() -> {
+                    assertThat(new File(snapshots, "snapshots.dat").length()).isLessThan(4096L);
+                    return null;
+                });
+            }
+        };
+        TestKit.shutdownActorSystem(system);
+
+        system = ActorSystem.create("compacted", config);
+        new TestKit(system) {
+            {
+                final AccountManagers managers = AccountManagers.start(system);
+                managers.managerOf(accountId).tell(new Message.RetrieveAccountCommand(accountId), getRef());
+                assertThat(expectMsgClass(Message.AccountSnapshotResponse.class).getAccount().getBalance())
+                    .isEqualByComparingTo(Money.of(1000, 2));
+            }
+        };
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.evst.account.snapshot;
+
+import com.evst.account.TemporaryFolderExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SnapshotFileTest {
+
+    private final TemporaryFolderExtension temporaryFolder = new TemporaryFolderExtension();
+    private File dir;
+
+    @BeforeEach
+    public void setup() throws IOException {
+        temporaryFolder.create();
+        dir = temporaryFolder.newFolder("snapshots");
+    }
+
+    @AfterEach
+    public void teardown() {
+        temporaryFolder.cleanUp();
+    }
+
+    @Test
+    public void whenSnapshotIsReplacedThenOnlyLatestIsLoaded() throws IOException {
+        try (SnapshotFile file = new SnapshotFile(dir)) {
+            file.save("first", 1, 10, new byte[] {1});
+            file.save("first", 5, 50, new byte[] {5});
+            file.save("first", 3, 30, new byte[] {3});
+            file.save("second", 2, 20, new byte[] {2});
+            file.delete("second", 2);
+
+            assertThat(file.find("first").getSequenceNr()).isEqualTo(5);
+            assertThat(file.read(file.find("first"))).isEqualTo(new byte[] {5});
+            assertThat(file.find("second")).isNull();
+        }
+        try (SnapshotFile reopened = new SnapshotFile(dir)) {
+            assertThat(reopened.read(reopened.find("first"))).isEqualTo(new byte[] {5});
+            assertThat(reopened.find("second")).isNull();
+        }
+    }
+
+    @Test
+    public void whenFileIsCompactedThenOnlyLiveSnapshotsAreKept() throws IOException {
+        final File data = new File(dir, "snapshots.dat");
+        try (SnapshotFile file = new SnapshotFile(dir)) {
+            for (int i = 1; i <= 100; i++) {
+                file.save("first", i, i, new byte[] {(byte) i});
+            }
+            file.save("second", 1, 1, new byte[] {-1});
+            assertThat(file.garbageRatio()).isGreaterThan(0.9);
+            final long before = data.length();
+
+            file.compact();
+
+            assertThat(file.garbageRatio()).isEqualTo(0.0);
+            assertThat(data.length()).isLessThan(before / 10);
+            assertThat(file.read(file.find("first"))).isEqualTo(new byte[] {100});
+            assertThat(file.read(file.find("second"))).isEqualTo(new byte[] {-1});
+            file.save("second", 2, 2, new byte[] {-2});
+        }
+        try (SnapshotFile reopened = new SnapshotFile(dir)) {
+            assertThat(reopened.read(reopened.find("first"))).isEqualTo(new byte[] {100});
+            assertThat(reopened.read(reopened.find("second"))).isEqualTo(new byte[] {-2});
+        }
+    }
+
+    @Test
+    public void whenLastRecordIsTornThenItIsCutOff() throws IOException {
+        final File data = new File(dir, "snapshots.dat");
+        try (SnapshotFile file = new SnapshotFile(dir)) {
+            file.save("first", 1, 1, new byte[] {1});
+            file.save("first", 2, 2, new byte[] {2});
+        }
+        try (RandomAccessFile raw = new RandomAccessFile(data, "rw")) {
+            raw.setLength(raw.length() - 1);
+        }
+        try (SnapshotFile reopened = new SnapshotFile(dir)) {
+            assertThat(reopened.read(reopened.find("first"))).isEqualTo(new byte[] {1});
+            reopened.save("first", 3, 3, new byte[] {3});
+        }
+        try (SnapshotFile reopened = new SnapshotFile(dir)) {
+            assertThat(reopened.read(reopened.find("first"))).isEqualTo(new byte[] {3});
+        }
+    }
+
+}
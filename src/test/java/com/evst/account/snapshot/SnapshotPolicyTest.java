@@ -0,0 +1,58 @@
+package com.evst.account.snapshot;
+
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author Evgeny Stankevich {@literal <stankevich.evg@gmail.com>}.
+ */
+public class SnapshotPolicyTest {
+
+    private final SnapshotPolicy policy = new RecoveryTimeSnapshotPolicy(
+        Duration.ofMillis(5), Duration.ofMillis(100), 1, Duration.ofNanos(20_000)
+    );
+
+    @Test
+    public void whenHotAccountReachesRecoveryTargetThenSnapshotIsSaved() {
+        // 250 events of 20 us are 5 ms of the replay
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(1249, 249, 0, 10, 50))).isFalse();
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(1250, 250, 0, 10, 50))).isTrue();
+    }
+
+    @Test
+    public void whenReplayTimeIsMeasuredThenItIsUsedInsteadOfDefault() {
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(50, 50, 100_000, 10, 50))).isTrue();
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(500, 500, 1_000, 10, 50))).isFalse();
+    }
+
+    @Test
+    public void whenAccountIsColdThenSnapshotIsSavedOnlyAfterColdLimit() {
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(4999, 4999, 0, 10, 0.1))).isFalse();
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(5000, 5000, 0, 10, 0.1))).isTrue();
+    }
+
+    @Test
+    public void whenStateIsBiggerThanEventsThenSnapshotIsPostponed() {
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(300, 300, 0, 301, 50))).isFalse();
+        assertThat(policy.shouldSaveSnapshot(new SnapshotPolicy.Progress(301, 301, 0, 301, 50))).isTrue();
+    }
+
+    @Test
+    public void policyIsCreatedByType() {
+        final Config config = ConfigFactory.parseString("interval = 10");
+        assertThat(SnapshotPolicy.create(config.withFallback(ConfigFactory.parseString("type = interval"))))
+            .isInstanceOf(IntervalSnapshotPolicy.class);
+        assertThat(SnapshotPolicy.create(config.withFallback(
+            ConfigFactory.parseString("type = " + IntervalSnapshotPolicy.class.getName())
+        )).shouldSaveSnapshot(new SnapshotPolicy.Progress(20, 10, 0, 0, 0))).isTrue();
+        assertThatThrownBy(() -> SnapshotPolicy.create(ConfigFactory.parseString("type = unknown")))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+}